@@ -0,0 +1,83 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A* searches on the streets between random pairs of vertices in the Columbus graph, for each priority queue.
+ * One benchmark operation is one complete search including the setup of the routing context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AStarBenchmark {
+
+    private static final int N_PAIRS = 100;
+
+    @Param({"CAR", "WALK"})
+    public TraverseMode mode;
+
+    @Param({"BINARY_HEAP", "FOUR_ARY_HEAP", "RADIX_HEAP"})
+    public OTPPriorityQueueFactory priorityQueue;
+
+    private Graph graph;
+
+    private Vertex[][] pairs;
+
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        graph = BenchmarkGraphs.streetGraph();
+        pairs = BenchmarkGraphs.randomStreetVertexPairs(graph, N_PAIRS);
+    }
+
+    @Benchmark
+    public void streetSearch(Blackhole blackhole) {
+        Vertex[] pair = pairs[next];
+        next = (next + 1) % pairs.length;
+        RoutingRequest options = new RoutingRequest();
+        options.setMode(mode);
+        options.priorityQueueFactory = priorityQueue;
+        options.setRoutingContext(graph, pair[0], pair[1]);
+        AStar aStar = new AStar();
+        blackhole.consume(aStar.getShortestPathTree(options));
+        blackhole.consume(aStar.getVisitedCount());
+        options.cleanup();
+    }
+
+}
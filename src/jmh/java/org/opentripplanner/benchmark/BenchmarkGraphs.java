@@ -0,0 +1,81 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The graphs shared by the benchmarks. They are built from the fixtures in src/test/resources and the generated
+ * feeds of FakeGraph, so the benchmarks need no network access and measure the same data on every run.
+ */
+public class BenchmarkGraphs {
+
+    /** Seed for every random choice of origins and destinations, so that all runs measure the same searches. */
+    public static final long SEED = 42;
+
+    private static Graph streetGraph;
+
+    private static Graph transitGraph;
+
+    /** @return the street network of Columbus, OH without transit. Built once per JVM. */
+    public static synchronized Graph streetGraph() throws Exception {
+        if (streetGraph == null) {
+            streetGraph = FakeGraph.buildGraphNoTransit();
+            streetGraph.index(new DefaultStreetVertexIndexFactory());
+        }
+        return streetGraph;
+    }
+
+    /**
+     * @return the street network of Columbus, OH with a grid of perpendicular bus and tram routes running every
+     * FakeGraph.FREQUENCY seconds from 7:00 to 20:00 every day. Built once per JVM.
+     */
+    public static synchronized Graph transitGraph() throws Exception {
+        if (transitGraph == null) {
+            transitGraph = FakeGraph.buildGraphNoTransit();
+            FakeGraph.addPerpendicularRoutes(transitGraph);
+            FakeGraph.link(transitGraph);
+            transitGraph.index(new DefaultStreetVertexIndexFactory());
+        }
+        return transitGraph;
+    }
+
+    /** @return n pairs of street vertices with outgoing edges, drawn with a fixed seed. */
+    public static Vertex[][] randomStreetVertexPairs(Graph graph, int n) {
+        List<Vertex> streetVertices = new ArrayList<>();
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof StreetVertex && !v.getOutgoing().isEmpty()) streetVertices.add(v);
+        }
+        // the vertex map is unordered, sort so the same seed picks the same vertices in every JVM
+        streetVertices.sort((a, b) -> a.getLabel().compareTo(b.getLabel()));
+        Random random = new Random(SEED);
+        Vertex[][] pairs = new Vertex[n][];
+        for (int i = 0; i < n; i++) {
+            pairs[i] = new Vertex[] {
+                    streetVertices.get(random.nextInt(streetVertices.size())),
+                    streetVertices.get(random.nextInt(streetVertices.size()))
+            };
+        }
+        return pairs;
+    }
+
+}
@@ -0,0 +1,65 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.datastore.FileType;
+import org.opentripplanner.standalone.datastore.file.FileDataSource;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Graph.load of the serialized Columbus transit graph, including the indexing done after deserialization. The graph
+ * file is written once before the measurements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GraphLoadBenchmark {
+
+    private File graphFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        Graph graph = BenchmarkGraphs.transitGraph();
+        graphFile = File.createTempFile("graph", ".obj");
+        graph.save(new FileDataSource(graphFile, FileType.GRAPH));
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphFile.delete();
+    }
+
+    @Benchmark
+    public Graph load() throws Exception {
+        return Graph.load(graphFile);
+    }
+
+}
@@ -0,0 +1,102 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.standalone.Router;
+
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete trip planning through GraphPathFinder.getPaths between random coordinates in the Columbus transit graph,
+ * including the linking of the origin and destination and the search for several itineraries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GraphPathFinderBenchmark {
+
+    private static final int N_PLACES = 50;
+
+    /* The area covered by the grid of routes in FakeGraph.addPerpendicularRoutes. */
+    private static final double MIN_LAT = 39.9058, MAX_LAT = 40.0281, MIN_LON = -83.1341, MAX_LON = -82.8646;
+
+    @Param({"TRANSIT,WALK", "WALK", "CAR"})
+    public String modes;
+
+    private GraphPathFinder graphPathFinder;
+
+    private TimeZone timeZone;
+
+    private GenericLocation[][] places;
+
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        Graph graph = BenchmarkGraphs.transitGraph();
+        graphPathFinder = new GraphPathFinder(new Router("benchmark", graph));
+        timeZone = graph.getTimeZone();
+        Random random = new Random(BenchmarkGraphs.SEED);
+        places = new GenericLocation[N_PLACES][];
+        for (int i = 0; i < N_PLACES; i++) {
+            places[i] = new GenericLocation[] { randomLocation(random), randomLocation(random) };
+        }
+    }
+
+    private static GenericLocation randomLocation(Random random) {
+        return new GenericLocation(MIN_LAT + random.nextDouble() * (MAX_LAT - MIN_LAT),
+                MIN_LON + random.nextDouble() * (MAX_LON - MIN_LON));
+    }
+
+    @Benchmark
+    public List<GraphPath> getPaths() {
+        GenericLocation[] place = places[next];
+        next = (next + 1) % places.length;
+        RoutingRequest request = new RoutingRequest(modes);
+        request.setDateTime("2016-04-20", "13:00", timeZone);
+        request.from = place[0];
+        request.to = place[1];
+        try {
+            return graphPathFinder.getPaths(request);
+        } catch (RuntimeException e) {
+            // PathNotFoundException and friends are part of the normal workload
+            return null;
+        } finally {
+            request.cleanup();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreetEdge.traverse on every street edge of the Columbus graph, from a state at the start of the edge. One
+ * benchmark operation traverses all the edges once, the initial states are created beforehand.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreetEdgeBenchmark {
+
+    @Param({"WALK", "BICYCLE", "CAR"})
+    public TraverseMode mode;
+
+    private RoutingRequest options;
+
+    private StreetEdge[] edges;
+
+    private org.opentripplanner.routing.core.State[] states;
+
+    @Setup
+    public void setUp() throws Exception {
+        Graph graph = BenchmarkGraphs.streetGraph();
+        List<StreetEdge> streetEdges = new ArrayList<>();
+        for (Edge e : graph.getEdges()) {
+            if (e instanceof StreetEdge) streetEdges.add((StreetEdge) e);
+        }
+        Vertex[] pair = BenchmarkGraphs.randomStreetVertexPairs(graph, 1)[0];
+        options = new RoutingRequest();
+        options.setMode(mode);
+        options.setRoutingContext(graph, pair[0], pair[1]);
+        edges = streetEdges.toArray(new StreetEdge[0]);
+        states = new org.opentripplanner.routing.core.State[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            states[i] = new org.opentripplanner.routing.core.State(edges[i].getFromVertex(), options);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        options.cleanup();
+    }
+
+    @Benchmark
+    public void traverseAllEdges(Blackhole blackhole) {
+        for (int i = 0; i < edges.length; i++) {
+            blackhole.consume(edges[i].traverse(states[i]));
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timetable.getNextTrip for boarding and alighting at random stops of the scheduled timetables in the Columbus
+ * transit graph, at random times of day, on each of the service days of a routing context, as a transit search
+ * does. One benchmark operation runs all the queries once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimetableBenchmark {
+
+    private static final int N_QUERIES = 10000;
+
+    private RoutingRequest options;
+
+    private List<ServiceDay> serviceDays;
+
+    private Timetable[] timetables;
+
+    private int[] stopIndexes;
+
+    private org.opentripplanner.routing.core.State[] states;
+
+    @Setup
+    public void setUp() throws Exception {
+        Graph graph = BenchmarkGraphs.transitGraph();
+        List<TripPattern> patterns = new ArrayList<>(graph.index.patternForId.values());
+        patterns.sort(Comparator.comparing(p -> p.code));
+        TransitStop from = graph.index.stopVertexForStop.get(patterns.get(0).getStop(0));
+        TransitStop to = graph.index.stopVertexForStop.get(patterns.get(patterns.size() - 1).getStop(0));
+
+        options = new RoutingRequest("TRANSIT,WALK");
+        options.setDateTime("2016-04-20", "00:00", graph.getTimeZone());
+        options.setRoutingContext(graph, from, to);
+        serviceDays = options.rctx.serviceDays;
+        long midnight = options.dateTime;
+
+        Random random = new Random(BenchmarkGraphs.SEED);
+        timetables = new Timetable[N_QUERIES];
+        stopIndexes = new int[N_QUERIES];
+        states = new org.opentripplanner.routing.core.State[N_QUERIES];
+        for (int i = 0; i < N_QUERIES; i++) {
+            TripPattern pattern = patterns.get(random.nextInt(patterns.size()));
+            int stopIndex = random.nextInt(pattern.getStops().size());
+            TransitStop stopVertex = graph.index.stopVertexForStop.get(pattern.getStop(stopIndex));
+            // from before the first departure to after the last arrival of the day
+            long time = midnight + 6 * 3600 + random.nextInt(16 * 3600);
+            timetables[i] = pattern.scheduledTimetable;
+            stopIndexes[i] = stopIndex;
+            states[i] = new org.opentripplanner.routing.core.State(stopVertex, time, options);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        options.cleanup();
+    }
+
+    @Benchmark
+    public void nextDeparture(Blackhole blackhole) {
+        for (int i = 0; i < N_QUERIES; i++) {
+            for (ServiceDay serviceDay : serviceDays) {
+                blackhole.consume(timetables[i].getNextTrip(states[i], serviceDay, stopIndexes[i], true));
+            }
+        }
+    }
+
+    @Benchmark
+    public void previousArrival(Blackhole blackhole) {
+        for (int i = 0; i < N_QUERIES; i++) {
+            for (ServiceDay serviceDay : serviceDays) {
+                blackhole.consume(timetables[i].getNextTrip(states[i], serviceDay, stopIndexes[i], false));
+            }
+        }
+    }
+
+}
@@ -442,6 +442,24 @@ public abstract class RoutingResource {
     @QueryParam("heuristicStepsPerMainStep")
     private Integer heuristicStepsPerMainStep;
 
+    /**
+     * If true, search for the alternatives to the first itinerary found in parallel rather than one after another.
+     */
+    @QueryParam("parallelItineraries")
+    private Boolean parallelItineraries;
+
+    /**
+     * If true, plan transit trips with the round-based RAPTOR search where it supports the request.
+     */
+    @QueryParam("useRaptor")
+    private Boolean useRaptor;
+
+    /**
+     * The priority queue used by the search: BINARY_HEAP (the default), FOUR_ARY_HEAP or RADIX_HEAP.
+     */
+    @QueryParam("priorityQueue")
+    private String priorityQueue;
+
     /* 
      * somewhat ugly bug fix: the graphService is only needed here for fetching per-graph time zones. 
      * this should ideally be done when setting the routing context, but at present departure/
@@ -679,6 +697,20 @@ public abstract class RoutingResource {
         if (heuristicStepsPerMainStep != null)
             request.heuristicStepsPerMainStep = heuristicStepsPerMainStep;
 
+        if (parallelItineraries != null)
+            request.parallelItineraries = parallelItineraries;
+
+        if (useRaptor != null)
+            request.useRaptor = useRaptor;
+
+        if (priorityQueue != null) {
+            try {
+                request.setPriorityQueue(priorityQueue);
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException(Message.BOGUS_PARAMETER);
+            }
+        }
+
         //getLocale function returns defaultLocale if locale is null
         request.locale = ResourceBundleSingleton.INSTANCE.getLocale(locale);
         return request;
@@ -39,6 +39,7 @@ import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.*;
 import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,6 +61,7 @@ public abstract class GraphPathToTripPlanConverter {
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
 
+        long conversionStart = System.nanoTime();
         Locale requestedLocale = request.locale;
 
         GraphPath exemplar = paths.get(0);
@@ -130,6 +132,7 @@ public abstract class GraphPathToTripPlanConverter {
             }
         }
         request.rctx.debugOutput.finishedRendering();
+        request.rctx.graph.routingMetrics.recordPhase(RoutingMetrics.Phase.PATH_CONVERSION, conversionStart);
         return plan;
     }
 
@@ -787,10 +790,9 @@ public abstract class GraphPathToTripPlanConverter {
             return new ArrayList<>();
         }
         Collection<AlertPatch> alertsForStopAndRoute = graph.index.getAlertsForStopAndRoute(stopId,routeId);
-        if (checkParentStop) {
-            if (alertsForStopAndRoute == null) {
-                alertsForStopAndRoute = new HashSet<>();
-            }
+        if (checkParentStop && (stop.getParentStation() != null || stop.getMultiModalStation() != null)) {
+            // The alert index hands out shared, immutable collections, so copy before adding the parent alerts
+            alertsForStopAndRoute = alertsForStopAndRoute == null ? new HashSet<>() : new HashSet<>(alertsForStopAndRoute);
             if (stop.getParentStation() != null) {
                 //Also check parent
                 Collection<AlertPatch> parentStopAlerts = graph.index.getAlertsForStopAndRoute(stop.getParentStationAgencyAndId(), routeId);
@@ -823,10 +825,8 @@ public abstract class GraphPathToTripPlanConverter {
         }
 
         Collection<AlertPatch> alertsForStopAndTrip = graph.index.getAlertsForStopAndTrip(stopId, tripId);
-        if (checkParentStop) {
-            if (alertsForStopAndTrip == null) {
-                alertsForStopAndTrip = new HashSet<>();
-            }
+        if (checkParentStop && (stop.getParentStation() != null || stop.getMultiModalStation() != null)) {
+            alertsForStopAndTrip = alertsForStopAndTrip == null ? new HashSet<>() : new HashSet<>(alertsForStopAndTrip);
             if  (stop.getParentStation() != null) {
                 // Also check parent
                 Collection<AlertPatch> parentStopAlerts = graph.index.getAlertsForStopAndTrip(stop.getParentStationAgencyAndId(), tripId);
@@ -857,10 +857,8 @@ public abstract class GraphPathToTripPlanConverter {
         }
 
         Collection<AlertPatch> alertsForStop  = graph.index.getAlertsForStopId(stopId);
-        if (checkParentStop) {
-            if (alertsForStop == null) {
-                alertsForStop = new HashSet<>();
-            }
+        if (checkParentStop && (stop.getParentStation() != null || stop.getMultiModalStation() != null)) {
+            alertsForStop = alertsForStop == null ? new HashSet<>() : new HashSet<>(alertsForStop);
             if  (stop.getParentStation() != null) {
                 // Also check parent
                 Collection<AlertPatch> parentStopAlerts = graph.index.getAlertsForStopId(stop.getParentStationAgencyAndId());
@@ -0,0 +1,58 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.routing.error.GraphNotFoundException;
+import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.standalone.Router;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Expose the routing metrics of all routers in the Prometheus text format, to be scraped by a Prometheus server.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    private final OTPServer otpServer;
+
+    public MetricsResource (@Context OTPServer otpServer) {
+        this.otpServer = otpServer;
+    }
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String getMetrics () {
+        Map<String, RoutingMetrics> routers = new TreeMap<>();
+        for (String routerId : otpServer.getRouterIds()) {
+            try {
+                Router router = otpServer.getRouter(routerId);
+                routers.put(routerId, router.graph.routingMetrics);
+            } catch (GraphNotFoundException e) {
+                // evicted since the router IDs were listed
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        RoutingMetrics.writePrometheus(routers, out);
+        return out.toString();
+    }
+
+}
@@ -18,6 +18,7 @@ import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.impl.PlanResponseCache;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
@@ -75,12 +76,22 @@ public class PlannerResource extends RoutingResource {
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
 
-            /* Find some good GraphPaths through the OTP Graph. */
-            GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
-            paths = gpFinder.graphPathFinderEntryPoint(request);
+            /* Reuse the plan of an identical recent request if the plan cache is enabled. */
+            List<Object> cacheKey = router.planCache == null ? null : router.planCache.keyFor("plan", request);
+            List<Object> realtimeState = cacheKey == null ? null : PlanResponseCache.realtimeState(router.graph);
+            TripPlan plan = cacheKey == null ? null : router.planCache.get(cacheKey, realtimeState, request);
 
-            /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
-            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+            if (plan == null) {
+                /* Find some good GraphPaths through the OTP Graph. */
+                GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+                paths = gpFinder.graphPathFinderEntryPoint(request);
+
+                /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+                plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                if (cacheKey != null) {
+                    router.planCache.put(cacheKey, plan, realtimeState, request);
+                }
+            }
             response.setPlan(plan);
 
         } catch (Exception e) {
@@ -89,10 +100,9 @@ public class PlannerResource extends RoutingResource {
                 LOG.warn("Error while planning path: ", e);
             response.setError(error);
         } finally {
-            if (request != null) {
-                if (request.rctx != null) {
-                    response.debugOutput = request.rctx.debugOutput;
-                }
+            // There is no routing context to clean up when the plan came from the cache
+            if (request != null && request.rctx != null) {
+                response.debugOutput = request.rctx.debugOutput;
                 request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
             }
         }
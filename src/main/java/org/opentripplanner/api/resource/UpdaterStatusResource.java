@@ -40,6 +40,17 @@ public class UpdaterStatusResource {
         return Response.status(Response.Status.OK).entity(updaterManager.getUpdaterDescriptions()).build();
     }
 
+    /** Return the number of graph writers waiting to be run, and the sizes of the batches they are run in. */
+    @GET
+    @Path("/queue")
+    public Response getWriterQueue () {
+        GraphUpdaterManager updaterManager = router.graph.updaterManager;
+        if (updaterManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No updaters running.").build();
+        }
+        return Response.status(Response.Status.OK).entity(updaterManager.getWriterQueueStatus()).build();
+    }
+
     /** Return status for a specific updater. */
     @GET
     @Path("/{updaterId}")
@@ -0,0 +1,441 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * An immutable hash map in which every change returns a new map that shares all of its structure with the old one,
+ * except for the path to the changed entry. It is a hash array mapped trie (HAMT): a tree with up to 32 children per
+ * node, where each level of the tree is indexed on the next 5 bits of the key hash and a bitmap records which
+ * children are present. Adding or removing a key copies O(log32 n) small nodes, and taking a snapshot of the map is
+ * free since it never changes.
+ *
+ * This is used where a map is changed a little at a time and copied often, so that copying does not cost time and
+ * memory in proportion to the size of the map.
+ *
+ * Null keys are not supported. Null values are, but cannot be told apart from missing keys by get().
+ */
+public final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    /** Null for the empty map. */
+    private final BitmapNode root;
+
+    private final int size;
+
+    private PersistentHashMap(BitmapNode root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public V get(Object key) {
+        if (root == null) {
+            return null;
+        }
+        Leaf<K, V> leaf = root.find(hash(key), 0, key);
+        return leaf == null ? null : leaf.value;
+    }
+
+    public boolean containsKey(Object key) {
+        return root != null && root.find(hash(key), 0, key) != null;
+    }
+
+    /** @return a map with the given key mapped to the given value, or this map if it already was. */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key);
+        Leaf<K, V> leaf = new Leaf<>(hash(key), key, value);
+        if (root == null) {
+            return new PersistentHashMap<>(new BitmapNode(bit(leaf.hash, 0), new Object[] { leaf }), 1);
+        }
+        boolean[] added = new boolean[1];
+        BitmapNode newRoot = (BitmapNode) root.plus(leaf, 0, added);
+        return newRoot == root ? this : new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /** @return a map without the given key, or this map if it did not contain it. */
+    public PersistentHashMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Object newRoot = root.minus(hash(key), 0, key);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        if (newRoot instanceof Leaf) {
+            // The root is always a bitmap node, even when a single entry remains.
+            Leaf<?, ?> leaf = (Leaf<?, ?>) newRoot;
+            newRoot = new BitmapNode(bit(leaf.hash, 0), new Object[] { leaf });
+        }
+        return new PersistentHashMap<>((BitmapNode) newRoot, size - 1);
+    }
+
+    /** @return a map without the keys that match the given predicate, or this map if none of them do. */
+    public PersistentHashMap<K, V> minusIf(Predicate<? super K> predicate) {
+        List<K> toRemove = new ArrayList<>();
+        for (Map.Entry<K, V> entry : this) {
+            if (predicate.test(entry.getKey())) {
+                toRemove.add(entry.getKey());
+            }
+        }
+        PersistentHashMap<K, V> map = this;
+        for (K key : toRemove) {
+            map = map.minus(key);
+        }
+        return map;
+    }
+
+    /** Iterate over the entries of this map, in no particular order. */
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(root);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<K, V> entry : this) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.append('}').toString();
+    }
+
+    private static int hash(Object key) {
+        // Spread the high bits downwards like HashMap does, since the low bits index the top of the tree.
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** An entry of the map, and a leaf of the tree. */
+    private static final class Leaf<K, V> implements Map.Entry<K, V> {
+        final int hash;
+        final K key;
+        final V value;
+
+        Leaf(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && this.key.equals(key);
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            throw new UnsupportedOperationException("PersistentHashMap entries are immutable.");
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /** An inner node of the tree. Its children are leaves or other nodes. */
+    private static abstract class Node {
+
+        /** The leaves and nodes below this node. Never modified once the node is published. */
+        final Object[] children;
+
+        Node(Object[] children) {
+            this.children = children;
+        }
+
+        abstract <K, V> Leaf<K, V> find(int hash, int shift, Object key);
+
+        /** @return the node with the given leaf added, or this node if it already held an identical entry */
+        abstract Node plus(Leaf<?, ?> leaf, int shift, boolean[] added);
+
+        /** @return this node if the key was not found, otherwise a node, a single leaf or null for nothing left */
+        abstract Object minus(int hash, int shift, Object key);
+
+        static Object[] replace(Object[] array, int i, Object child) {
+            Object[] copy = array.clone();
+            copy[i] = child;
+            return copy;
+        }
+
+        static Object[] insert(Object[] array, int i, Object child) {
+            Object[] copy = new Object[array.length + 1];
+            System.arraycopy(array, 0, copy, 0, i);
+            copy[i] = child;
+            System.arraycopy(array, i, copy, i + 1, array.length - i);
+            return copy;
+        }
+
+        static Object[] remove(Object[] array, int i) {
+            Object[] copy = new Object[array.length - 1];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 1, copy, i, array.length - i - 1);
+            return copy;
+        }
+    }
+
+    /** A node with a child for each distinct value of the hash bits at its level that is present. */
+    private static final class BitmapNode extends Node {
+
+        final int bitmap;
+
+        BitmapNode(int bitmap, Object[] children) {
+            super(children);
+            this.bitmap = bitmap;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <K, V> Leaf<K, V> find(int hash, int shift, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = children[index(bit)];
+            if (child instanceof Leaf) {
+                Leaf<K, V> leaf = (Leaf<K, V>) child;
+                return leaf.matches(hash, key) ? leaf : null;
+            }
+            return ((Node) child).find(hash, shift + BITS, key);
+        }
+
+        @Override
+        Node plus(Leaf<?, ?> leaf, int shift, boolean[] added) {
+            int bit = bit(leaf.hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insert(children, i, leaf));
+            }
+            Object child = children[i];
+            if (child instanceof Leaf) {
+                Leaf<?, ?> existing = (Leaf<?, ?>) child;
+                if (existing.matches(leaf.hash, leaf.key)) {
+                    return existing.value == leaf.value ? this : new BitmapNode(bitmap, replace(children, i, leaf));
+                }
+                added[0] = true;
+                return new BitmapNode(bitmap, replace(children, i, merge(existing, leaf, shift + BITS)));
+            }
+            Node node = (Node) child;
+            Node newNode = node.plus(leaf, shift + BITS, added);
+            return newNode == node ? this : new BitmapNode(bitmap, replace(children, i, newNode));
+        }
+
+        @Override
+        Object minus(int hash, int shift, Object key) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int i = index(bit);
+            Object child = children[i];
+            Object newChild;
+            if (child instanceof Leaf) {
+                if (!((Leaf<?, ?>) child).matches(hash, key)) {
+                    return this;
+                }
+                newChild = null;
+            } else {
+                newChild = ((Node) child).minus(hash, shift + BITS, key);
+                if (newChild == child) {
+                    return this;
+                }
+            }
+            if (newChild != null) {
+                // A single leaf left below is pulled up to this level, keeping the tree as shallow as possible.
+                if (newChild instanceof Leaf && children.length == 1) {
+                    return newChild;
+                }
+                return new BitmapNode(bitmap, replace(children, i, newChild));
+            }
+            if (children.length == 1) {
+                return null;
+            }
+            if (children.length == 2 && children[1 - i] instanceof Leaf) {
+                return children[1 - i];
+            }
+            return new BitmapNode(bitmap & ~bit, remove(children, i));
+        }
+
+        /** @return a node holding two leaves with different keys, at the given level */
+        static Node merge(Leaf<?, ?> a, Leaf<?, ?> b, int shift) {
+            if (a.hash == b.hash) {
+                return new CollisionNode(a.hash, new Object[] { a, b });
+            }
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new BitmapNode(bitA, new Object[] { merge(a, b, shift + BITS) });
+            }
+            // Children are ordered by their bit in the bitmap.
+            Object[] children = Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+            return new BitmapNode(bitA | bitB, children);
+        }
+    }
+
+    /** A node holding leaves whose keys have exactly the same hash, in no particular order. */
+    private static final class CollisionNode extends Node {
+
+        final int hash;
+
+        CollisionNode(int hash, Object[] leaves) {
+            super(leaves);
+            this.hash = hash;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < children.length; i++) {
+                if (((Leaf<?, ?>) children[i]).key.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        <K, V> Leaf<K, V> find(int hash, int shift, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            return i < 0 ? null : (Leaf<K, V>) children[i];
+        }
+
+        @Override
+        Node plus(Leaf<?, ?> leaf, int shift, boolean[] added) {
+            if (leaf.hash != hash) {
+                // Push this node one level down, below a bitmap node that can also hold the new leaf.
+                return new BitmapNode(bit(hash, shift), new Object[] { this }).plus(leaf, shift, added);
+            }
+            int i = indexOf(leaf.key);
+            if (i < 0) {
+                added[0] = true;
+                return new CollisionNode(hash, insert(children, children.length, leaf));
+            }
+            return ((Leaf<?, ?>) children[i]).value == leaf.value ? this : new CollisionNode(hash, replace(children, i, leaf));
+        }
+
+        @Override
+        Object minus(int hash, int shift, Object key) {
+            int i = hash == this.hash ? indexOf(key) : -1;
+            if (i < 0) {
+                return this;
+            }
+            if (children.length == 2) {
+                return children[1 - i];
+            }
+            return new CollisionNode(hash, remove(children, i));
+        }
+    }
+
+    /** Depth-first iteration over the leaves of the tree, keeping a stack of the nodes being visited. */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> nodes = new ArrayDeque<>();
+
+        private final Deque<Integer> positions = new ArrayDeque<>();
+
+        private Leaf<K, V> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                nodes.push(root.children);
+                positions.push(0);
+            }
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (next == null && !nodes.isEmpty()) {
+                Object[] children = nodes.peek();
+                int position = positions.pop();
+                if (position == children.length) {
+                    nodes.pop();
+                    continue;
+                }
+                positions.push(position + 1);
+                Object child = children[position];
+                if (child instanceof Leaf) {
+                    next = (Leaf<K, V>) child;
+                } else {
+                    nodes.push(((Node) child).children);
+                    positions.push(0);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<K, V> current = next;
+            advance();
+            return current;
+        }
+    }
+
+}
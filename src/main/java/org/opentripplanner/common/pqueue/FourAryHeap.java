@@ -0,0 +1,132 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import java.util.Arrays;
+
+/**
+ * A 4-ary min-heap. Compared to the binary heap it has half as many levels, so an insert moves an element fewer
+ * times, and the four children compared during extract_min are adjacent in memory. Searches do many more inserts
+ * than extractions (most states are dominated before they come out of the queue), which favors the wider heap.
+ */
+public class FourAryHeap<T> implements OTPPriorityQueue<T> {
+
+    private static final double GROW_FACTOR = 2.0;
+
+    private double[] prio;
+    private T[] elem;
+    private int size;
+
+    public FourAryHeap() {
+        this(1000);
+    }
+
+    @SuppressWarnings("unchecked")
+    public FourAryHeap(int capacity) {
+        if (capacity < 10) capacity = 10;
+        elem = (T[]) new Object[capacity]; // 0-based indexing, children of i are at 4i+1 .. 4i+4
+        prio = new double[capacity];
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean empty() {
+        return size <= 0;
+    }
+
+    @Override
+    public double peek_min_key() {
+        if (size > 0)
+            return prio[0];
+        else
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+    }
+
+    @Override
+    public T peek_min() {
+        if (size > 0)
+            return elem[0];
+        else
+            return null;
+    }
+
+    @Override
+    public void reset() {
+        // empties the queue in one operation
+        size = 0;
+    }
+
+    @Override
+    public void insert(T e, double p) {
+        if (size == elem.length)
+            resize((int) (elem.length * GROW_FACTOR));
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >> 2;
+            if (prio[parent] <= p) break;
+            elem[i] = elem[parent];
+            prio[i] = prio[parent];
+            i = parent;
+        }
+        elem[i] = e;
+        prio[i] = p;
+    }
+
+    @Override
+    public T extract_min() {
+        if (size <= 0)
+            return null;
+        T minElem = elem[0];
+        size -= 1;
+        T lastElem = elem[size];
+        double lastPrio = prio[size];
+        elem[size] = null;
+        int i = 0;
+        while (true) {
+            int firstChild = 4 * i + 1;
+            if (firstChild >= size) break;
+            int lastChild = Math.min(firstChild + 4, size);
+            int child = firstChild;
+            double childPrio = prio[firstChild];
+            for (int c = firstChild + 1; c < lastChild; c++) {
+                if (prio[c] < childPrio) {
+                    child = c;
+                    childPrio = prio[c];
+                }
+            }
+            if (lastPrio <= childPrio) break;
+            elem[i] = elem[child];
+            prio[i] = childPrio;
+            i = child;
+        }
+        if (size > 0) {
+            elem[i] = lastElem;
+            prio[i] = lastPrio;
+        }
+        return minElem;
+    }
+
+    public void resize(int capacity) {
+        if (capacity < size)
+            throw new IllegalStateException("FourAryHeap contains too many elements to fit in new capacity.");
+        prio = Arrays.copyOf(prio, capacity);
+        elem = Arrays.copyOf(elem, capacity);
+    }
+
+}
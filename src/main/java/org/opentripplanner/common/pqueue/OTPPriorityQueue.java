@@ -0,0 +1,43 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+/**
+ * A min-priority queue as used by the search algorithms. There is no decrease-key operation: searches insert an
+ * element again with its new key and skip the stale copy when it comes out of the queue.
+ *
+ * Implementations are selected with {@link OTPPriorityQueueFactory}.
+ */
+public interface OTPPriorityQueue<T> {
+
+    /** @return the number of elements in the queue. */
+    int size();
+
+    boolean empty();
+
+    /** @return the key of the element that the next call to extract_min will return. */
+    double peek_min_key();
+
+    /** @return the element that the next call to extract_min will return, or null if the queue is empty. */
+    T peek_min();
+
+    void insert(T e, double p);
+
+    /** Remove and return the element with the smallest key, or null if the queue is empty. */
+    T extract_min();
+
+    /** Empty the queue, keeping its storage for reuse. */
+    void reset();
+
+}
@@ -0,0 +1,51 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+/**
+ * The priority queue implementations that can be used by the search algorithms, selectable per request through
+ * RoutingRequest.setPriorityQueue or routingDefaults in router-config.json.
+ */
+public enum OTPPriorityQueueFactory {
+
+    /** The plain binary heap that has always been used. */
+    BINARY_HEAP {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new BinHeap<>(initialCapacity);
+        }
+    },
+
+    /** A 4-ary heap: fewer levels and more cache-friendly sift-down than the binary heap. */
+    FOUR_ARY_HEAP {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new FourAryHeap<>(initialCapacity);
+        }
+    },
+
+    /**
+     * A monotone radix heap over keys rounded down to whole units (seconds of weight). Only ever pops elements in
+     * non-decreasing key order, see {@link RadixHeap}.
+     */
+    RADIX_HEAP {
+        @Override
+        public <T> OTPPriorityQueue<T> create(int initialCapacity) {
+            return new RadixHeap<>(initialCapacity);
+        }
+    };
+
+    public abstract <T> OTPPriorityQueue<T> create(int initialCapacity);
+
+}
@@ -0,0 +1,182 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common.pqueue;
+
+import java.util.Arrays;
+
+/**
+ * A monotone radix heap over integer keys, as described by Ahuja, Mehlhorn, Orlin and Tarjan. The double priorities
+ * passed to insert are rounded down to whole units, which for OTP weights means seconds, so elements whose keys
+ * differ by less than one unit come out in arbitrary order. Each element's exact priority is kept and returned by
+ * peek_min_key.
+ *
+ * Elements are kept in 65 buckets according to the highest bit in which their key differs from the last key
+ * extracted. Insert is constant time and each element is moved to a lower bucket at most 64 times over its life,
+ * instead of being sifted through the heap on every operation.
+ *
+ * Like Dijkstra's algorithm itself, this queue relies on keys never going below the last extracted key. Keys are
+ * expected to be non-negative; a key below the last extracted one (which can happen when an A* heuristic is not
+ * consistent) is raised to that key, so the element comes out next instead of out of order.
+ */
+public class RadixHeap<T> implements OTPPriorityQueue<T> {
+
+    private static final int N_BUCKETS = 65;
+
+    private final Bucket<T>[] buckets;
+
+    /** The key of the last element extracted. All keys in the queue are at least this large. */
+    private long last = 0;
+
+    private int size = 0;
+
+    public RadixHeap() {
+        this(1000);
+    }
+
+    @SuppressWarnings("unchecked")
+    public RadixHeap(int capacity) {
+        buckets = new Bucket[N_BUCKETS];
+        for (int b = 0; b < N_BUCKETS; b++) {
+            // the bucket holding keys equal to the last one extracted receives most of the traffic
+            buckets[b] = new Bucket<>(b == 0 ? Math.max(capacity, 16) : 16);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean empty() {
+        return size <= 0;
+    }
+
+    @Override
+    public double peek_min_key() {
+        if (size > 0) {
+            Bucket<T> bucket = fillFirstBucket();
+            return bucket.prio[bucket.size - 1];
+        } else {
+            throw new IllegalStateException("An empty queue does not have a minimum key.");
+        }
+    }
+
+    @Override
+    public T peek_min() {
+        if (size > 0) {
+            Bucket<T> bucket = fillFirstBucket();
+            return bucket.elem[bucket.size - 1];
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void insert(T e, double p) {
+        long key = (long) Math.floor(p);
+        if (key < last) key = last;
+        buckets[bucketFor(key)].add(e, p, key);
+        size += 1;
+    }
+
+    @Override
+    public T extract_min() {
+        if (size <= 0)
+            return null;
+        Bucket<T> bucket = fillFirstBucket();
+        size -= 1;
+        return bucket.removeLast();
+    }
+
+    @Override
+    public void reset() {
+        for (Bucket<T> bucket : buckets) {
+            bucket.clear();
+        }
+        last = 0;
+        size = 0;
+    }
+
+    private int bucketFor(long key) {
+        return 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    /**
+     * Make sure bucket 0, holding the elements with the smallest key, is not empty: take the first non-empty bucket,
+     * advance the last key to its minimum and spread its elements over the lower buckets. Must not be called on an
+     * empty queue.
+     */
+    private Bucket<T> fillFirstBucket() {
+        Bucket<T> first = buckets[0];
+        if (first.size > 0)
+            return first;
+        int b = 1;
+        while (buckets[b].size == 0) b++;
+        Bucket<T> bucket = buckets[b];
+        long min = bucket.key[0];
+        for (int i = 1; i < bucket.size; i++) {
+            if (bucket.key[i] < min) min = bucket.key[i];
+        }
+        last = min;
+        // every key in this bucket now differs from the last key in a lower bit than before, so nothing stays here
+        for (int i = 0; i < bucket.size; i++) {
+            buckets[bucketFor(bucket.key[i])].add(bucket.elem[i], bucket.prio[i], bucket.key[i]);
+        }
+        bucket.clear();
+        return first;
+    }
+
+    /** A growable array of elements with their priorities and integer keys. */
+    private static class Bucket<T> {
+
+        T[] elem;
+        double[] prio;
+        long[] key;
+        int size;
+
+        @SuppressWarnings("unchecked")
+        Bucket(int capacity) {
+            elem = (T[]) new Object[capacity];
+            prio = new double[capacity];
+            key = new long[capacity];
+        }
+
+        void add(T e, double p, long k) {
+            if (size == elem.length) {
+                int capacity = size * 2;
+                elem = Arrays.copyOf(elem, capacity);
+                prio = Arrays.copyOf(prio, capacity);
+                key = Arrays.copyOf(key, capacity);
+            }
+            elem[size] = e;
+            prio[size] = p;
+            key[size] = k;
+            size += 1;
+        }
+
+        T removeLast() {
+            size -= 1;
+            T e = elem[size];
+            elem[size] = null;
+            return e;
+        }
+
+        void clear() {
+            Arrays.fill(elem, 0, size, null);
+            size = 0;
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import org.opentripplanner.graph_builder.module.EmbedConfig;
 import org.opentripplanner.graph_builder.module.GtfsModule;
 import org.opentripplanner.graph_builder.module.NetexModule;
 import org.opentripplanner.graph_builder.module.PruneFloatingIslands;
+import org.opentripplanner.graph_builder.module.StreetLandmarkModule;
 import org.opentripplanner.graph_builder.module.StreetLinkerModule;
 import org.opentripplanner.graph_builder.module.TransitToTaggedStopsModule;
 import org.opentripplanner.graph_builder.module.map.BusRouteStreetMatcher;
@@ -79,7 +80,7 @@ public class GraphBuilder implements Runnable {
     private Graph loadBaseGraph() {
         try {
             DataSource graphSource = dataStore.getBaseGraph();
-            graph = Graph.load(graphSource.asInputStream(), graphSource.path());
+            graph = Graph.load(graphSource);
             return graph;
         } catch (Exception e) {
             throw new RuntimeException("error loading base graph: ", e);
@@ -123,7 +124,7 @@ public class GraphBuilder implements Runnable {
 
             if (serializeGraph) {
                 try {
-                    graph.save(getGraphOutputSource());
+                    graph.save(getGraphOutputSource(), dataStore.getGraphFormat());
                 } catch (Exception ex) {
                     throw new IllegalStateException(ex);
                 }
@@ -197,6 +198,7 @@ public class GraphBuilder implements Runnable {
                 osmModule.staticParkAndRide = builderParams.staticParkAndRide;
                 osmModule.banDiscouragedWalking = builderParams.banDiscouragedWalking;
                 osmModule.banDiscouragedBiking = builderParams.banDiscouragedBiking;
+                osmModule.parallelBuild = builderParams.osmParallelBuild;
                 graphBuilder.addModule(osmModule);
                 PruneFloatingIslands pruneFloatingIslands = new PruneFloatingIslands();
                 pruneFloatingIslands.setPruningThresholdIslandWithoutStops(builderParams.pruningThresholdIslandWithoutStops);
@@ -210,9 +212,10 @@ public class GraphBuilder implements Runnable {
                 // Load the elevation from a file in the graph inputs directory
                 for (DataSource demSource : input.get(DEM)) {
                     ElevationGridCoverageFactory gcf = new GeotiffGridCoverageFactoryImpl(demSource);
-                    GraphBuilderModule elevationBuilder = new ElevationModule(
+                    ElevationModule elevationBuilder = new ElevationModule(
                             gcf, builderParams.distanceBetweenElevationSamples
                     );
+                    elevationBuilder.parallelBuild = builderParams.elevationParallelBuild;
                     graphBuilder.addModule(elevationBuilder);
                 }
             }
@@ -275,9 +278,12 @@ public class GraphBuilder implements Runnable {
                 // The stops can be linked to each other once they are already linked to the street network.
                 if (!builderParams.useTransfersTxt) {
                     // This module will use streets or straight line distance depending on whether OSM data is found in the graph.
-                    graphBuilder.addModule(new DirectTransferGenerator(builderParams.maxTransferDistance));
+                    graphBuilder.addModule(new DirectTransferGenerator(builderParams.maxTransferDistance, builderParams.transferThreads));
                 }
             }
+            if (input.containsKey(OSM) && builderParams.streetLandmarks > 0) {
+                graphBuilder.addModule(new StreetLandmarkModule(builderParams.streetLandmarks));
+            }
         }
         graphBuilder.addModule(
                 new EmbedConfig(
@@ -31,6 +31,7 @@ import org.opentripplanner.routing.edgetype.StreetBikeRentalLink;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
 import org.opentripplanner.routing.edgetype.TemporaryFreeEdge;
+import org.opentripplanner.routing.edgetype.TemporaryStreetBikeRentalLink;
 import org.opentripplanner.routing.edgetype.AreaEdgeList;
 import org.opentripplanner.routing.edgetype.AreaEdge;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
@@ -43,6 +44,7 @@ import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.ParkAndRideVertex;
 import org.opentripplanner.routing.vertextype.SplitterVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryBikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.TemporarySplitterVertex;
 import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
@@ -241,7 +243,7 @@ public class SimpleStreetSplitter {
         // find the closest candidate edges
         if (candidateEdges.isEmpty() || distances.get(candidateEdges.get(0)) > radiusDeg) {
             //We only link to stops if we are searching for origin/destination and for that we need transitStopIndex
-            if (destructiveSplitting || transitStopIndex == null) {
+            if (destructiveSplitting || transitStopIndex == null || !(vertex instanceof TemporaryStreetLocation)) {
                 return false;
             }
             LOG.debug("No street edge was found for {}", vertex);
@@ -360,6 +362,12 @@ public class SimpleStreetSplitter {
             makeLinkEdges(tstop, (StreetVertex) edge.getToVertex());
         }
 
+        else if (tstop instanceof TemporaryBikeRentalStationVertex) {
+            // a floating bike is both reached from the street and left for it, so split the edge in both directions
+            makeFloatingBikeLinkEdges((TemporaryBikeRentalStationVertex) tstop, split(edge, ll, true, true),
+                    split(edge, ll, true, false));
+        }
+
         else {
 
             TemporaryVertex temporaryVertex = null;
@@ -433,6 +441,8 @@ public class SimpleStreetSplitter {
     private void makeLinkEdges(Vertex from, StreetVertex to) {
         if (from instanceof TemporaryStreetLocation) {
             makeTemporaryEdges((TemporaryStreetLocation) from, to);
+        } else if (from instanceof TemporaryBikeRentalStationVertex) {
+            makeFloatingBikeLinkEdges((TemporaryBikeRentalStationVertex) from, to, to);
         } else if (from instanceof TransitStop) {
             makeTransitLinkEdges((TransitStop) from, to);
         } else if (from instanceof BikeRentalStationVertex) {
@@ -461,6 +471,16 @@ public class SimpleStreetSplitter {
         }
     }
 
+    /** Make temporary edges from the street to a floating bike and back, for a single search */
+    private void makeFloatingBikeLinkEdges(TemporaryBikeRentalStationVertex bike, StreetVertex from,
+            StreetVertex to) {
+        if (destructiveSplitting) {
+            throw new RuntimeException("Floating bikes are linked with destructive splitting. Something is wrong!");
+        }
+        new TemporaryStreetBikeRentalLink(from, bike);
+        new TemporaryStreetBikeRentalLink(bike, to);
+    }
+
     /** Make bike park edges */
     private void makeBikeParkEdges(BikeParkVertex from, StreetVertex to) {
         if (!destructiveSplitting) {
@@ -14,6 +14,7 @@
 package org.opentripplanner.graph_builder.module;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.opentripplanner.graph_builder.annotation.StopNotLinkedForTransfers;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
 import org.opentripplanner.routing.edgetype.PathwayEdge;
@@ -25,11 +26,18 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} module that links up the stops of a transit network among themselves. This is necessary for
@@ -44,8 +52,14 @@ public class DirectTransferGenerator implements GraphBuilderModule {
 
     private static Logger LOG = LoggerFactory.getLogger(DirectTransferGenerator.class);
 
+    /** Number of stops searched from before logging progress. */
+    private static final int BATCH_SIZE = 1000;
+
     final double radiusMeters;
 
+    /** Number of threads running the nearby stop searches. */
+    final int threads;
+
     public List<String> provides() {
         return Arrays.asList("linking");
     }
@@ -55,13 +69,20 @@ public class DirectTransferGenerator implements GraphBuilderModule {
     }
 
     public DirectTransferGenerator (double radiusMeters) {
+        this(radiusMeters, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DirectTransferGenerator (double radiusMeters, int threads) {
         this.radiusMeters = radiusMeters;
+        this.threads = Math.max(1, threads);
     }
 
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         /* Initialize graph index which is needed by the nearby stop finder. */
         graph.index = new GraphIndex(graph);
+        /* Initialize the calendar service here, rather than lazily from several search threads at once. */
+        graph.getCalendarService();
 
         /* The linker will use streets if they are available, or straight-line distance otherwise. */
         NearbyStopFinder nearbyStopFinder = new NearbyStopFinder(graph, radiusMeters);
@@ -71,34 +92,52 @@ public class DirectTransferGenerator implements GraphBuilderModule {
             LOG.info("Creating direct transfer edges between stops using straight line distance (not streets)...");
         }
 
-        int nTransfersTotal = 0;
-        int nLinkableStops = 0;
-
+        /* Skip stops that are entrances to stations or whose entrances are coded separately */
+        List<TransitStop> linkableStops = new ArrayList<>();
         for (TransitStop ts0 : Iterables.filter(graph.getVertices(), TransitStop.class)) {
-
-            /* Skip stops that are entrances to stations or whose entrances are coded separately */
-            if (!ts0.isStreetLinkable()) continue;
-            if (++nLinkableStops % 1000 == 0) {
-                LOG.info("Linked {} stops", nLinkableStops);
+            if (ts0.isStreetLinkable()) {
+                linkableStops.add(ts0);
             }
-            LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
-
-            /* Determine the set of stops that are already reachable via other pathways or transfers */
-            Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
-            for (Edge e : ts0.getOutgoing()) {
-                if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
-                    if (e.getToVertex() instanceof TransitStop) {
-                        TransitStop to = (TransitStop) e.getToVertex();
-                        pathwayDestinations.add(to);
-                    }
+        }
+        int nLinkableStops = linkableStops.size();
+
+        /*
+         * Search from all the stops before adding any transfers, so that the searches only read the graph. Each search
+         * creates its own routing request and shortest path tree, so they can run on several threads at once.
+         */
+        List<List<NearbyStopFinder.StopAtDistance>> nearbyStops = new ArrayList<>(nLinkableStops);
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("DirectTransferGenerator-%d").setDaemon(true).build());
+        LOG.info("Finding nearby stops for {} stops on {} threads.", nLinkableStops, threads);
+        try {
+            long startTime = System.currentTimeMillis();
+            for (int batchStart = 0; batchStart < nLinkableStops; batchStart += BATCH_SIZE) {
+                long batchStartTime = System.currentTimeMillis();
+                List<Callable<List<NearbyStopFinder.StopAtDistance>>> searches = new ArrayList<>();
+                for (TransitStop ts0 : linkableStops.subList(batchStart, Math.min(batchStart + BATCH_SIZE, nLinkableStops))) {
+                    searches.add(() -> findTransferDestinations(nearbyStopFinder, ts0));
+                }
+                for (Future<List<NearbyStopFinder.StopAtDistance>> result : executor.invokeAll(searches)) {
+                    nearbyStops.add(result.get());
                 }
+                LOG.info("Linked {} stops, {} in {} ms ({} ms in total)", nearbyStops.size(), searches.size(),
+                        System.currentTimeMillis() - batchStartTime, System.currentTimeMillis() - startTime);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finding nearby stops.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while finding nearby stops.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
 
-            /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
+        /* Add the transfers on this thread, in the order of the stops. */
+        int nTransfersTotal = 0;
+        for (int i = 0; i < nLinkableStops; i++) {
+            TransitStop ts0 = linkableStops.get(i);
             int n = 0;
-            for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
-                /* Skip the origin stop, loop transfers are not needed. */
-                if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+            for (NearbyStopFinder.StopAtDistance sd : nearbyStops.get(i)) {
                 new SimpleTransfer(ts0, sd.tstop, sd.dist, sd.geom, sd.edges);
                 n += 1;
             }
@@ -112,6 +151,37 @@ public class DirectTransferGenerator implements GraphBuilderModule {
         graph.hasDirectTransfers = true;
     }
 
+    /**
+     * Find the stops that the given stop should have a transfer to: the nearby stops that are the closest stop on some
+     * trip pattern. They are sorted on vertex index, so the transfers are always created in the same order.
+     */
+    private static List<NearbyStopFinder.StopAtDistance> findTransferDestinations(NearbyStopFinder nearbyStopFinder,
+                                                                                   TransitStop ts0) {
+        LOG.debug("Linking stop '{}' {}", ts0.getStop(), ts0);
+
+        /* Determine the set of stops that are already reachable via other pathways or transfers */
+        Set<TransitStop> pathwayDestinations = new HashSet<TransitStop>();
+        for (Edge e : ts0.getOutgoing()) {
+            if (e instanceof PathwayEdge || e instanceof SimpleTransfer) {
+                if (e.getToVertex() instanceof TransitStop) {
+                    TransitStop to = (TransitStop) e.getToVertex();
+                    pathwayDestinations.add(to);
+                }
+            }
+        }
+
+        /* Make transfers to each nearby stop that is the closest stop on some trip pattern. */
+        List<NearbyStopFinder.StopAtDistance> destinations = new ArrayList<>();
+        for (NearbyStopFinder.StopAtDistance sd : nearbyStopFinder.findNearbyStopsConsideringPatterns(ts0)) {
+            /* Skip the origin stop, loop transfers are not needed. */
+            if (sd.tstop == ts0 || pathwayDestinations.contains(sd.tstop)) continue;
+            destinations.add(sd);
+        }
+        destinations.sort(Comparator.comparingInt((NearbyStopFinder.StopAtDistance sd) -> sd.tstop.getIndex())
+                .thenComparingDouble(sd -> sd.dist));
+        return destinations;
+    }
+
     @Override
     public void checkInputs() {
         // No inputs
@@ -130,7 +130,31 @@ public class NearbyStopFinder {
         RoutingRequest routingRequest = new RoutingRequest(TraverseMode.WALK);
         routingRequest.clampInitialWait = (0L);
         routingRequest.setRoutingContext(graph, originVertex, null);
-        ShortestPathTree spt = earliestArrivalSearch.getShortestPathTree(routingRequest);
+        List<StopAtDistance> stopsFound = findNearbyStopsViaStreets(routingRequest);
+        routingRequest.cleanup();
+        return stopsFound;
+
+    }
+
+    /**
+     * Return all stops within a certain radius of the origin of the given request, using network distance along
+     * streets. The search uses the modes, speeds and direction of the request, so with arriveBy set it finds the stops
+     * from which the origin (i.e. the destination of the trip) can be reached. The request must already have a routing
+     * context, which is left in place: the caller remains responsible for cleaning it up.
+     * If the origin vertex is a TransitStop, the result will include it.
+     */
+    public List<StopAtDistance> findNearbyStopsViaStreets (RoutingRequest routingRequest) {
+        return findNearbyStopsViaStreets(routingRequest, -1);
+    }
+
+    /**
+     * Same as above, giving up after the given number of seconds (none if not above zero). The routing context of the
+     * request is then marked as aborted, and the stops found so far are returned.
+     */
+    public List<StopAtDistance> findNearbyStopsViaStreets (RoutingRequest routingRequest, double timeoutSeconds) {
+
+        Vertex originVertex = routingRequest.rctx.origin;
+        ShortestPathTree spt = earliestArrivalSearch.getShortestPathTree(routingRequest, timeoutSeconds);
 
         List<StopAtDistance> stopsFound = Lists.newArrayList();
         if (spt != null) {
@@ -147,7 +171,6 @@ public class NearbyStopFinder {
         if (originVertex instanceof TransitStop) {
             stopsFound.add(new StopAtDistance((TransitStop)originVertex, 0));
         }
-        routingRequest.cleanup();
         return stopsFound;
 
     }
@@ -180,6 +203,8 @@ public class NearbyStopFinder {
         public double      dist;
         public LineString  geom;
         public List<Edge>  edges;
+        /** The time in seconds needed to cover the edges, when the stop was found by a search on the streets. */
+        public long        durationSeconds;
 
         public StopAtDistance(TransitStop tstop, double dist) {
             this.tstop = tstop;
@@ -232,6 +257,7 @@ public class NearbyStopFinder {
         StopAtDistance sd = new StopAtDistance((TransitStop) state.getVertex(), distance);
         sd.geom = geometryFactory.createLineString(new PackedCoordinateSequence.Double(coordinates.toCoordinateArray()));
         sd.edges = edges;
+        sd.durationSeconds = state.getElapsedTimeSeconds();
         return sd;
     }
 
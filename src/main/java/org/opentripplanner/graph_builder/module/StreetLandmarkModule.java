@@ -0,0 +1,199 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.graph_builder.module;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.algorithm.strategies.StreetLandmarks;
+import org.opentripplanner.routing.algorithm.strategies.StreetLandmarks.StreetMode;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.OnboardVertex;
+import org.opentripplanner.routing.vertextype.TransitStopArrive;
+import org.opentripplanner.routing.vertextype.TransitStopDepart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} module that selects a few landmark vertices
+ * spread over the street network and stores the street distances between them and every other vertex, for each
+ * street mode. Street-only searches use these to direct the search towards the destination much more sharply than
+ * the straight-line distance does, see LandmarkRemainingWeightHeuristic.
+ *
+ * This has to run after all modules that add or split street edges. Each landmark costs 2 floats per vertex and
+ * street mode in the serialized graph.
+ */
+public class StreetLandmarkModule implements GraphBuilderModule {
+
+    private static Logger LOG = LoggerFactory.getLogger(StreetLandmarkModule.class);
+
+    final int landmarkCount;
+
+    public List<String> provides() {
+        return Arrays.asList("street landmarks");
+    }
+
+    public List<String> getPrerequisites() {
+        return Arrays.asList("streets");
+    }
+
+    public StreetLandmarkModule(int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+    }
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        List<Vertex> vertices = new ArrayList<>();
+        for (Vertex v : graph.getVertices()) {
+            if (isStreetReachable(v)) {
+                vertices.add(v);
+            }
+        }
+        if (vertices.isEmpty() || landmarkCount < 1) {
+            return;
+        }
+        LOG.info("Computing street distances of {} landmarks for {} vertices...", landmarkCount, vertices.size());
+        StreetLandmarks landmarks = new StreetLandmarks(vertices.toArray(new Vertex[0]));
+
+        StreetMode[] streetModes = StreetMode.values();
+        int threads = Math.min(streetModes.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("StreetLandmarks-%d").build());
+        try {
+            List<Future<StreetLandmarks.Distances>> futures = new ArrayList<>();
+            for (StreetMode streetMode : streetModes) {
+                futures.add(executor.submit(() -> computeDistances(landmarks, streetMode)));
+            }
+            for (int i = 0; i < streetModes.length; i++) {
+                landmarks.setDistances(streetModes[i], futures.get(i).get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Computing street landmark distances failed.", e);
+        } finally {
+            executor.shutdown();
+        }
+        graph.streetLandmarks = landmarks;
+        LOG.info("Done computing street landmark distances.");
+    }
+
+    /**
+     * Vertices only reachable by boarding or alighting a vehicle are left out, so that street-only searches cannot
+     * appear to take shortcuts over the transit network.
+     */
+    private static boolean isStreetReachable(Vertex v) {
+        return !(v instanceof OnboardVertex || v instanceof TransitStopDepart || v instanceof TransitStopArrive);
+    }
+
+    /**
+     * Select landmarks by repeatedly taking the vertex farthest from all the landmarks chosen so far, which tends to
+     * put them on the edges of the network where they give the best bounds.
+     */
+    private StreetLandmarks.Distances computeDistances(StreetLandmarks landmarks, StreetMode streetMode) {
+        int n = landmarks.getVertexCount();
+        Vertex[] chosen = new Vertex[landmarkCount];
+        float[][] from = new float[landmarkCount][];
+        float[][] to = new float[landmarkCount][];
+        // distance from the nearest landmark chosen so far, starting from an arbitrary vertex
+        float[] nearest = shortestDistances(landmarks, streetMode, 0, false);
+        for (int l = 0; l < landmarkCount; l++) {
+            int farthest = 0;
+            float farthestDistance = -1;
+            for (int slot = 0; slot < n; slot++) {
+                if (!Float.isInfinite(nearest[slot]) && nearest[slot] > farthestDistance) {
+                    farthest = slot;
+                    farthestDistance = nearest[slot];
+                }
+            }
+            chosen[l] = landmarks.getVertex(farthest);
+            from[l] = shortestDistances(landmarks, streetMode, farthest, false);
+            to[l] = shortestDistances(landmarks, streetMode, farthest, true);
+            if (l == 0) {
+                nearest = from[l].clone();
+            } else {
+                for (int slot = 0; slot < n; slot++) {
+                    nearest[slot] = Math.min(nearest[slot], from[l][slot]);
+                }
+            }
+            LOG.info("Computed distances of {} landmark {}/{}.", streetMode, l + 1, landmarkCount);
+        }
+        return new StreetLandmarks.Distances(chosen, from, to);
+    }
+
+    /**
+     * Dijkstra search over the edges usable by the given street mode, from the vertex in the given slot (or towards it,
+     * if reverse is true). Street edges count their length, transfers between stops the length of their walk, and all
+     * other edges are taken to be free.
+     */
+    private static float[] shortestDistances(StreetLandmarks landmarks, StreetMode streetMode, int source,
+                                             boolean reverse) {
+        double[] dist = new double[landmarks.getVertexCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        BinHeap<Vertex> queue = new BinHeap<>();
+        queue.insert(landmarks.getVertex(source), 0);
+        while (!queue.empty()) {
+            double d = queue.peek_min_key();
+            Vertex v = queue.extract_min();
+            if (d > dist[landmarks.slotOf(v)]) {
+                continue; // already reached by a shorter path
+            }
+            for (Edge e : reverse ? v.getIncoming() : v.getOutgoing()) {
+                double length;
+                if (e instanceof StreetEdge) {
+                    if (!streetMode.canTraverse((StreetEdge) e)) {
+                        continue;
+                    }
+                    length = ((StreetEdge) e).getDistance();
+                } else if (e instanceof SimpleTransfer) {
+                    if (!streetMode.allowsWalking()) {
+                        continue;
+                    }
+                    length = e.getDistance();
+                } else {
+                    length = 0;
+                }
+                Vertex next = reverse ? e.getFromVertex() : e.getToVertex();
+                int slot = landmarks.slotOf(next);
+                if (slot >= 0 && d + length < dist[slot]) {
+                    dist[slot] = d + length;
+                    queue.insert(next, d + length);
+                }
+            }
+        }
+        float[] result = new float[dist.length];
+        for (int i = 0; i < dist.length; i++) {
+            result[i] = (float) dist[i];
+        }
+        return result;
+    }
+
+    @Override
+    public void checkInputs() {
+        // no inputs
+    }
+}
@@ -44,6 +44,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} plugin that applies elevation data to street data that has already
@@ -59,13 +68,25 @@ public class ElevationModule implements GraphBuilderModule {
 
     private static final Logger log = LoggerFactory.getLogger(ElevationModule.class);
 
+    /** Size in degrees of the square cells of the spatial partition of the edges in a parallel build. */
+    private static final double PARTITION_SIZE_DEGREES = 0.05;
+
     private ElevationGridCoverageFactory gridCoverageFactory;
 
-    private Coverage coverage;
+    /** The DEM, as returned by the factory. Each thread samples it through an interpolator of its own. */
+    private Coverage gridCov;
+
+    /**
+     * Whether to sample the DEM on several threads, each working on nearby edges so that it mostly reads the same
+     * tiles of the DEM. The elevation profiles are the same as in a sequential build.
+     */
+    public boolean parallelBuild = false;
 
     // Keep track of the proportion of elevation fetch operations that fail so we can issue warnings.
-    private int nPointsEvaluated = 0;
-    private int nPointsOutsideDEM = 0;
+    private final AtomicInteger nPointsEvaluated = new AtomicInteger();
+    private final AtomicInteger nPointsOutsideDEM = new AtomicInteger();
+
+    private final AtomicInteger nProcessed = new AtomicInteger();
 
     public ElevationModule() { /* This makes me a "bean" */ };
     
@@ -93,45 +114,99 @@ public class ElevationModule implements GraphBuilderModule {
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
-        Coverage gridCov = gridCoverageFactory.getGridCoverage();
+        gridCov = gridCoverageFactory.getGridCoverage();
 
-        // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
-        // coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
-        // interpolation internally)
-        coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
-                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
         log.info("Setting street elevation profiles from digital elevation model...");
-        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
+        List<StreetWithElevationEdge> edges = new ArrayList<>();
         for (Vertex gv : graph.getVertices()) {
             for (Edge ee : gv.getOutgoing()) {
                 if (ee instanceof StreetWithElevationEdge) {
-                    StreetWithElevationEdge edgeWithElevation = (StreetWithElevationEdge) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
-                    }
-                    nProcessed += 1;
-                    if (nProcessed % 50000 == 0) {
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
-                        double failurePercentage = nPointsOutsideDEM / nPointsEvaluated * 100;
-                        if (failurePercentage > 50) {
-                            log.warn("Fetching elevation failed at {}/{} points ({}%)",
-                                    nPointsOutsideDEM, nPointsEvaluated, failurePercentage);
-                            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
-                                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
-                        }
-                    }
+                    edges.add((StreetWithElevationEdge) ee);
                 }
             }
         }
+        int nTotal = graph.countEdges();
+        boolean[] flattened = new boolean[edges.size()];
+        if (parallelBuild) {
+            processEdgesInParallel(edges, flattened, nTotal);
+        } else {
+            Coverage coverage = createInterpolator();
+            for (int i = 0; i < edges.size(); i++) {
+                flattened[i] = processEdge(coverage, edges.get(i), nTotal);
+            }
+        }
+
+        // Annotate and collect the edges in graph order, whichever thread processed them.
+        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
+        for (int i = 0; i < edges.size(); i++) {
+            StreetWithElevationEdge edgeWithElevation = edges.get(i);
+            if (flattened[i]) {
+                graph.addBuilderAnnotation(new ElevationFlattened(edgeWithElevation));
+            }
+            if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
+                edgesWithElevation.add(edgeWithElevation);
+            }
+        }
 
         @SuppressWarnings("unchecked")
         HashMap<Vertex, Double> extraElevation = (HashMap<Vertex, Double>) extra.get(ElevationPoint.class);
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
     }
 
+    /**
+     * Split the edges into square cells on the location of their first vertex, and hand out the cells to one worker
+     * per core. Each worker samples the DEM through its own interpolator, so nothing is shared between them but the
+     * cache of decoded DEM tiles, and the edges close together are processed by the same worker.
+     */
+    private void processEdgesInParallel(List<StreetWithElevationEdge> edges, boolean[] flattened, int nTotal) {
+        Map<Long, List<Integer>> cells = new TreeMap<>();
+        for (int i = 0; i < edges.size(); i++) {
+            Vertex v = edges.get(i).getFromVertex();
+            long cellX = (long) Math.floor(v.getX() / PARTITION_SIZE_DEGREES);
+            long cellY = (long) Math.floor(v.getY() / PARTITION_SIZE_DEGREES);
+            cells.computeIfAbsent((cellX << 32) ^ (cellY & 0xFFFFFFFFL), k -> new ArrayList<>()).add(i);
+        }
+        Queue<List<Integer>> queue = new ConcurrentLinkedQueue<>(cells.values());
+        int nThreads = Math.min(Runtime.getRuntime().availableProcessors(), cells.size());
+        log.info("Sampling elevation in {} cells on {} threads.", cells.size(), nThreads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(nThreads, 1));
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                workers.add(executor.submit(() -> {
+                    Coverage coverage = createInterpolator();
+                    List<Integer> cell;
+                    while ((cell = queue.poll()) != null) {
+                        for (int i : cell) {
+                            flattened[i] = processEdge(coverage, edges.get(i), nTotal);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to sample elevation.", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return a coverage for the exclusive use of one thread. If gridCov is a GridCoverage2D, apply a bilinear
+     * interpolator. Otherwise, just use the coverage as is (note: UnifiedGridCoverages created by
+     * NEDGridCoverageFactoryImpl handle interpolation internally, so they are copied with interpolators of their own)
+     */
+    private Coverage createInterpolator() {
+        if (gridCov instanceof UnifiedGridCoverage) {
+            return ((UnifiedGridCoverage) gridCov).copyForThread();
+        }
+        return (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
+                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
+    }
+
     class ElevationRepairState {
         /* This uses an intuitionist approach to elevation inspection */
         public StreetEdge backEdge;
@@ -330,12 +405,15 @@ public class ElevationModule implements GraphBuilderModule {
     /**
      * Processes a single street edge, creating and assigning the elevation profile.
      * 
+     * @param coverage the interpolator of the current thread
      * @param ee the street edge
-     * @param graph the graph (used only for error handling)
+     * @param nTotal the number of edges in the graph, for progress reporting
+     * @return true if the elevation profile was flattened, which must be reported to the graph
      */
-    private void processEdge(Graph graph, StreetWithElevationEdge ee) {
+    private boolean processEdge(Coverage coverage, StreetWithElevationEdge ee, int nTotal) {
         if (ee.getElevationProfile() != null) {
-            return; /* already set up */
+            reportProgress(nTotal);
+            return false; /* already set up */
         }
         Geometry g = ee.getGeometry();
         Coordinate[] coords = g.getCoordinates();
@@ -350,7 +428,7 @@ public class ElevationModule implements GraphBuilderModule {
         }
 
         // initial sample (x = 0)
-        coordList.add(new Coordinate(0, getElevation(coords[0])));
+        coordList.add(new Coordinate(0, getElevation(coverage, coords[0])));
 
         double distanceBetweenSamplesM = CompactElevationProfile.getDistanceBetweenSamplesM();
 
@@ -362,19 +440,35 @@ public class ElevationModule implements GraphBuilderModule {
             }
 
             Coordinate internal = getPointAlongEdge(coords, edgeLenM, x / edgeLenM);
-            coordList.add(new Coordinate(x, getElevation(internal)));
+            coordList.add(new Coordinate(x, getElevation(coverage, internal)));
         }
 
         // final sample (x = edge length)
-        coordList.add(new Coordinate(edgeLenM, getElevation(coords[coords.length - 1])));
+        coordList.add(new Coordinate(edgeLenM, getElevation(coverage, coords[coords.length - 1])));
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
         PackedCoordinateSequence elevPCS = new PackedCoordinateSequence.Double(
                 coordList.toArray(coordArr));
 
-        if(ee.setElevationProfile(elevPCS, false)) {
-            graph.addBuilderAnnotation(new ElevationFlattened(ee));
+        boolean flattened = ee.setElevationProfile(elevPCS, false);
+        reportProgress(nTotal);
+        return flattened;
+    }
+
+    /** Count a processed edge, and periodically log the progress and the share of samples falling outside the DEM. */
+    private void reportProgress(int nTotal) {
+        int processed = nProcessed.incrementAndGet();
+        if (processed % 50000 == 0) {
+            log.info("set elevation on {}/{} edges", processed, nTotal);
+            int evaluated = nPointsEvaluated.get();
+            int outside = nPointsOutsideDEM.get();
+            double failurePercentage = evaluated == 0 ? 0 : (double) outside / evaluated * 100;
+            if (failurePercentage > 50) {
+                log.warn("Fetching elevation failed at {}/{} points ({}%)", outside, evaluated, failurePercentage);
+                log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
+                        "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
+            }
         }
     }
 
@@ -426,21 +520,23 @@ public class ElevationModule implements GraphBuilderModule {
     /**
      * Method for retrieving the elevation at a given Coordinate.
      * 
+     * @param coverage the interpolator of the current thread
      * @param c the coordinate (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(Coordinate c) {
-        return getElevation(c.x, c.y);
+    private double getElevation(Coverage coverage, Coordinate c) {
+        return getElevation(coverage, c.x, c.y);
     }
 
     /**
      * Method for retrieving the elevation at a given (x, y) pair.
      * 
+     * @param coverage the interpolator of the current thread
      * @param x the query longitude (NAD83)
      * @param y the query latitude (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(double x, double y) {
+    private double getElevation(Coverage coverage, double x, double y) {
         double values[] = new double[1];
         try {
             // We specify a CRS here because otherwise the coordinates are assumed to be in the coverage's native CRS.
@@ -450,9 +546,9 @@ public class ElevationModule implements GraphBuilderModule {
             // rasters to also use (long, lat).
             coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
         } catch (org.opengis.coverage.PointOutsideCoverageException e) {
-            nPointsOutsideDEM += 1;
+            nPointsOutsideDEM.incrementAndGet();
         }
-        nPointsEvaluated += 1;
+        nPointsEvaluated.incrementAndGet();
         return values[0];
     }
 
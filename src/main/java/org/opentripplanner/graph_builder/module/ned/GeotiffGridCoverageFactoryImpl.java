@@ -25,6 +25,8 @@ import org.opentripplanner.standalone.datastore.file.FileDataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
 import java.io.File;
 import java.io.IOException;
 
@@ -35,8 +37,12 @@ public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFact
 
     private static final Logger LOG = LoggerFactory.getLogger(GeotiffGridCoverageFactoryImpl.class);
 
+    /** The memory used for decoded tiles of a DEM by default. Beyond it, the least recently used tiles are evicted. */
+    public static final long DEFAULT_TILE_CACHE_BYTES = 256L * 1024 * 1024;
+
     private final DataSource input;
     private GridCoverage2D coverage;
+    private TileCache tileCache;
 
     public GeotiffGridCoverageFactoryImpl(DataSource input) {
         this.input = input;
@@ -54,6 +60,12 @@ public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFact
             // Both NED and SRTM data use the longitude-first axis order, so OTP makes grid coverages
             // for unprojected DEMs assuming coordinates are in (longitude, latitude) order.
             Hints forceLongLat = new Hints(Hints.FORCE_LONGITUDE_FIRST_AXIS_ORDER, Boolean.TRUE);
+            // Raster tiles are decoded on demand and kept in a bounded cache, which is shared by all the threads
+            // sampling the coverage.
+            if (tileCache == null) {
+                tileCache = createTileCache();
+            }
+            forceLongLat.put(JAI.KEY_TILE_CACHE, tileCache);
             GeoTiffFormat format = new GeoTiffFormat();
             GeoTiffReader reader = format.getReader(getSource(), forceLongLat);
             coverage = reader.read(null);
@@ -64,6 +76,16 @@ public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFact
         return coverage;
     }
 
+    /** Use the given cache for the decoded tiles of the DEM, for instance to share one between several files. */
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /** @return a cache of decoded DEM tiles of the default size, evicting the least recently used tiles. */
+    public static TileCache createTileCache() {
+        return JAI.createTileCache(DEFAULT_TILE_CACHE_BYTES);
+    }
+
     private Object getSource() {
         return input.asInputStream();
     }
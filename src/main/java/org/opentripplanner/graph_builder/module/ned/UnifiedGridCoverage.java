@@ -15,6 +15,7 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import org.geotools.coverage.AbstractCoverage;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.GeneralEnvelope;
 import org.opengis.coverage.CannotEvaluateException;
 import org.opengis.coverage.Coverage;
@@ -24,6 +25,7 @@ import org.opengis.geometry.DirectPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.media.jai.InterpolationBilinear;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -40,6 +42,10 @@ public class UnifiedGridCoverage extends AbstractCoverage {
 
     private static Logger log = LoggerFactory.getLogger(UnifiedGridCoverage.class);
     
+    /** The tiles of the DEM, shared by all copies of this coverage. */
+    private ArrayList<GridCoverage2D> sources;
+
+    /** A bilinear interpolator over each source, which is not shared, as interpolators are not thread safe. */
     private ArrayList<Coverage> regions;
 
     private List<VerticalDatum> datums;
@@ -49,11 +55,30 @@ public class UnifiedGridCoverage extends AbstractCoverage {
      * in the same way. However, the superclass constructor (AbstractCoverage) needs a coverage to copy properties from.
      * So the first sub-coverage needs to be passed in at construction time.
      */
-    protected UnifiedGridCoverage(CharSequence name, Coverage coverage, List<VerticalDatum> datums) {
+    protected UnifiedGridCoverage(CharSequence name, GridCoverage2D coverage, List<VerticalDatum> datums) {
         super(name, coverage);
+        sources = new ArrayList<GridCoverage2D>();
         regions = new ArrayList<Coverage>();
-        regions.add(coverage);
         this.datums = datums;
+        add(coverage);
+    }
+
+    private UnifiedGridCoverage(UnifiedGridCoverage other) {
+        super(other.getName(), other);
+        sources = new ArrayList<GridCoverage2D>();
+        regions = new ArrayList<Coverage>();
+        datums = other.datums;
+        for (GridCoverage2D source : other.sources) {
+            add(source);
+        }
+    }
+
+    /**
+     * @return a coverage of the same tiles with interpolators of its own, so that several threads can sample the DEM
+     * at once, each using its own copy.
+     */
+    public UnifiedGridCoverage copyForThread() {
+        return new UnifiedGridCoverage(this);
     }
 
     @Override
@@ -108,7 +133,9 @@ public class UnifiedGridCoverage extends AbstractCoverage {
     }
 
     public void add(GridCoverage2D regionCoverage) {
-        regions.add(regionCoverage);
+        sources.add(regionCoverage);
+        // TODO might bicubic interpolation give better results?
+        regions.add(Interpolator2D.create(regionCoverage, new InterpolationBilinear()));
     }
 
 }
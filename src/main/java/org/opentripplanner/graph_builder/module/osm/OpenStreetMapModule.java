@@ -56,6 +56,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
@@ -120,6 +121,16 @@ public class OpenStreetMapModule implements GraphBuilderModule {
      */
     public boolean staticBikeParkAndRide;
 
+    /**
+     * Whether to look up way properties and create street geometries on several threads. The vertices and edges
+     * are still created on a single thread in the order of the ways, so the graph is the same as in a sequential
+     * build.
+     */
+    public boolean parallelBuild = false;
+
+    /** Number of ways planned in parallel before their plans are applied to the graph, to bound memory use. */
+    private static final int PARALLEL_BLOCK_SIZE = 100000;
+
     public List<String> provides() {
         return Arrays.asList("streets", "turns");
     }
@@ -197,6 +208,26 @@ public class OpenStreetMapModule implements GraphBuilderModule {
         return (T) value;
     }
 
+    /** The part of the street graph for a single way that can be computed independently of the other ways. */
+    private static class WayPlan {
+        WayProperties wayData;
+        /** Null if the way is not routable or refers to a missing node. */
+        List<WaySegment> segments;
+    }
+
+    /** A stretch of a way between two nodes that become vertices. */
+    private static class WaySegment {
+        /** The index of the node before the end node among the deduplicated nodes of the way. */
+        int index;
+        long startNode;
+        long endNode;
+        /** The node before the end node, which is the start node unless intermediate nodes were skipped. */
+        OSMNode segmentStartOSMNode;
+        OSMNode osmStartNode;
+        OSMNode osmEndNode;
+        LineString geometry;
+    }
+
     protected class Handler {
 
         private static final String nodeLabelFormat = "osm:node:%d";
@@ -558,147 +589,199 @@ public class OpenStreetMapModule implements GraphBuilderModule {
 
             /* build the street segment graph from OSM ways */
             long wayIndex = 0;
-            long wayCount = osmdb.getWays().size();
+            List<OSMWay> ways = new ArrayList<OSMWay>(osmdb.getWays());
+            long wayCount = ways.size();
             LOG.info("{} ways found", wayCount);
+            if (parallelBuild) {
+                LOG.info("Planning street segments on {} threads.", ForkJoinPool.getCommonPoolParallelism());
+            }
 
-            WAY:
-            for (OSMWay way : osmdb.getWays()) {
-
-                if (wayIndex % 10000 == 0)
-                    LOG.debug("ways=" + wayIndex + "/" + wayCount);
-                wayIndex++;
-
-                WayProperties wayData = wayPropertySet.getDataForWay(way);
+            for (int blockStart = 0; blockStart < ways.size(); blockStart += PARALLEL_BLOCK_SIZE) {
+                List<OSMWay> block = ways.subList(blockStart, Math.min(blockStart + PARALLEL_BLOCK_SIZE, ways.size()));
+                // The plans do not depend on each other, so they can be made in any order. They are applied to the
+                // graph in the order of the ways, which keeps the vertices and edges identical to a sequential build.
+                List<WayPlan> plans = null;
+                if (parallelBuild) {
+                    plans = block.parallelStream().map(this::planWay).collect(Collectors.toList());
+                }
 
-                setWayName(way);
+                for (int w = 0; w < block.size(); w++) {
+                    if (wayIndex % 10000 == 0)
+                        LOG.debug("ways=" + wayIndex + "/" + wayCount);
+                    wayIndex++;
 
-                StreetTraversalPermission permissions = OSMFilter.getPermissionsForWay(way,
-                        wayData.getPermission(), graph, banDiscouragedWalking, banDiscouragedBiking);
-                if (!OSMFilter.isWayRoutable(way) || permissions.allowsNothing())
-                    continue;
+                    OSMWay way = block.get(w);
+                    WayPlan plan = plans != null ? plans.get(w) : planWay(way);
+                    buildWay(way, plan);
+                }
+            } // END loop over OSM ways
+        }
 
-                // handle duplicate nodes in OSM ways
-                // this is a workaround for crappy OSM data quality
-                ArrayList<Long> nodes = new ArrayList<Long>(way.getNodeRefs().size());
-                long last = -1;
-                double lastLat = -1, lastLon = -1;
-                String lastLevel = null;
-                for (long nodeId : way.getNodeRefs()) {
-                    OSMNode node = osmdb.getNode(nodeId);
-                    if (node == null)
-                        continue WAY;
-                    boolean levelsDiffer = false;
-                    String level = node.getTag("level");
-                    if (lastLevel == null) {
-                        if (level != null) {
-                            levelsDiffer = true;
-                        }
-                    } else {
-                        if (!lastLevel.equals(level)) {
-                            levelsDiffer = true;
-                        }
+        /**
+         * Do the part of building a way that does not depend on the other ways or modify the graph: look up its
+         * properties and name, and split it into segments with their geometries. Called from several threads at
+         * once in a parallel build.
+         */
+        private WayPlan planWay(OSMWay way) {
+            WayPlan plan = new WayPlan();
+            plan.wayData = wayPropertySet.getDataForWay(way);
+
+            setWayName(way);
+
+            if (!OSMFilter.isWayRoutable(way))
+                return plan;
+
+            // handle duplicate nodes in OSM ways
+            // this is a workaround for crappy OSM data quality
+            ArrayList<Long> nodes = new ArrayList<Long>(way.getNodeRefs().size());
+            long last = -1;
+            double lastLat = -1, lastLon = -1;
+            String lastLevel = null;
+            for (long nodeId : way.getNodeRefs()) {
+                OSMNode node = osmdb.getNode(nodeId);
+                if (node == null)
+                    return plan;
+                boolean levelsDiffer = false;
+                String level = node.getTag("level");
+                if (lastLevel == null) {
+                    if (level != null) {
+                        levelsDiffer = true;
+                    }
+                } else {
+                    if (!lastLevel.equals(level)) {
+                        levelsDiffer = true;
                     }
-                    if (nodeId != last
-                            && (node.lat != lastLat || node.lon != lastLon || levelsDiffer))
-                        nodes.add(nodeId);
-                    last = nodeId;
-                    lastLon = node.lon;
-                    lastLat = node.lat;
-                    lastLevel = level;
                 }
+                if (nodeId != last
+                        && (node.lat != lastLat || node.lon != lastLon || levelsDiffer))
+                    nodes.add(nodeId);
+                last = nodeId;
+                lastLon = node.lon;
+                lastLat = node.lat;
+                lastLevel = level;
+            }
+            plan.segments = new ArrayList<WaySegment>();
+
+            ArrayList<Coordinate> segmentCoordinates = new ArrayList<Coordinate>();
+
+            /*
+             * Traverse through all the nodes of this edge. For nodes which are not shared with any other edge, do not create endpoints -- just
+             * accumulate them for geometry and ele tags. For nodes which are shared, create endpoints and StreetVertex instances. One exception:
+             * if the next vertex also appears earlier in the way, we need to split the way, because otherwise we have a way that loops from a
+             * vertex to itself, which could cause issues with splitting.
+             */
+            Long startNode = null;
+            // where the current edge should start
+            OSMNode osmStartNode = null;
+
+            for (int i = 0; i < nodes.size() - 1; i++) {
+                OSMNode segmentStartOSMNode = osmdb.getNode(nodes.get(i));
+                if (segmentStartOSMNode == null) {
+                    continue;
+                }
+                Long endNode = nodes.get(i + 1);
+                if (osmStartNode == null) {
+                    startNode = nodes.get(i);
+                    osmStartNode = segmentStartOSMNode;
+                }
+                // where the current edge might end
+                OSMNode osmEndNode = osmdb.getNode(endNode);
 
-                OsmVertex startEndpoint = null;
-                OsmVertex endEndpoint = null;
+                if (osmStartNode == null || osmEndNode == null)
+                    continue;
 
-                ArrayList<Coordinate> segmentCoordinates = new ArrayList<Coordinate>();
+                LineString geometry;
 
                 /*
-                 * Traverse through all the nodes of this edge. For nodes which are not shared with any other edge, do not create endpoints -- just
-                 * accumulate them for geometry and ele tags. For nodes which are shared, create endpoints and StreetVertex instances. One exception:
-                 * if the next vertex also appears earlier in the way, we need to split the way, because otherwise we have a way that loops from a
-                 * vertex to itself, which could cause issues with splitting.
+                 * We split segments at intersections, self-intersections, nodes with ele tags, and transit stops;
+                 * the only processing we do on other nodes is to accumulate their geometry
                  */
-                Long startNode = null;
-                // where the current edge should start
-                OSMNode osmStartNode = null;
-
-                for (int i = 0; i < nodes.size() - 1; i++) {
-                    OSMNode segmentStartOSMNode = osmdb.getNode(nodes.get(i));
-                    if (segmentStartOSMNode == null) {
-                        continue;
-                    }
-                    Long endNode = nodes.get(i + 1);
-                    if (osmStartNode == null) {
-                        startNode = nodes.get(i);
-                        osmStartNode = segmentStartOSMNode;
-                    }
-                    // where the current edge might end
-                    OSMNode osmEndNode = osmdb.getNode(endNode);
-
-                    if (osmStartNode == null || osmEndNode == null)
-                        continue;
-
-                    LineString geometry;
-
-                    /*
-                     * We split segments at intersections, self-intersections, nodes with ele tags, and transit stops;
-                     * the only processing we do on other nodes is to accumulate their geometry
-                     */
-                    if (segmentCoordinates.size() == 0) {
-                        segmentCoordinates.add(getCoordinate(osmStartNode));
-                    }
-
-                    if (intersectionNodes.containsKey(endNode) || i == nodes.size() - 2
-                            || nodes.subList(0, i).contains(nodes.get(i))
-                            || osmEndNode.hasTag("ele")
-                            || osmEndNode.isStop()
-                            || osmEndNode.isBollard()) {
-                        segmentCoordinates.add(getCoordinate(osmEndNode));
+                if (segmentCoordinates.size() == 0) {
+                    segmentCoordinates.add(getCoordinate(osmStartNode));
+                }
 
-                        geometry = GeometryUtils.getGeometryFactory().createLineString(
-                                segmentCoordinates.toArray(new Coordinate[0]));
-                        segmentCoordinates.clear();
-                    } else {
-                        segmentCoordinates.add(getCoordinate(osmEndNode));
-                        continue;
-                    }
+                if (intersectionNodes.containsKey(endNode) || i == nodes.size() - 2
+                        || nodes.subList(0, i).contains(nodes.get(i))
+                        || osmEndNode.hasTag("ele")
+                        || osmEndNode.isStop()
+                        || osmEndNode.isBollard()) {
+                    segmentCoordinates.add(getCoordinate(osmEndNode));
+
+                    geometry = GeometryUtils.getGeometryFactory().createLineString(
+                            segmentCoordinates.toArray(new Coordinate[0]));
+                    segmentCoordinates.clear();
+                } else {
+                    segmentCoordinates.add(getCoordinate(osmEndNode));
+                    continue;
+                }
 
-                    /* generate endpoints */
-                    if (startEndpoint == null) { // first iteration on this way
-                        // make or get a shared vertex for flat intersections,
-                        // one vertex per level for multilevel nodes like elevators
-                        startEndpoint = getVertexForOsmNode(osmStartNode, way);
-                        String ele = segmentStartOSMNode.getTag("ele");
-                        if (ele != null) {
-                            Double elevation = ElevationUtils.parseEleTag(ele);
-                            if (elevation != null) {
-                                elevationData.put(startEndpoint, elevation);
-                            }
-                        }
-                    } else { // subsequent iterations
-                        startEndpoint = endEndpoint;
-                    }
+                WaySegment segment = new WaySegment();
+                segment.index = i;
+                segment.startNode = startNode;
+                segment.endNode = endNode;
+                segment.segmentStartOSMNode = segmentStartOSMNode;
+                segment.osmStartNode = osmStartNode;
+                segment.osmEndNode = osmEndNode;
+                segment.geometry = geometry;
+                plan.segments.add(segment);
+
+                startNode = endNode;
+                osmStartNode = osmdb.getNode(startNode);
+            }
+            return plan;
+        }
 
-                    endEndpoint = getVertexForOsmNode(osmEndNode, way);
-                    String ele = osmEndNode.getTag("ele");
+        /** Create the vertices and edges of a way from its plan. Ways must be built in a fixed order. */
+        private void buildWay(OSMWay way, WayPlan plan) {
+            WayProperties wayData = plan.wayData;
+
+            StreetTraversalPermission permissions = OSMFilter.getPermissionsForWay(way,
+                    wayData.getPermission(), graph, banDiscouragedWalking, banDiscouragedBiking);
+            if (!OSMFilter.isWayRoutable(way) || permissions.allowsNothing())
+                return;
+
+            // the way refers to a node that is not in the OSM data
+            if (plan.segments == null)
+                return;
+
+            OsmVertex startEndpoint = null;
+            OsmVertex endEndpoint = null;
+
+            for (WaySegment segment : plan.segments) {
+                /* generate endpoints */
+                if (startEndpoint == null) { // first iteration on this way
+                    // make or get a shared vertex for flat intersections,
+                    // one vertex per level for multilevel nodes like elevators
+                    startEndpoint = getVertexForOsmNode(segment.osmStartNode, way);
+                    String ele = segment.segmentStartOSMNode.getTag("ele");
                     if (ele != null) {
                         Double elevation = ElevationUtils.parseEleTag(ele);
                         if (elevation != null) {
-                            elevationData.put(endEndpoint, elevation);
+                            elevationData.put(startEndpoint, elevation);
                         }
                     }
-                    P2<StreetEdge> streets = getEdgesForStreet(startEndpoint, endEndpoint,
-                            way, i, osmStartNode.getId(), osmEndNode.getId(), permissions, geometry);
-
-                    StreetEdge street = streets.first;
-                    StreetEdge backStreet = streets.second;
-                    applyWayProperties(street, backStreet, wayData, way);
+                } else { // subsequent iterations
+                    startEndpoint = endEndpoint;
+                }
 
-                    applyEdgesToTurnRestrictions(way, startNode, endNode, street, backStreet);
-                    startNode = endNode;
-                    osmStartNode = osmdb.getNode(startNode);
+                endEndpoint = getVertexForOsmNode(segment.osmEndNode, way);
+                String ele = segment.osmEndNode.getTag("ele");
+                if (ele != null) {
+                    Double elevation = ElevationUtils.parseEleTag(ele);
+                    if (elevation != null) {
+                        elevationData.put(endEndpoint, elevation);
+                    }
                 }
-            } // END loop over OSM ways
+                P2<StreetEdge> streets = getEdgesForStreet(startEndpoint, endEndpoint,
+                        way, segment.index, segment.osmStartNode.getId(), segment.osmEndNode.getId(),
+                        permissions, segment.geometry);
+
+                StreetEdge street = streets.first;
+                StreetEdge backStreet = streets.second;
+                applyWayProperties(street, backStreet, wayData, way);
+
+                applyEdgesToTurnRestrictions(way, segment.startNode, segment.endNode, street, backStreet);
+            }
         }
 
         // TODO Set this to private once WalkableAreaBuilder is gone
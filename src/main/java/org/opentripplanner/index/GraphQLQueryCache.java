@@ -0,0 +1,248 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import graphql.GraphQL;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.execution.ExecutionStrategy;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.schema.GraphQLSchema;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Holds the GraphQL engine of one API on one router, so that it is built once rather than on every request, together
+ * with a bounded cache of parsed and validated query documents and a store of persisted queries.
+ *
+ * Most clients send the same few queries over and over, so parsing and validating them again on every request is
+ * wasted work. The documents are cached on the query text. graphql-java checks the query complexity (OTPMaxResolves)
+ * while validating, so a document is only reused for requests with the same complexity limit it was validated with.
+ * The operation name is not part of the key, as it only selects the operation to run from the parsed document.
+ *
+ * Persisted queries follow the automatic persisted query protocol: a client sends the SHA-256 hash of its query in
+ * extensions.persistedQuery.sha256Hash. If the hash is unknown it is told so, and sends the hash again together with
+ * the query text, which is then stored. From then on it can leave out the query text.
+ *
+ * Once named with monitor(), hits and misses are reported to the MonitoringStore under
+ * graphql.[name].documentCacheHits and graphql.[name].documentCacheMisses. They are counted here, and only read by the
+ * store when the metrics are.
+ */
+public class GraphQLQueryCache {
+
+    public static final int DEFAULT_MAX_DOCUMENTS = 1000;
+
+    public static final int DEFAULT_MAX_PERSISTED_QUERIES = 10000;
+
+    /** The error message clients of the persisted query protocol expect when they should send the query text. */
+    public static final String PERSISTED_QUERY_NOT_FOUND = "PersistedQueryNotFound";
+
+    /**
+     * An engine is kept for each complexity limit. Clients normally use the default, but the limit is a request header,
+     * so beyond this many different limits engines are built per request instead.
+     */
+    private static final int MAX_ENGINES = 8;
+
+    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
+
+    private final GraphQLSchema schema;
+
+    private final ExecutionStrategy queryExecutionStrategy;
+
+    private final Map<Integer, GraphQL> engines = new ConcurrentHashMap<>();
+
+    private final Cache<DocumentKey, PreparsedDocumentEntry> documents;
+
+    private final Cache<String, String> persistedQueries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public GraphQLQueryCache(GraphQLSchema schema) {
+        this(schema, null, DEFAULT_MAX_DOCUMENTS, DEFAULT_MAX_PERSISTED_QUERIES);
+    }
+
+    /**
+     * @param queryExecutionStrategy the strategy for executing queries, or null for the graphql-java default
+     */
+    public GraphQLQueryCache(GraphQLSchema schema, ExecutionStrategy queryExecutionStrategy, int maxDocuments,
+            int maxPersistedQueries) {
+        this.schema = schema;
+        this.queryExecutionStrategy = queryExecutionStrategy;
+        this.documents = CacheBuilder.newBuilder().maximumSize(maxDocuments).build();
+        this.persistedQueries = CacheBuilder.newBuilder().maximumSize(maxPersistedQueries).build();
+    }
+
+    /**
+     * Report the hits and misses of this cache to the MonitoringStore, in place of those of any earlier cache with the
+     * same name (e.g. that of the graph a router had before it was reloaded).
+     * @param name identifies the API and router in the metrics, e.g. "transmodel.default"
+     */
+    public void monitor(String name) {
+        store.monitor("graphql." + name + ".documentCacheHits", hits::sum);
+        store.monitor("graphql." + name + ".documentCacheMisses", misses::sum);
+    }
+
+    /**
+     * @return a GraphQL engine that rejects queries more complex than maxResolves, and takes parsed and validated
+     * documents from this cache.
+     */
+    public GraphQL getGraphQL(int maxResolves) {
+        GraphQL graphQL = engines.get(maxResolves);
+        if (graphQL == null) {
+            graphQL = buildGraphQL(maxResolves);
+            if (engines.size() < MAX_ENGINES) {
+                engines.putIfAbsent(maxResolves, graphQL);
+            }
+        }
+        return graphQL;
+    }
+
+    /**
+     * Find the text of the query of a request, following the persisted query protocol when the request has a
+     * persistedQuery extension.
+     *
+     * @param query the query text sent by the client, or null if it only sent a hash
+     * @param extensions the extensions object of the request, or null
+     * @return the query text to execute, or null if the client only sent a hash that is not known here. The client
+     * should then be answered with {@link #PERSISTED_QUERY_NOT_FOUND}.
+     * @throws IllegalArgumentException if the hash sent by the client does not match the query text
+     */
+    public String resolveQuery(String query, Object extensions) {
+        String hash = persistedQueryHash(extensions);
+        if (hash == null) {
+            return query;
+        }
+        if (query == null) {
+            return persistedQueries.getIfPresent(hash);
+        }
+        if (!hash.equalsIgnoreCase(Hashing.sha256().hashString(query, StandardCharsets.UTF_8).toString())) {
+            throw new IllegalArgumentException("The persisted query hash does not match the query");
+        }
+        persistedQueries.put(hash.toLowerCase(), query);
+        return query;
+    }
+
+    /** @return true if the request asks for a persisted query, i.e. its extensions hold a query hash. */
+    public static boolean isPersistedQuery(Object extensions) {
+        return persistedQueryHash(extensions) != null;
+    }
+
+    /** @return the response body telling a client that it has to send the text of its persisted query. */
+    public static Map<String, Object> persistedQueryNotFound() {
+        Map<String, Object> error = new HashMap<>();
+        error.put("message", PERSISTED_QUERY_NOT_FOUND);
+        Map<String, Object> content = new HashMap<>();
+        content.put("errors", Collections.singletonList(error));
+        return content;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private GraphQL buildGraphQL(int maxResolves) {
+        GraphQL.Builder builder = GraphQL.newGraphQL(schema)
+                .instrumentation(new MaxQueryComplexityInstrumentation(maxResolves))
+                .preparsedDocumentProvider(new DocumentProvider(maxResolves));
+        if (queryExecutionStrategy != null) {
+            builder.queryExecutionStrategy(queryExecutionStrategy);
+        }
+        return builder.build();
+    }
+
+    private static String persistedQueryHash(Object extensions) {
+        if (!(extensions instanceof Map)) {
+            return null;
+        }
+        Object persistedQuery = ((Map<?, ?>) extensions).get("persistedQuery");
+        if (!(persistedQuery instanceof Map)) {
+            return null;
+        }
+        Object hash = ((Map<?, ?>) persistedQuery).get("sha256Hash");
+        return hash instanceof String ? ((String) hash).toLowerCase() : null;
+    }
+
+    /** Looks up the documents validated with one complexity limit. */
+    private class DocumentProvider implements PreparsedDocumentProvider {
+
+        private final int maxResolves;
+
+        DocumentProvider(int maxResolves) {
+            this.maxResolves = maxResolves;
+        }
+
+        @Override
+        public PreparsedDocumentEntry get(String query, Function<String, PreparsedDocumentEntry> compute) {
+            DocumentKey key = new DocumentKey(query, maxResolves);
+            PreparsedDocumentEntry entry = documents.getIfPresent(key);
+            if (entry != null) {
+                hits.increment();
+                return entry;
+            }
+            misses.increment();
+            // Two threads may both parse a new query, which is harmless. Queries that are too complex throw here
+            // and are not cached.
+            entry = compute.apply(query);
+            documents.put(key, entry);
+            return entry;
+        }
+    }
+
+    private static class DocumentKey {
+
+        private final String query;
+
+        private final int maxResolves;
+
+        DocumentKey(String query, int maxResolves) {
+            this.query = query;
+            this.maxResolves = maxResolves;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            DocumentKey that = (DocumentKey) o;
+            return maxResolves == that.maxResolves && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, maxResolves);
+        }
+    }
+}
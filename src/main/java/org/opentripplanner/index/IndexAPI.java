@@ -602,7 +602,17 @@ public class IndexAPI {
     @Consumes(MediaType.APPLICATION_JSON)
     public Response getGraphQL (HashMap<String, Object> queryParameters, @HeaderParam("OTPTimeout") @DefaultValue("10000") int timeout, @HeaderParam("OTPMaxResolves") @DefaultValue("1000000") long maxResolves) {
         int finalTimeout = checkTimeout(timeout);
-        String query = (String) queryParameters.get("query");
+        Object extensions = queryParameters.get("extensions");
+        String query;
+        try {
+            query = index.queryCache.resolveQuery((String) queryParameters.get("query"), extensions);
+        } catch (IllegalArgumentException e) {
+            LOG.error(e.getMessage());
+            return Response.status(Status.BAD_REQUEST).entity(MSG_400).build();
+        }
+        if (query == null && GraphQLQueryCache.isPersistedQuery(extensions)) {
+            return Response.status(Status.OK).entity(GraphQLQueryCache.persistedQueryNotFound()).build();
+        }
         Object queryVariables = queryParameters.getOrDefault("variables", null);
         String operationName = (String) queryParameters.getOrDefault("operationName", null);
         Map<String, Object> variables;
@@ -659,8 +669,19 @@ public class IndexAPI {
                 variables = null;
             }
             String operationName = (String) query.getOrDefault("operationName", null);
+            String queryText;
+            try {
+                queryText = index.queryCache.resolveQuery((String) query.get("query"), query.get("extensions"));
+            } catch (IllegalArgumentException e) {
+                LOG.error(e.getMessage());
+                return Response.status(Status.BAD_REQUEST).entity(MSG_400).build();
+            }
+            if (queryText == null && GraphQLQueryCache.isPersistedQuery(query.get("extensions"))) {
+                futures.add(() -> GraphQLQueryCache.persistedQueryNotFound());
+                continue;
+            }
 
-            futures.add(() -> index.getGraphQLExecutionResult((String) query.get("query"), router,
+            futures.add(() -> index.getGraphQLExecutionResult(queryText, router,
                 variables, operationName, finalTimeout, maxResolves));
         }
 
@@ -5,9 +5,12 @@ import org.opentripplanner.standalone.Router;
 public class TransmodelApiContext {
         public final Router router;
         public final String clientName;
+        /** Lookups shared by the data fetchers of this request. */
+        public final TransmodelRequestCache requestCache;
 
         TransmodelApiContext(Router router, String clientName) {
                 this.router = router;
                 this.clientName = clientName;
+                this.requestCache = new TransmodelRequestCache(router.graph.index);
         }
 }
@@ -5,9 +5,10 @@ import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.GraphQLError;
-import graphql.analysis.MaxQueryComplexityInstrumentation;
 import graphql.schema.GraphQLSchema;
+import org.opentripplanner.index.GraphQLQueryCache;
 import org.opentripplanner.standalone.Router;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +30,10 @@ public class TransmodelGraphIndex {
 
     public final ExecutorService threadPool;
 
+    public final GraphQLQueryCache queryCache;
+
+    private final RoutingMetrics metrics;
+
     public TransmodelGraphIndex(Router router) {
         threadPool = Executors.newCachedThreadPool(
                 new ThreadFactoryBuilder().setNameFormat("GraphQLExecutor-" + router.id + "-%d")
@@ -36,12 +41,14 @@ public class TransmodelGraphIndex {
         );
 
         indexSchema = new TransmodelIndexGraphQLSchema(router).indexSchema;
+        queryCache = new GraphQLQueryCache(indexSchema);
+        queryCache.monitor("transmodel." + router.id);
+        metrics = router.graph.routingMetrics;
     }
 
     public HashMap<String, Object> getGraphQLExecutionResult(String query, TransmodelApiContext context,
                                                                     Map<String, Object> variables, String operationName, int timeout, int maxResolves) {
-        MaxQueryComplexityInstrumentation instrumentation = new MaxQueryComplexityInstrumentation(maxResolves);
-        GraphQL graphQL = GraphQL.newGraphQL(indexSchema).instrumentation(instrumentation).build();
+        GraphQL graphQL = queryCache.getGraphQL(maxResolves);
 
         if (variables == null) {
             variables = new HashMap<>();
@@ -56,6 +63,7 @@ public class TransmodelGraphIndex {
                                                 .build();
         HashMap<String, Object> content = new HashMap<>();
         ExecutionResult executionResult;
+        long executionStart = System.nanoTime();
         try {
             executionResult = graphQL.execute(executionInput);
             if (!executionResult.getErrors().isEmpty()) {
@@ -67,6 +75,8 @@ public class TransmodelGraphIndex {
         } catch (RuntimeException ge) {
             LOG.warn("Exception during graphQL.execute: " + ge.getMessage(), ge);
             content.put("errors", mapErrors(Arrays.asList(ge)));
+        } finally {
+            metrics.recordPhase(RoutingMetrics.Phase.GRAPHQL, executionStart);
         }
         return content;
     }
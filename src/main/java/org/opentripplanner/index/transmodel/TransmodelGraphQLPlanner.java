@@ -24,6 +24,7 @@ import org.opentripplanner.routing.edgetype.StationStopEdge;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.impl.PlanResponseCache;
 import org.opentripplanner.routing.request.BannedStopSet;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.vertextype.TransitStation;
@@ -73,19 +74,30 @@ public class TransmodelGraphQLPlanner {
         DebugOutput debugOutput = new DebugOutput();
 
         try {
-            List<GraphPath> paths = gpFinder.graphPathFinderEntryPoint(request);
-            removeAccessAndEgressFootPathsAtStation(paths, sourceStopId(request.from), sourceStopId(request.to));
-            plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+            List<Object> cacheKey = router.planCache == null ? null : router.planCache.keyFor("transmodel", request);
+            List<Object> realtimeState = cacheKey == null ? null : PlanResponseCache.realtimeState(router.graph);
+            TripPlan cachedPlan = cacheKey == null ? null : router.planCache.get(cacheKey, realtimeState, request);
+            if (cachedPlan != null) {
+                plan = cachedPlan;
+            } else {
+                List<GraphPath> paths = gpFinder.graphPathFinderEntryPoint(request);
+                removeAccessAndEgressFootPathsAtStation(paths, sourceStopId(request.from), sourceStopId(request.to));
+                plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                if (cacheKey != null) {
+                    router.planCache.put(cacheKey, plan, realtimeState, request);
+                }
+            }
         } catch (Exception e) {
             PlannerError error = new PlannerError(e);
             if (!PlannerError.isPlanningError(e.getClass()))
                 LOG.error("Error while planning path ET-Client-Name {} and request: {}", context.clientName, environment.getArguments().toString(), e);
             messages.add(error.message);
         } finally {
+            // There is no routing context to clean up when the plan came from the cache
             if (request.rctx != null) {
                 debugOutput = request.rctx.debugOutput;
+                request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
             }
-            request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
         }
 
         return ImmutableMap.<String, Object>builder()
@@ -241,6 +253,8 @@ public class TransmodelGraphQLPlanner {
 
         callWith.argument("heuristicStepsPerMainStep", (Integer v) -> request.heuristicStepsPerMainStep = v);
         callWith.argument("compactLegsByReversedSearch", (Boolean v) -> request.compactLegsByReversedSearch = v);
+        callWith.argument("parallelItineraries", (Boolean v) -> request.parallelItineraries = v);
+        callWith.argument("useRaptor", (Boolean v) -> request.useRaptor = v);
         callWith.argument("banFirstServiceJourneysFromReuseNo", (Integer v) -> request.banFirstTripsFromReuseNo = v);
         callWith.argument("allowBikeRental", (Boolean v) -> request.allowBikeRental = v);
 
@@ -1,6 +1,7 @@
 package org.opentripplanner.index.transmodel;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.index.GraphQLQueryCache;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
@@ -68,13 +69,25 @@ public class TransmodelIndexAPI {
             @HeaderParam("ET-Client-Name") @DefaultValue("") String clientName
     ) {
         int finalTimeout = checkTimeout(timeout);
+        if (queryParameters == null) {
+            LOG.debug("No query found in body");
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN_TYPE).entity("No query found in body").build();
+        }
         Object queryParam = queryParameters.get("query");
-        if (queryParameters==null || !(queryParam instanceof String)) {
+        Object extensions = queryParameters.get("extensions");
+        String query;
+        try {
+            query = index.queryCache.resolveQuery(queryParam instanceof String ? (String) queryParam : null, extensions);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN_TYPE).entity(e.getMessage()).build();
+        }
+        if (query == null) {
+            if (GraphQLQueryCache.isPersistedQuery(extensions)) {
+                return Response.status(Response.Status.OK).entity(GraphQLQueryCache.persistedQueryNotFound()).build();
+            }
             LOG.debug("No query found in body");
             return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN_TYPE).entity("No query found in body").build();
         }
-
-        String query = (String) queryParam;
         Object queryVariables = queryParameters.getOrDefault("variables", null);
         String operationName = (String) queryParameters.getOrDefault("operationName", null);
         Map<String, Object> variables;
@@ -128,8 +141,18 @@ public class TransmodelIndexAPI {
             }
             String operationName = (String) query.getOrDefault("operationName", null);
             TransmodelApiContext context = new TransmodelApiContext(router, clientName);
+            String queryText;
+            try {
+                queryText = index.queryCache.resolveQuery((String) query.get("query"), query.get("extensions"));
+            } catch (IllegalArgumentException e) {
+                return Response.status(Response.Status.BAD_REQUEST).type(MediaType.TEXT_PLAIN_TYPE).entity(e.getMessage()).build();
+            }
+            if (queryText == null && GraphQLQueryCache.isPersistedQuery(query.get("extensions"))) {
+                futures.add(() -> GraphQLQueryCache.persistedQueryNotFound());
+                continue;
+            }
 
-            futures.add(() -> index.getGraphQLExecutionResult((String) query.get("query"), context,
+            futures.add(() -> index.getGraphQLExecutionResult(queryText, context,
                     variables, operationName, finalTimeout, maxResolves));
         }
 
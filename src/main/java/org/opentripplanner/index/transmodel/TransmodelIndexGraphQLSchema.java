@@ -5,6 +5,7 @@ import graphql.relay.DefaultConnection;
 import graphql.relay.DefaultPageInfo;
 import graphql.relay.Relay;
 import graphql.relay.SimpleListConnection;
+import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLArgument;
 import graphql.schema.GraphQLEnumType;
 import graphql.schema.GraphQLFieldDefinition;
@@ -1018,6 +1019,18 @@ public class TransmodelIndexGraphQLSchema {
                         .type(Scalars.GraphQLBoolean)
                         .defaultValue(defaultRoutingRequest.compactLegsByReversedSearch)
                         .build())
+                .argument(GraphQLArgument.newArgument()
+                        .name("parallelItineraries")
+                        .description("Whether the searches for alternatives to the first trip pattern found should run in parallel, each varying the search in a different way. Experimental argument.")
+                        .type(Scalars.GraphQLBoolean)
+                        .defaultValue(defaultRoutingRequest.parallelItineraries)
+                        .build())
+                .argument(GraphQLArgument.newArgument()
+                        .name("useRaptor")
+                        .description("Whether transit trip patterns should be searched for with a round-based (RAPTOR) search, which finds the fastest trip pattern for each number of transfers in one pass. Falls back to the regular search where unsupported. Experimental argument.")
+                        .type(Scalars.GraphQLBoolean)
+                        .defaultValue(defaultRoutingRequest.useRaptor)
+                        .build())
                 .argument(GraphQLArgument.newArgument()
                         .name("reverseOptimizeOnTheFly")
                         .description("For debugging only.")
@@ -1499,7 +1512,8 @@ public class TransmodelIndexGraphQLSchema {
                         .dataFetcher(environment -> {
                             Collection<Stop> quays = index.stopsForParentStation.get(((Stop) environment.getSource()).getId());
                             if (Boolean.TRUE.equals(environment.getArgument("filterByInUse"))) {
-                                quays=quays.stream().filter(stop ->  !index.getPatternsForStop(stop,true).isEmpty()).collect(Collectors.toList());
+                                TransmodelRequestCache requestCache = requestCache(environment);
+                                quays=quays.stream().filter(stop ->  !requestCache.getPatternsForStop(stop).isEmpty()).collect(Collectors.toList());
                             }
                             return quays;
                         })
@@ -1611,7 +1625,8 @@ public class TransmodelIndexGraphQLSchema {
                                                     departuresPerLineAndDestinationDisplay,
                                                     authorityIds,
                                                     lineIds,
-                                                    modes
+                                                    modes,
+                                                    requestCache(environment)
                                             )
                                     )
                                     .sorted(TripTimeShort.compareByDeparture())
@@ -1679,7 +1694,7 @@ public class TransmodelIndexGraphQLSchema {
                         .name("lines")
                         .description("List of lines servicing this quay")
                         .type(new GraphQLNonNull(new GraphQLList(new GraphQLNonNull(lineType))))
-                        .dataFetcher(environment -> index.getPatternsForStop(environment.getSource(),true)
+                        .dataFetcher(environment -> requestCache(environment).getPatternsForStop(environment.getSource())
                                 .stream()
                                 .map(pattern -> pattern.route)
                                 .distinct()
@@ -1689,7 +1704,7 @@ public class TransmodelIndexGraphQLSchema {
                         .name("journeyPatterns")
                         .description("List of journey patterns servicing this quay")
                         .type(new GraphQLNonNull(new GraphQLList(journeyPatternType)))
-                        .dataFetcher(environment -> index.getPatternsForStop(environment.getSource(), true))
+                        .dataFetcher(environment -> requestCache(environment).getPatternsForStop(environment.getSource()))
                         .build())
                 .field(GraphQLFieldDefinition.newFieldDefinition()
                         .name("estimatedCalls")
@@ -1784,7 +1799,8 @@ public class TransmodelIndexGraphQLSchema {
                                     departuresPerLineAndDestinationDisplay,
                                     authorityIds,
                                     lineIds,
-                                    modes
+                                    modes,
+                                    requestCache(environment)
                             )
                                 .sorted(TripTimeShort.compareByDeparture())
                                 .distinct()
@@ -2095,7 +2111,7 @@ public class TransmodelIndexGraphQLSchema {
                         .name("situations")
                         .type(new GraphQLNonNull(new GraphQLList(ptSituationElementType)))
                         .description("Get all relevant situations for this EstimatedCall.")
-                        .dataFetcher(environment -> getAllRelevantAlerts(environment.getSource()))
+                        .dataFetcher(environment -> getAllRelevantAlerts(environment.getSource(), requestCache(environment)))
                         .build())
                  .field(GraphQLFieldDefinition.newFieldDefinition()
                          .name("bookingArrangements")
@@ -2230,7 +2246,8 @@ public class TransmodelIndexGraphQLSchema {
                             final Trip trip = environment.getSource();
 
                             final ServiceDate serviceDate = mappingUtil.secondsSinceEpochToServiceDate(environment.getArgument("date"));
-                            return tripTimeShortHelper.getTripTimesShort(trip, serviceDate);
+                            return tripTimeShortHelper.getTripTimesShort(trip, serviceDate,
+                                    requestCache(environment).getTimetables());
                         })
                         .build())
                 .field(GraphQLFieldDefinition.newFieldDefinition()
@@ -2919,7 +2936,8 @@ public class TransmodelIndexGraphQLSchema {
                                         .getAgencyId().equalsIgnoreCase(environment.getArgument("authority")));
 
                                 if (Boolean.TRUE.equals(environment.getArgument("filterByInUse"))){
-                                    stops = stops.filter(this::isStopPlaceInUse);
+                                    TransmodelRequestCache requestCache = requestCache(environment);
+                                    stops = stops.filter(stop -> isStopPlaceInUse(stop, requestCache));
                                 }
 
                                 String multiModalMode=environment.getArgument("multiModalMode");
@@ -3022,7 +3040,7 @@ public class TransmodelIndexGraphQLSchema {
                                 .filter(stop -> environment.getArgument("authority") == null ||
                                         stop.getId().getAgencyId().equalsIgnoreCase(environment.getArgument("authority")))
                                 .filter(stop -> !Boolean.TRUE.equals(environment.getArgument("filterByInUse"))
-                                                        || !index.getPatternsForStop(stop,true).isEmpty())
+                                                        || !requestCache(environment).getPatternsForStop(stop).isEmpty())
                                 .collect(Collectors.toList()))
                         .build())
                 .field(GraphQLFieldDefinition.newFieldDefinition()
@@ -3453,13 +3471,12 @@ public class TransmodelIndexGraphQLSchema {
                                 .name("maximumLongitude")
                                 .type(Scalars.GraphQLFloat)
                                 .build())
-                        .dataFetcher(environment -> index.graph.streetIndex
-                                .getBikeRentalStationForEnvelope(new Envelope(
+                        .dataFetcher(environment -> index
+                                .getBikeRentalStationsForEnvelope(new Envelope(
                                         new Coordinate(environment.getArgument("minimumLongitude"),
                                                 environment.getArgument("minimumLatitude")),
                                         new Coordinate(environment.getArgument("maximumLongitude"),
                                                 environment.getArgument("maximumLatitude")))).stream()
-                                        .map(b -> b.getStation())
                                         .sorted((s1, s2) -> s1.getName().toString().compareTo(s2.getName().toString()))
                                         .collect(Collectors.toList())
                                 )
@@ -3584,9 +3601,10 @@ public class TransmodelIndexGraphQLSchema {
      * Resolves all AlertPatches that are relevant for the supplied TripTimeShort.
      *
      * @param tripTimeShort
+     * @param requestCache the alerts of stops and trips already looked up for this request
      * @return
      */
-    private Collection<AlertPatch> getAllRelevantAlerts(TripTimeShort tripTimeShort) {
+    private Collection<AlertPatch> getAllRelevantAlerts(TripTimeShort tripTimeShort, TransmodelRequestCache requestCache) {
         AgencyAndId tripId = tripTimeShort.tripId;
         Trip trip = index.tripForId.get(tripId);
         AgencyAndId routeId = trip.getRoute().getId();
@@ -3595,40 +3613,28 @@ public class TransmodelIndexGraphQLSchema {
 
         Stop stop = index.stopForId.get(stopId);
 
-        Collection<AlertPatch> allAlerts = new HashSet<>();
+        // Trip, route, agency and pattern
+        Collection<AlertPatch> allAlerts = new HashSet<>(requestCache.getAlertsForTripHierarchy(trip));
 
         if (stop != null) {
             AgencyAndId parentStopId = stop.getParentStationAgencyAndId();
 
-            // Quay
-            allAlerts.addAll(index.getAlertsForStopId(stopId));
+            // Quay, StopPlace and MultimodalStopPlace
+            allAlerts.addAll(requestCache.getAlertsForStopHierarchy(stop));
             allAlerts.addAll(index.getAlertsForStopAndTrip(stopId, tripId));
             allAlerts.addAll(index.getAlertsForStopAndRoute(stopId, routeId));
-            // StopPlace
-            allAlerts.addAll(index.getAlertsForStopId(parentStopId));
             allAlerts.addAll(index.getAlertsForStopAndTrip(parentStopId, tripId));
             allAlerts.addAll(index.getAlertsForStopAndRoute(parentStopId, routeId));
 
             if (stop.getMultiModalStation() != null) {
-                // MultimodalStopPlace
                 AgencyAndId multimodalStopId = new AgencyAndId(stopId.getAgencyId(),
                     stop.getMultiModalStation()
                 );
-                allAlerts.addAll(index.getAlertsForStopId(multimodalStopId));
                 allAlerts.addAll(index.getAlertsForStopAndTrip(multimodalStopId, tripId));
                 allAlerts.addAll(index.getAlertsForStopAndRoute(multimodalStopId, routeId));
             }
         }
 
-        // Trip
-        allAlerts.addAll(index.getAlertsForTripId(tripId));
-        // Route
-        allAlerts.addAll(index.getAlertsForRouteId(routeId));
-        // Agency
-        allAlerts.addAll(index.getAlertsForAgency(trip.getRoute().getAgency()));
-        // TripPattern
-        allAlerts.addAll(index.getAlertsForPattern(index.patternForTrip.get(trip)));
-
         long serviceDayMillis = 1000 * tripTimeShort.serviceDay;
         long arrivalMillis = 1000 * tripTimeShort.realtimeArrival;
         long departureMillis = 1000 * tripTimeShort.realtimeDeparture;
@@ -4611,6 +4617,18 @@ public class TransmodelIndexGraphQLSchema {
                 .build();
     }
 
+    /**
+     * @return the lookups shared by the data fetchers of the request being executed. Queries executed without a
+     * TransmodelApiContext, as in tests, get a cache of their own for each field.
+     */
+    private TransmodelRequestCache requestCache(DataFetchingEnvironment environment) {
+        Object context = environment.getContext();
+        if (context instanceof TransmodelApiContext) {
+            return ((TransmodelApiContext) context).requestCache;
+        }
+        return new TransmodelRequestCache(index);
+    }
+
     private Stream<TripTimeShort> getTripTimesForStop(
             Stop stop,
             Long startTimeSeconds,
@@ -4621,7 +4639,8 @@ public class TransmodelIndexGraphQLSchema {
             Integer departuresPerLineAndDestinationDisplay,
             Set<String> authorityIdsWhiteListed,
             Set<AgencyAndId> lineIdsWhiteListed,
-            Set<TraverseMode> modesWhiteListed
+            Set<TraverseMode> modesWhiteListed,
+            TransmodelRequestCache requestCache
     ) {
 
         boolean limitOnDestinationDisplay = departuresPerLineAndDestinationDisplay != null &&
@@ -4631,7 +4650,8 @@ public class TransmodelIndexGraphQLSchema {
         int departuresPerTripPattern = limitOnDestinationDisplay ? departuresPerLineAndDestinationDisplay : numberOfDepartures;
 
         List<StopTimesInPattern> stopTimesInPatterns = index.stopTimesForStop(
-                stop, startTimeSeconds, timeRage, departuresPerTripPattern, omitNonBoarding, includeCancelledTrips
+                stop, startTimeSeconds, timeRage, departuresPerTripPattern, omitNonBoarding, includeCancelledTrips,
+                requestCache.getTimetables()
         );
 
         Stream<TripTimeShort> tripTimesStream = stopTimesInPatterns.stream().flatMap(p -> p.times.stream());
@@ -4741,9 +4761,9 @@ public class TransmodelIndexGraphQLSchema {
     }
 
 
-    private boolean isStopPlaceInUse(Stop stop) {
+    private boolean isStopPlaceInUse(Stop stop, TransmodelRequestCache requestCache) {
         for (Stop quay: index.stopsForParentStation.get(stop.getId())) {
-            if (!index.getPatternsForStop(quay,true).isEmpty()) {
+            if (!requestCache.getPatternsForStop(quay).isEmpty()) {
                 return true;
             }
         }
@@ -0,0 +1,86 @@
+package org.opentripplanner.index.transmodel;
+
+import org.opentripplanner.index.util.TimetableCache;
+import org.opentripplanner.model.AgencyAndId;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.model.Trip;
+import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the lookups that the data fetchers of one Transmodel GraphQL request repeat for many objects: the patterns
+ * visiting a stop, the realtime timetables of patterns, and the alerts of stops and trips. A departure board over many
+ * stops asks for the same patterns, timetables and alerts again and again, once for each quay, estimated call and
+ * service journey in the response.
+ *
+ * A new instance is created for each request, in its TransmodelApiContext, so the results never outlive the request.
+ * All collections returned are shared between the data fetchers and must not be modified.
+ */
+public class TransmodelRequestCache {
+
+    private final GraphIndex index;
+
+    private final TimetableCache timetables;
+
+    private final Map<Stop, Collection<TripPattern>> patternsForStop = new ConcurrentHashMap<>();
+
+    private final Map<AgencyAndId, Set<AlertPatch>> alertsForStopHierarchy = new ConcurrentHashMap<>();
+
+    private final Map<Trip, Set<AlertPatch>> alertsForTripHierarchy = new ConcurrentHashMap<>();
+
+    public TransmodelRequestCache(GraphIndex index) {
+        this.index = index;
+        this.timetables = new TimetableCache(index.graph);
+    }
+
+    public TimetableCache getTimetables() {
+        return timetables;
+    }
+
+    /** @return the patterns visiting the stop, including those added by realtime updates */
+    public Collection<TripPattern> getPatternsForStop(Stop stop) {
+        return patternsForStop.computeIfAbsent(stop,
+                s -> Collections.unmodifiableCollection(index.getPatternsForStop(s, true)));
+    }
+
+    /**
+     * @return the alerts on the stop itself, on its parent stop place and on its multimodal stop place. Alerts on
+     * the stop combined with a route or trip are not included.
+     */
+    public Set<AlertPatch> getAlertsForStopHierarchy(Stop stop) {
+        return alertsForStopHierarchy.computeIfAbsent(stop.getId(), stopId -> {
+            Set<AlertPatch> alerts = new HashSet<>(index.getAlertsForStopId(stopId));
+            AgencyAndId parentStopId = stop.getParentStationAgencyAndId();
+            if (parentStopId != null) {
+                alerts.addAll(index.getAlertsForStopId(parentStopId));
+            }
+            if (stop.getMultiModalStation() != null) {
+                alerts.addAll(index.getAlertsForStopId(
+                        new AgencyAndId(stopId.getAgencyId(), stop.getMultiModalStation())));
+            }
+            return Collections.unmodifiableSet(alerts);
+        });
+    }
+
+    /** @return the alerts on the trip, its route, its agency and its pattern */
+    public Set<AlertPatch> getAlertsForTripHierarchy(Trip trip) {
+        return alertsForTripHierarchy.computeIfAbsent(trip, t -> {
+            Set<AlertPatch> alerts = new HashSet<>(index.getAlertsForTripId(t.getId()));
+            alerts.addAll(index.getAlertsForRouteId(t.getRoute().getId()));
+            alerts.addAll(index.getAlertsForAgency(t.getRoute().getAgency()));
+            TripPattern pattern = index.patternForTrip.get(t);
+            if (pattern != null) {
+                alerts.addAll(index.getAlertsForPattern(pattern));
+            }
+            return Collections.unmodifiableSet(alerts);
+        });
+    }
+}
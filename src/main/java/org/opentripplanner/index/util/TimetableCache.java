@@ -0,0 +1,69 @@
+package org.opentripplanner.index.util;
+
+import org.opentripplanner.model.Trip;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the timetables of patterns against a single realtime snapshot, remembering each result. Resolving a
+ * timetable is costly once realtime updates have added or modified trips, because the timetables of the pattern are
+ * then merged into a new one. An API request that lists departures often resolves the same patterns for many stops and
+ * trips, so one instance is meant to be shared by everything that answers the same request. This also guarantees that
+ * all parts of a response are based on the same snapshot.
+ *
+ * The timetables returned are shared and must not be modified.
+ */
+public class TimetableCache {
+
+    private final TimetableSnapshot snapshot;
+
+    private final String feedId;
+
+    private final Map<TripPattern, Map<ServiceDate, Timetable>> timetables = new ConcurrentHashMap<>();
+
+    public TimetableCache(Graph graph) {
+        TimetableSnapshotSource timetableSnapshotSource = graph.timetableSnapshotSource;
+        if (timetableSnapshotSource != null) {
+            snapshot = timetableSnapshotSource.getTimetableSnapshot();
+            feedId = timetableSnapshotSource.getFeedId();
+        } else {
+            snapshot = null;
+            feedId = null;
+        }
+    }
+
+    /** @return the snapshot the timetables are resolved against, or null if there are no realtime updates */
+    public TimetableSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the timetable of the pattern on the given date, with realtime updates, or the scheduled timetable if
+     * there are no realtime updates.
+     */
+    public Timetable resolve(TripPattern pattern, ServiceDate serviceDate) {
+        if (snapshot == null) {
+            return pattern.scheduledTimetable;
+        }
+        if (serviceDate == null) {
+            return snapshot.resolve(pattern, null);
+        }
+        return timetables.computeIfAbsent(pattern, p -> new ConcurrentHashMap<>())
+                .computeIfAbsent(serviceDate, date -> snapshot.resolve(pattern, date));
+    }
+
+    /** @return the pattern added by realtime updates for the trip on the given date, or null if there is none */
+    public TripPattern getLastAddedTripPattern(Trip trip, ServiceDate serviceDate) {
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getLastAddedTripPattern(feedId, trip.getId().getId(), serviceDate);
+    }
+}
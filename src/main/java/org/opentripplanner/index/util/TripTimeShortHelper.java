@@ -8,11 +8,9 @@ import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.core.ServiceDay;
 import org.opentripplanner.routing.edgetype.Timetable;
-import org.opentripplanner.routing.edgetype.TimetableSnapshot;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.trippattern.TripTimes;
-import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 
 import java.text.ParseException;
 import java.util.ArrayList;
@@ -28,24 +26,21 @@ public class TripTimeShortHelper {
     }
 
     public List<TripTimeShort> getTripTimesShort(Trip trip, ServiceDate serviceDate) {
+        return getTripTimesShort(trip, serviceDate, new TimetableCache(index.graph));
+    }
+
+    /**
+     * @param timetables resolves the realtime timetables, possibly shared with the rest of the request
+     */
+    public List<TripTimeShort> getTripTimesShort(Trip trip, ServiceDate serviceDate, TimetableCache timetables) {
         final ServiceDay serviceDay = new ServiceDay(index.graph, serviceDate,
                                                             index.graph.getCalendarService(), trip.getRoute().getAgency().getId());
-        TimetableSnapshotSource timetableSnapshotSource = index.graph.timetableSnapshotSource;
-        Timetable timetable = null;
-        if (timetableSnapshotSource != null) {
-            TimetableSnapshot timetableSnapshot = timetableSnapshotSource.getTimetableSnapshot();
-            if (timetableSnapshot != null) {
-                // Check if realtime-data is available for trip
-                TripPattern pattern = timetableSnapshot.getLastAddedTripPattern(timetableSnapshotSource.getFeedId(), trip.getId().getId(), serviceDate);
-                if (pattern == null) {
-                    pattern = index.patternForTrip.get(trip);
-                }
-                timetable = timetableSnapshot.resolve(pattern, serviceDate);
-            }
-        }
-        if (timetable == null) {
-            timetable = index.patternForTrip.get(trip).scheduledTimetable;
+        // Check if realtime-data is available for trip
+        TripPattern pattern = timetables.getLastAddedTripPattern(trip, serviceDate);
+        if (pattern == null) {
+            pattern = index.patternForTrip.get(trip);
         }
+        Timetable timetable = timetables.resolve(pattern, serviceDate);
 
         // This check is made here to avoid changing TripTimeShort.fromTripTimes
         TripTimes times = timetable.getTripTimes(timetable.getTripIndex(trip.getId()));
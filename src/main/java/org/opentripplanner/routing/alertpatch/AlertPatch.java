@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.emptyList;
@@ -121,6 +122,14 @@ public class AlertPatch implements Serializable {
     }
 
     public void apply(Graph graph) {
+        applyToEdges(graph, edge -> graph.addAlertPatch(edge, this));
+    }
+
+    /**
+     * Find the edges of the graph this patch applies to, without modifying the graph.
+     * @param edges receives each of these edges, possibly more than once
+     */
+    public void applyToEdges(Graph graph, Consumer<Edge> edges) {
         Agency agency = null;
         if (feedId != null) {
             Map<String, Agency> agencies = graph.index.agenciesForFeedId.get(feedId);
@@ -162,7 +171,7 @@ public class AlertPatch implements Serializable {
                    }
                    return true;
                })
-               .peek(tripPattern -> addAlertPatchToEdges(graph, stop, tripPattern))
+               .peek(tripPattern -> addAlertPatchToEdges(edges, stop, tripPattern))
                .collect(Collectors.toList());
             } else {
                 // Find patterns for the feed.
@@ -179,8 +188,8 @@ public class AlertPatch implements Serializable {
                     }
                     for (int i = 0; i < tripPattern.stopPattern.stops.length; i++) {
                         if (stop == null || stop.equals(tripPattern.stopPattern.stops[i])) {
-                            graph.addAlertPatch(tripPattern.boardEdges[i], this);
-                            graph.addAlertPatch(tripPattern.alightEdges[i], this);
+                            edges.accept(tripPattern.boardEdges[i]);
+                            edges.accept(tripPattern.alightEdges[i]);
                         }
                     }
                 }
@@ -190,14 +199,14 @@ public class AlertPatch implements Serializable {
             if (transitStop != null) {
                 for (Edge edge : transitStop.getOutgoing()) {
                     if (edge instanceof PreBoardEdge) {
-                        graph.addAlertPatch(edge, this);
+                        edges.accept(edge);
                         break;
                     }
                 }
 
                 for (Edge edge : transitStop.getIncoming()) {
                     if (edge instanceof PreAlightEdge) {
-                        graph.addAlertPatch(edge, this);
+                        edges.accept(edge);
                         break;
                     }
                 }
@@ -208,11 +217,11 @@ public class AlertPatch implements Serializable {
         }
     }
 
-    private void addAlertPatchToEdges(Graph graph, Stop stop, TripPattern tripPattern) {
+    private void addAlertPatchToEdges(Consumer<Edge> edges, Stop stop, TripPattern tripPattern) {
         for (int i = 0; i < tripPattern.stopPattern.stops.length; i++) {
             if (stop == null || stop.equals(tripPattern.stopPattern.stops[i])) {
-                graph.addAlertPatch(tripPattern.boardEdges[i], this);
-                graph.addAlertPatch(tripPattern.alightEdges[i], this);
+                edges.accept(tripPattern.boardEdges[i]);
+                edges.accept(tripPattern.alightEdges[i]);
             }
         }
     }
@@ -14,7 +14,7 @@
 package org.opentripplanner.routing.algorithm;
 
 import com.beust.jcommander.internal.Lists;
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
@@ -28,6 +28,7 @@ import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.util.DateUtils;
 import org.opentripplanner.util.monitoring.MonitoringStore;
 import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,10 +65,12 @@ public class AStar {
 
         public State u;
         public ShortestPathTree spt;
-        BinHeap<State> pq;
+        OTPPriorityQueue<State> pq;
         RemainingWeightHeuristic heuristic;
         public RoutingContext rctx;
         public int nVisited;
+        /** States taken from the queue that had been dominated since they were inserted. */
+        public int nDominatedPops;
         public List<State> targetAcceptedStates;
         public RunStatus status;
         private RoutingRequest options;
@@ -121,10 +124,14 @@ public class AStar {
         // Since initial states can be multiple, heuristic cannot depend on the initial state.
         // Initializing the bidirectional heuristic is a pretty complicated operation that involves searching through
         // the streets around the origin and destination.
+        RoutingMetrics metrics = runState.rctx.graph.routingMetrics;
+        long initStart = System.nanoTime();
         runState.heuristic.initialize(runState.options, abortTime);
+        metrics.recordPhase(RoutingMetrics.Phase.HEURISTIC, initStart);
         if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
             LOG.warn("Timeout during initialization of goal direction heuristic.");
             options.rctx.debugOutput.timedOut = true;
+            metrics.recordTimeout();
             runState = null; // Search timed out
             return;
         }
@@ -135,8 +142,9 @@ public class AStar {
         // before reaching its target.
         int initialSize = runState.rctx.graph.getVertices().size();
         initialSize = (int) Math.ceil(2 * (Math.sqrt((double) initialSize + 1)));
-        runState.pq = new BinHeap<>(initialSize);
+        runState.pq = options.priorityQueueFactory.create(initialSize);
         runState.nVisited = 0;
+        runState.nDominatedPops = 0;
         runState.targetAcceptedStates = Lists.newArrayList();
         
         if (addToQueue) {
@@ -164,6 +172,7 @@ public class AStar {
         if (!runState.spt.visit(runState.u)) {
             // state has been dominated since it was added to the priority queue, so it is
             // not in any optimal path. drop it on the floor and try the next one.
+            runState.nDominatedPops += 1;
             return false;
         }
         
@@ -242,6 +251,7 @@ public class AStar {
     }
     
     void runSearch(long abortTime){
+        long searchStart = System.nanoTime();
         /* the core of the A* algorithm */
         while (!runState.pq.empty()) { // Until the priority queue is empty:
             /*
@@ -254,9 +264,17 @@ public class AStar {
                 // allows returning a partial list results even when a timeout occurs.
                 runState.options.rctx.aborted = true; // signal search cancellation up to higher stack frames
                 runState.options.rctx.debugOutput.timedOut = true; // signal timeout in debug output object
+                runState.rctx.graph.routingMetrics.recordTimeout();
 
                 break;
             }
+            // A search cancelled by interrupting its thread, e.g. one of the parallel searches for alternative
+            // itineraries, is aborted in the same way. The interrupt status is kept for the caller.
+            if (Thread.currentThread().isInterrupted()) {
+                LOG.debug("Search interrupted. origin={} target={}", runState.rctx.origin, runState.rctx.target);
+                runState.options.rctx.aborted = true;
+                break;
+            }
             
             /*
              * Get next best state and, if it hasn't already been dominated, add adjacent states to queue.
@@ -304,6 +322,9 @@ public class AStar {
             }
 
         }
+        RoutingMetrics metrics = runState.rctx.graph.routingMetrics;
+        metrics.recordPhase(RoutingMetrics.Phase.SEARCH, searchStart);
+        metrics.recordSearch(runState.nVisited, runState.nVisited + runState.nDominatedPops);
     }
 
     /** @return the shortest path, or null if none is found */
@@ -370,6 +391,16 @@ public class AStar {
         }
     }
 
+    /** @return the number of states expanded by the last search. */
+    public int getVisitedCount() {
+        return runState == null ? 0 : runState.nVisited;
+    }
+
+    /** @return the number of states removed from the queue by the last search without being expanded. */
+    public int getDominatedPopCount() {
+        return runState == null ? 0 : runState.nDominatedPops;
+    }
+
     public List<GraphPath> getPathsToTarget() {
         if (runState == null || runState.targetAcceptedStates == null) {
             return Collections.emptyList();
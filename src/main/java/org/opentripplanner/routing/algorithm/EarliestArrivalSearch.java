@@ -21,6 +21,7 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.util.DateUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,9 +49,14 @@ public class EarliestArrivalSearch {
         return this.getShortestPathTree(req, timeoutSeconds, null);
     }
 
+    /**
+     * @param relTimeout the time in seconds the search may take, or a value not above zero for no timeout. A search
+     * that times out sets the aborted flag of the routing context of the request, and returns the tree built so far.
+     */
     public ShortestPathTree getShortestPathTree(RoutingRequest options, double relTimeout,
             SearchTerminationStrategy terminationStrategy) {
-        
+        long abortTime = DateUtils.absoluteTimeout(relTimeout);
+
         // clone options before modifying, otherwise disabling resource limiting will cause 
         // SPT cache misses for subsequent requests.
         options = options.clone();
@@ -75,6 +81,11 @@ public class EarliestArrivalSearch {
         pq.insert(initialState, 0);
 
         while (!pq.empty()) {
+            if (abortTime < Long.MAX_VALUE && System.currentTimeMillis() > abortTime) {
+                // The cloned options share the routing context of the caller
+                options.rctx.aborted = true;
+                break;
+            }
             State u = pq.extract_min();
             Vertex u_vertex = u.getVertex();
             if (!spt.visit(u))
@@ -0,0 +1,495 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm;
+
+import org.opentripplanner.graph_builder.module.NearbyStopFinder;
+import org.opentripplanner.graph_builder.module.NearbyStopFinder.StopAtDistance;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.PreAlightEdge;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A round-based transit search in the style of RAPTOR (Delling, Pajor and Werneck, "Round-Based Public Transit
+ * Routing"). Instead of exploring the graph edge by edge, round k scans the stop sequence of every TripPattern passing
+ * through a stop that was improved in round k-1, riding the earliest trip that can be boarded there, and then walks
+ * the precomputed SimpleTransfers out of the stops that were improved by those rides. After round k the earliest
+ * arrival at the destination using at most k vehicles is known, so one pass yields the Pareto set of itineraries over
+ * arrival time and number of transfers, where the A* search needs a full search per itinerary.
+ *
+ * The walks to and from transit come from street searches with the NearbyStopFinder, within the maxWalkDistance of the
+ * request but no further than MAX_ACCESS_EGRESS_METERS, and count against the timeout of the search. Each journey found is turned
+ * back into a GraphPath by traversing the edges the A* search would have used (the street edges of the walks, the
+ * board, hop, dwell and alight edges of the pattern and the transfers), so that the itineraries go through the usual
+ * path conversion and carry the usual times and weights. Journeys that cannot be traversed under the restrictions of
+ * the request are dropped.
+ *
+ * Only depart-after searches walking to, from and between stops are supported, see supports(). Frequency-based trips
+ * are not considered. PathDiscardingRaptorStateStore is not used because it only keeps the times at each stop, not
+ * how they were reached.
+ */
+public class RaptorSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorSearch.class);
+
+    /**
+     * The furthest the walks to and from transit may go. maxWalkDistance is unlimited by default, which would make
+     * each of these walks a search of the whole street network.
+     */
+    public static final double MAX_ACCESS_EGRESS_METERS = 2000;
+
+    private final RoutingRequest options;
+
+    private final Graph graph;
+
+    /** The best label at each stop over all rounds so far. */
+    private final Map<TransitStop, Label> bestLabels = new HashMap<>();
+
+    /** The walk from each stop near the destination to the destination. */
+    private final Map<TransitStop, StopAtDistance> egress = new HashMap<>();
+
+    /** The earliest arrival at the destination over all rounds so far, used to prune labels that cannot lead there. */
+    private long bestArrivalAtTarget = Long.MAX_VALUE;
+
+    /**
+     * @param options a depart-after request with a routing context, for which supports() returns true.
+     */
+    public RaptorSearch(RoutingRequest options) {
+        this.options = options;
+        this.graph = options.rctx.graph;
+    }
+
+    /**
+     * @return whether this search can plan the given request: a depart-after transit request walking to, from and
+     * between stops, on a graph with streets and a transit index.
+     */
+    public static boolean supports(RoutingRequest options) {
+        TraverseModeSet modes = options.modes;
+        return !options.arriveBy && modes.isTransit() && !modes.getBicycle() && !modes.getCar()
+                && !options.allowBikeRental && !options.parkAndRide && !options.bikeParkAndRide
+                && !options.kissAndRide && !options.rideAndKiss && options.startingTransitTripId == null
+                && options.rctx != null && options.rctx.origin != null && options.rctx.target != null
+                && options.rctx.graph.hasStreets && options.rctx.graph.index != null;
+    }
+
+    /**
+     * Run the search and return a path for each journey of the Pareto set, in order of increasing number of rides,
+     * hence decreasing arrival time. The search stops after the last round that completes within the timeout, and
+     * returns the journeys found so far.
+     *
+     * @param timeoutSeconds the time the search may take, or a value not above zero for no timeout.
+     */
+    public List<GraphPath> getPaths(double timeoutSeconds) {
+        long startNanos = System.nanoTime();
+        long deadline = timeoutSeconds > 0 ? startNanos + (long) (timeoutSeconds * 1e9) : Long.MAX_VALUE;
+        List<Journey> journeys = new ArrayList<>();
+
+        NearbyStopFinder stopFinder = new NearbyStopFinder(graph,
+                Math.min(options.maxWalkDistance, MAX_ACCESS_EGRESS_METERS), true);
+        List<StopAtDistance> accessWalks = findStops(stopFinder, false, deadline);
+        List<StopAtDistance> egressWalks = accessWalks == null ? null : findStops(stopFinder, true, deadline);
+        if (egressWalks == null) {
+            LOG.debug("RAPTOR search timed out while walking to and from transit");
+            graph.routingMetrics.recordTimeout();
+            options.rctx.debugOutput.timedOut = true;
+            graph.routingMetrics.recordPhase(RoutingMetrics.Phase.SEARCH, startNanos);
+            return Collections.emptyList();
+        }
+        Map<TransitStop, Label> improved = new HashMap<>();
+        for (StopAtDistance walk : accessWalks) {
+            long time = options.getSecondsSinceEpoch() + walk.durationSeconds;
+            if (time < bestTime(walk.tstop)) {
+                Label label = new AccessLabel(walk, time);
+                improved.put(walk.tstop, label);
+                bestLabels.put(walk.tstop, label);
+            }
+        }
+        for (StopAtDistance walk : egressWalks) {
+            StopAtDistance existing = egress.get(walk.tstop);
+            if (existing == null || walk.durationSeconds < existing.durationSeconds) {
+                egress.put(walk.tstop, walk);
+            }
+        }
+        LOG.debug("{} stops near the origin, {} near the destination", improved.size(), egress.size());
+
+        int maxRounds = options.maxTransfers + 1;
+        for (int round = 1; round <= maxRounds && !improved.isEmpty() && !egress.isEmpty(); round++) {
+            if (System.nanoTime() > deadline) {
+                LOG.debug("RAPTOR search timed out after {} rounds", round - 1);
+                graph.routingMetrics.recordTimeout();
+                options.rctx.debugOutput.timedOut = true;
+                break;
+            }
+            // Boarding always starts from the labels of the previous rounds, never from one made in this round
+            Map<TransitStop, Label> previous = new HashMap<>(bestLabels);
+            Map<TransitStop, Label> rides = scanPatterns(improved.keySet(), previous);
+            Journey journey = null;
+            for (Label ride : rides.values()) {
+                StopAtDistance walk = egress.get(ride.stop);
+                if (walk != null && ride.time + walk.durationSeconds < bestArrivalAtTarget) {
+                    bestArrivalAtTarget = ride.time + walk.durationSeconds;
+                    journey = new Journey(ride, walk);
+                }
+            }
+            if (journey != null) {
+                journeys.add(journey);
+            }
+            improved = new HashMap<>(rides);
+            relaxTransfers(rides, improved);
+        }
+        graph.routingMetrics.recordPhase(RoutingMetrics.Phase.SEARCH, startNanos);
+
+        List<GraphPath> paths = new ArrayList<>();
+        for (Journey journey : journeys) {
+            GraphPath path = journey.toGraphPath();
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        LOG.debug("RAPTOR search found {} journeys, {} of which could be traversed", journeys.size(), paths.size());
+        return paths;
+    }
+
+    /**
+     * Find the stops within walking distance of the origin, or of the destination if reverse is true. The searches run
+     * on copies of the request with a routing context of their own, which share the temporary vertices of the main
+     * routing context, so they must not be cleaned up.
+     *
+     * @param deadline the value of System.nanoTime() after which the search gives up, or Long.MAX_VALUE for none
+     * @return the stops found, or null if the deadline passed
+     */
+    private List<StopAtDistance> findStops(NearbyStopFinder stopFinder, boolean reverse, long deadline) {
+        double timeoutSeconds = -1;
+        if (deadline != Long.MAX_VALUE) {
+            timeoutSeconds = (deadline - System.nanoTime()) / 1e9;
+            if (timeoutSeconds <= 0) {
+                return null;
+            }
+        }
+        RoutingRequest walkRequest = options.clone();
+        walkRequest.setModes(new TraverseModeSet(TraverseMode.WALK));
+        walkRequest.setArriveBy(reverse);
+        walkRequest.clampInitialWait = 0L;
+        if (reverse) {
+            walkRequest.setRoutingContext(graph, null, options.rctx.target);
+        } else {
+            walkRequest.setRoutingContext(graph, options.rctx.origin, null);
+        }
+        List<StopAtDistance> stops = stopFinder.findNearbyStopsViaStreets(walkRequest, timeoutSeconds);
+        return walkRequest.rctx.aborted ? null : stops;
+    }
+
+    /**
+     * Scan each pattern passing through one of the given stops, from the first of those stops onwards.
+     * @return the labels of the stops whose arrival time was improved by riding a vehicle.
+     */
+    private Map<TransitStop, Label> scanPatterns(Iterable<TransitStop> stops, Map<TransitStop, Label> previous) {
+        Map<TripPattern, Integer> firstStopIndex = new HashMap<>();
+        for (TransitStop stop : stops) {
+            for (TripPattern pattern : graph.index.patternsForStop.get(stop.getStop())) {
+                if (!options.modes.contains(pattern.mode) || options.routeIsBanned(pattern.route)) {
+                    continue;
+                }
+                for (int i = 0; i < pattern.stopVertices.length; i++) {
+                    if (pattern.stopVertices[i] == stop) {
+                        firstStopIndex.merge(pattern, i, Math::min);
+                        break;
+                    }
+                }
+            }
+        }
+        Map<TransitStop, Label> rides = new HashMap<>();
+        for (Map.Entry<TripPattern, Integer> entry : firstStopIndex.entrySet()) {
+            scanPattern(entry.getKey(), entry.getValue(), previous, rides);
+        }
+        return rides;
+    }
+
+    private void scanPattern(TripPattern pattern, int firstStop, Map<TransitStop, Label> previous,
+            Map<TransitStop, Label> rides) {
+        int nStops = pattern.stopVertices.length;
+        Boarding boarding = null;
+        for (int i = firstStop; i < nStops; i++) {
+            TransitStop stop = pattern.stopVertices[i];
+            if (boarding != null && pattern.alightEdges[i] != null && !boarding.trip.isCancelledStop(i)) {
+                long arrival = boarding.day.time(boarding.trip.getArrivalTime(i)) + options.alightSlack
+                        + options.getAlightTime(pattern.route.getTransportSubmode());
+                if (arrival < Math.min(bestTime(stop), bestArrivalAtTarget)) {
+                    Label label = new RideLabel(stop, arrival, boarding.from, pattern, boarding.stopIndex, i);
+                    rides.put(stop, label);
+                    bestLabels.put(stop, label);
+                }
+            }
+            Label from = previous.get(stop);
+            if (from != null && i < nStops - 1 && pattern.boardEdges[i] != null) {
+                long slack = from.hasRidden() ? options.transferSlack - options.alightSlack : options.boardSlack;
+                long earliest = from.time + slack + options.getBoardTime(pattern.route.getTransportSubmode());
+                // Compare with the departure of the current trip at this stop, not where it was boarded
+                long current = boarding == null ? Long.MAX_VALUE : boarding.day.time(boarding.trip.getDepartureTime(i));
+                if (earliest <= current) {
+                    Boarding earlier = findEarliestTrip(pattern, i, earliest);
+                    if (earlier != null && earlier.departure < current) {
+                        earlier.from = from;
+                        boarding = earlier;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the earliest trip of the pattern that can be boarded at the given stop at or after the given time, on any
+     * of the service days of the request, or null if there is none.
+     */
+    private Boarding findEarliestTrip(TripPattern pattern, int stopIndex, long earliest) {
+        Boarding best = null;
+        for (ServiceDay serviceDay : options.rctx.serviceDays) {
+            if (!serviceDay.anyServiceRunning(pattern.getServices())) {
+                continue;
+            }
+            Timetable timetable = pattern.getUpdatedTimetable(options, serviceDay);
+            int time = serviceDay.secondsSinceMidnight(earliest);
+            Iterator<TripTimes> departures = timetable.getDeparturesFrom(stopIndex, time);
+            // Without an index, look at all the trips, in no particular order
+            boolean sorted = departures != null;
+            if (!sorted) {
+                departures = timetable.tripTimes.iterator();
+            }
+            while (departures.hasNext()) {
+                TripTimes trip = departures.next();
+                if (trip.getNumStops() <= stopIndex) continue;
+                int departureTime = trip.getDepartureTime(stopIndex);
+                if (departureTime < time || !canBoard(trip, serviceDay, stopIndex)) continue;
+                long departure = serviceDay.time(departureTime);
+                if (best == null || departure < best.departure) {
+                    best = new Boarding(trip, serviceDay, stopIndex, departure);
+                }
+                if (sorted) break;
+            }
+        }
+        return best;
+    }
+
+    private boolean canBoard(TripTimes trip, ServiceDay serviceDay, int stopIndex) {
+        if (trip.isCanceled() || trip.isCancelledStop(stopIndex) || !serviceDay.serviceRunning(trip.serviceCode)) {
+            return false;
+        }
+        if (options.tripIsBanned(trip.trip)) {
+            return false;
+        }
+        if (options.bannedTrips.containsKey(trip.trip.getId())
+                && options.bannedTrips.get(trip.trip.getId()).contains(stopIndex)) {
+            return false;
+        }
+        return !(options.wheelchairAccessible && trip.trip.getWheelchairAccessible() == 2);
+    }
+
+    /** Walk the transfers out of the stops reached by riding a vehicle, adding the stops they improve. */
+    private void relaxTransfers(Map<TransitStop, Label> rides, Map<TransitStop, Label> improved) {
+        for (Label ride : rides.values()) {
+            for (Edge edge : ride.stop.getOutgoing()) {
+                if (!(edge instanceof SimpleTransfer)) continue;
+                SimpleTransfer transfer = (SimpleTransfer) edge;
+                if (transfer.getDistance() > options.getMaxTransferWalkDistance()) continue;
+                TransitStop to = (TransitStop) transfer.getToVertex();
+                long arrival = ride.time + (long) Math.ceil(transfer.getDistance() / options.walkSpeed);
+                if (arrival < Math.min(bestTime(to), bestArrivalAtTarget)) {
+                    Label label = new TransferLabel(to, arrival, ride, transfer);
+                    improved.put(to, label);
+                    bestLabels.put(to, label);
+                }
+            }
+        }
+    }
+
+    private long bestTime(TransitStop stop) {
+        Label label = bestLabels.get(stop);
+        return label == null ? Long.MAX_VALUE : label.time;
+    }
+
+    private static State traverse(State state, Edge edge) {
+        if (state == null || edge == null) {
+            return null;
+        }
+        return edge.traverse(state);
+    }
+
+    private static State traverse(State state, List<Edge> edges) {
+        if (edges != null) {
+            for (Edge edge : edges) {
+                state = traverse(state, edge);
+            }
+        }
+        return state;
+    }
+
+    /** A trip boarded at some stop of a pattern, and the label of the stop it was boarded from. */
+    private static class Boarding {
+        final TripTimes trip;
+        final ServiceDay day;
+        final int stopIndex;
+        final long departure;
+        Label from;
+
+        Boarding(TripTimes trip, ServiceDay day, int stopIndex, long departure) {
+            this.trip = trip;
+            this.day = day;
+            this.stopIndex = stopIndex;
+            this.departure = departure;
+        }
+    }
+
+    /** The arrival at a stop, and how it was reached from the label at the previous stop of the journey. */
+    private static abstract class Label {
+        final TransitStop stop;
+        /** Arrival time in seconds since the epoch, including alight slack after a ride. */
+        final long time;
+        final Label previous;
+
+        Label(TransitStop stop, long time, Label previous) {
+            this.stop = stop;
+            this.time = time;
+            this.previous = previous;
+        }
+
+        /** @return whether a vehicle was ridden to reach this label. */
+        boolean hasRidden() {
+            return previous != null;
+        }
+
+        /** @return the state after following the edges from the previous label to this one, or null if impossible. */
+        abstract State traverse(State state);
+    }
+
+    private static class AccessLabel extends Label {
+        final StopAtDistance walk;
+
+        AccessLabel(StopAtDistance walk, long time) {
+            super(walk.tstop, time, null);
+            this.walk = walk;
+        }
+
+        @Override
+        State traverse(State state) {
+            return RaptorSearch.traverse(state, walk.edges);
+        }
+    }
+
+    private static class RideLabel extends Label {
+        final TripPattern pattern;
+        final int boardIndex;
+        final int alightIndex;
+
+        RideLabel(TransitStop stop, long time, Label previous, TripPattern pattern, int boardIndex, int alightIndex) {
+            super(stop, time, previous);
+            this.pattern = pattern;
+            this.boardIndex = boardIndex;
+            this.alightIndex = alightIndex;
+        }
+
+        @Override
+        State traverse(State state) {
+            TransitStop boardStop = pattern.stopVertices[boardIndex];
+            for (Edge edge : boardStop.getOutgoing()) {
+                if (edge instanceof PreBoardEdge) {
+                    state = RaptorSearch.traverse(state, edge);
+                    break;
+                }
+            }
+            state = RaptorSearch.traverse(state, pattern.boardEdges[boardIndex]);
+            for (int i = boardIndex; i < alightIndex; i++) {
+                if (i > boardIndex) {
+                    state = RaptorSearch.traverse(state, pattern.dwellEdges[i]);
+                }
+                state = RaptorSearch.traverse(state, pattern.hopEdges[i]);
+            }
+            state = RaptorSearch.traverse(state, pattern.alightEdges[alightIndex]);
+            for (Edge edge : stop.getIncoming()) {
+                if (edge instanceof PreAlightEdge) {
+                    return RaptorSearch.traverse(state, edge);
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class TransferLabel extends Label {
+        final SimpleTransfer transfer;
+
+        TransferLabel(TransitStop stop, long time, Label previous, SimpleTransfer transfer) {
+            super(stop, time, previous);
+            this.transfer = transfer;
+        }
+
+        @Override
+        State traverse(State state) {
+            return RaptorSearch.traverse(state, transfer);
+        }
+    }
+
+    /** The ride reaching a stop near the destination, and the walk from there to the destination. */
+    private class Journey {
+        final Label last;
+        final StopAtDistance walk;
+
+        Journey(Label last, StopAtDistance walk) {
+            this.last = last;
+            this.walk = walk;
+        }
+
+        /** @return the path through the graph following this journey, or null if the request cannot follow it. */
+        GraphPath toGraphPath() {
+            Deque<Label> labels = new ArrayDeque<>();
+            for (Label label = last; label != null; label = label.previous) {
+                labels.push(label);
+            }
+            State state = new State(options);
+            for (Label label : labels) {
+                state = label.traverse(state);
+                if (state == null || state.getVertex() != label.stop) {
+                    return null;
+                }
+            }
+            state = traverse(state, walk.edges);
+            if (state == null || state.getVertex() != options.rctx.target) {
+                return null;
+            }
+            return new GraphPath(state, true);
+        }
+    }
+
+}
@@ -15,7 +15,7 @@ package org.opentripplanner.routing.algorithm.strategies;
 
 import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
-import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.common.pqueue.OTPPriorityQueue;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.edgetype.StationStopEdge;
@@ -27,10 +27,12 @@ import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -81,9 +83,16 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     Set<Vertex> preTransitVertices;
 
     /**
-     * A lower bound on the weight of the lowest-cost path to the target (the vertex at which the main search ends)
-     * from each vertex within walking distance of the target. As the heuristic progressively improves, this map will
-     * include lower bounds on path weights for an increasing number of vertices on board transit.
+     * The weight of the lowest-cost path to the target (the vertex at which the main search ends) from each street
+     * vertex within walking distance of the target. This may be shared with other searches towards the same target
+     * through the TargetStreetSearchCache, so it must not be modified.
+     */
+    TObjectDoubleMap<Vertex> egressWeights;
+
+    /**
+     * Lower bounds on the weight of the lowest-cost path to the target from the vertices not in egressWeights. As the
+     * heuristic progressively improves, this map will include lower bounds on path weights for an increasing number
+     * of vertices on board transit.
      */
     TObjectDoubleMap<Vertex> postBoardingWeights;
 
@@ -96,7 +105,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
     double maxWeightSeen = 0;
 
     // The priority queue for the interleaved backward search through the transit network.
-    BinHeap<Vertex> transitQueue;
+    OTPPriorityQueue<Vertex> transitQueue;
 
     // True when the entire transit network has been explored by the reverse search.
     boolean finished = false;
@@ -126,19 +135,50 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         long start = System.currentTimeMillis();
         this.target = target;
         this.routingRequest = request;
-        transitQueue = new BinHeap<>();
+        transitQueue = request.priorityQueueFactory.create(1000);
+        postBoardingWeights = new TObjectDoubleHashMap<>(100, 0.5f, Double.POSITIVE_INFINITY);
+        // Look up the search around the target before the walk limits are raised below
+        TargetStreetSearchCache cache = graph.targetStreetSearchCache;
+        List<Object> cacheKey = TargetStreetSearchCache.keyFor(request);
+        long cacheGeneration = cache.getGeneration();
+        TargetStreetSearchCache.Result egress = cacheKey == null ? null : cache.get(cacheKey);
         // Forward street search first, mark street vertices around the origin so H evaluates to 0
-        TObjectDoubleMap<Vertex> forwardStreetSearchResults = streetSearch(request, false, abortTime);
+        TObjectDoubleMap<Vertex> forwardStreetSearchResults = streetSearch(request, false, abortTime, null);
         if (forwardStreetSearchResults == null) {
             return; // Search timed out
         }
         preTransitVertices = forwardStreetSearchResults.keySet();
         LOG.debug("end forward street search {} ms", System.currentTimeMillis() - start);
-        postBoardingWeights = streetSearch(request, true, abortTime);
-        if (postBoardingWeights == null) {
-            return; // Search timed out
+        if (egress != null) {
+            // Only the temporary vertices around the target of this request remain to be searched
+            TObjectDoubleMap<Vertex> temporaryWeights = streetSearch(request, true, abortTime, null);
+            if (temporaryWeights == null) {
+                return; // Search timed out
+            }
+            postBoardingWeights.putAll(temporaryWeights);
+            LOG.debug("reused backward street search {} ms", System.currentTimeMillis() - start);
+        } else {
+            egress = new TargetStreetSearchCache.Result();
+            egress.streetWeights = streetSearch(request, true, abortTime, egress);
+            if (egress.streetWeights == null) {
+                return; // Search timed out
+            }
+            if (cacheKey != null) {
+                TargetStreetSearchCache.Result cacheable = egress.withoutTemporaryVertices(target);
+                if (cacheable != null) {
+                    cache.put(cacheKey, cacheable, cacheGeneration);
+                }
+            }
+            LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
+        }
+        egressWeights = egress.streetWeights;
+        for (int i = 0; i < egress.stops.size(); i++) {
+            double weight = egress.stopWeights.get(i);
+            transitQueue.insert(egress.stops.get(i), weight);
+            if (weight > maxWeightSeen) {
+                maxWeightSeen = weight;
+            }
         }
-        LOG.debug("end backward street search {} ms", System.currentTimeMillis() - start);
         // once street searches are done, raise the limits to max
         // because hard walk limiting is incorrect and is observed to cause problems
         // for trips near the cutoff
@@ -167,7 +207,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             // The main search is on the streets, not on transit.
             if (s.isEverBoarded()) {
                 // If we have already ridden transit we must be near the destination. If not the map returns INF.
-                return postBoardingWeights.get(v);
+                return postBoardingWeight(v);
             } else {
                 // We have not boarded transit yet. We have no idea what the weight to the target is so return zero.
                 // We could also use a Euclidean heuristic here.
@@ -181,7 +221,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             // The main search is not currently on a street vertex, it's probably on transit.
             // If the current part of the transit network has been explored, then return the stored lower bound.
             // Otherwise return the highest lower bound yet seen -- this location must have a higher cost than that.
-            double h = postBoardingWeights.get(v);
+            double h = postBoardingWeight(v);
             if (h == Double.POSITIVE_INFINITY) {
                 return maxWeightSeen;
             } else {
@@ -190,6 +230,11 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         }
     }
 
+    /** @return a lower bound on the weight of the path from the given vertex to the target, Infinity if none is known. */
+    private double postBoardingWeight(Vertex v) {
+        return Math.min(egressWeights.get(v), postBoardingWeights.get(v));
+    }
+
     @Override
     public void reset() { }
 
@@ -213,7 +258,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             maxWeightSeen = uWeight;
             // Now that this vertex is closed, we can store its weight for use as a lower bound / heuristic value.
             // We don't implement decrease-key operations though, so check whether a smaller value is already known.
-            double uWeightOld = postBoardingWeights.get(u);
+            double uWeightOld = postBoardingWeight(u);
             if (uWeight < uWeightOld) {
                 // Including when uWeightOld is infinite because the vertex is not yet closed.
                 postBoardingWeights.put(u, uWeight);
@@ -241,7 +286,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
                     continue;
                 }
                 double vWeight = uWeight + edgeWeight;
-                double vWeightOld = postBoardingWeights.get(v);
+                double vWeightOld = postBoardingWeight(v);
                 if (vWeight < vWeightOld) {
                     // Should only happen when vWeightOld is infinite because it is not yet closed.
                     transitQueue.insert(v, vWeight);
@@ -274,9 +319,15 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
      * Perhaps rather than tracking walk distance, we should just check the straight-line radius and
      * only walk within that distance. This would avoid needing to call the main traversal functions.
      *
+     * When searching around the target, the transit stops reached are added to the given result. If that is null, the
+     * rest of the search around the target has been taken from the TargetStreetSearchCache, and only the temporary
+     * vertices of this request around the target are searched.
+     *
      * TODO what if the egress segment is by bicycle or car mode? This is no longer admissible.
      */
-    private TObjectDoubleMap<Vertex> streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime) {
+    private TObjectDoubleMap<Vertex> streetSearch (RoutingRequest rr, boolean fromTarget, long abortTime,
+            TargetStreetSearchCache.Result egress) {
+        boolean temporaryOnly = fromTarget && egress == null;
         LOG.debug("Heuristic street search around the {}.", fromTarget ? "target" : "origin");
         rr = rr.clone();
 
@@ -293,7 +344,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
         TObjectDoubleMap<Vertex> vertices = new TObjectDoubleHashMap<>(100, 0.5f, Double.POSITIVE_INFINITY);
         ShortestPathTree spt = new DominanceFunction.MinimumWeight().getNewShortestPathTree(rr);
         // TODO use normal OTP search for this.
-        BinHeap<State> pq = new BinHeap<State>();
+        OTPPriorityQueue<State> pq = rr.priorityQueueFactory.create(1000);
         Vertex initVertex = fromTarget ? rr.rctx.target : rr.rctx.origin;
         State initState = new State(initVertex, rr);
         pq.insert(initState, 0);
@@ -303,6 +354,9 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             }
             State s = pq.extract_min();
             Vertex v = s.getVertex();
+            if (temporaryOnly && !(v instanceof TemporaryVertex)) {
+                continue;
+            }
 
             boolean initialStop = v instanceof TransitStop && s.backEdge != null && s.backEdge instanceof StationStopEdge;
 
@@ -311,12 +365,8 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             if (v instanceof TransitStop) {
                 // We don't want to continue into the transit network yet, but when searching around the target
                 // place vertices on the transit queue so we can explore the transit network backward later.
-                if (fromTarget) {
-                    double weight = s.getWeight();
-                    transitQueue.insert(v, weight);
-                    if (weight > maxWeightSeen) {
-                        maxWeightSeen = weight;
-                    }
+                if (egress != null) {
+                    egress.addStop(v, s.getWeight());
                 }
                 if (!respectMaxPreTransitWalkDistance) {
                     if (!stopReached) {
@@ -353,7 +403,9 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             }
         }
         LOG.debug("Heuristric street search hit {} vertices.", vertices.size());
-        LOG.debug("Heuristric street search hit {} transit stops.", transitQueue.size());
+        if (egress != null) {
+            LOG.debug("Heuristric street search hit {} transit stops.", egress.stops.size());
+        }
         return vertices;
     }
 
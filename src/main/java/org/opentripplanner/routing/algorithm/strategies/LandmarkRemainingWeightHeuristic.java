@@ -0,0 +1,247 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A remaining weight heuristic for street-only searches that uses the landmark distances computed when the graph was
+ * built. The lower bound on the remaining street distance given by the landmarks is multiplied by the smallest weight
+ * a meter of street can have for the modes of the request.
+ *
+ * That weight follows the way StreetEdge computes weights: walkReluctance only applies to walking, a cyclist's weight
+ * depends on the optimization type and the safety factors of the edges, and a driver's weight is the time at the
+ * highest car speed of any edge. Turn costs, traffic lights and switching to or from a bike only add to this, so the
+ * estimate stays admissible without knowing about them. When the search has no landmark distances, the Euclidean
+ * heuristic is used as it is.
+ */
+public class LandmarkRemainingWeightHeuristic implements RemainingWeightHeuristic {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Guards against float rounding in the stored distances making the estimate exceed the true remaining weight. */
+    private static final double ROUNDING_MARGIN_METERS = 1;
+
+    private final StreetLandmarks landmarks;
+
+    /** Applies to bicycle weights on edges safe enough to count as greenways, see StreetEdge. */
+    private static final double GREENWAY_FACTOR = 0.66;
+
+    private final EuclideanRemainingWeightHeuristic euclidean = new EuclideanRemainingWeightHeuristic();
+
+    /** The landmark distances of the street mode of the current search, or null to only use the Euclidean estimate. */
+    private StreetLandmarks.Distances distances;
+
+    private boolean arriveBy;
+
+    /** Converts meters into weight: the smallest weight a meter of street can have in this search. */
+    private double weightPerMeter;
+
+    /** For each permanent vertex through which the target can be reached: its distances from the landmarks... */
+    private float[][] targetFrom;
+
+    /** ... and to the landmarks. */
+    private float[][] targetTo;
+
+    public LandmarkRemainingWeightHeuristic(StreetLandmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    @Override
+    public void initialize(RoutingRequest options, long abortTime) {
+        euclidean.initialize(options, abortTime);
+        arriveBy = options.arriveBy;
+        distances = options.modes.isTransit() ? null : landmarks.getDistances(options.modes);
+        if (distances == null) {
+            return;
+        }
+        weightPerMeter = minWeightPerMeter(options, landmarks.getEdgeBounds());
+        List<Integer> targetSlots = targetSlots(options.rctx.target);
+        if (targetSlots.isEmpty()) {
+            distances = null;
+            return;
+        }
+        int landmarkCount = distances.getLandmarkCount();
+        targetFrom = new float[targetSlots.size()][landmarkCount];
+        targetTo = new float[targetSlots.size()][landmarkCount];
+        for (int t = 0; t < targetSlots.size(); t++) {
+            int slot = targetSlots.get(t);
+            for (int l = 0; l < landmarkCount; l++) {
+                targetFrom[t][l] = distances.from[l][slot];
+                targetTo[t][l] = distances.to[l][slot];
+            }
+        }
+    }
+
+    /**
+     * @return the smallest weight per meter of any street edge for any of the street modes of the request, following
+     * StreetEdge.doTraverse.
+     */
+    static double minWeightPerMeter(RoutingRequest options, StreetLandmarks.EdgeBounds bounds) {
+        double min = Double.POSITIVE_INFINITY;
+        if (options.modes.getWalk()) {
+            min = Math.min(min, walkWeightPerMeter(options, bounds));
+        }
+        if (options.modes.getBicycle()) {
+            min = Math.min(min, bicycleWeightPerMeter(options, bounds));
+            // where cycling is not allowed, the bike is walked
+            min = Math.min(min, walkWeightPerMeter(options.bikeWalkingOptions, bounds));
+        }
+        if (options.modes.getCar()) {
+            double length = options.wheelchairAccessible ? Math.min(1, bounds.minSlopeSpeedFactor) : 1;
+            double speed = Math.max(bounds.maxCarSpeed, options.carSpeed);
+            min = Math.min(min, length * Math.min(1, options.stairsReluctance) / speed);
+        }
+        if (min == Double.POSITIVE_INFINITY) {
+            return 0;
+        }
+        if (options.kissAndRide || options.parkAndRide || options.rideAndKiss) {
+            min *= Math.min(1, options.preTransitReluctance);
+        }
+        return Math.max(0, min);
+    }
+
+    private static double walkWeightPerMeter(RoutingRequest options, StreetLandmarks.EdgeBounds bounds) {
+        // the slope walk speed length, or the slope speed length for wheelchair users
+        double length = Math.min(bounds.minSlopeWalkFactor, bounds.minSlopeSpeedFactor);
+        return length * Math.min(1, options.walkOnStreetReluctance)
+                * Math.min(options.walkReluctance, options.stairsReluctance) / options.walkSpeed;
+    }
+
+    private static double bicycleWeightPerMeter(RoutingRequest options, StreetLandmarks.EdgeBounds bounds) {
+        double stairs = Math.min(1, options.stairsReluctance);
+        if (options.wheelchairAccessible) {
+            return bounds.minSlopeSpeedFactor * stairs / options.bikeSpeed;
+        }
+        double safety = bounds.minBicycleSafetyFactor;
+        switch (options.optimize) {
+        case SAFE:
+            return safety * stairs / options.bikeSpeed;
+        case GREENWAYS:
+            return safety * GREENWAY_FACTOR * stairs / options.bikeSpeed;
+        case FLAT:
+            // the slope work cost is added as it is, without dividing by the speed
+            return (1 / options.bikeSpeed + bounds.minSlopeWorkFactor) * stairs;
+        case QUICK:
+            return bounds.minSlopeSpeedFactor * stairs / options.bikeSpeed;
+        case TRIANGLE:
+            double length = bounds.minSlopeSpeedFactor * options.triangleTimeFactor
+                    + bounds.minSlopeWorkFactor * options.triangleSlopeFactor
+                    + safety * options.triangleSafetyFactor;
+            return length * stairs / options.bikeSpeed;
+        default:
+            return stairs / options.bikeSpeed;
+        }
+    }
+
+    /**
+     * The target of a request is usually a temporary vertex linked into the middle of some street edges. Any path to it
+     * must then pass through one of the permanent vertices from which those temporary edges lead to it (or, in an
+     * arriveBy search, which they lead to from it), so the remaining distance is at least the distance to the nearest of
+     * these vertices.
+     */
+    private List<Integer> targetSlots(Vertex target) {
+        List<Integer> slots = new ArrayList<>();
+        Set<Vertex> seen = new HashSet<>();
+        Deque<Vertex> queue = new ArrayDeque<>();
+        queue.add(target);
+        seen.add(target);
+        while (!queue.isEmpty()) {
+            Vertex v = queue.poll();
+            if (!(v instanceof TemporaryVertex)) {
+                int slot = landmarks.slotOf(v);
+                if (slot < 0) {
+                    // Some path to the target avoids the landmark vertices: no bound can be given.
+                    return new ArrayList<>();
+                }
+                slots.add(slot);
+                continue;
+            }
+            for (Edge e : arriveBy ? v.getOutgoing() : v.getIncoming()) {
+                Vertex next = arriveBy ? e.getToVertex() : e.getFromVertex();
+                if (seen.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return slots;
+    }
+
+    @Override
+    public double estimateRemainingWeight(State s) {
+        if (distances == null) {
+            return euclidean.estimateRemainingWeight(s);
+        }
+        int slot = landmarks.slotOf(s.getVertex());
+        if (slot < 0) {
+            // temporary vertices are next to the origin or destination, where there is little to gain anyway
+            return 0;
+        }
+        double meters = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < targetFrom.length; t++) {
+            meters = Math.min(meters, lowerBound(slot, t));
+        }
+        return Math.max(0, meters - ROUNDING_MARGIN_METERS) * weightPerMeter;
+    }
+
+    /**
+     * @return the lower bound given by the landmarks on the distance between the vertex in the given slot and the t-th
+     * target vertex, in the direction of travel.
+     */
+    private double lowerBound(int slot, int t) {
+        double bound = 0;
+        for (int l = 0; l < targetFrom[t].length; l++) {
+            float fromVertex = distances.from[l][slot];
+            float toVertex = distances.to[l][slot];
+            float fromTarget = targetFrom[t][l];
+            float toTarget = targetTo[t][l];
+            // d(L, b) <= d(L, a) + d(a, b) and d(a, L) <= d(a, b) + d(b, L), where a is the start and b the end
+            if (arriveBy) {
+                bound = Math.max(bound, difference(fromVertex, fromTarget));
+                bound = Math.max(bound, difference(toTarget, toVertex));
+            } else {
+                bound = Math.max(bound, difference(fromTarget, fromVertex));
+                bound = Math.max(bound, difference(toVertex, toTarget));
+            }
+        }
+        return bound;
+    }
+
+    /** @return a - b, or zero if either distance is unknown. */
+    private static double difference(float a, float b) {
+        if (Float.isInfinite(a) || Float.isInfinite(b)) {
+            return 0;
+        }
+        return a - b;
+    }
+
+    @Override
+    public void reset() {}
+
+    @Override
+    public void doSomeWork() {}
+
+}
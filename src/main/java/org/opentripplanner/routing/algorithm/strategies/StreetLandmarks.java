@@ -0,0 +1,252 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Shortest street distances between a few landmark vertices and every other street vertex of the graph, computed once
+ * per street mode when the graph is built (see StreetLandmarkModule). By the triangle inequality these give a lower
+ * bound on the street distance between any two vertices, which is usually far tighter than the straight-line distance
+ * (ALT: A*, landmarks and triangle inequality).
+ *
+ * Distances are in meters along the edges that the street mode may use, so they do not depend on any routing
+ * parameter and stay valid lower bounds whatever the speeds, reluctances and turn costs of a request.
+ */
+public class StreetLandmarks implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The sets of street permissions for which separate landmark distances can be computed. */
+    public enum StreetMode {
+        WALK(TraverseMode.WALK),
+        /** Cyclists may get off and walk their bike, so they can use any edge open to either mode. */
+        BICYCLE(TraverseMode.BICYCLE, TraverseMode.WALK),
+        CAR(TraverseMode.CAR);
+
+        private final TraverseMode[] edgeModes;
+
+        StreetMode(TraverseMode... edgeModes) {
+            this.edgeModes = edgeModes;
+        }
+
+        /** @return whether this street mode may use the given edge at all, regardless of barriers. */
+        public boolean canTraverse(StreetEdge edge) {
+            for (TraverseMode mode : edgeModes) {
+                if (edge.getPermission().allows(mode)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean allowsWalking() {
+            return Arrays.asList(edgeModes).contains(TraverseMode.WALK);
+        }
+
+        /**
+         * @return whether every street mode of the given set is one of this street mode's, i.e. whether a search
+         * with these modes can only use edges that were followed when computing the distances of this street mode.
+         */
+        boolean covers(TraverseModeSet modes) {
+            boolean any = false;
+            for (TraverseMode mode : new TraverseMode[] { TraverseMode.WALK, TraverseMode.BICYCLE, TraverseMode.CAR }) {
+                if (modes.contains(mode)) {
+                    if (!Arrays.asList(edgeModes).contains(mode)) {
+                        return false;
+                    }
+                    any = true;
+                }
+            }
+            return any;
+        }
+    }
+
+    /** The landmarks of one street mode, with their distances to and from every vertex. */
+    public static class Distances implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final Vertex[] landmarks;
+
+        /** from[l][slot] is the distance from landmark l to the vertex in the given slot, or infinity if unreachable. */
+        final float[][] from;
+
+        /** to[l][slot] is the distance from the vertex in the given slot to landmark l, or infinity if unreachable. */
+        final float[][] to;
+
+        public Distances(Vertex[] landmarks, float[][] from, float[][] to) {
+            this.landmarks = landmarks;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int getLandmarkCount() {
+            return landmarks.length;
+        }
+    }
+
+    /**
+     * The extreme values of the per-edge factors by which StreetEdge turns a length into a weight, over the street
+     * edges leaving the covered vertices. These give the smallest weight a meter of street can have for a request.
+     */
+    public static class EdgeBounds {
+
+        /** The highest car speed of any edge, in meters per second. */
+        public final double maxCarSpeed;
+
+        public final double minBicycleSafetyFactor;
+
+        /** The smallest ratio of the slope speed effective length to the length of any edge. */
+        public final double minSlopeSpeedFactor;
+
+        /** The smallest ratio of the slope work cost effective length to the length of any edge. */
+        public final double minSlopeWorkFactor;
+
+        /** The smallest ratio of the slope walk speed effective length to the length of any edge. */
+        public final double minSlopeWalkFactor;
+
+        EdgeBounds(Vertex[] vertices) {
+            double maxCarSpeed = 0;
+            double minSafety = 1, minSlopeSpeed = 1, minSlopeWork = 1, minSlopeWalk = 1;
+            for (Vertex v : vertices) {
+                for (Edge e : v.getOutgoing()) {
+                    if (!(e instanceof StreetEdge)) {
+                        continue;
+                    }
+                    StreetEdge se = (StreetEdge) e;
+                    maxCarSpeed = Math.max(maxCarSpeed, se.getCarSpeed());
+                    minSafety = Math.min(minSafety, se.getBicycleSafetyFactor());
+                    double length = se.getDistance();
+                    if (length > 0) {
+                        minSlopeSpeed = Math.min(minSlopeSpeed, se.getSlopeSpeedEffectiveLength() / length);
+                        minSlopeWork = Math.min(minSlopeWork, se.getSlopeWorkCostEffectiveLength() / length);
+                        minSlopeWalk = Math.min(minSlopeWalk, se.getSlopeWalkSpeedEffectiveLength() / length);
+                    }
+                }
+            }
+            this.maxCarSpeed = maxCarSpeed;
+            this.minBicycleSafetyFactor = minSafety;
+            this.minSlopeSpeedFactor = minSlopeSpeed;
+            this.minSlopeWorkFactor = minSlopeWork;
+            this.minSlopeWalkFactor = minSlopeWalk;
+        }
+    }
+
+    /** The vertices covered by the landmark distances, in slot order. */
+    private final Vertex[] vertices;
+
+    /** The distances of each street mode, by ordinal. Null for the street modes that were not computed. */
+    private final Distances[] distances = new Distances[StreetMode.values().length];
+
+    /** Slot of each vertex by Vertex.getIndex(), or -1. Vertex indexes are reassigned on load, so this is rebuilt. */
+    private transient volatile int[] slotForIndex;
+
+    /** Not serialized, since edge factors such as the elevation costs may be set after the landmarks are computed. */
+    private transient volatile EdgeBounds edgeBounds;
+
+    /** For deserialization. */
+    protected StreetLandmarks() {
+        this.vertices = null;
+    }
+
+    public StreetLandmarks(Vertex[] vertices) {
+        this.vertices = vertices;
+    }
+
+    public int getVertexCount() {
+        return vertices.length;
+    }
+
+    public Vertex getVertex(int slot) {
+        return vertices[slot];
+    }
+
+    /**
+     * @return the slot of the given vertex in the distance arrays, or -1 if the vertex is not covered, e.g. because it
+     * is temporary or was added to the graph after the landmarks were computed.
+     */
+    public int slotOf(Vertex vertex) {
+        int[] slots = slotForIndex;
+        if (slots == null) {
+            slots = indexSlots();
+        }
+        int index = vertex.getIndex();
+        if (index < 0 || index >= slots.length) {
+            return -1;
+        }
+        int slot = slots[index];
+        return (slot >= 0 && vertices[slot] == vertex) ? slot : -1;
+    }
+
+    private synchronized int[] indexSlots() {
+        if (slotForIndex == null) {
+            int capacity = 0;
+            for (Vertex vertex : vertices) {
+                capacity = Math.max(capacity, vertex.getIndex() + 1);
+            }
+            int[] slots = new int[capacity];
+            Arrays.fill(slots, -1);
+            for (int slot = 0; slot < vertices.length; slot++) {
+                int index = vertices[slot].getIndex();
+                if (index >= 0) {
+                    slots[index] = slot;
+                }
+            }
+            slotForIndex = slots;
+        }
+        return slotForIndex;
+    }
+
+    /** @return the extreme edge factors of the street edges leaving the covered vertices, computed on first use. */
+    public EdgeBounds getEdgeBounds() {
+        EdgeBounds bounds = edgeBounds;
+        if (bounds == null) {
+            bounds = new EdgeBounds(vertices);
+            edgeBounds = bounds;
+        }
+        return bounds;
+    }
+
+    public void setDistances(StreetMode streetMode, Distances distances) {
+        this.distances[streetMode.ordinal()] = distances;
+    }
+
+    public Distances getDistances(StreetMode streetMode) {
+        return distances[streetMode.ordinal()];
+    }
+
+    /**
+     * @return the distances of the most restrictive street mode that covers all the street modes of the given set, or
+     * null if there is none. Distances over a superset of the usable edges are still lower bounds, only weaker ones.
+     */
+    public Distances getDistances(TraverseModeSet modes) {
+        for (StreetMode streetMode : StreetMode.values()) {
+            Distances d = distances[streetMode.ordinal()];
+            if (d != null && streetMode.covers(modes)) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+}
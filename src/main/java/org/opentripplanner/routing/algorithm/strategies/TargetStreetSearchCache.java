@@ -0,0 +1,214 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import gnu.trove.list.TDoubleList;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.map.TObjectDoubleMap;
+import gnu.trove.map.hash.TObjectDoubleHashMap;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the results of the street searches that the InterleavedBidirectionalHeuristic runs around the target of
+ * transit searches, so that requests towards the same place (an airport, a central station...) do not repeat them.
+ * There is one cache per graph.
+ *
+ * A result is only reused for requests with the same target and the same parameters for the street search. When the
+ * target is a temporary vertex, which is created anew for every request, it is identified by its coordinates. The
+ * temporary vertices around the target are left out of the cached results: they belong to the request that ran the
+ * search, and the heuristic finds those of the next request itself.
+ *
+ * Street searches that depend on more than the street network and these parameters are never cached: car and flex
+ * searches (traffic and time-dependent turn restrictions), bike rental and park and ride (realtime availability),
+ * and searches with hard-banned stops. The cache is emptied whenever the graph updaters modify the graph.
+ *
+ * Hits and misses are counted here and read by the MonitoringStore under routing.targetStreetSearchCache.hits and
+ * routing.targetStreetSearchCache.misses.
+ */
+public class TargetStreetSearchCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 50;
+
+    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
+
+    private static final String HITS_KEY = "routing.targetStreetSearchCache.hits";
+
+    private static final String MISSES_KEY = "routing.targetStreetSearchCache.misses";
+
+    /** The results can be large, so they are softly referenced and give way when memory runs short. */
+    private final Cache<List<Object>, Entry> results;
+
+    /**
+     * Incremented by each invalidation. Each entry records the generation in which its search started, and entries of
+     * an earlier generation are never returned, even if they were stored after the invalidation.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public TargetStreetSearchCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public TargetStreetSearchCache(int maxEntries) {
+        this.results = CacheBuilder.newBuilder().maximumSize(maxEntries).softValues().build();
+        store.monitor(HITS_KEY, hits::sum);
+        store.monitor(MISSES_KEY, misses::sum);
+    }
+
+    /**
+     * @return the key under which the result of the street search around the target of the given request is cached,
+     * or null if that search cannot be cached. Must be called before the heuristic relaxes the walk limits.
+     */
+    public static List<Object> keyFor(RoutingRequest rr) {
+        if (rr.modes.getCar() || rr.allowBikeRental || rr.bikeParkAndRide || rr.parkAndRide || rr.kissAndRide
+                || rr.rideAndKiss || rr.useFlexService || rr.useTraffic || !rr.bannedStopsHard.isEmpty()) {
+            return null;
+        }
+        Vertex target = rr.rctx.target;
+        Object targetKey = target;
+        if (target instanceof TemporaryVertex) {
+            targetKey = Arrays.asList(target.getX(), target.getY(), ((TemporaryVertex) target).isEndVertex());
+        }
+        return Arrays.asList(targetKey, rr.arriveBy, rr.modes.getMask(), rr.optimize, rr.wheelchairAccessible,
+                rr.maxSlope, rr.walkSpeed, rr.bikeSpeed, rr.walkReluctance, rr.stairsReluctance, rr.turnReluctance,
+                rr.walkOnStreetReluctance, rr.elevatorBoardTime, rr.elevatorBoardCost, rr.elevatorHopTime,
+                rr.elevatorHopCost, rr.bikeSwitchTime, rr.bikeSwitchCost, rr.triangleTimeFactor,
+                rr.triangleSlopeFactor, rr.triangleSafetyFactor, rr.maxWalkDistance, rr.maxPreTransitWalkDistance,
+                rr.maxPreTransitTime, rr.softWalkLimiting, rr.softPreTransitLimiting, rr.softWalkPenalty,
+                rr.softWalkOverageRate, rr.preTransitPenalty, rr.preTransitOverageRate, rr.preTransitReluctance,
+                rr.walkingBike, rr.excludeWalking, rr.driveOnRight, rr.traversalCostModel.getClass());
+    }
+
+    /** @return the cached result for the given key, or null if there is none. */
+    public Result get(List<Object> key) {
+        Entry entry = results.getIfPresent(key);
+        Result result = null;
+        if (entry != null) {
+            if (entry.generation == generation.get()) {
+                result = entry.result;
+            } else {
+                // Stored by a search that raced with an invalidation
+                results.asMap().remove(key, entry);
+            }
+        }
+        if (result != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    /** @return the current generation, to be passed to put() once the search is done. */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Cache the result of a search, unless the cache was invalidated since the search started.
+     * @param generation the value of getGeneration() before the search started
+     */
+    public void put(List<Object> key, Result result, long generation) {
+        if (generation == this.generation.get()) {
+            results.put(key, new Entry(result, generation));
+        }
+    }
+
+    /** Drop all cached results, because the graph has changed. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** A cached result, with the generation of the cache when the search producing it started. */
+    private static final class Entry {
+
+        final Result result;
+
+        final long generation;
+
+        Entry(Result result, long generation) {
+            this.result = result;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The outcome of a street search around the target: the weight of the path to the target from each street vertex
+     * reached, and the transit stops from which to continue the search backward through the transit network. Not
+     * modified once it has been cached.
+     */
+    public static class Result {
+
+        /** Returns Infinity for the vertices that were not reached. Set once the search is done. */
+        TObjectDoubleMap<Vertex> streetWeights;
+
+        final List<Vertex> stops = new ArrayList<>();
+
+        final TDoubleList stopWeights = new TDoubleArrayList();
+
+        void addStop(Vertex stop, double weight) {
+            stops.add(stop);
+            stopWeights.add(weight);
+        }
+
+        /**
+         * @return a copy of this result without the temporary vertices around the target, for caching. Null if the
+         * search reached other temporary vertices (those around the origin), whose weights belong to this request only.
+         */
+        Result withoutTemporaryVertices(Vertex target) {
+            Boolean targetEnd = target instanceof TemporaryVertex ? ((TemporaryVertex) target).isEndVertex() : null;
+            TObjectDoubleMap<Vertex> weights =
+                    new TObjectDoubleHashMap<>(streetWeights.size(), 0.5f, Double.POSITIVE_INFINITY);
+            for (Vertex v : streetWeights.keySet()) {
+                if (v instanceof TemporaryVertex) {
+                    if (targetEnd == null || ((TemporaryVertex) v).isEndVertex() != targetEnd) {
+                        return null;
+                    }
+                } else {
+                    weights.put(v, streetWeights.get(v));
+                }
+            }
+            Result result = new Result();
+            result.streetWeights = weights;
+            result.stops.addAll(stops);
+            result.stopWeights.addAll(stopWeights);
+            return result;
+        }
+    }
+}
@@ -20,25 +20,64 @@ import java.util.Set;
 
 import org.opentripplanner.routing.bike_park.BikePark;
 
+/**
+ * The bike rental stations and bike parks of a graph. Searches and APIs read the rental stations from an immutable
+ * snapshot that is swapped when the stations change, so the updaters never block them.
+ */
 public class BikeRentalStationService implements Serializable {
     private static final long serialVersionUID = -1288992939159246764L;
 
     private Set<BikeRentalStation> bikeRentalStations = new HashSet<BikeRentalStation>();
 
+    /** The current stations, built from bikeRentalStations on first use. Null when it must be rebuilt. */
+    private transient volatile BikeRentalStationSnapshot snapshot;
+
     private Set<BikePark> bikeParks = new HashSet<BikePark>();
 
     public Collection<BikeRentalStation> getBikeRentalStations() {
-        return bikeRentalStations;
+        return getSnapshot().getStations();
+    }
+
+    public BikeRentalStationSnapshot getSnapshot() {
+        BikeRentalStationSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = new BikeRentalStationSnapshot(bikeRentalStations);
+                }
+                current = snapshot;
+            }
+        }
+        return current;
     }
 
-    public void addBikeRentalStation(BikeRentalStation bikeRentalStation) {
+    public synchronized void addBikeRentalStation(BikeRentalStation bikeRentalStation) {
         // Remove old reference first, as adding will be a no-op if already present
         bikeRentalStations.remove(bikeRentalStation);
         bikeRentalStations.add(bikeRentalStation);
+        snapshot = null;
     }
 
-    public void removeBikeRentalStation(BikeRentalStation bikeRentalStation) {
+    public synchronized void removeBikeRentalStation(BikeRentalStation bikeRentalStation) {
         bikeRentalStations.remove(bikeRentalStation);
+        snapshot = null;
+    }
+
+    /**
+     * Apply the changes found by a bike rental updater in one step, swapping in a new snapshot. Searches that already
+     * started keep the snapshot they have.
+     */
+    public synchronized void updateBikeRentalStations(Collection<BikeRentalStation> updated,
+            Collection<BikeRentalStation> removed) {
+        BikeRentalStationSnapshot current = getSnapshot();
+        for (BikeRentalStation station : removed) {
+            bikeRentalStations.remove(station);
+        }
+        for (BikeRentalStation station : updated) {
+            bikeRentalStations.remove(station);
+            bikeRentalStations.add(station);
+        }
+        snapshot = current.withChanges(updated, removed);
     }
 
     public Collection<BikePark> getBikeParks() {
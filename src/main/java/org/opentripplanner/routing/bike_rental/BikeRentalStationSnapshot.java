@@ -0,0 +1,183 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Iterators;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.opentripplanner.common.PersistentHashMap;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+
+/**
+ * An immutable view of the bike rental stations and floating bikes of a graph at one point in time. The updaters
+ * never modify a snapshot, they swap in a new one, so a search can hold on to the snapshot it started with and see
+ * coherent availability throughout, without any locking.
+ *
+ * Floating bikes are not part of the street graph. They are kept in a spatial index of their own, and linked to the
+ * streets around the origin and destination of each search with temporary edges.
+ *
+ * The stations and the grid cells of the floating bike index are persistent maps, so a new snapshot shares all of
+ * this one except the paths to the stations that changed, and costs time in proportion to the number of changes
+ * rather than to the number of stations and bikes.
+ */
+public class BikeRentalStationSnapshot {
+
+    /** The size of the cells of the floating bike index, about 500 m, as in HashGridSpatialIndex. */
+    private static final double X_CELL_SIZE = 0.0035;
+
+    private static final double Y_CELL_SIZE = 0.005;
+
+    private final PersistentHashMap<String, BikeRentalStation> stationsById;
+
+    /** The floating bikes by their ID, in the cell of the grid holding their location, see cellKey. */
+    private final PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> floatingBikeCells;
+
+    public BikeRentalStationSnapshot(Collection<BikeRentalStation> stations) {
+        BikeRentalStationSnapshot snapshot = new BikeRentalStationSnapshot(PersistentHashMap.empty(),
+                PersistentHashMap.empty()).withChanges(stations, Collections.emptyList());
+        this.stationsById = snapshot.stationsById;
+        this.floatingBikeCells = snapshot.floatingBikeCells;
+    }
+
+    private BikeRentalStationSnapshot(PersistentHashMap<String, BikeRentalStation> stationsById,
+            PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> floatingBikeCells) {
+        this.stationsById = stationsById;
+        this.floatingBikeCells = floatingBikeCells;
+    }
+
+    public Collection<BikeRentalStation> getStations() {
+        return new AbstractCollection<BikeRentalStation>() {
+            @Override
+            public Iterator<BikeRentalStation> iterator() {
+                return Iterators.transform(stationsById.iterator(), Map.Entry::getValue);
+            }
+
+            @Override
+            public int size() {
+                return stationsById.size();
+            }
+        };
+    }
+
+    /** @return the station or floating bike with the given ID, or null if it is not (or no longer) in service. */
+    public BikeRentalStation getStation(String id) {
+        return stationsById.get(id);
+    }
+
+    /** @return the floating bikes within the given distance of the given point. */
+    public List<BikeRentalStation> getFloatingBikesNear(Coordinate coordinate, double radiusMeters) {
+        Envelope envelope = new Envelope(coordinate);
+        envelope.expandBy(SphericalDistanceLibrary.metersToLonDegrees(radiusMeters, coordinate.y),
+                SphericalDistanceLibrary.metersToDegrees(radiusMeters));
+        List<BikeRentalStation> bikes = new ArrayList<>();
+        for (BikeRentalStation bike : getFloatingBikesInEnvelope(envelope)) {
+            if (SphericalDistanceLibrary.fastDistance(coordinate.y, coordinate.x, bike.y, bike.x) <= radiusMeters) {
+                bikes.add(bike);
+            }
+        }
+        return bikes;
+    }
+
+    /** @return the floating bikes within the given envelope, in (longitude, latitude) order. */
+    public List<BikeRentalStation> getFloatingBikesInEnvelope(Envelope envelope) {
+        List<BikeRentalStation> bikes = new ArrayList<>();
+        long minX = cell(envelope.getMinX(), X_CELL_SIZE);
+        long maxX = cell(envelope.getMaxX(), X_CELL_SIZE);
+        long minY = cell(envelope.getMinY(), Y_CELL_SIZE);
+        long maxY = cell(envelope.getMaxY(), Y_CELL_SIZE);
+        if ((maxX - minX + 1) * (maxY - minY + 1) > floatingBikeCells.size()) {
+            // Fewer cells hold bikes than the envelope covers: look at all of them
+            for (Map.Entry<Long, PersistentHashMap<String, BikeRentalStation>> cell : floatingBikeCells) {
+                addBikesInEnvelope(cell.getValue(), envelope, bikes);
+            }
+        } else {
+            for (long x = minX; x <= maxX; x++) {
+                for (long y = minY; y <= maxY; y++) {
+                    addBikesInEnvelope(floatingBikeCells.get(cellKey(x, y)), envelope, bikes);
+                }
+            }
+        }
+        return bikes;
+    }
+
+    private static void addBikesInEnvelope(PersistentHashMap<String, BikeRentalStation> cell, Envelope envelope,
+            List<BikeRentalStation> bikes) {
+        if (cell == null) return;
+        for (Map.Entry<String, BikeRentalStation> entry : cell) {
+            BikeRentalStation bike = entry.getValue();
+            if (envelope.intersects(new Coordinate(bike.x, bike.y))) {
+                bikes.add(bike);
+            }
+        }
+    }
+
+    /**
+     * @return a new snapshot with the given stations added or replaced and the removed ones left out. Only the
+     * floating bikes that were added, moved or removed are taken out of or put into the spatial index.
+     */
+    public BikeRentalStationSnapshot withChanges(Collection<BikeRentalStation> updated,
+            Collection<BikeRentalStation> removed) {
+        PersistentHashMap<String, BikeRentalStation> stations = stationsById;
+        PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> cells = floatingBikeCells;
+        for (BikeRentalStation station : removed) {
+            cells = withoutFloatingBike(cells, stations.get(station.id));
+            stations = stations.minus(station.id);
+        }
+        for (BikeRentalStation station : updated) {
+            cells = withoutFloatingBike(cells, stations.get(station.id));
+            cells = withFloatingBike(cells, station);
+            stations = stations.plus(station.id, station);
+        }
+        return new BikeRentalStationSnapshot(stations, cells);
+    }
+
+    private static PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> withFloatingBike(
+            PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> cells, BikeRentalStation bike) {
+        if (bike == null || !bike.isFloatingBike) return cells;
+        Long key = cellKey(bike);
+        PersistentHashMap<String, BikeRentalStation> cell = cells.get(key);
+        if (cell == null) cell = PersistentHashMap.empty();
+        return cells.plus(key, cell.plus(bike.id, bike));
+    }
+
+    private static PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> withoutFloatingBike(
+            PersistentHashMap<Long, PersistentHashMap<String, BikeRentalStation>> cells, BikeRentalStation bike) {
+        if (bike == null || !bike.isFloatingBike) return cells;
+        Long key = cellKey(bike);
+        PersistentHashMap<String, BikeRentalStation> cell = cells.get(key);
+        if (cell == null) return cells;
+        cell = cell.minus(bike.id);
+        return cell.isEmpty() ? cells.minus(key) : cells.plus(key, cell);
+    }
+
+    private static long cell(double coordinate, double cellSize) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static Long cellKey(BikeRentalStation bike) {
+        return cellKey(cell(bike.x, X_CELL_SIZE), cell(bike.y, Y_CELL_SIZE));
+    }
+
+    private static Long cellKey(long x, long y) {
+        return (x << 32) | (y & 0xffffffffL);
+    }
+}
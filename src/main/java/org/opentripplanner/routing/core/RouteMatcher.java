@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.core;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashSet;
 
 import org.apache.commons.collections.CollectionUtils;
@@ -137,6 +138,21 @@ public class RouteMatcher implements Cloneable, Serializable {
         return false;
     }
 
+    /**
+     * @return a new matcher that matches the same routes as this one, and also the routes with the given IDs.
+     */
+    public RouteMatcher plusRouteIds(Collection<AgencyAndId> routeIds) {
+        if (routeIds.isEmpty())
+            return this;
+        RouteMatcher retval = new RouteMatcher();
+        retval.agencyAndRouteIds.addAll(agencyAndRouteIds);
+        retval.agencyAndRouteIds.addAll(routeIds);
+        retval.agencyIdAndRouteNames.addAll(agencyIdAndRouteNames);
+        retval.routeNames.addAll(routeNames);
+        retval.containsNames = containsNames;
+        return retval;
+    }
+
     public boolean isEmpty() {
         return agencyAndRouteIds.size() == 0 && agencyIdAndRouteNames.size() == 0 && routeNames.size() == 0;
     }
@@ -4,6 +4,7 @@ import com.google.common.collect.Sets;
 import org.locationtech.jts.geom.LineString;
 import org.opentripplanner.api.resource.DebugOutput;
 import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.model.Agency;
 import org.opentripplanner.model.AgencyAndId;
 import org.opentripplanner.model.CalendarService;
@@ -12,6 +13,9 @@ import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationSnapshot;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.edgetype.TemporaryPartialStreetEdge;
@@ -25,11 +29,13 @@ import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.StreetLocation;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
 import org.opentripplanner.routing.services.OnBoardDepartService;
+import org.opentripplanner.routing.vertextype.TemporaryBikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.traffic.StreetSpeedSnapshot;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.opentripplanner.util.NonLocalizedString;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +54,9 @@ public class RoutingContext implements Cloneable {
 
     private static final Logger LOG = LoggerFactory.getLogger(RoutingContext.class);
 
+    /** The furthest floating bikes are linked from the origin and destination, if the walk limit is not lower. */
+    private static final double MAX_FLOATING_BIKE_DISTANCE_METERS = 1000;
+
     /* FINAL FIELDS */
 
     public RoutingRequest opt; // not final so we can reverse-clone
@@ -84,6 +93,12 @@ public class RoutingContext implements Cloneable {
     /** A snapshot of street speeds for looking up real-time or historical traffic data */
     public final StreetSpeedSnapshot streetSpeedSnapshot;
 
+    /** The bike rental stations and floating bikes when this search started, or null without bike rental. */
+    public final BikeRentalStationSnapshot bikeRentalSnapshot;
+
+    /** Floating bikes linked to the streets for this search only. Shared with the copies made by copyForSearch(). */
+    public final List<TemporaryBikeRentalStationVertex> floatingBikeVertices = new ArrayList<>();
+
     /**
      * Cache lists of which transit services run on which midnight-to-midnight periods. This ties a TraverseOptions to a particular start time for the
      * duration of a search so the same options cannot be used for multiple searches concurrently. To do so this cache would need to be moved into
@@ -228,8 +243,14 @@ public class RoutingContext implements Cloneable {
         else
             this.streetSpeedSnapshot = null;
 
+        // and for bike rental availability
+        BikeRentalStationService bikeRentalService = opt.allowBikeRental ?
+                graph.getService(BikeRentalStationService.class) : null;
+        bikeRentalSnapshot = bikeRentalService == null ? null : bikeRentalService.getSnapshot();
+
         Edge fromBackEdge = null;
         Edge toBackEdge = null;
+        long linkingStart = System.nanoTime();
         if (findPlaces) {
             if (opt.batch) {
                 // batch mode: find an OSM vertex, don't split
@@ -277,6 +298,12 @@ public class RoutingContext implements Cloneable {
                 makePartialEdgeAlong(pse, fromStreetVertex, toStreetVertex);
             }
         }
+        if (findPlaces && !opt.batch && bikeRentalSnapshot != null) {
+            linkFloatingBikes();
+        }
+        if (findPlaces) {
+            graph.routingMetrics.recordPhase(RoutingMetrics.Phase.LINKING, linkingStart);
+        }
 
         if (opt.startingTransitStopId != null) {
             Stop stop = graph.index.stopForId.get(opt.startingTransitStopId);
@@ -306,6 +333,32 @@ public class RoutingContext implements Cloneable {
 
     /* INSTANCE METHODS */
 
+    /**
+     * Link the floating bikes near the origin and destination to the streets with temporary edges, so that they can
+     * be rented in this search without adding them to the graph.
+     */
+    private void linkFloatingBikes() {
+        double radius = Math.min(opt.maxWalkDistance, MAX_FLOATING_BIKE_DISTANCE_METERS);
+        Set<String> linked = new HashSet<>();
+        for (GenericLocation location : new GenericLocation[] { opt.from, opt.to }) {
+            if (location == null || location.getCoordinate() == null) {
+                continue;
+            }
+            for (BikeRentalStation bike : bikeRentalSnapshot.getFloatingBikesNear(location.getCoordinate(), radius)) {
+                if (!linked.add(bike.id)) {
+                    continue;
+                }
+                TemporaryBikeRentalStationVertex vertex = new TemporaryBikeRentalStationVertex(bike, this);
+                if (graph.streetIndex.linkFloatingBike(vertex)) {
+                    floatingBikeVertices.add(vertex);
+                } else {
+                    TemporaryVertex.dispose(vertex);
+                }
+            }
+        }
+        LOG.debug("Linked {} floating bikes for this search", floatingBikeVertices.size());
+    }
+
     public void check() {
         ArrayList<String> notFound = new ArrayList<String>();
 
@@ -396,6 +449,29 @@ public class RoutingContext implements Cloneable {
         return true;
     }
 
+    /**
+     * Make a routing context for another search between the same vertices, for instance one of several searches for
+     * alternative itineraries running at the same time. The copy shares the vertices, timetables and service days of
+     * this context, but has its own heuristic, debug output and abort flag. The temporary edges and vertices remain
+     * owned by this context, so the copy must not be destroyed.
+     */
+    public RoutingContext copyForSearch(RoutingRequest request) {
+        try {
+            RoutingContext copy = (RoutingContext) super.clone();
+            copy.opt = request;
+            copy.aborted = false;
+            copy.searchAbortTime = 0;
+            copy.debugOutput = new DebugOutput();
+            copy.debugOutput.startedCalculating();
+            copy.temporaryEdges = new ArrayList<>();
+            copy.temporaryVertices = new ArrayList<>();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            /* this will never happen since our super is the cloneable object */
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Tear down this routing context, removing any temporary edges from
      * the "permanent" graph objects. This enables all temporary objects
@@ -404,6 +480,9 @@ public class RoutingContext implements Cloneable {
     public void destroy() {
         TemporaryVertex.dispose(fromVertex);
         TemporaryVertex.dispose(toVertex);
+        for (TemporaryBikeRentalStationVertex vertex : floatingBikeVertices) {
+            TemporaryVertex.dispose(vertex);
+        }
         for (TemporaryEdge edge : this.temporaryEdges) {
             edge.dispose();
         }
@@ -21,6 +21,7 @@ import org.opentripplanner.api.parameter.QualifiedModeSet;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.NamedPlace;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
 import org.opentripplanner.gtfs.GtfsLibrary;
 import org.opentripplanner.model.AgencyAndId;
 import org.opentripplanner.model.Route;
@@ -502,6 +503,27 @@ public class RoutingRequest implements Cloneable, Serializable {
      */
     public boolean compactLegsByReversedSearch = false;
 
+    /**
+     * When true, the searches for alternatives to the first itinerary found run at the same time on the router's
+     * itinerary search threads, each varying the request in a different way (banned trips or routes, a higher
+     * transfer penalty or a later departure), rather than one after another.
+     */
+    public boolean parallelItineraries = false;
+
+    /**
+     * The total number of seconds the parallel searches for alternative itineraries may run, shared between them.
+     * This bounds the CPU time a request can take from other requests.
+     */
+    public double parallelItinerariesCpuBudget = 4;
+
+    /**
+     * When true, transit requests are planned with the round-based RaptorSearch, which finds the itineraries with the
+     * earliest arrival for each number of transfers in a single pass, rather than with repeated A* searches. Requests
+     * it does not support (e.g. arriveBy, or biking or driving to transit) still use A*, as do requests for which it
+     * finds no itinerary.
+     */
+    public boolean useRaptor = false;
+
     /**
      * If true, cost turns as they would be in a country where driving occurs on the right; otherwise, cost them as they would be in a country where
      * driving occurs on the left.
@@ -667,6 +689,18 @@ public class RoutingRequest implements Cloneable, Serializable {
      */
     public DominanceFunction dominanceFunction = new DominanceFunction.Pareto();
 
+    /**
+     * Keep the states of the shortest path tree in arrays indexed by vertex rather than in a hash map, recycling
+     * the arrays between searches. Reduces allocation on large street searches.
+     */
+    public boolean useArrayShortestPathTree = false;
+
+    /**
+     * The priority queue implementation used by the search. Set by name with setPriorityQueue, which also makes it
+     * available as priorityQueue in the routingDefaults of router-config.json.
+     */
+    public OTPPriorityQueueFactory priorityQueueFactory = OTPPriorityQueueFactory.BINARY_HEAP;
+
     /**
      * Accept only paths that use transit (no street-only paths).
      */
@@ -970,6 +1004,12 @@ public class RoutingRequest implements Cloneable, Serializable {
             whiteListedAgencies = new HashSet<String>(Arrays.asList(s.split(",")));
     }
 
+    /** @param name the name of an OTPPriorityQueueFactory, e.g. FOUR_ARY_HEAP, case insensitive. */
+    public void setPriorityQueue(String name) {
+        if (name != null && !name.equals(""))
+            priorityQueueFactory = OTPPriorityQueueFactory.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
     public final static int MIN_SIMILARITY = 1000;
 
     public void setFromString(String from) {
@@ -4,11 +4,9 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.routing.graph.Edge;
-import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.util.ElevationUtils;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 
-import java.util.List;
 import org.opentripplanner.util.I18NString;
 import org.opentripplanner.util.NonLocalizedString;
 
@@ -87,8 +85,8 @@ public class PartialStreetEdge extends StreetWithElevationEdge {
      * Have the turn restrictions of  their parent.
      */
     @Override
-    protected List<TurnRestriction> getTurnRestrictions(Graph graph) {
-        return graph.getTurnRestrictions(parentEdge);
+    protected TurnRestriction[] getTurnRestrictions() {
+        return parentEdge.getTurnRestrictions();
     }
 
     /**
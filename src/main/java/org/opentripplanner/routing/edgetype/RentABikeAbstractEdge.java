@@ -15,6 +15,8 @@ package org.opentripplanner.routing.edgetype;
 
 import java.util.Set;
 
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.StateEditor;
@@ -57,8 +59,11 @@ public abstract class RentABikeAbstractEdge extends Edge {
         if (!options.modes.contains(TraverseMode.BICYCLE))
             return null;
 
-        BikeRentalStationVertex dropoff = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && dropoff.getBikesAvailable() == 0) {
+        BikeRentalStation station = currentStation(s0);
+        if (station == null) {
+            return null;
+        }
+        if (options.useBikeRentalAvailabilityInformation && station.bikesAvailable == 0) {
             return null;
         }
 
@@ -81,8 +86,11 @@ public abstract class RentABikeAbstractEdge extends Edge {
          */
         if (!s0.isBikeRenting() || !hasCompatibleNetworks(networks, s0.getBikeRentalNetworks()))
             return null;
-        BikeRentalStationVertex pickup = (BikeRentalStationVertex) tov;
-        if (options.useBikeRentalAvailabilityInformation && pickup.getSpacesAvailable() == 0) {
+        BikeRentalStation station = currentStation(s0);
+        if (station == null) {
+            return null;
+        }
+        if (options.useBikeRentalAvailabilityInformation && station.spacesAvailable == 0) {
             return null;
         }
 
@@ -97,6 +105,19 @@ public abstract class RentABikeAbstractEdge extends Edge {
         return s1;
     }
 
+    /**
+     * @return the station of this edge as it was when the search started, or null if it was out of service. Without
+     * a bike rental service in the graph, the station is taken from the vertex.
+     */
+    private BikeRentalStation currentStation(State s0) {
+        BikeRentalStationVertex vertex = (BikeRentalStationVertex) tov;
+        RoutingContext rctx = s0.getOptions().rctx;
+        if (rctx == null || rctx.bikeRentalSnapshot == null) {
+            return vertex.getStation();
+        }
+        return rctx.bikeRentalSnapshot.getStation(vertex.getId());
+    }
+
     @Override
     public double getDistance() {
         return 0;
@@ -23,6 +23,7 @@ import org.opentripplanner.common.model.P2;
 import org.opentripplanner.routing.core.*;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.util.ElevationUtils;
 import org.opentripplanner.routing.vertextype.BarrierVertex;
 import org.opentripplanner.routing.vertextype.IntersectionVertex;
@@ -79,15 +80,20 @@ public class StreetEdge extends Edge implements Cloneable {
     private static final int SLOPEOVERRIDE_FLAG_INDEX = 5;
     private static final int WHEELCHAIR_ACCESSIBLE_FLAG_INDEX = 6;
 
+    /*
+     * The fields below are package-private rather than private so that StreetEdgeColumns can store them in and
+     * restore them from the flat columns of a columnar graph file.
+     */
+
     /** back, roundabout, stairs, ... */
-    private byte flags;
+    byte flags;
 
     /**
      * Length is stored internally as 32-bit fixed-point (millimeters). This allows edges of up to ~2100km.
      * Distances used in calculations and exposed outside this class are still in double-precision floating point meters.
      * Someday we might want to convert everything to fixed point representations.
      */
-    private int length_mm;
+    int length_mm;
 
     /**
      * bicycleSafetyWeight = length * bicycleSafetyFactor. For example, a 100m street with a safety
@@ -97,30 +103,45 @@ public class StreetEdge extends Edge implements Cloneable {
     protected float bicycleSafetyFactor;
 
     private byte[] compactGeometry;
-    
-    private I18NString name;
 
-    private StreetTraversalPermission permission;
+    /**
+     * For edges read from a columnar graph file, compactGeometry is null and the geometry is read on demand from the
+     * memory-mapped file through these fields instead of being kept on the heap.
+     */
+    transient StreetEdgeColumns mappedGeometry;
+
+    transient int mappedGeometryIndex;
+
+    /**
+     * The turn restrictions starting on this edge, or null if there are none. This is a copy of the restrictions that
+     * the Graph keeps for this edge, so they can be checked during traversal without a hash lookup. It is kept up to
+     * date by the Graph, and rebuilt by Graph.index() after the graph is loaded.
+     */
+    private transient TurnRestriction[] turnRestrictions;
+
+    I18NString name;
+
+    StreetTraversalPermission permission;
 
     /** The OSM way ID from whence this came - needed to reference traffic data */
     public long wayId;
 
-    private int streetClass = CLASS_OTHERPATH;
+    int streetClass = CLASS_OTHERPATH;
     
     /**
      * The speed (meters / sec) at which an automobile can traverse
      * this street segment.
      */
-    private float carSpeed;
+    float carSpeed;
 
     /**
      * The angle at the start of the edge geometry.
      * Internal representation is -180 to +179 integer degrees mapped to -128 to +127 (brads)
      */
-    private byte inAngle;
+    byte inAngle;
 
     /** The angle at the start of the edge geometry. Internal representation like that of inAngle. */
-    private byte outAngle;
+    byte outAngle;
 
     public StreetEdge(StreetVertex v1, StreetVertex v2, LineString geometry,
                       I18NString name, double length,
@@ -634,7 +655,11 @@ public class StreetEdge extends Edge implements Cloneable {
     }
     
     public boolean canTurnOnto(Edge e, State state, TraverseMode mode) {
-        for (TurnRestriction turnRestriction : getTurnRestrictions(state.getOptions().rctx.graph)) {
+        TurnRestriction[] turnRestrictions = getTurnRestrictions();
+        if (turnRestrictions == null) {
+            return true;
+        }
+        for (TurnRestriction turnRestriction : turnRestrictions) {
             /* FIXME: This is wrong for trips that end in the middle of turnRestriction.to
              */
 
@@ -677,7 +702,30 @@ public class StreetEdge extends Edge implements Cloneable {
 	}
 
 	public LineString getGeometry() {
-		return CompactLineString.uncompackLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
+		return CompactLineString.uncompackLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), getCompactGeometry(), isBack());
+	}
+
+	/** @return the packed geometry of this edge, read from the memory-mapped graph file if it is not on the heap. */
+	byte[] getCompactGeometry() {
+		return compactGeometry != null || mappedGeometry == null
+				? compactGeometry : mappedGeometry.compactGeometry(mappedGeometryIndex);
+	}
+
+	/**
+	 * Copy a geometry that is read from a memory-mapped graph file onto the heap, so that the edge no longer depends
+	 * on the file and is serialized completely by Kryo.
+	 */
+	public void detachGeometry() {
+		if (mappedGeometry != null) {
+			compactGeometry = getCompactGeometry();
+			mappedGeometry = null;
+		}
+	}
+
+	/** Set the vertices of an edge that was instantiated without a constructor by StreetEdgeColumns. */
+	void setVertices(Vertex from, Vertex to) {
+		this.fromv = from;
+		this.tov = to;
 	}
 
 	private void setGeometry(LineString geometry) {
@@ -685,6 +733,8 @@ public class StreetEdge extends Edge implements Cloneable {
 	}
 
 	public void shareData(StreetEdge reversedEdge) {
+	    detachGeometry();
+	    reversedEdge.detachGeometry();
 	    if (Arrays.equals(compactGeometry, reversedEdge.compactGeometry)) {
 	        compactGeometry = reversedEdge.compactGeometry;
 	    } else {
@@ -792,8 +842,23 @@ public class StreetEdge extends Edge implements Cloneable {
 		return (int) Math.round(this.outAngle * 180 / 128.0);
 	}
 
-    protected List<TurnRestriction> getTurnRestrictions(Graph graph) {
-        return graph.getTurnRestrictions(this);
+    /** @return the turn restrictions that apply when leaving this edge, or null if there are none. */
+    protected TurnRestriction[] getTurnRestrictions() {
+        return turnRestrictions;
+    }
+
+    /**
+     * @return true if turn restrictions start on this edge itself. Unlike getTurnRestrictions(), this is false for
+     * partial edges, whose restrictions belong to their parent.
+     */
+    public final boolean hasTurnRestrictions() {
+        return turnRestrictions != null;
+    }
+
+    /** Called by the Graph whenever the turn restrictions of this edge change. Null or empty means none. */
+    public void setTurnRestrictions(List<TurnRestriction> turnRestrictions) {
+        this.turnRestrictions = (turnRestrictions == null || turnRestrictions.isEmpty()) ? null :
+                turnRestrictions.toArray(new TurnRestriction[turnRestrictions.size()]);
     }
     
     /** calculate the length of this street segement from its geometry */
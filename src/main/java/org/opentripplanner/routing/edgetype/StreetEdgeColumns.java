@@ -0,0 +1,173 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.edgetype;
+
+import com.esotericsoftware.kryo.io.Output;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.util.I18NString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Stores the street edges of a columnar graph file as flat columns of primitives, one column per field, instead of
+ * as a Kryo object graph. Reading a column is a sequential scan of a memory-mapped region with no per-object
+ * framing, and the packed geometries are not copied onto the heap at all: they stay in the mapped file and each
+ * StreetEdge reads its own on demand.
+ *
+ * Only edges of exactly the class StreetEdge are stored this way. Subclasses carry more fields and are serialized
+ * with Kryo as usual.
+ *
+ * An instance of this class is the reader for one file. It must stay reachable while the edges are in use, since
+ * they read their geometries through it.
+ */
+public class StreetEdgeColumns {
+
+    /** The columns are written in this order. The geometry bytes and their offsets follow. */
+    private static final int INT_COLUMNS = 5; // from, to, length_mm, streetClass, name
+
+    private static final int FLOAT_COLUMNS = 2; // bicycleSafetyFactor, carSpeed
+
+    private static final int LONG_COLUMNS = 1; // wayId
+
+    private static final int BYTE_COLUMNS = 4; // flags, inAngle, outAngle, permission
+
+    private static final StreetTraversalPermission[] PERMISSIONS = StreetTraversalPermission.values();
+
+    /** Start of the packed geometry of each edge in the geometry region, with the end of the last one appended. */
+    private final ByteBuffer geometryOffsets;
+
+    private final ByteBuffer geometries;
+
+    private StreetEdgeColumns(ByteBuffer geometryOffsets, ByteBuffer geometries) {
+        this.geometryOffsets = geometryOffsets;
+        this.geometries = geometries;
+    }
+
+    /**
+     * Write the given edges in columns.
+     *
+     * @param vertexIds the position of each vertex in the list of vertices written to the file
+     * @param nameIds the position of each edge name in the list of names written to the file, or -1 for null
+     */
+    public static void write(Output output, List<StreetEdge> edges, ToIntFunction<Vertex> vertexIds,
+            ToIntFunction<I18NString> nameIds) {
+        output.writeInt(edges.size());
+        for (StreetEdge e : edges) output.writeInt(vertexIds.applyAsInt(e.getFromVertex()));
+        for (StreetEdge e : edges) output.writeInt(vertexIds.applyAsInt(e.getToVertex()));
+        for (StreetEdge e : edges) output.writeInt(e.length_mm);
+        for (StreetEdge e : edges) output.writeInt(e.streetClass);
+        for (StreetEdge e : edges) output.writeInt(nameIds.applyAsInt(e.name));
+        for (StreetEdge e : edges) output.writeFloat(e.bicycleSafetyFactor);
+        for (StreetEdge e : edges) output.writeFloat(e.carSpeed);
+        for (StreetEdge e : edges) output.writeLong(e.wayId);
+        for (StreetEdge e : edges) output.writeByte(e.flags);
+        for (StreetEdge e : edges) output.writeByte(e.inAngle);
+        for (StreetEdge e : edges) output.writeByte(e.outAngle);
+        for (StreetEdge e : edges) output.writeByte(e.permission == null ? -1 : e.permission.ordinal());
+        int offset = 0;
+        for (StreetEdge e : edges) {
+            output.writeInt(offset);
+            byte[] geometry = e.getCompactGeometry();
+            offset += geometry == null ? 0 : geometry.length;
+            if (offset < 0) {
+                throw new IllegalStateException("Street edge geometries do not fit in one columnar graph file.");
+            }
+        }
+        output.writeInt(offset);
+        for (StreetEdge e : edges) {
+            byte[] geometry = e.getCompactGeometry();
+            if (geometry != null) output.writeBytes(geometry);
+        }
+    }
+
+    /**
+     * Read the columns written by {@link #write} at the given position in a graph file.
+     *
+     * @param edges filled with edges instantiated but not initialized by the caller, as many as were written.
+     *              They are not added to the edge lists of their vertices.
+     * @return the position in the file after the columns
+     */
+    public static long read(FileChannel channel, long position, StreetEdge[] edges, Vertex[] vertices,
+            I18NString[] names) throws IOException {
+        ByteBuffer count = map(channel, position, 4);
+        int n = count.getInt(0);
+        if (n != edges.length) {
+            throw new IllegalStateException("Expected " + edges.length + " street edges in graph file, found " + n);
+        }
+        position += 4;
+        long columnsSize = (long) n * (4 * INT_COLUMNS + 4 * FLOAT_COLUMNS + 8 * LONG_COLUMNS + BYTE_COLUMNS);
+        // The columns are only read once to initialize the edges, so map them all in one go unless they are huge.
+        ByteBuffer columns = map(channel, position, columnsSize);
+        int from = 0, to = from + 4 * n, length = to + 4 * n, streetClass = length + 4 * n, name = streetClass + 4 * n;
+        int bicycleSafety = name + 4 * n, carSpeed = bicycleSafety + 4 * n, wayId = carSpeed + 4 * n;
+        int flags = wayId + 8 * n, inAngle = flags + n, outAngle = inAngle + n, permission = outAngle + n;
+        for (int i = 0; i < n; i++) {
+            StreetEdge e = edges[i];
+            e.setVertices(vertices[columns.getInt(from + 4 * i)], vertices[columns.getInt(to + 4 * i)]);
+            e.length_mm = columns.getInt(length + 4 * i);
+            e.streetClass = columns.getInt(streetClass + 4 * i);
+            int nameId = columns.getInt(name + 4 * i);
+            e.name = nameId < 0 ? null : names[nameId];
+            e.bicycleSafetyFactor = columns.getFloat(bicycleSafety + 4 * i);
+            e.carSpeed = columns.getFloat(carSpeed + 4 * i);
+            e.wayId = columns.getLong(wayId + 8 * i);
+            e.flags = columns.get(flags + i);
+            e.inAngle = columns.get(inAngle + i);
+            e.outAngle = columns.get(outAngle + i);
+            int permissionId = columns.get(permission + i);
+            e.permission = permissionId < 0 ? null : PERMISSIONS[permissionId];
+        }
+        position += columnsSize;
+
+        ByteBuffer geometryOffsets = map(channel, position, 4L * (n + 1));
+        position += 4L * (n + 1);
+        int geometrySize = geometryOffsets.getInt(4 * n);
+        ByteBuffer geometries = map(channel, position, geometrySize);
+        position += geometrySize;
+        StreetEdgeColumns reader = new StreetEdgeColumns(geometryOffsets, geometries);
+        for (int i = 0; i < n; i++) {
+            edges[i].mappedGeometry = reader;
+            edges[i].mappedGeometryIndex = i;
+        }
+        return position;
+    }
+
+    /** @return the packed geometry of the edge at the given position in the columns, or null if it has none. */
+    byte[] compactGeometry(int index) {
+        // Absolute gets only: the buffers are shared by all threads and their position must never change.
+        int start = geometryOffsets.getInt(4 * index);
+        int end = geometryOffsets.getInt(4 * (index + 1));
+        if (start == end) {
+            return null;
+        }
+        byte[] geometry = new byte[end - start];
+        for (int i = 0; i < geometry.length; i++) {
+            geometry[i] = geometries.get(start + i);
+        }
+        return geometry;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Street edge columns of " + size + " bytes are too large to be mapped.");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+}
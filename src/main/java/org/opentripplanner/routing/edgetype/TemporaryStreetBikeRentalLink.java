@@ -0,0 +1,43 @@
+package org.opentripplanner.routing.edgetype;
+
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryBikeRentalStationVertex;
+
+/**
+ * The connection between a street vertex and a floating bike linked for a single search. The link to the bike hangs
+ * off a vertex of the graph shared by all searches, so it refuses to be traversed by any other search.
+ */
+public class TemporaryStreetBikeRentalLink extends StreetBikeRentalLink implements TemporaryEdge {
+
+    private final TemporaryBikeRentalStationVertex bike;
+
+    public TemporaryStreetBikeRentalLink(StreetVertex fromv, TemporaryBikeRentalStationVertex tov) {
+        super(fromv, tov);
+        bike = tov;
+    }
+
+    public TemporaryStreetBikeRentalLink(TemporaryBikeRentalStationVertex fromv, StreetVertex tov) {
+        super(fromv, tov);
+        bike = fromv;
+    }
+
+    @Override
+    public State traverse(State s0) {
+        if (!bike.isLinkedFor(s0.getOptions().rctx)) {
+            return null;
+        }
+        return super.traverse(s0);
+    }
+
+    @Override
+    public void dispose() {
+        fromv.removeOutgoing(this);
+        tov.removeIncoming(this);
+    }
+
+    @Override
+    public String toString() {
+        return "Temporary" + super.toString();
+    }
+}
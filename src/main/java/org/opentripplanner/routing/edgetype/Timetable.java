@@ -52,10 +52,12 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -110,6 +112,18 @@ public class Timetable implements Serializable {
      */
     private transient int minTime, maxTime;
 
+    /**
+     * The scheduled times of the trips of this timetable, laid out by shareScheduledTimes. Null until then, and for
+     * timetables made by realtime updates. The trips added later keep their own arrays.
+     */
+    private int[] scheduledTimes;
+
+    /**
+     * The per-stop ordering of the trips and where their times are found, allowing getNextTrip to binary search for
+     * the first candidate trip. Null when the trips have been modified since the index was last built.
+     */
+    private transient TripTimesIndex tripTimesIndex;
+
     /**
      * Construct an empty Timetable.
      */
@@ -133,6 +147,9 @@ public class Timetable implements Serializable {
         tripTimes.addAll(tt.tripTimes);
         this.serviceDate = serviceDate;
         this.pattern = tt.pattern;
+        this.scheduledTimes = tt.scheduledTimes;
+        // The index is never modified in place, so it can be shared until one of the copies is updated.
+        this.tripTimesIndex = tt.tripTimesIndex;
     }
 
     /**
@@ -182,50 +199,58 @@ public class Timetable implements Serializable {
         }
         TripTimes bestTrip = null;
         Stop currentStop = pattern.getStop(stopIndex);
-        // Linear search through the timetable looking for the best departure.
-        // We no longer use a binary search on Timetables because:
-        // 1. we allow combining trips from different service IDs on the same tripPattern.
-        // 2. We mix frequency-based and one-off TripTimes together on tripPatterns.
-        // 3. Stoptimes may change with realtime updates, and we cannot count on them being sorted.
-        //    The complexity of keeping sorted indexes up to date does not appear to be worth the
-        //    apparently minor speed improvement.
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
-        // Hoping JVM JIT will distribute the loop over the if clauses as needed.
-        // We could invert this and skip some service days based on schedule overlap as in RRRR.
-        for (TripTimes tt : tripTimes) {
-            if (tt.isCanceled()) continue;
-            if ((tt.getNumStops() <= stopIndex)) continue;
-            if (!serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if (!tt.tripAcceptable(s0, stopIndex)) continue;
-            if (s0.getOptions().tripIsBanned(tt.trip)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
-            if (boarding) {
-                int adjustment = 0;
-                if (stopIndex + 1 < tt.getNumStops() && flexOffsetScale != 0.0) {
-                    adjustment = (int) Math.round(flexOffsetScale*tt.getRunningTime(stopIndex));
-                }
-                int vehicleTime = (preBoardDirectTime == 0) ? 0 : tt.getDemandResponseMaxTime(preBoardDirectTime);
-                int depTime = tt.getDepartureTime(stopIndex) + adjustment - vehicleTime;
-                if (depTime < 0)
-                    continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
-                // now its not sure if this check should be still in place because there is a boolean field
-                // for canceled trips
-                if (depTime >= adjustedTime && depTime < bestTime) {
-                    bestTrip = tt;
-                    bestTime = depTime;
-                }
-            } else {
-                int adjustment = 0;
-                if (stopIndex - 1 >= 0 && flexOffsetScale != 0.0) {
-                    adjustment = (int) Math.round(flexOffsetScale*tt.getRunningTime(stopIndex - 1));
-                }
-                int vehicleTime = (postAlightDirectTime == 0) ? 0 : tt.getDemandResponseMaxTime(postAlightDirectTime);
-                int arvTime = tt.getArrivalTime(stopIndex) + adjustment + vehicleTime;
-                if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
-                    bestTrip = tt;
-                    bestTime = arvTime;
+        // Trips from different service IDs and realtime-updated trips are mixed in the same timetable, so the
+        // per-stop index only narrows down the candidates: every trip in it is still checked in time order until
+        // one is found that can actually be used. Flexible trips shift their times per request, so they are not
+        // indexed and still use a linear search.
+        TripTimesIndex index = tripTimesIndex;
+        boolean flexible = flexOffsetScale != 0.0 || (boarding ? preBoardDirectTime : postAlightDirectTime) != 0;
+        if (!flexible && index != null && index.size == tripTimes.size()) {
+            bestTrip = boarding
+                    ? index.nextDeparture(this, s0, serviceDay, stopIndex, currentStop, time)
+                    : index.previousArrival(this, s0, serviceDay, stopIndex, currentStop, time);
+            if (bestTrip != null) {
+                bestTime = boarding ? bestTrip.getDepartureTime(stopIndex) : bestTrip.getArrivalTime(stopIndex);
+            }
+        } else {
+            // Hoping JVM JIT will distribute the loop over the if clauses as needed.
+            // We could invert this and skip some service days based on schedule overlap as in RRRR.
+            for (TripTimes tt : tripTimes) {
+                if (tt.isCanceled()) continue;
+                if ((tt.getNumStops() <= stopIndex)) continue;
+                if (!serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if (!tt.tripAcceptable(s0, stopIndex)) continue;
+                if (s0.getOptions().tripIsBanned(tt.trip)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (boarding) {
+                    int adjustment = 0;
+                    if (stopIndex + 1 < tt.getNumStops() && flexOffsetScale != 0.0) {
+                        adjustment = (int) Math.round(flexOffsetScale*tt.getRunningTime(stopIndex));
+                    }
+                    int vehicleTime = (preBoardDirectTime == 0) ? 0 : tt.getDemandResponseMaxTime(preBoardDirectTime);
+                    int depTime = tt.getDepartureTime(stopIndex) + adjustment - vehicleTime;
+                    if (depTime < 0)
+                        continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
+                    // now its not sure if this check should be still in place because there is a boolean field
+                    // for canceled trips
+                    if (depTime >= adjustedTime && depTime < bestTime) {
+                        bestTrip = tt;
+                        bestTime = depTime;
+                    }
+                } else {
+                    int adjustment = 0;
+                    if (stopIndex - 1 >= 0 && flexOffsetScale != 0.0) {
+                        adjustment = (int) Math.round(flexOffsetScale*tt.getRunningTime(stopIndex - 1));
+                    }
+                    int vehicleTime = (postAlightDirectTime == 0) ? 0 : tt.getDemandResponseMaxTime(postAlightDirectTime);
+                    int arvTime = tt.getArrivalTime(stopIndex) + adjustment + vehicleTime;
+                    if (arvTime < 0) continue;
+                    if (arvTime <= adjustedTime && arvTime > bestTime) {
+                        bestTrip = tt;
+                        bestTime = arvTime;
+                    }
                 }
             }
         }
@@ -268,6 +293,21 @@ public class Timetable implements Serializable {
         return getNextTrip(s0, serviceDay, stopIndex, boarding, 0, 0, 0);
     }
 
+    /**
+     * List the trips departing from a stop at or after a given time, in order of departure, using the per-stop index
+     * built by finish(). Trips that do not serve the stop and trips with a negative departure time there (canceled
+     * trips and skipped stops) are left out. Service days are not taken into account.
+     *
+     * @param time seconds since midnight of the service day
+     * @return the trips in order of departure, or null if this timetable is not indexed because its trips were
+     * modified since the last call to finish(). Callers should then look at all the tripTimes.
+     */
+    public Iterator<TripTimes> getDeparturesFrom(int stopIndex, int time) {
+        TripTimesIndex index = tripTimesIndex;
+        if (index == null || index.size != tripTimes.size()) return null;
+        return index.departuresFrom(stopIndex, time);
+    }
+
     // could integrate with getNextTrip
     public TripTimes getNextCallNRideTrip(State s0, ServiceDay serviceDay, int stopIndex, boolean boarding, int directTime) {
         /* Search at the state's time, but relative to midnight on the given service day. */
@@ -367,6 +407,19 @@ public class Timetable implements Serializable {
         return t0;
     }
 
+    /**
+     * Check whether a trip passes all the per-request filters of getNextTrip, returning the time adjusted for
+     * transfer rules or -1 if the trip cannot be used.
+     */
+    private int acceptableTripTime(State s0, ServiceDay serviceDay, TripTimes tt, int stopIndex, Stop currentStop,
+                                   boolean boarding, int time) {
+        if (tt.isCanceled()) return -1;
+        if (!serviceDay.serviceRunning(tt.serviceCode)) return -1;
+        if (!tt.tripAcceptable(s0, stopIndex)) return -1;
+        if (s0.getOptions().tripIsBanned(tt.trip)) return -1;
+        return adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+    }
+
     /**
      * Finish off a Timetable once all TripTimes have been added to it. This involves caching
      * lower bounds on the running times and dwell times at each stop, and may perform other
@@ -416,6 +469,24 @@ public class Timetable implements Serializable {
             minTime = Math.min(minTime, freq.getMinDeparture());
             maxTime = Math.max(maxTime, freq.getMaxArrival());
         }
+        // Updates applied through setTripTimes and addTripTimes keep the index current, so it only needs to be
+        // rebuilt from scratch when the trips were modified some other way.
+        if (tripTimesIndex == null || !tripTimesIndex.isCurrent(tripTimes)) {
+            tripTimesIndex = TripTimesIndex.build(tripTimes, nStops, scheduledTimes);
+        }
+    }
+
+    /**
+     * Lay out the scheduled times of all the trips of this timetable in a single array, see
+     * TripTimes.shareScheduledTimes, so that the boarding search reads them from there rather than through each
+     * TripTimes. As this changes where the trips read their times, it is only done while the graph is being built or
+     * loaded, before finish() and before any search.
+     */
+    public void shareScheduledTimes() {
+        List<TripTimes> allTripTimes = Lists.newArrayList(tripTimes);
+        for (FrequencyEntry freq : frequencyEntries) allTripTimes.add(freq.tripTimes);
+        scheduledTimes = TripTimes.shareScheduledTimes(allTripTimes);
+        tripTimesIndex = null;
     }
 
     /**
@@ -475,7 +546,9 @@ public class Timetable implements Serializable {
      * @return old trip times of trip
      */
     public TripTimes setTripTimes(int tripIndex, TripTimes tt) {
-        return tripTimes.set(tripIndex, tt);
+        TripTimes old = tripTimes.set(tripIndex, tt);
+        updateTripTimesIndex(tripIndex, tt);
+        return old;
     }
 
     /**
@@ -1314,6 +1387,20 @@ public class Timetable implements Serializable {
      */
     public void addTripTimes(TripTimes tt) {
         tripTimes.add(tt);
+        updateTripTimesIndex(tripTimes.size() - 1, tt);
+    }
+
+    /**
+     * Incrementally update the per-stop trip ordering after a single trip was replaced or appended, so realtime
+     * updates do not need to re-sort the whole timetable. Drops the index if it no longer matches the trip list,
+     * in which case it is rebuilt by the next call to finish().
+     */
+    private void updateTripTimesIndex(int tripIndex, TripTimes tt) {
+        TripTimesIndex index = tripTimesIndex;
+        if (index == null) return;
+        boolean replaced = tripIndex < index.size && tripTimes.size() == index.size;
+        boolean appended = tripIndex == index.size && tripTimes.size() == tripIndex + 1;
+        tripTimesIndex = (replaced || appended) ? index.withTrip(tripIndex, tt) : null;
     }
 
     /**
@@ -1373,4 +1460,365 @@ public class Timetable implements Serializable {
         }
     }
 
-} 
+
+    /**
+     * Immutable per-stop ordering of the TripTimes in a Timetable. For each stop it holds the positions of all trips
+     * serving that stop, sorted by departure time and by arrival time, so that the boarding search is a binary search
+     * followed by a scan in time order. The times of the scheduled trips are read straight from the array laid out by
+     * shareScheduledTimes, through the offset and time shift of each trip, without going through the TripTimes. Other
+     * trips, such as those updated in realtime, are read through their TripTimes. Arrivals are sorted with ties in
+     * reverse timetable order so that scanning them backwards selects the same trip as the linear search would. Trips
+     * are rarely overtaken within a pattern, so consecutive stops with the same ordering share a single array, and the
+     * index of a timetable usually costs one array of trip positions per direction, plus three ints per trip.
+     *
+     * Trips replaced or appended by realtime updates are not sorted into these arrays but kept as a short list of
+     * overrides, with their sort keys precomputed per stop, which is merged into the results of each search. The
+     * updated copies of a timetable thus share the orderings of the scheduled one, and an update costs time in
+     * proportion to the number of overrides rather than to the size of the timetable. The orderings are rebuilt once
+     * the overrides become too many. Updates always produce a new instance, allowing a copied Timetable to share the
+     * index of the original.
+     */
+    private static final class TripTimesIndex {
+
+        /** The index is rebuilt when more than this many trips, or one in OVERRIDE_RATIO trips, are overridden. */
+        private static final int MIN_REBUILD_OVERRIDES = 16;
+
+        private static final int OVERRIDE_RATIO = 8;
+
+        private static final int[] NO_POSITIONS = new int[0];
+
+        private static final TripTimes[] NO_TRIPS = new TripTimes[0];
+
+        private static final long[] NO_KEYS = new long[0];
+
+        /** The trips in the order of the timetable at the time the orderings were built. */
+        final TripTimes[] trips;
+
+        /** The scheduled times of the timetable, or null if they were not laid out. */
+        final int[] times;
+
+        /**
+         * For each of the trips, where its departure times start in times, or -1 if they must be read through the
+         * TripTimes.
+         */
+        final int[] departureOffsets;
+
+        /** For each of the trips, where its arrival times start in times, or -1. */
+        final int[] arrivalOffsets;
+
+        /** For each of the trips, the shift to add to the times read from times. */
+        final int[] timeShifts;
+
+        /** For each stop, positions in trips sorted by departure time at that stop. */
+        final int[][] departures;
+
+        /** For each stop, positions in trips sorted by arrival time at that stop. */
+        final int[][] arrivals;
+
+        /** The positions of the trips replaced or appended since the orderings were built, in ascending order. */
+        final int[] overridePositions;
+
+        /** The trips at each of the overridePositions. */
+        final TripTimes[] overrideTrips;
+
+        /** The overridden positions among trips, which the orderings still refer to but must be skipped. */
+        final BitSet overridden;
+
+        /**
+         * For each stop, the sorted departure keys of the overriding trips serving it, see sortKey. Null when there
+         * are no overrides.
+         */
+        final long[][] departureOverrideKeys;
+
+        /** For each stop, the sorted arrival keys of the overriding trips serving it. Null when there are none. */
+        final long[][] arrivalOverrideKeys;
+
+        /** The number of trips in the timetable, including those appended since the orderings were built. */
+        final int size;
+
+        private TripTimesIndex(TripTimes[] trips, int[] times, int[] departureOffsets, int[] arrivalOffsets,
+                               int[] timeShifts, int[][] departures, int[][] arrivals, int[] overridePositions,
+                               TripTimes[] overrideTrips, BitSet overridden, long[][] departureOverrideKeys,
+                               long[][] arrivalOverrideKeys, int size) {
+            this.trips = trips;
+            this.times = times;
+            this.departureOffsets = departureOffsets;
+            this.arrivalOffsets = arrivalOffsets;
+            this.timeShifts = timeShifts;
+            this.departures = departures;
+            this.arrivals = arrivals;
+            this.overridePositions = overridePositions;
+            this.overrideTrips = overrideTrips;
+            this.overridden = overridden;
+            this.departureOverrideKeys = departureOverrideKeys;
+            this.arrivalOverrideKeys = arrivalOverrideKeys;
+            this.size = size;
+        }
+
+        static TripTimesIndex build(List<TripTimes> tripTimes, int nStops, int[] times) {
+            TripTimes[] trips = tripTimes.toArray(new TripTimes[0]);
+            int[] departureOffsets = new int[trips.length];
+            int[] arrivalOffsets = new int[trips.length];
+            int[] timeShifts = new int[trips.length];
+            for (int i = 0; i < trips.length; i++) {
+                // Trips with fewer stops than the pattern are never read past their own times
+                boolean shared = times != null && trips[i].getNumStops() == nStops;
+                departureOffsets[i] = shared ? trips[i].getScheduledDepartureOffset(times) : -1;
+                arrivalOffsets[i] = shared ? trips[i].getScheduledArrivalOffset(times) : -1;
+                timeShifts[i] = trips[i].getTimeShift();
+            }
+            int[][] departures = new int[nStops][];
+            int[][] arrivals = new int[nStops][];
+            for (int s = 0; s < nStops; s++) {
+                departures[s] = sortTrips(trips, s, true);
+                arrivals[s] = sortTrips(trips, s, false);
+            }
+            shareIdenticalOrders(departures);
+            shareIdenticalOrders(arrivals);
+            return new TripTimesIndex(trips, times, departureOffsets, arrivalOffsets, timeShifts, departures, arrivals,
+                    NO_POSITIONS, NO_TRIPS, new BitSet(), null, null, trips.length);
+        }
+
+        /** @return true if this index was built from exactly the given list of trips. */
+        boolean isCurrent(List<TripTimes> tripTimes) {
+            if (size != tripTimes.size()) return false;
+            int i = 0;
+            for (TripTimes tt : tripTimes) {
+                if (tripAt(i++) != tt) return false;
+            }
+            return true;
+        }
+
+        /** @return a copy of this index in which the trip at the given position is replaced or appended. */
+        TripTimesIndex withTrip(int tripIndex, TripTimes tt) {
+            int k = Arrays.binarySearch(overridePositions, tripIndex);
+            int[] positions = overridePositions;
+            TripTimes[] overrides;
+            if (k >= 0) {
+                overrides = overrideTrips.clone();
+                overrides[k] = tt;
+            } else {
+                int insert = -k - 1;
+                positions = new int[overridePositions.length + 1];
+                overrides = new TripTimes[overrideTrips.length + 1];
+                System.arraycopy(overridePositions, 0, positions, 0, insert);
+                System.arraycopy(overrideTrips, 0, overrides, 0, insert);
+                positions[insert] = tripIndex;
+                overrides[insert] = tt;
+                System.arraycopy(overridePositions, insert, positions, insert + 1, overridePositions.length - insert);
+                System.arraycopy(overrideTrips, insert, overrides, insert + 1, overrideTrips.length - insert);
+            }
+            int newSize = Math.max(size, tripIndex + 1);
+            int nStops = departures.length;
+            if (positions.length > Math.max(MIN_REBUILD_OVERRIDES, trips.length / OVERRIDE_RATIO)) {
+                TripTimes[] all = Arrays.copyOf(trips, newSize);
+                for (int i = 0; i < positions.length; i++) {
+                    all[positions[i]] = overrides[i];
+                }
+                return build(Arrays.asList(all), nStops, times);
+            }
+            BitSet newOverridden = overridden;
+            if (tripIndex < trips.length && !overridden.get(tripIndex)) {
+                newOverridden = (BitSet) overridden.clone();
+                newOverridden.set(tripIndex);
+            }
+            return new TripTimesIndex(trips, times, departureOffsets, arrivalOffsets, timeShifts, departures, arrivals,
+                    positions, overrides, newOverridden,
+                    overrideKeys(positions, overrides, nStops, true), overrideKeys(positions, overrides, nStops, false),
+                    newSize);
+        }
+
+        /**
+         * Find the earliest usable departure at or after the given time. Transfer rules can only make the
+         * earliest boarding time later, so no trip departing before the search time can ever be used.
+         */
+        TripTimes nextDeparture(Timetable timetable, State s0, ServiceDay serviceDay, int stopIndex,
+                                Stop currentStop, int time) {
+            Iterator<TripTimes> departures = departuresFrom(stopIndex, time);
+            while (departures.hasNext()) {
+                TripTimes tt = departures.next();
+                int adjustedTime = timetable.acceptableTripTime(s0, serviceDay, tt, stopIndex, currentStop, true, time);
+                if (adjustedTime == -1) continue;
+                if (tt.getDepartureTime(stopIndex) >= adjustedTime) return tt;
+            }
+            return null;
+        }
+
+        /** @return the trips departing at or after the given time, in order of departure. */
+        Iterator<TripTimes> departuresFrom(int stopIndex, int time) {
+            int[] order = departures[stopIndex];
+            int start = firstTimeAtLeast(order, stopIndex, time, true);
+            long[] overrides = departureOverrideKeys == null ? NO_KEYS : departureOverrideKeys[stopIndex];
+            int firstOverride = firstKeyAtLeast(overrides, sortKey(time, 0));
+            return new Iterator<TripTimes>() {
+                private int i = skipOverridden(order, start);
+                private int j = firstOverride;
+
+                @Override
+                public boolean hasNext() {
+                    return i < order.length || j < overrides.length;
+                }
+
+                @Override
+                public TripTimes next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    if (j < overrides.length && (i >= order.length
+                            || sortKey(departureTime(order[i], stopIndex), order[i]) > overrides[j])) {
+                        return tripAt((int) overrides[j++]);
+                    }
+                    TripTimes tt = trips[order[i]];
+                    i = skipOverridden(order, i + 1);
+                    return tt;
+                }
+            };
+        }
+
+        /** Find the latest usable arrival at or before the given time, see nextDeparture. */
+        TripTimes previousArrival(Timetable timetable, State s0, ServiceDay serviceDay, int stopIndex,
+                                  Stop currentStop, int time) {
+            if (time < 0) return null;
+            int[] order = arrivals[stopIndex];
+            long[] overrides = arrivalOverrideKeys == null ? NO_KEYS : arrivalOverrideKeys[stopIndex];
+            int i = firstTimeAtLeast(order, stopIndex, time + 1, false) - 1;
+            int j = firstKeyAtLeast(overrides, sortKey(time + 1, 0)) - 1;
+            while (true) {
+                while (i >= 0 && overridden.get(order[i])) i--;
+                TripTimes tt;
+                if (i >= 0 && (j < 0 || sortKey(arrivalTime(order[i], stopIndex),
+                        Integer.MAX_VALUE - order[i]) > overrides[j])) {
+                    tt = trips[order[i--]];
+                } else if (j >= 0) {
+                    tt = tripAt(Integer.MAX_VALUE - (int) overrides[j--]);
+                } else {
+                    return null;
+                }
+                int adjustedTime = timetable.acceptableTripTime(s0, serviceDay, tt, stopIndex, currentStop, false, time);
+                if (adjustedTime == -1) continue;
+                if (tt.getArrivalTime(stopIndex) <= adjustedTime) return tt;
+            }
+        }
+
+        /** @return the departure time at the given stop of the trip at the given position in trips. */
+        private int departureTime(int position, int stopIndex) {
+            int offset = departureOffsets[position];
+            return offset < 0 ? trips[position].getDepartureTime(stopIndex)
+                    : times[offset + stopIndex] + timeShifts[position];
+        }
+
+        /** @return the arrival time at the given stop of the trip at the given position in trips. */
+        private int arrivalTime(int position, int stopIndex) {
+            int offset = arrivalOffsets[position];
+            return offset < 0 ? trips[position].getArrivalTime(stopIndex)
+                    : times[offset + stopIndex] + timeShifts[position];
+        }
+
+        private TripTimes tripAt(int tripIndex) {
+            int k = overridePositions.length == 0 ? -1 : Arrays.binarySearch(overridePositions, tripIndex);
+            return k >= 0 ? overrideTrips[k] : trips[tripIndex];
+        }
+
+        /** @return the first position from i onwards in order whose trip is not overridden. */
+        private int skipOverridden(int[] order, int i) {
+            while (i < order.length && overridden.get(order[i])) i++;
+            return i;
+        }
+
+        /** @return the position of the first entry in order whose time at the given stop is at least time. */
+        private int firstTimeAtLeast(int[] order, int stopIndex, int time, boolean departure) {
+            int low = 0;
+            int high = order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int t = departure ? departureTime(order[mid], stopIndex) : arrivalTime(order[mid], stopIndex);
+                if (t < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /** @return the position of the first of the sorted keys that is at least key. */
+        private static int firstKeyAtLeast(long[] keys, long key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return for each stop, the sorted keys of the given overriding trips serving it. The tie breaker of each key
+         * gives the position of the trip.
+         */
+        private static long[][] overrideKeys(int[] positions, TripTimes[] overrides, int nStops, boolean departure) {
+            long[][] keys = new long[nStops][];
+            long[] buffer = new long[overrides.length];
+            for (int s = 0; s < nStops; s++) {
+                int n = 0;
+                for (int k = 0; k < overrides.length; k++) {
+                    int t = timeAt(overrides[k], s, departure);
+                    if (t < 0) continue;
+                    buffer[n++] = sortKey(t, departure ? positions[k] : Integer.MAX_VALUE - positions[k]);
+                }
+                if (n == 0) {
+                    keys[s] = NO_KEYS;
+                } else {
+                    keys[s] = Arrays.copyOf(buffer, n);
+                    Arrays.sort(keys[s]);
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * @return the departure or arrival time of the trip at the stop, or -1 if the trip does not serve this stop
+         * and should not be indexed there. Negative times are used for canceled trips and skipped stops.
+         */
+        private static int timeAt(TripTimes tt, int stopIndex, boolean departure) {
+            if (tt.getNumStops() <= stopIndex) return -1;
+            int time = departure ? tt.getDepartureTime(stopIndex) : tt.getArrivalTime(stopIndex);
+            return time < 0 ? -1 : time;
+        }
+
+        /**
+         * Combine the time of a trip at a stop and its position in the timetable into a single sortable key.
+         * Departures break ties by ascending position, arrivals by descending position.
+         */
+        private static long sortKey(int time, int tieBreaker) {
+            return ((long) time << 32) | tieBreaker;
+        }
+
+        private static int[] sortTrips(TripTimes[] trips, int stopIndex, boolean departure) {
+            long[] keys = new long[trips.length];
+            int n = 0;
+            for (int i = 0; i < trips.length; i++) {
+                int time = timeAt(trips[i], stopIndex, departure);
+                if (time >= 0) keys[n++] = sortKey(time, departure ? i : Integer.MAX_VALUE - i);
+            }
+            Arrays.sort(keys, 0, n);
+            int[] order = new int[n];
+            for (int i = 0; i < n; i++) {
+                int tieBreaker = (int) keys[i];
+                order[i] = departure ? tieBreaker : Integer.MAX_VALUE - tieBreaker;
+            }
+            return order;
+        }
+
+        private static void shareIdenticalOrders(int[][] orders) {
+            for (int s = 1; s < orders.length; s++) {
+                if (Arrays.equals(orders[s], orders[s - 1])) {
+                    orders[s] = orders[s - 1];
+                }
+            }
+        }
+    }
+
+}
@@ -16,6 +16,7 @@ package org.opentripplanner.routing.edgetype;
 import java.util.*;
 import java.util.Map.Entry;
 
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.model.Trip;
@@ -100,12 +101,12 @@ public class TimetableSnapshot {
 
     private static final Logger LOG = LoggerFactory.getLogger(TimetableSnapshot.class);
     
-    // Use HashMap not Map so we can clone.
-    // if this turns out to be slow/spacious we can use an array with integer pattern indexes
-    // The SortedSet members are copy-on-write
+    // A persistent map, so that a commit shares it with the snapshot it produces instead of copying it, and
+    // later updates only copy the path to the entries they change.
+    // The SortedSet members are copy-on-write, and so are the Timetables in them. A copied Timetable shares its
+    // TripTimes with the original, except for those of the updated trips.
     // FIXME: this could be made into a flat hashtable with compound keys.
-    private HashMap<TripPattern, SortedSet<Timetable>> timetables =
-            new HashMap<TripPattern, SortedSet<Timetable>>();
+    private PersistentHashMap<TripPattern, SortedSet<Timetable>> timetables = PersistentHashMap.empty();
 
     /**
      * <p>
@@ -114,10 +115,10 @@ public class TimetableSnapshot {
      * with trip times of a trip that didn't exist yet in the trip pattern.
      * </p>
      * <p>
-     * This is a HashMap and not a Map so the clone function is available.
+     * This is a persistent map, so that it is shared rather than copied on commit.
      * </p>
      */
-    private HashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = new HashMap<>();
+    private PersistentHashMap<TripIdAndServiceDate, TripPattern> lastAddedTripPattern = PersistentHashMap.empty();
     
     /**
      * Boolean value indicating that timetable snapshot is read only if true. Once it is true, it shouldn't
@@ -263,13 +264,14 @@ public class TimetableSnapshot {
             if(old.serviceDate != null)
                 sortedTimetables.remove(old);
             sortedTimetables.add(tt);
-            timetables.put(pattern, sortedTimetables);
+            timetables = timetables.plus(pattern, sortedTimetables);
             dirtyTimetables.add(tt);
             dirty = true;
         }
         
         // Assume all trips in a pattern are from the same feed, which should be the case.
-        // Find trip index
+        // Find trip index. Adding or setting the trip times incrementally updates the departure index the copied
+        // timetable shares with its original, so only the changed trip is re-sorted.
         int tripIndex = tt.getTripIndex(updatedTripTimes.trip.getId());
         if (tripIndex == -1) {
             // Trip not found, add it
@@ -282,7 +284,7 @@ public class TimetableSnapshot {
         // Remember this pattern for the added/updated trip id and service date
         String tripId = updatedTripTimes.trip.getId().getId();
         TripIdAndServiceDate tripIdAndServiceDate = new TripIdAndServiceDate(feedId, tripId, serviceDate);
-        lastAddedTripPattern.put(tripIdAndServiceDate, pattern);
+        lastAddedTripPattern = lastAddedTripPattern.plus(tripIdAndServiceDate, pattern);
 
         // The time tables are finished during the commit
         
@@ -291,7 +293,8 @@ public class TimetableSnapshot {
 
     /**
      * This produces a small delay of typically around 50ms, which is almost entirely due to
-     * the indexing step. Cloning the map is much faster (2ms).
+     * the indexing step. The maps are persistent and shared with the new snapshot, so handing
+     * them over costs nothing whatever their size.
      * It is perhaps better to index timetables as they are changed to avoid experiencing all
      * this lag at once, but we want to avoid re-indexing when receiving multiple updates for
      * the same timetable in rapid succession. This compromise is expressed by the
@@ -303,7 +306,6 @@ public class TimetableSnapshot {
         return commit(false);
     }
 
-    @SuppressWarnings("unchecked")
     public TimetableSnapshot commit(boolean force) {
         if (readOnly) {
             throw new ConcurrentModificationException("This TimetableSnapshot is read-only.");
@@ -314,9 +316,8 @@ public class TimetableSnapshot {
         for (Timetable tt : dirtyTimetables) {
             tt.finish(); // summarize, index, etc. the new timetables
         }
-        ret.timetables = (HashMap<TripPattern, SortedSet<Timetable>>) this.timetables.clone();
-        ret.lastAddedTripPattern = (HashMap<TripIdAndServiceDate, TripPattern>)
-                this.lastAddedTripPattern.clone();
+        ret.timetables = this.timetables;
+        ret.lastAddedTripPattern = this.lastAddedTripPattern;
         this.dirtyTimetables.clear();
         this.dirty = false;
 
@@ -350,7 +351,11 @@ public class TimetableSnapshot {
      * @return true if the timetable changed as a result of the call
      */
     protected boolean clearTimetable(String feedId) {
-        return timetables.keySet().removeIf(tripPattern -> feedId.equals(tripPattern.getFeedId()));
+        PersistentHashMap<TripPattern, SortedSet<Timetable>> cleared =
+                timetables.minusIf(tripPattern -> feedId.equals(tripPattern.getFeedId()));
+        boolean modified = cleared != timetables;
+        timetables = cleared;
+        return modified;
     }
 
     /**
@@ -360,7 +365,11 @@ public class TimetableSnapshot {
      * @return true if the lastAddedTripPattern changed as a result of the call
      */
     protected boolean clearLastAddedTripPattern(String feedId) {
-        return lastAddedTripPattern.keySet().removeIf(lastAddedTripPattern -> feedId.equals(lastAddedTripPattern.getFeedId()));
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> cleared =
+                lastAddedTripPattern.minusIf(tripIdAndServiceDate -> feedId.equals(tripIdAndServiceDate.getFeedId()));
+        boolean modified = cleared != lastAddedTripPattern;
+        lastAddedTripPattern = cleared;
+        return modified;
     }
 
     /**
@@ -372,34 +381,32 @@ public class TimetableSnapshot {
         }
 
         boolean modified = false;
-        for (Iterator<TripPattern> it = timetables.keySet().iterator(); it.hasNext();){
-            TripPattern pattern = it.next();
-            SortedSet<Timetable> sortedTimetables = timetables.get(pattern);
+        for (Entry<TripPattern, SortedSet<Timetable>> entry : timetables) {
+            TripPattern pattern = entry.getKey();
+            SortedSet<Timetable> sortedTimetables = entry.getValue();
             SortedSet<Timetable> toKeepTimetables =
                     new TreeSet<Timetable>(new SortedTimetableComparator());
             for(Timetable timetable : sortedTimetables) {
                 if(serviceDate.compareTo(timetable.serviceDate) < 0) {
                     toKeepTimetables.add(timetable);
-                } else {
-                    modified = true;
                 }
             }
 
+            // Only patterns that lost timetables change, the others keep sharing their sets with earlier snapshots.
             if(toKeepTimetables.isEmpty()) {
-                it.remove();
-            } else {
-                timetables.put(pattern, toKeepTimetables);
+                timetables = timetables.minus(pattern);
+            } else if (toKeepTimetables.size() < sortedTimetables.size()) {
+                timetables = timetables.plus(pattern, toKeepTimetables);
             }
+            modified |= toKeepTimetables.size() < sortedTimetables.size();
         }
         
         // Also remove last added trip pattern for days that are purged
-        for (Iterator<Entry<TripIdAndServiceDate, TripPattern>> iterator = lastAddedTripPattern
-                .entrySet().iterator(); iterator.hasNext();) {
-            TripIdAndServiceDate tripIdAndServiceDate = iterator.next().getKey();
-            if (serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0) {
-                iterator.remove();
-                modified = true;
-            }
+        PersistentHashMap<TripIdAndServiceDate, TripPattern> kept = lastAddedTripPattern.minusIf(
+                tripIdAndServiceDate -> serviceDate.compareTo(tripIdAndServiceDate.getServiceDate()) >= 0);
+        if (kept != lastAddedTripPattern) {
+            lastAddedTripPattern = kept;
+            modified = true;
         }
 
         return modified;
@@ -409,6 +409,7 @@ public class PatternHopFactory {
         /* Is this the wrong place to do this? It should be done on all feeds at once, or at deserialization. */
         // it is already done at deserialization, but standalone mode allows using graphs without serializing them.
         for (TripPattern tableTripPattern : tripPatterns) {
+            tableTripPattern.scheduledTimetable.shareScheduledTimes();
             tableTripPattern.scheduledTimetable.finish();
         }
 
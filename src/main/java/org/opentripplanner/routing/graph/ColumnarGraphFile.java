@@ -0,0 +1,346 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.FieldSerializer;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetEdgeColumns;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.standalone.datastore.DataSource;
+import org.opentripplanner.standalone.datastore.file.FileDataSource;
+import org.opentripplanner.util.I18NString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves and loads graphs in the columnar graph file format. Kryo deserializes the street network one object at a
+ * time and then rebuilds the edge lists of every vertex one edge at a time, which makes loading a large graph slow
+ * and leaves a lot of garbage behind. This format stores the bulk of the graph, the street edges and the edge lists,
+ * as flat columns of primitives that are memory-mapped on load:
+ *
+ * <pre>
+ * header      magic number, street edge count and the positions of the sections below
+ * Kryo        the vertices and the distinct street names
+ * columns     the fields of the street edges, see {@link StreetEdgeColumns}
+ * Kryo        the Graph object and all the edges that are not street edges
+ * adjacency   in and out degree of each vertex, then the edge numbers in their incoming and outgoing lists
+ * </pre>
+ *
+ * Edges are numbered with the street edges first, in the order of their columns, followed by the other edges. The
+ * street edges are instantiated before anything is read, so that Kryo can resolve references to them from other
+ * objects as their number in the columns. The packed street geometries are not read at all on load: they stay in
+ * the mapped file, which is why a graph file is never overwritten in place but replaced.
+ */
+public class ColumnarGraphFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnarGraphFile.class);
+
+    /** "OTPCOLG" and a format version number. */
+    static final long MAGIC = 0x4f5450434f4c4701L;
+
+    /** Magic number, street edge count and the positions of the columns, graph and adjacency sections. */
+    private static final int HEADER_SIZE = 8 + 4 + 3 * 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** @return true if the given data source holds a graph in this format, false if it holds a Kryo graph. */
+    public static boolean isColumnar(DataSource source) throws IOException {
+        try (DataInputStream in = new DataInputStream(source.asInputStream())) {
+            return in.readLong() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    public static void save(Graph graph, DataSource target) throws IOException {
+        File local = target instanceof FileDataSource ? ((FileDataSource) target).localFile() : null;
+        File tmp = File.createTempFile("graph", ".tmp", local == null ? null : local.getAbsoluteFile().getParentFile());
+        try {
+            save(graph, tmp);
+            if (local != null) {
+                // Replace rather than overwrite the file: a running router may have mapped the old one.
+                Files.move(tmp.toPath(), local.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                try (OutputStream out = target.asOutputStream()) {
+                    Files.copy(tmp.toPath(), out);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    public static Graph load(DataSource source) throws IOException {
+        File local = source instanceof FileDataSource ? ((FileDataSource) source).localFile() : null;
+        if (local != null) {
+            return load(local);
+        }
+        // Only files can be mapped, so copy anything else to a temporary file first. The mapped regions stay valid
+        // after the file is deleted.
+        File tmp = File.createTempFile("graph", ".tmp");
+        try {
+            try (InputStream in = source.asInputStream()) {
+                Files.copy(in, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return load(tmp);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    static void save(Graph graph, File file) throws IOException {
+        LOG.info("Main graph size: |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+        LOG.info("Writing columnar graph {} ...", file);
+        List<Vertex> vertices = new ArrayList<>(graph.getVertices());
+        int[] vertexNumbers = new int[graph.getVertexIndexCapacity()];
+        Arrays.fill(vertexNumbers, -1);
+        for (int i = 0; i < vertices.size(); i++) {
+            vertexNumbers[vertices.get(i).getIndex()] = i;
+        }
+
+        // Number the edges, street edges first, and collect the distinct street names.
+        List<StreetEdge> streetEdges = new ArrayList<>();
+        List<Edge> otherEdges = new ArrayList<>();
+        for (Vertex v : vertices) {
+            for (Edge e : v.getOutgoing()) {
+                if (e.getClass() == StreetEdge.class && isNumbered(e.getFromVertex(), vertexNumbers)
+                        && isNumbered(e.getToVertex(), vertexNumbers)) {
+                    streetEdges.add((StreetEdge) e);
+                } else {
+                    otherEdges.add(e);
+                }
+            }
+        }
+        Map<Edge, Integer> edgeNumbers = new IdentityHashMap<>(streetEdges.size() + otherEdges.size());
+        for (StreetEdge e : streetEdges) {
+            edgeNumbers.put(e, edgeNumbers.size());
+        }
+        for (Edge e : otherEdges) {
+            edgeNumbers.put(e, edgeNumbers.size());
+        }
+        List<I18NString> names = new ArrayList<>();
+        Map<I18NString, Integer> nameNumbers = new IdentityHashMap<>();
+        for (StreetEdge e : streetEdges) {
+            I18NString name = e.getRawName();
+            if (name != null && !nameNumbers.containsKey(name)) {
+                nameNumbers.put(name, names.size());
+                names.add(name);
+            }
+        }
+
+        Kryo kryo = Graph.makeKryo();
+        // Keep track of references across sections, so that all sections share the same objects.
+        kryo.setAutoReset(false);
+        kryo.register(StreetEdge.class, new StreetEdgeSerializer(kryo, edgeNumbers, streetEdges.size()));
+        long columnsPosition, graphPosition, adjacencyPosition;
+        try (Output output = new Output(new FileOutputStream(file), BUFFER_SIZE)) {
+            output.writeLong(MAGIC);
+            output.writeInt(streetEdges.size());
+            // The positions are filled in once all sections are written.
+            output.writeLong(0);
+            output.writeLong(0);
+            output.writeLong(0);
+            kryo.writeClassAndObject(output, vertices);
+            kryo.writeClassAndObject(output, names);
+            columnsPosition = output.total();
+            StreetEdgeColumns.write(output, streetEdges, v -> vertexNumbers[v.getIndex()],
+                    name -> name == null ? -1 : nameNumbers.get(name));
+            graphPosition = output.total();
+            kryo.writeClassAndObject(output, graph);
+            kryo.writeClassAndObject(output, otherEdges);
+            adjacencyPosition = output.total();
+            for (Vertex v : vertices) output.writeInt(v.getDegreeIn());
+            for (Vertex v : vertices) output.writeInt(v.getDegreeOut());
+            for (Vertex v : vertices) writeEdgeNumbers(output, v.getIncoming(), edgeNumbers);
+            for (Vertex v : vertices) writeEdgeNumbers(output, v.getOutgoing(), edgeNumbers);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(12);
+            raf.writeLong(columnsPosition);
+            raf.writeLong(graphPosition);
+            raf.writeLong(adjacencyPosition);
+        }
+        LOG.info("Graph written, {} street edges in columns.", streetEdges.size());
+    }
+
+    static Graph load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Mapped regions stay valid after the channel is closed.
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(0) != MAGIC) {
+                throw new IllegalStateException("Not a columnar graph file: " + file);
+            }
+            int streetEdgeCount = header.getInt(8);
+            long columnsPosition = header.getLong(12);
+            long graphPosition = header.getLong(20);
+            long adjacencyPosition = header.getLong(28);
+
+            long startTime = System.nanoTime();
+            Kryo kryo = Graph.makeKryo();
+            kryo.setAutoReset(false);
+            StreetEdge[] streetEdges = new StreetEdge[streetEdgeCount];
+            for (int i = 0; i < streetEdgeCount; i++) {
+                streetEdges[i] = kryo.newInstance(StreetEdge.class);
+            }
+            kryo.register(StreetEdge.class, new StreetEdgeSerializer(kryo, streetEdges));
+
+            Input input = new Input(Channels.newInputStream(channel.position(HEADER_SIZE)), BUFFER_SIZE);
+            @SuppressWarnings("unchecked")
+            List<Vertex> vertices = (List<Vertex>) kryo.readClassAndObject(input);
+            @SuppressWarnings("unchecked")
+            List<I18NString> names = (List<I18NString>) kryo.readClassAndObject(input);
+            LOG.debug("Reading street edge columns...");
+            StreetEdgeColumns.read(channel, columnsPosition, streetEdges, vertices.toArray(new Vertex[0]),
+                    names.toArray(new I18NString[0]));
+
+            input = new Input(Channels.newInputStream(channel.position(graphPosition)), BUFFER_SIZE);
+            Graph graph = (Graph) kryo.readClassAndObject(input);
+            LOG.debug("Basic graph info read.");
+            if (graph.graphVersionMismatch()) {
+                throw new RuntimeException("Graph version mismatch detected.");
+            }
+            @SuppressWarnings("unchecked")
+            List<Edge> otherEdges = (List<Edge>) kryo.readClassAndObject(input);
+
+            GraphLoadMetrics.report("deserialize", startTime, streetEdges.length + otherEdges.size());
+
+            startTime = System.nanoTime();
+            LOG.debug("Setting edge lists...");
+            long adjacencySize = channel.size() - adjacencyPosition;
+            if (adjacencySize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Edge lists of " + adjacencySize + " bytes are too large to be mapped.");
+            }
+            ByteBuffer adjacency = channel.map(FileChannel.MapMode.READ_ONLY, adjacencyPosition, adjacencySize);
+            int n = vertices.size();
+            int numbers = 4 * 2 * n;
+            Edge[][] incoming = new Edge[n][];
+            for (int i = 0; i < n; i++) {
+                incoming[i] = new Edge[adjacency.getInt(4 * i)];
+                numbers = readEdges(adjacency, numbers, incoming[i], streetEdges, otherEdges);
+            }
+            for (int i = 0; i < n; i++) {
+                Edge[] outgoing = new Edge[adjacency.getInt(4 * (n + i))];
+                numbers = readEdges(adjacency, numbers, outgoing, streetEdges, otherEdges);
+                vertices.get(i).setEdges(incoming[i], outgoing);
+            }
+            graph.restoreVertices(vertices);
+            GraphLoadMetrics.report("edgeLists", startTime, streetEdges.length + otherEdges.size());
+
+            LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
+            graph.index(new DefaultStreetVertexIndexFactory());
+            return graph;
+        }
+    }
+
+    private static boolean isNumbered(Vertex v, int[] vertexNumbers) {
+        return v.getIndex() >= 0 && v.getIndex() < vertexNumbers.length && vertexNumbers[v.getIndex()] >= 0;
+    }
+
+    private static void writeEdgeNumbers(Output output, Collection<Edge> edges, Map<Edge, Integer> edgeNumbers) {
+        for (Edge e : edges) {
+            Integer number = edgeNumbers.get(e);
+            if (number == null) {
+                // Same assumption as in Graph.save: incoming edges are in the outgoing list of another vertex.
+                throw new IllegalStateException("Edge " + e + " is not in the outgoing edges of its vertex.");
+            }
+            output.writeInt(number);
+        }
+    }
+
+    /** @return the position in the buffer after the edge numbers read */
+    private static int readEdges(ByteBuffer buffer, int position, Edge[] edges, StreetEdge[] streetEdges,
+            List<Edge> otherEdges) {
+        for (int i = 0; i < edges.length; i++, position += 4) {
+            int number = buffer.getInt(position);
+            edges[i] = number < streetEdges.length ? streetEdges[number] : otherEdges.get(number - streetEdges.length);
+        }
+        return position;
+    }
+
+    /**
+     * Writes a reference to a street edge in the columns as its number. Street edges that are not in the columns,
+     * because they are no longer part of the graph but are still referenced from somewhere, are written in full.
+     */
+    private static class StreetEdgeSerializer extends Serializer<StreetEdge> {
+
+        private final FieldSerializer<StreetEdge> fieldSerializer;
+
+        private final Map<Edge, Integer> edgeNumbers;
+
+        private final int streetEdgeCount;
+
+        private final StreetEdge[] streetEdges;
+
+        /** Serializer for writing. */
+        StreetEdgeSerializer(Kryo kryo, Map<Edge, Integer> edgeNumbers, int streetEdgeCount) {
+            this.fieldSerializer = new FieldSerializer<>(kryo, StreetEdge.class);
+            this.edgeNumbers = edgeNumbers;
+            this.streetEdgeCount = streetEdgeCount;
+            this.streetEdges = null;
+        }
+
+        /** Serializer for reading. */
+        StreetEdgeSerializer(Kryo kryo, StreetEdge[] streetEdges) {
+            this.fieldSerializer = new FieldSerializer<>(kryo, StreetEdge.class);
+            this.edgeNumbers = null;
+            this.streetEdgeCount = streetEdges.length;
+            this.streetEdges = streetEdges;
+        }
+
+        @Override
+        public void write(Kryo kryo, Output output, StreetEdge edge) {
+            Integer number = edgeNumbers.get(edge);
+            if (number != null && number < streetEdgeCount) {
+                output.writeInt(number, true);
+            } else {
+                output.writeInt(-1, true);
+                edge.detachGeometry();
+                fieldSerializer.write(kryo, output, edge);
+            }
+        }
+
+        @Override
+        public StreetEdge read(Kryo kryo, Input input, Class<StreetEdge> type) {
+            int number = input.readInt(true);
+            return number >= 0 ? streetEdges[number] : fieldSerializer.read(kryo, input, type);
+        }
+    }
+
+}
@@ -45,6 +45,7 @@ import org.objenesis.strategy.SerializingInstantiatorStrategy;
 import org.opentripplanner.analyst.request.SampleFactory;
 import org.opentripplanner.calendar.impl.CalendarServiceImpl;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.geometry.GraphUtils;
 import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
@@ -63,6 +64,8 @@ import org.opentripplanner.model.TransmodelTransportSubmode;
 import org.opentripplanner.model.calendar.CalendarServiceData;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.algorithm.strategies.StreetLandmarks;
+import org.opentripplanner.routing.algorithm.strategies.TargetStreetSearchCache;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
@@ -70,6 +73,7 @@ import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.flex.FlexIndex;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.services.AlertPatchService;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
 import org.opentripplanner.routing.services.StreetVertexIndexService;
 import org.opentripplanner.routing.services.notes.StreetNotesService;
@@ -78,21 +82,24 @@ import org.opentripplanner.routing.vertextype.PatternArriveVertex;
 import org.opentripplanner.routing.vertextype.TemporaryVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.datastore.DataSource;
+import org.opentripplanner.standalone.datastore.FileType;
+import org.opentripplanner.standalone.datastore.file.FileDataSource;
 import org.opentripplanner.traffic.StreetSpeedSnapshotSource;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.updater.GraphUpdaterManager;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
 import org.opentripplanner.util.WorldEnvelope;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
@@ -106,6 +113,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.prefs.Preferences;
 /**
  * A graph is really just one or more indexes into a set of vertexes. It used to keep edgelists for each vertex, but those are in the vertex now.
@@ -123,7 +132,22 @@ public class Graph implements Serializable, AddBuilderAnnotation {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    private static final AlertPatch[] NO_ALERT_PATCHES = new AlertPatch[0];
+
+    /**
+     * The alert patches of each edge added directly to the graph. Writers replace the whole map under alertPatchLock,
+     * readers just read the volatile field, so itinerary rendering never contends with realtime alert updates. The
+     * arrays are shared between successive versions of the map and are never modified once published.
+     */
+    private transient volatile PersistentHashMap<Edge, AlertPatch[]> alertPatches = PersistentHashMap.empty();
+
+    /**
+     * The services of the alert updaters, which keep the alert patches of each edge in the snapshots they publish, so
+     * that an update swaps the patches of the edges together with its other indexes. Replaced under alertPatchLock.
+     */
+    private transient volatile AlertPatchService[] alertPatchServices = new AlertPatchService[0];
+
+    private final transient Object alertPatchLock = new Object();
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
 
@@ -177,6 +201,18 @@ public class Graph implements Serializable, AddBuilderAnnotation {
 
     public final transient Deduplicator deduplicator = new Deduplicator();
 
+    /** Street searches around the targets of recent transit searches, reused by the goal direction heuristic. */
+    public final transient TargetStreetSearchCache targetStreetSearchCache = new TargetStreetSearchCache();
+
+    /** Latency histograms and search counters of the requests routed on this graph, exposed at /metrics. */
+    public final transient RoutingMetrics routingMetrics = new RoutingMetrics();
+
+    /** Street distances to and from landmark vertices, used to direct street-only searches. Null if not computed. */
+    public StreetLandmarks streetLandmarks = null;
+
+    /** Source of the dense vertex indexes, see Vertex.getIndex(). Reassigned from zero when the graph is loaded. */
+    private final transient AtomicInteger vertexIndexCounter = new AtomicInteger();
+
     /**
      * Map from GTFS ServiceIds to integers close to 0. Allows using BitSets instead of Set<Object>.
      * An empty Map is created before the Graph is built to allow registering IDs from multiple feeds.   
@@ -302,6 +338,9 @@ public class Graph implements Serializable, AddBuilderAnnotation {
         }
 
         Vertex old = vertices.put(v.getLabel(), v);
+        if (old != v) {
+            v.setIndex(vertexIndexCounter.getAndIncrement());
+        }
         if (old != null) {
             if (old == v)
                 LOG.error("repeatedly added the same vertex: {}", v);
@@ -331,11 +370,13 @@ public class Graph implements Serializable, AddBuilderAnnotation {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
+            synchronized (alertPatchLock) {   // This synchronization is somewhat silly because this
+                alertPatches = alertPatches.minus(e); // method isn't thread-safe anyway, but it is consistent
             }
 
-            turnRestrictions.remove(e);
+            if (turnRestrictions.remove(e) != null) {
+                indexTurnRestrictions(e);
+            }
             streetNotesService.removeStaticNotes(e);
 
             if (e instanceof EdgeWithCleanup) ((EdgeWithCleanup) e).detach();
@@ -394,17 +435,14 @@ public class Graph implements Serializable, AddBuilderAnnotation {
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
+        synchronized (alertPatchLock) {
+            AlertPatch[] alertPatches = this.alertPatches.get(edge);
             if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
+                this.alertPatches = this.alertPatches.plus(edge, new AlertPatch[] { alertPatch });
+            } else if (!Arrays.asList(alertPatches).contains(alertPatch)) {
+                alertPatches = Arrays.copyOf(alertPatches, alertPatches.length + 1);
+                alertPatches[alertPatches.length - 1] = alertPatch;
+                this.alertPatches = this.alertPatches.plus(edge, alertPatches);
             }
         }
     }
@@ -417,33 +455,58 @@ public class Graph implements Serializable, AddBuilderAnnotation {
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
+        synchronized (alertPatchLock) {
+            AlertPatch[] alertPatches = this.alertPatches.get(edge);
+            if (alertPatches != null && Arrays.asList(alertPatches).contains(alertPatch)) {
+                if (alertPatches.length < 2) {
+                    this.alertPatches = this.alertPatches.minus(edge);
                 } else {
-                    alertPatches.remove(alertPatch);
+                    AlertPatch[] remaining = new AlertPatch[alertPatches.length - 1];
+                    int i = 0;
+                    for (AlertPatch other : alertPatches) {
+                        if (!other.equals(alertPatch)) remaining[i++] = other;
+                    }
+                    this.alertPatches = this.alertPatches.plus(edge, remaining);
                 }
             }
         }
     }
 
+    /** Look up the alert patches of the edges in the snapshots of the given service as well. */
+    public void addAlertPatchService(AlertPatchService alertPatchService) {
+        synchronized (alertPatchLock) {
+            AlertPatchService[] services = Arrays.copyOf(alertPatchServices, alertPatchServices.length + 1);
+            services[alertPatchServices.length] = alertPatchService;
+            alertPatchServices = services;
+        }
+    }
+
     /**
-     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Get the {@link AlertPatch} array that belongs to an {@link Edge}. This never locks, and only allocates when
+     * patches from several alert services apply to the same edge: the returned array is usually shared with the graph
+     * and with other callers, so it must not be modified.
      * @param edge
      * @return The {@link AlertPatch} array that belongs to the {@link Edge}
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
-        if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
+        if (edge == null) {
+            return NO_ALERT_PATCHES;
+        }
+        AlertPatch[] result = this.alertPatches.get(edge);
+        for (AlertPatchService service : alertPatchServices) {
+            AlertPatch[] patches = service.getEdgePatches(edge);
+            if (patches == null) {
+                continue;
+            }
+            if (result == null) {
+                result = patches;
+            } else {
+                AlertPatch[] merged = Arrays.copyOf(result, result.length + patches.length);
+                System.arraycopy(patches, 0, merged, result.length, patches.length);
+                result = merged;
             }
         }
-        return new AlertPatch[0];
+        return result == null ? NO_ALERT_PATCHES : result;
     }
 
     /**
@@ -460,6 +523,7 @@ public class Graph implements Serializable, AddBuilderAnnotation {
             this.turnRestrictions.put(edge, turnRestrictions);
         }
         turnRestrictions.add(turnRestriction);
+        indexTurnRestrictions(edge);
     }
 
     /**
@@ -477,6 +541,17 @@ public class Graph implements Serializable, AddBuilderAnnotation {
             } else {
                 turnRestrictions.remove(turnRestriction);
             }
+            indexTurnRestrictions(edge);
+        }
+    }
+
+    /**
+     * Copy the turn restrictions of the given edge onto the edge itself, where they are read during traversal. The
+     * map in this graph remains the authoritative (and serialized) record of the turn restrictions.
+     */
+    private void indexTurnRestrictions(Edge edge) {
+        if (edge instanceof StreetEdge) {
+            ((StreetEdge) edge).setTurnRestrictions(turnRestrictions.get(edge));
         }
     }
 
@@ -622,6 +697,14 @@ public class Graph implements Serializable, AddBuilderAnnotation {
         return vertices.size();
     }
 
+    /**
+     * @return an exclusive upper bound on the index of every vertex in this graph, for sizing arrays indexed on
+     * Vertex.getIndex(). This is larger than countVertices() when vertices have been removed.
+     */
+    public int getVertexIndexCapacity() {
+        return vertexIndexCounter.get();
+    }
+
     /**
      * Find the total number of edges in this Graph. There are assumed to be no Edges in an incoming edge list that are not in an outgoing edge list.
      * 
@@ -673,7 +756,21 @@ public class Graph implements Serializable, AddBuilderAnnotation {
     /* (de) serialization */
 
     public static Graph load(File file) throws IOException {
-        return load(new FileInputStream(file), file.getAbsolutePath());
+        return load(new FileDataSource(file, FileType.GRAPH));
+    }
+
+    /**
+     * Load a graph saved in any of the {@link GraphFileFormat}s, recognizing the format from the content of the
+     * data source.
+     */
+    public static Graph load(DataSource graphSource) throws IOException {
+        if (ColumnarGraphFile.isColumnar(graphSource)) {
+            LOG.info("Reading columnar graph " + graphSource.path() + " ...");
+            return ColumnarGraphFile.load(graphSource);
+        }
+        try (InputStream in = graphSource.asInputStream()) {
+            return load(in, graphSource.path());
+        }
     }
 
     public static Graph load(InputStream inputStream, String sourceDescription) {
@@ -689,27 +786,64 @@ public class Graph implements Serializable, AddBuilderAnnotation {
      * TODO: do we really need a factory for different street vertex indexes?
      */
     public void index (StreetVertexIndexFactory indexFactory) {
-        LOG.info("Building street index.");
-        streetIndex = indexFactory.newIndex(this);
-        LOG.info("Rebuilding edge and vertex indices.");
-        Set<TripPattern> tableTripPatterns = Sets.newHashSet();
-        for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
-            tableTripPatterns.add(pav.getTripPattern());
-        }
-        for (TripPattern ttp : tableTripPatterns) {
-            if (ttp != null) ttp.scheduledTimetable.finish(); // skip frequency-based patterns with no table (null)
+        // The copies of the turn restrictions on the edges are not serialized.
+        for (Edge edge : turnRestrictions.keySet()) {
+            indexTurnRestrictions(edge);
         }
-        // TODO: Move this ^ stuff into the graph index
-        this.index = new GraphIndex(this);
+        // The street index, the timetables and the graph index do not depend on each other, so they are built in
+        // parallel. The Lucene index depends on the graph index.
+        LOG.info("Building street index, timetable indices and graph index.");
+        runInParallel(
+            () -> {
+                long startTime = System.nanoTime();
+                streetIndex = indexFactory.newIndex(this);
+                GraphLoadMetrics.report("streetIndex", startTime, countVertices());
+            },
+            () -> {
+                long startTime = System.nanoTime();
+                Set<TripPattern> tableTripPatterns = Sets.newHashSet();
+                for (PatternArriveVertex pav : Iterables.filter(this.getVertices(), PatternArriveVertex.class)) {
+                    tableTripPatterns.add(pav.getTripPattern());
+                }
+                for (TripPattern ttp : tableTripPatterns) {
+                    if (ttp != null) { // skip frequency-based patterns with no table (null)
+                        ttp.scheduledTimetable.shareScheduledTimes();
+                        ttp.scheduledTimetable.finish();
+                    }
+                }
+                GraphLoadMetrics.report("timetables", startTime, tableTripPatterns.size());
+            },
+            () -> {
+                // TODO: Move the timetable stuff into the graph index
+                long startTime = System.nanoTime();
+                GraphIndex graphIndex = new GraphIndex(this);
+                GraphLoadMetrics.report("graphIndex", startTime);
+                startTime = System.nanoTime();
+                graphIndex.getLuceneIndex();
+                GraphLoadMetrics.report("luceneIndex", startTime);
+                this.index = graphIndex;
+            }
+        );
         if (useFlexService ) {
             this.flexIndex = new FlexIndex();
             flexIndex.init(this);
         }
     }
-    
+
+    /** Run the given tasks on the common fork-join pool, and wait until all of them have completed. */
+    private static void runInParallel(Runnable... tasks) {
+        List<ForkJoinTask<?>> forkJoinTasks = new ArrayList<>(tasks.length);
+        for (Runnable task : tasks) {
+            forkJoinTasks.add(ForkJoinTask.adapt(task));
+        }
+        ForkJoinTask.invokeAll(forkJoinTasks);
+    }
+
     public static Graph load(InputStream in) {
         // TODO store version information, halt load if versions mismatch
-        Input input = new Input(in);
+        long startTime = System.nanoTime();
+        // A larger buffer than Kryo's default of 4kB, so reading is less often interrupted to fill it.
+        Input input = new Input(in, 1 << 16);
         Kryo kryo = makeKryo();
         Graph graph = (Graph) kryo.readClassAndObject(input);
         LOG.debug("Basic graph info read.");
@@ -720,25 +854,69 @@ public class Graph implements Serializable, AddBuilderAnnotation {
         // vertex list is transient because it can be reconstructed from edges.
         LOG.debug("Loading edges...");
         List<Edge> edges = (ArrayList<Edge>) kryo.readClassAndObject(input);
-        graph.vertices = new ConcurrentHashMap<>(); // why is this concurrent?
+        GraphLoadMetrics.report("deserialize", startTime, edges.size());
 
-        for (Edge e : edges) {
-            Vertex fromVertex = e.getFromVertex();
-            Vertex toVertex = e.getToVertex();
-            graph.vertices.put(fromVertex.getLabel(), fromVertex);
-            graph.vertices.put(toVertex.getLabel(), toVertex);
-            // Compensating for the fact that we're not using the standard Java de/serialization methods.
-            fromVertex.initEdgeListsIfNeeded();
-            toVertex.initEdgeListsIfNeeded();
-            fromVertex.addOutgoing(e);
-            toVertex.addIncoming(e);
-        }
+        startTime = System.nanoTime();
+        graph.rebuildEdgeLists(edges);
+        GraphLoadMetrics.report("edgeLists", startTime, edges.size());
 
         LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
         graph.index(new DefaultStreetVertexIndexFactory());
         return graph;
     }
 
+    /**
+     * Add the vertices of the given deserialized edges to this graph, and set their edge lists. The lists are
+     * allocated at their final size and filled in one pass over the edges, rather than copied for each edge added
+     * to them. The outgoing and incoming lists are filled in parallel, both in the order of the given edges.
+     */
+    private void rebuildEdgeLists(List<Edge> edges) {
+        this.vertices = new ConcurrentHashMap<>(); // why is this concurrent?
+        List<Vertex> indexedVertices = new ArrayList<>();
+        for (Edge e : edges) {
+            for (Vertex v : new Vertex[] { e.getFromVertex(), e.getToVertex() }) {
+                if (this.vertices.put(v.getLabel(), v) != v) {
+                    v.setIndex(vertexIndexCounter.getAndIncrement());
+                    indexedVertices.add(v);
+                }
+            }
+        }
+        Edge[][] outgoing = new Edge[vertexIndexCounter.get()][];
+        Edge[][] incoming = new Edge[vertexIndexCounter.get()][];
+        runInParallel(
+            () -> fillEdgeLists(edges, outgoing, true),
+            () -> fillEdgeLists(edges, incoming, false)
+        );
+        for (Vertex v : indexedVertices) {
+            v.setEdges(incoming[v.getIndex()], outgoing[v.getIndex()]);
+        }
+    }
+
+    /** Fill in the outgoing or incoming edge list of each vertex, indexed on the vertex index. */
+    private static void fillEdgeLists(List<Edge> edges, Edge[][] edgeLists, boolean outgoing) {
+        int[] degrees = new int[edgeLists.length];
+        for (Edge e : edges) {
+            degrees[(outgoing ? e.getFromVertex() : e.getToVertex()).getIndex()]++;
+        }
+        for (int i = 0; i < edgeLists.length; i++) {
+            edgeLists[i] = new Edge[degrees[i]];
+            degrees[i] = 0;
+        }
+        for (Edge e : edges) {
+            int v = (outgoing ? e.getFromVertex() : e.getToVertex()).getIndex();
+            edgeLists[v][degrees[v]++] = e;
+        }
+    }
+
+    /** Add the vertices read by a graph reader that also sets their edge lists. */
+    void restoreVertices(List<Vertex> vertices) {
+        this.vertices = new ConcurrentHashMap<>();
+        for (Vertex v : vertices) {
+            this.vertices.put(v.getLabel(), v);
+            v.setIndex(vertexIndexCounter.getAndIncrement());
+        }
+    }
+
     /**
      * Compares the OTP version number stored in the graph with that of the currently running instance. Logs warnings explaining that mismatched
      * versions can cause problems.
@@ -746,7 +924,7 @@ public class Graph implements Serializable, AddBuilderAnnotation {
      * @return false if Maven versions match (even if commit ids do not match), true if Maven version of graph does not match this version of OTP or
      *         graphs are otherwise obviously incompatible.
      */
-    private boolean graphVersionMismatch() {
+    boolean graphVersionMismatch() {
         MavenVersion v = MavenVersion.VERSION;
         MavenVersion gv = this.mavenVersion;
         LOG.info("Graph version: {}", gv);
@@ -818,9 +996,21 @@ public class Graph implements Serializable, AddBuilderAnnotation {
         return kryo;
     }
 
+    public void save(DataSource graphSource, GraphFileFormat format) throws IOException {
+        if (format == GraphFileFormat.COLUMNAR) {
+            ColumnarGraphFile.save(this, graphSource);
+        } else {
+            save(graphSource);
+        }
+    }
+
     public void save(DataSource graphSource) {
         LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
         LOG.info("Writing graph " + graphSource.path() + " ...");
+        // Geometries still read from a columnar graph file would not be written by Kryo.
+        for (StreetEdge e : getStreetEdges()) {
+            e.detachGeometry();
+        }
         Kryo kryo = makeKryo();
         LOG.debug("Consolidating edges...");
         Output output = new Output(graphSource.asOutputStream());
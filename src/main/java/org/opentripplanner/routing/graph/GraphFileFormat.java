@@ -0,0 +1,31 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+/**
+ * The formats in which a graph can be saved. Graph.load(DataSource) recognizes both, so this only needs to be chosen
+ * when saving a graph.
+ */
+public enum GraphFileFormat {
+
+    /** The whole graph as a single Kryo object graph. */
+    KRYO,
+
+    /**
+     * Street edges and the edge lists of the vertices in flat columns that are memory-mapped when the graph is
+     * loaded, everything else as Kryo. See {@link ColumnarGraphFile}.
+     */
+    COLUMNAR
+
+}
@@ -8,17 +8,20 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import graphql.ExceptionWhileDataFetching;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
-import graphql.analysis.MaxQueryComplexityInstrumentation;
 import graphql.schema.GraphQLSchema;
 import org.apache.lucene.util.PriorityQueue;
 import org.joda.time.LocalDate;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.index.GraphQLQueryCache;
 import org.opentripplanner.index.IndexGraphQLSchema;
+import org.opentripplanner.index.util.TimetableCache;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
 import org.opentripplanner.model.Agency;
@@ -39,6 +42,8 @@ import org.opentripplanner.routing.algorithm.TraverseVisitor;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.bike_park.BikePark;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
+import org.opentripplanner.routing.bike_rental.BikeRentalStationSnapshot;
 import org.opentripplanner.routing.car_park.CarPark;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.ServiceDay;
@@ -62,8 +67,10 @@ import org.opentripplanner.routing.vertextype.ParkAndRideVertex;
 import org.opentripplanner.routing.vertextype.TransitStation;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.standalone.Router;
+import org.opentripplanner.updater.TripMatchingIndex;
 import org.opentripplanner.updater.alerts.GtfsRealtimeAlertsUpdater;
 import org.opentripplanner.updater.alerts.SiriSXUpdater;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +88,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -146,6 +154,12 @@ public class GraphIndex {
 
     public final ExecutorService threadPool;
 
+    /** The GraphQL engine of the index API, with its cache of parsed queries. */
+    public final GraphQLQueryCache queryCache;
+
+    /** Indexes used to match realtime data without usable trip IDs to the trips of this graph. */
+    public final TripMatchingIndex tripMatchingIndex;
+
     public GraphIndex (Graph graph) {
         LOG.info("Indexing graph...");
 
@@ -235,7 +249,12 @@ public class GraphIndex {
         );
 
         indexSchema = new IndexGraphQLSchema(this).indexSchema;
-        getLuceneIndex();
+        queryCache = new GraphQLQueryCache(indexSchema);
+        // The router id is only known here when the index is rebuilt. Otherwise Router.startup names the cache.
+        if (graph.routerId != null) {
+            queryCache.monitor("index." + graph.routerId);
+        }
+        // The Lucene index is built on first use, or by Graph.index() once this index is complete.
 
         LOG.info("Initializing areas....");
         if (graph.areasById != null) {
@@ -244,6 +263,8 @@ public class GraphIndex {
             }
         }
 
+        tripMatchingIndex = new TripMatchingIndex(this, graph.routingMetrics);
+
         LOG.info("Done indexing graph.");
     }
 
@@ -299,7 +320,8 @@ public class GraphIndex {
         //rr.arriveBy = true;
         PlaceFinderTraverseVisitor visitor = new PlaceFinderTraverseVisitor(filterByModes, filterByPlaceTypes, filterByStops,
                                                                                    filterByRoutes, filterByBikeRentalStations,
-                                                                                   filterByBikeParks, filterByCarParks, filterByInUse);
+                                                                                   filterByBikeParks, filterByCarParks, filterByInUse,
+                                                                                   rr.rctx.bikeRentalSnapshot);
         AStar astar = new AStar();
         astar.setTraverseVisitor(visitor);
         SearchTerminationStrategy strategy = new SearchTerminationStrategy() {
@@ -333,11 +355,33 @@ public class GraphIndex {
         astar.getShortestPathTree(rr, 10, strategy); // timeout in seconds
         // Destroy the routing context, to clean up the temporary edges & vertices
         rr.rctx.destroy();
+        visitor.visitFloatingBikes(lat, lon, maxDistance);
         List<PlaceAndDistance> results = visitor.placesFound;
         results.sort((pad1, pad2) -> pad1.distance - pad2.distance);
         return results.subList(0, min(results.size(), maxResults));
     }
 
+    /**
+     * @return the bike rental stations and floating bikes in service within the given envelope, with their current
+     * availability. Stations whose vertices are still in the graph but which are out of service are left out.
+     */
+    public List<BikeRentalStation> getBikeRentalStationsForEnvelope(Envelope envelope) {
+        BikeRentalStationService service = graph.getService(BikeRentalStationService.class);
+        if (service == null) {
+            return new ArrayList<>();
+        }
+        BikeRentalStationSnapshot snapshot = service.getSnapshot();
+        List<BikeRentalStation> stations = new ArrayList<>();
+        for (BikeRentalStationVertex vertex : graph.streetIndex.getBikeRentalStationForEnvelope(envelope)) {
+            BikeRentalStation station = snapshot.getStation(vertex.getId());
+            if (station != null) {
+                stations.add(station);
+            }
+        }
+        stations.addAll(snapshot.getFloatingBikesInEnvelope(envelope));
+        return stations;
+    }
+
     public LuceneIndex getLuceneIndex() {
         synchronized (this) {
             if (luceneIndex == null) {
@@ -449,6 +493,8 @@ public class GraphIndex {
         private boolean includeBikeParks;
         private boolean includeCarParks;
         private boolean filterByInUse;
+        /** The bike rental stations in service when the search started, with their current availability. */
+        private final BikeRentalStationSnapshot bikeRentalSnapshot;
 
         public PlaceFinderTraverseVisitor(
                 List<TraverseMode> filterByModes,
@@ -458,7 +504,8 @@ public class GraphIndex {
                 List<String> filterByBikeRentalStations,
                 List<String> filterByBikeParks,
                 List<String> filterByCarParks,
-                boolean filterByInUse) {
+                boolean filterByInUse,
+                BikeRentalStationSnapshot bikeRentalSnapshot) {
             this.filterByModes = toSet(filterByModes);
             this.filterByPlaceTypes = toSet(filterByPlaceTypes);
             this.filterByStops = toSet(filterByStops);
@@ -467,6 +514,7 @@ public class GraphIndex {
             this.filterByBikeParks = toSet(filterByBikeParks);
             this.filterByCarParks = toSet(filterByCarParks);
             this.filterByInUse = filterByInUse;
+            this.bikeRentalSnapshot = bikeRentalSnapshot;
 
             includeStops = filterByPlaceTypes == null || filterByPlaceTypes.contains(PlaceType.STOP);
             includeDepartureRows = filterByPlaceTypes == null || filterByPlaceTypes.contains(PlaceType.DEPARTURE_ROW);
@@ -492,7 +540,12 @@ public class GraphIndex {
             if (vertex instanceof TransitStop) {
                 visitStop(((TransitStop)vertex).getStop(), distance);
             } else if (vertex instanceof BikeRentalStationVertex) {
-                visitBikeRentalStation(((BikeRentalStationVertex)vertex).getStation(), distance);
+                // The vertex keeps the station as it was first seen, the snapshot has its current state
+                BikeRentalStation station = bikeRentalSnapshot == null ? null
+                        : bikeRentalSnapshot.getStation(((BikeRentalStationVertex) vertex).getId());
+                if (station != null) {
+                    visitBikeRentalStation(station, distance);
+                }
             } else if (vertex instanceof BikeParkVertex) {
                 visitBikePark(((BikeParkVertex)vertex).getBikePark(), distance);
             } else if (vertex instanceof ParkAndRideVertex) {
@@ -503,6 +556,18 @@ public class GraphIndex {
             handleBikeRentalStation(station, distance);
         }
 
+        /**
+         * Floating bikes have no vertices, and a batch search does not link them to the streets, so they are found
+         * with the spatial index of the snapshot at their straight-line distance.
+         */
+        private void visitFloatingBikes(double lat, double lon, int maxDistance) {
+            if (bikeRentalSnapshot == null) return;
+            for (BikeRentalStation bike : bikeRentalSnapshot.getFloatingBikesNear(new Coordinate(lon, lat), maxDistance)) {
+                int distance = (int) SphericalDistanceLibrary.fastDistance(lat, lon, bike.y, bike.x);
+                visitBikeRentalStation(bike, distance);
+            }
+        }
+
         private void visitStop(Stop stop, int distance) {
             handleStop(stop, distance);
             handleDepartureRows(stop, distance);
@@ -644,6 +709,15 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> stopTimesForStop(final Stop stop, final long startTime, final int timeRange, final int numberOfDepartures, final boolean omitNonPickups, final boolean includeCancelledTrips) {
+        return stopTimesForStop(stop, startTime, timeRange, numberOfDepartures, omitNonPickups, includeCancelledTrips,
+            new TimetableCache(graph));
+    }
+
+    /**
+     * As {@link #stopTimesForStop(Stop, long, int, int, boolean, boolean)}, resolving the realtime timetables with the
+     * given cache, which may be shared with other lookups for the same request.
+     */
+    public List<StopTimesInPattern> stopTimesForStop(final Stop stop, final long startTime, final int timeRange, final int numberOfDepartures, final boolean omitNonPickups, final boolean includeCancelledTrips, final TimetableCache timetables) {
 
         final List<StopTimesInPattern> ret = new ArrayList<>();
 
@@ -660,7 +734,7 @@ public class GraphIndex {
         // since a planned trip will be cancelled when it is replaced with a modified stopPattern.
         for (final TripPattern pattern : graphPatterns) {
 
-            final Set<TripTimeShort> stopTimesForStop = stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, false);
+            final Set<TripTimeShort> stopTimesForStop = stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, false, timetables);
 
             if (stopTimesForStop.size() >0) {
                 final StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
@@ -672,7 +746,7 @@ public class GraphIndex {
         // Second, check realtime-TripPatterns, with the provided value for includeCancelledTrips.
         for (final TripPattern pattern : realtimePatterns) {
 
-            final Set<TripTimeShort> stopTimesForStop = stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, includeCancelledTrips);
+            final Set<TripTimeShort> stopTimesForStop = stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups, includeCancelledTrips, timetables);
 
             if (stopTimesForStop.size() > 0) {
                 final StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
@@ -720,6 +794,15 @@ public class GraphIndex {
      * @return a sorted set of trip times, sorted on depature time.
      */
     public Set<TripTimeShort> stopTimesForPattern(final Stop stop, final TripPattern pattern, long startTime, final int timeRange, int numberOfDepartures, boolean omitNonPickups, boolean includeCancelledTrips) {
+        return stopTimesForPattern(stop, pattern, startTime, timeRange, numberOfDepartures, omitNonPickups,
+            includeCancelledTrips, new TimetableCache(graph));
+    }
+
+    /**
+     * As {@link #stopTimesForPattern(Stop, TripPattern, long, int, int, boolean, boolean)}, resolving the realtime
+     * timetables with the given cache.
+     */
+    public Set<TripTimeShort> stopTimesForPattern(final Stop stop, final TripPattern pattern, long startTime, final int timeRange, int numberOfDepartures, boolean omitNonPickups, boolean includeCancelledTrips, TimetableCache timetables) {
         if (pattern == null) {
             return Collections.emptySet();
         }
@@ -738,9 +821,6 @@ public class GraphIndex {
             }
         };
 
-        final TimetableSnapshot snapshot = (graph.timetableSnapshotSource != null)
-            ? graph.timetableSnapshotSource.getTimetableSnapshot() : null;
-
         // For trips that cross midnight more than once, extended serviceDates need to be used
         int nStops = pattern.stopPattern.size;
         boolean useExtendedDates = !pattern.scheduledTimetable.tripTimes.isEmpty() && (pattern.scheduledTimetable.tripTimes.stream()
@@ -764,13 +844,7 @@ public class GraphIndex {
         for (final ServiceDate serviceDate : useExtendedDates ? extendedServiceDates : serviceDates) {
             final ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService,
                     pattern.route.getAgency().getId());
-            Timetable tt;
-
-            if (snapshot != null) {
-                tt = snapshot.resolve(pattern, serviceDate);
-            } else {
-                tt = pattern.scheduledTimetable;
-            }
+            Timetable tt = timetables.resolve(pattern, serviceDate);
 
             if (!includeCancelledTrips && !tt.temporallyViable(sd, startTime, timeRange, true))
                 continue;
@@ -789,45 +863,72 @@ public class GraphIndex {
                         }
                     }
 
-                    for (final TripTimes triptimes : tt.tripTimes) {
-
-                        if (!includeCancelledTrips && !sd.serviceRunning(triptimes.serviceCode)) {
-                            continue;
-                        }
-
-                        // Check if trip has been cancelled via planned data
-                        if(omitNonPickups && (triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.cancellation ||
-                                triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.replaced)) {
-                            continue;
+                    Iterator<TripTimes> departures = includeCancelledTrips ? null
+                            : tt.getDeparturesFrom(stopIndex, starttimeSecondsSinceMidnight);
+                    if (departures != null) {
+                        // The departures come in time order, so stop at the end of the time range or as soon as
+                        // enough have been found, rather than looking at every trip in the timetable.
+                        int found = 0;
+                        while (found < numberOfDepartures && departures.hasNext()) {
+                            final TripTimes triptimes = departures.next();
+                            if (triptimes.getDepartureTime(stopIndex) >= starttimeSecondsSinceMidnight + timeRange) {
+                                break;
+                            }
+                            if (!sd.serviceRunning(triptimes.serviceCode)) {
+                                continue;
+                            }
+                            if (omitNonPickups && (triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.cancellation ||
+                                    triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.replaced)) {
+                                continue;
+                            }
+                            // Last stop should never be included in a departureboard
+                            if (stopIndex < triptimes.getNumStops() - 1 && !triptimes.isCancelledStop(stopIndex)
+                                    && triptimes.getPickupType(stopIndex) == pattern.stopPattern.PICKDROP_SCHEDULED) {
+                                tripTimesQueue.insertWithOverflow(new TripTimeShort(triptimes, stopIndex, currStop, sd));
+                                found++;
+                            }
                         }
+                    } else {
+                        for (final TripTimes triptimes : tt.tripTimes) {
 
+                            if (!includeCancelledTrips && !sd.serviceRunning(triptimes.serviceCode)) {
+                                continue;
+                            }
 
-                        // Check if pickup has been cancelled via realtime-data, and also NOT wanted in result
-                        if (!includeCancelledTrips && triptimes.getPickupType(stopIndex) == pattern.stopPattern.PICKDROP_NONE) {
-                            continue;
-                        }
+                            // Check if trip has been cancelled via planned data
+                            if(omitNonPickups && (triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.cancellation ||
+                                    triptimes.trip.getServiceAlteration() == Trip.ServiceAlteration.replaced)) {
+                                continue;
+                            }
 
-                        if (stopIndex < triptimes.getNumStops()-1) {
-                            // Last stop should never be included in a departureboard
-                            int stopDepartureTime = triptimes.getDepartureTime(stopIndex);
 
-                            if (includeCancelledTrips && triptimes.isCancelledStop(stopIndex)) {
-                                // Cancelled trips should be included in this request - use scheduled times for time-verification
-                                stopDepartureTime = triptimes.getScheduledDepartureTime(stopIndex);
+                            // Check if pickup has been cancelled via realtime-data, and also NOT wanted in result
+                            if (!includeCancelledTrips && triptimes.getPickupType(stopIndex) == pattern.stopPattern.PICKDROP_NONE) {
+                                continue;
                             }
 
-                            // true if a stop is planned, and not cancelled
-                            boolean isScheduledStop = !triptimes.isCancelledStop(stopIndex) & triptimes.getPickupType(stopIndex) == pattern.stopPattern.PICKDROP_SCHEDULED;
+                            if (stopIndex < triptimes.getNumStops()-1) {
+                                // Last stop should never be included in a departureboard
+                                int stopDepartureTime = triptimes.getDepartureTime(stopIndex);
 
-                            // true if cancelled trips are requested, and stop is cancelled
-                            boolean isCancelledAndRequested = (includeCancelledTrips && triptimes.isCancelledStop(stopIndex));  // Stop is cancelled, but cancelled stops should be included in this request
+                                if (includeCancelledTrips && triptimes.isCancelledStop(stopIndex)) {
+                                    // Cancelled trips should be included in this request - use scheduled times for time-verification
+                                    stopDepartureTime = triptimes.getScheduledDepartureTime(stopIndex);
+                                }
 
-                            boolean includeByCancellation = isScheduledStop | isCancelledAndRequested;
+                                // true if a stop is planned, and not cancelled
+                                boolean isScheduledStop = !triptimes.isCancelledStop(stopIndex) & triptimes.getPickupType(stopIndex) == pattern.stopPattern.PICKDROP_SCHEDULED;
 
-                            boolean includeByDepartureTime = (stopDepartureTime != -1 && stopDepartureTime >= starttimeSecondsSinceMidnight && stopDepartureTime < starttimeSecondsSinceMidnight + timeRange);
+                                // true if cancelled trips are requested, and stop is cancelled
+                                boolean isCancelledAndRequested = (includeCancelledTrips && triptimes.isCancelledStop(stopIndex));  // Stop is cancelled, but cancelled stops should be included in this request
 
-                            if (includeByCancellation & includeByDepartureTime) {
-                                tripTimesQueue.insertWithOverflow(new TripTimeShort(triptimes, stopIndex, currStop, sd));
+                                boolean includeByCancellation = isScheduledStop | isCancelledAndRequested;
+
+                                boolean includeByDepartureTime = (stopDepartureTime != -1 && stopDepartureTime >= starttimeSecondsSinceMidnight && stopDepartureTime < starttimeSecondsSinceMidnight + timeRange);
+
+                                if (includeByCancellation & includeByDepartureTime) {
+                                    tripTimesQueue.insertWithOverflow(new TripTimeShort(triptimes, stopIndex, currStop, sd));
+                                }
                             }
                         }
                     }
@@ -930,14 +1031,15 @@ public class GraphIndex {
 
     public HashMap<String, Object> getGraphQLExecutionResult(String query, Router router,
                                                                     Map<String, Object> variables, String operationName, int timeout, long maxResolves) {
-        MaxQueryComplexityInstrumentation instrumentation = new MaxQueryComplexityInstrumentation((int) maxResolves);
-        GraphQL graphQL = GraphQL.newGraphQL(indexSchema).instrumentation(instrumentation).build();
+        GraphQL graphQL = queryCache.getGraphQL((int) maxResolves);
 
         if (variables == null) {
             variables = new HashMap<>();
         }
 
+        long executionStart = System.nanoTime();
         ExecutionResult executionResult = graphQL.execute(query, operationName, router, variables);
+        router.graph.routingMetrics.recordPhase(RoutingMetrics.Phase.GRAPHQL, executionStart);
         HashMap<String, Object> content = new HashMap<>();
         if (!executionResult.getErrors().isEmpty()) {
             content.put("errors",
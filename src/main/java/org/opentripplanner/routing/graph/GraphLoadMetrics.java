@@ -0,0 +1,62 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports the duration of each phase of loading and indexing a graph to the MonitoringStore, under the key
+ * graphLoad.[phase].millis. Phases that process a known number of items also report that number under
+ * graphLoad.[phase].count and their throughput under graphLoad.[phase].perSecond. These keys are always monitored,
+ * since they are written only a few times per graph load.
+ */
+class GraphLoadMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphLoadMetrics.class);
+
+    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
+
+    private static final String PREFIX = "graphLoad.";
+
+    /** Report a phase that started at the given System.nanoTime(). */
+    static void report(String phase, long startNanos) {
+        report(phase, startNanos, -1);
+    }
+
+    /** Report a phase that started at the given System.nanoTime() and processed the given number of items. */
+    static void report(String phase, long startNanos, long count) {
+        long nanos = System.nanoTime() - startNanos;
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        set(PREFIX + phase + ".millis", millis);
+        if (count < 0) {
+            LOG.info("Graph load phase {} took {} msec.", phase, millis);
+            return;
+        }
+        long perSecond = nanos == 0 ? count : count * TimeUnit.SECONDS.toNanos(1) / nanos;
+        set(PREFIX + phase + ".count", count);
+        set(PREFIX + phase + ".perSecond", perSecond);
+        LOG.info("Graph load phase {} took {} msec for {} items ({}/sec).", phase, millis, count, perSecond);
+    }
+
+    private static void set(String key, long value) {
+        store.monitor(key);
+        store.setLong(key, value);
+    }
+
+}
@@ -57,6 +57,13 @@ public abstract class Vertex implements Serializable, Cloneable {
 
     private transient Edge[] outgoing = new Edge[0];
 
+    /**
+     * Dense integer index of this vertex within its graph, assigned by the graph when the vertex is added to it
+     * and -1 for temporary vertices. Allows request-scoped structures to use arrays rather than maps keyed on
+     * vertices. Indexes are not reused when vertices are removed.
+     */
+    private transient int index = -1;
+
 
     /* CONSTRUCTORS */
 
@@ -90,6 +97,23 @@ public abstract class Vertex implements Serializable, Cloneable {
         return sb.toString();
     }
 
+    /** @return the dense index of this vertex in its graph, or -1 if it has not been added to a graph. */
+    public int getIndex() {
+        return index;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    /** Set both edge lists at once, for graph readers that have all the edges at hand. */
+    void setEdges(Edge[] incoming, Edge[] outgoing) {
+        synchronized (this) {
+            this.incoming = incoming;
+            this.outgoing = outgoing;
+        }
+    }
+
     // Stupid method for deserialization, initialize transient fields.
     // Stopgap until old serialization methods are completely replaced.
     public void initEdgeListsIfNeeded () {
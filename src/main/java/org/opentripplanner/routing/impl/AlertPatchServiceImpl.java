@@ -13,60 +13,90 @@
 
 package org.opentripplanner.routing.impl;
 
+import org.opentripplanner.common.PersistentHashMap;
 import org.opentripplanner.model.AgencyAndId;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.AlertPatchService;
 
 import java.util.*;
 import java.util.Map.Entry;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keeps the alert patches indexed by edge, stop, route, trip, agency and pattern. The indexes are published together as
+ * an immutable Snapshot that is replaced atomically at the end of each update, so readers (itinerary rendering through
+ * Graph.getAlertPatches, the GraphQL APIs) never lock and never see a half-applied update. Writers are serialized on
+ * this object. The service registers itself with the graph, which looks up the alerts of each edge in its snapshot.
+ *
+ * The collections returned by the getters are shared with the snapshot and must not be modified.
+ */
 public class AlertPatchServiceImpl implements AlertPatchService {
 
     private Graph graph;
 
-    private Map<String, AlertPatch> alertPatches = new ConcurrentHashMap<>();
-    private Map<AgencyAndId, Set<AlertPatch>> patchesByRoute = new ConcurrentHashMap<>();
-    private Map<AgencyAndId, Set<AlertPatch>> patchesByStop = new ConcurrentHashMap<>();
-    private Map<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndRoute = new ConcurrentHashMap<>();
-    private Map<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndTrip = new ConcurrentHashMap<>();
-    private Map<AgencyAndId, Set<AlertPatch>> patchesByTrip = new ConcurrentHashMap<>();
-    private Map<String, Set<AlertPatch>> patchesByAgency = new ConcurrentHashMap<>();
-    private Map<String, Set<AlertPatch>> patchesByTripPattern = new ConcurrentHashMap<>();
+    /** The indexes as seen by readers. Only replaced as a whole, by publish(). */
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /* The indexes being updated by the current writer, published when it is done. Guarded by this. */
+    private PersistentHashMap<String, AlertPatch> alertPatches = PersistentHashMap.empty();
+    private PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByRoute = PersistentHashMap.empty();
+    private PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByStop = PersistentHashMap.empty();
+    private PersistentHashMap<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndRoute = PersistentHashMap.empty();
+    private PersistentHashMap<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndTrip = PersistentHashMap.empty();
+    private PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByTrip = PersistentHashMap.empty();
+    private PersistentHashMap<String, Set<AlertPatch>> patchesByAgency = PersistentHashMap.empty();
+    private PersistentHashMap<String, Set<AlertPatch>> patchesByTripPattern = PersistentHashMap.empty();
+    private PersistentHashMap<Edge, AlertPatch[]> patchesByEdge = PersistentHashMap.empty();
+    /** The edges each patch was applied to, so that they are the ones it is removed from when it expires. */
+    private PersistentHashMap<String, Edge[]> edgesByPatchId = PersistentHashMap.empty();
 
     public AlertPatchServiceImpl(Graph graph) {
         this.graph = graph;
+        if (graph != null) {
+            graph.addAlertPatchService(this);
+        }
     }
 
     @Override
     public Collection<AlertPatch> getAllAlertPatches() {
-        return alertPatches.values();
+        return snapshot.allAlertPatches;
     }
 
     @Override
     public AlertPatch getPatchById(String id) {
-        return alertPatches.get(id);
+        return snapshot.alertPatches.get(id);
     }
 
     @Override
     public Collection<AlertPatch> getStopPatches(AgencyAndId stop) {
-        Set<AlertPatch> result = patchesByStop.get(stop);
-        if (result == null || result.isEmpty()) {
-            result = new HashSet<>();
+        Snapshot snapshot = this.snapshot;
+        Set<AlertPatch> result = snapshot.patchesByStop.get(stop);
+        if (result == null) {
+            result = Collections.emptySet();
             // Search for alerts on parent-stop
             if (graph != null && graph.index != null) {
                 Stop quay = graph.index.stopForId.get(stop);
                 if (quay != null) {
-                    if ( quay.getParentStation() != null) {
+                    Set<AlertPatch> parentPatches = null;
+                    Set<AlertPatch> multiModalPatches = null;
+                    if (quay.getParentStation() != null) {
                         // Add alerts for parent-station
-                        result.addAll(patchesByStop.getOrDefault(quay.getParentStationAgencyAndId(), Collections.emptySet()));
+                        parentPatches = snapshot.patchesByStop.get(quay.getParentStationAgencyAndId());
                     }
                     if (quay.getMultiModalStation() != null) {
                         // Add alerts for multimodal-station
-                        result.addAll(patchesByStop.getOrDefault(new AgencyAndId(stop.getAgencyId(), quay.getMultiModalStation()), Collections.emptySet()));
+                        multiModalPatches = snapshot.patchesByStop.get(new AgencyAndId(stop.getAgencyId(), quay.getMultiModalStation()));
+                    }
+                    if (parentPatches != null && multiModalPatches != null) {
+                        result = new HashSet<>(parentPatches);
+                        result.addAll(multiModalPatches);
+                    } else if (parentPatches != null) {
+                        result = parentPatches;
+                    } else if (multiModalPatches != null) {
+                        result = multiModalPatches;
                     }
                 }
             }
@@ -76,126 +106,111 @@ public class AlertPatchServiceImpl implements AlertPatchService {
 
     @Override
     public Collection<AlertPatch> getRoutePatches(AgencyAndId route) {
-        Set<AlertPatch> result = new HashSet<>();
-        if (patchesByRoute.containsKey(route)) {
-            result.addAll(patchesByRoute.get(route));
-        }
-
-        return result;
-
+        return patchesOrEmpty(snapshot.patchesByRoute, route);
     }
 
     @Override
     public Collection<AlertPatch> getTripPatches(AgencyAndId trip) {
-        Set<AlertPatch> result = new HashSet<>();
-        if (patchesByTrip.containsKey(trip)) {
-            result.addAll(patchesByTrip.get(trip));
-        }
-        return result;
+        return patchesOrEmpty(snapshot.patchesByTrip, trip);
     }
 
 
     @Override
     public Collection<AlertPatch> getAgencyPatches(String agency) {
-        Set<AlertPatch> result = new HashSet<>();
-        if (patchesByAgency.containsKey(agency)) {
-            result.addAll(patchesByAgency.get(agency));
-        }
-        return result;
+        return patchesOrEmpty(snapshot.patchesByAgency, agency);
     }
 
     @Override
     public Collection<AlertPatch> getStopAndRoutePatches(AgencyAndId stop, AgencyAndId route) {
-        Set<AlertPatch> result = new HashSet<>();
-        StopAndRouteOrTripKey key = new StopAndRouteOrTripKey(stop, route);
-        if (patchesByStopAndRoute.containsKey(key)) {
-            result.addAll(patchesByStopAndRoute.get(key));
-        }
-        return result;
+        return patchesOrEmpty(snapshot.patchesByStopAndRoute, new StopAndRouteOrTripKey(stop, route));
     }
 
     @Override
     public Collection<AlertPatch> getStopAndTripPatches(AgencyAndId stop, AgencyAndId trip) {
-        Set<AlertPatch> result = new HashSet<>();
-        StopAndRouteOrTripKey key = new StopAndRouteOrTripKey(stop, trip);
-        if (patchesByStopAndTrip.containsKey(key)) {
-            result.addAll(patchesByStopAndTrip.get(key));
-        }
-        return result;
+        return patchesOrEmpty(snapshot.patchesByStopAndTrip, new StopAndRouteOrTripKey(stop, trip));
     }
 
     @Override
     public Collection<AlertPatch> getTripPatternPatches(TripPattern pattern) {
-        Set<AlertPatch> result = new HashSet<>();
-        if (patchesByTripPattern.containsKey(pattern.code)) {
-            result.addAll(patchesByTripPattern.get(pattern.code));
+        return patchesOrEmpty(snapshot.patchesByTripPattern, pattern.code);
+    }
+
+    @Override
+    public AlertPatch[] getEdgePatches(Edge edge) {
+        return snapshot.patchesByEdge.get(edge);
+    }
+
+    @Override
+    public synchronized void update(Set<String> expiredIds, Collection<AlertPatch> alertPatches) {
+        for (String patchId : expiredIds) {
+            expireWithoutPublishing(patchId);
         }
-        return result;
+        for (AlertPatch alertPatch : alertPatches) {
+            applyWithoutPublishing(alertPatch);
+        }
+        publish();
     }
 
     @Override
     public synchronized void applyAll(Set<AlertPatch> alertPatches) {
         for (AlertPatch alertPatch : alertPatches) {
-            apply(alertPatch);
+            applyWithoutPublishing(alertPatch);
         }
+        publish();
     }
 
     @Override
     public synchronized void apply(AlertPatch alertPatch) {
+        applyWithoutPublishing(alertPatch);
+        publish();
+    }
+
+    private void applyWithoutPublishing(AlertPatch alertPatch) {
         if (alertPatches.containsKey(alertPatch.getId())) {
             expire(alertPatches.get(alertPatch.getId()));
         }
 
-        alertPatch.apply(graph);
-        alertPatches.put(alertPatch.getId(), alertPatch);
+        Set<Edge> edges = new LinkedHashSet<>();
+        if (graph != null) {
+            alertPatch.applyToEdges(graph, edges::add);
+        }
+        for (Edge edge : edges) {
+            patchesByEdge = addEdgePatch(patchesByEdge, edge, alertPatch);
+        }
+        edgesByPatchId = edgesByPatchId.plus(alertPatch.getId(), edges.toArray(new Edge[0]));
+        alertPatches = alertPatches.plus(alertPatch.getId(), alertPatch);
 
         AgencyAndId stop = alertPatch.getStop();
         AgencyAndId route = alertPatch.getRoute();
         AgencyAndId trip = alertPatch.getTrip();
 
         if (stop != null && trip != null) {
-            StopAndRouteOrTripKey key = new StopAndRouteOrTripKey(stop, trip);
-            Set<AlertPatch> set = patchesByStopAndTrip.getOrDefault(key, new HashSet());
-            set.add(alertPatch);
-            patchesByStopAndTrip.put(key, set);
+            patchesByStopAndTrip = addPatch(patchesByStopAndTrip, new StopAndRouteOrTripKey(stop, trip), alertPatch);
         } else if (stop != null && route != null) {
-            StopAndRouteOrTripKey key = new StopAndRouteOrTripKey(stop, route);
-            Set<AlertPatch> set = patchesByStopAndRoute.getOrDefault(key, new HashSet());
-            set.add(alertPatch);
-            patchesByStopAndRoute.put(key, set);
+            patchesByStopAndRoute = addPatch(patchesByStopAndRoute, new StopAndRouteOrTripKey(stop, route), alertPatch);
         } else {
             if (stop != null) {
-                Set<AlertPatch> set = patchesByStop.getOrDefault(stop, new HashSet());
-                set.add(alertPatch);
-                patchesByStop.put(stop, set);
+                patchesByStop = addPatch(patchesByStop, stop, alertPatch);
             }
 
             if (route != null) {
-                Set<AlertPatch> set = patchesByRoute.getOrDefault(route, new HashSet());
-                set.add(alertPatch);
-                patchesByRoute.put(route, set);
+                patchesByRoute = addPatch(patchesByRoute, route, alertPatch);
             }
 
             if (trip != null) {
-                Set<AlertPatch> set = patchesByTrip.getOrDefault(trip, new HashSet());
-                set.add(alertPatch);
-                patchesByTrip.put(trip, set);
+                patchesByTrip = addPatch(patchesByTrip, trip, alertPatch);
             }
         }
 
         String agency = alertPatch.getAgency();
         if (agency != null && !agency.isEmpty()) {
-            Set<AlertPatch> set = (Set) patchesByAgency.getOrDefault(agency, new HashSet());
-            set.add(alertPatch);
-            patchesByAgency.put(agency, set);
+            patchesByAgency = addPatch(patchesByAgency, agency, alertPatch);
         }
 
         List<TripPattern> tripPatterns = alertPatch.getTripPatterns();
         if (tripPatterns != null) {
             for (TripPattern pattern : tripPatterns) {
-                Set<AlertPatch> set = patchesByTripPattern.getOrDefault(pattern.code, new HashSet());
-                set.add(alertPatch);
-                patchesByTripPattern.put(pattern.code, set);
+                patchesByTripPattern = addPatch(patchesByTripPattern, pattern.code, alertPatch);
             }
         }
 
@@ -203,36 +218,44 @@ public class AlertPatchServiceImpl implements AlertPatchService {
 
 
     @Override
-    public void expire(Set<String> purge) {
+    public synchronized void expire(Set<String> purge) {
         for (String patchId : purge) {
-            if (alertPatches.containsKey(patchId)) {
-                expire(alertPatches.get(patchId));
-            }
+            expireWithoutPublishing(patchId);
         }
+        publish();
+    }
 
-        alertPatches.keySet().removeAll(purge);
+    private void expireWithoutPublishing(String patchId) {
+        if (alertPatches.containsKey(patchId)) {
+            expire(alertPatches.get(patchId));
+        }
+        alertPatches = alertPatches.minus(patchId);
     }
 
     @Override
-    public void expireAll() {
-        for (AlertPatch alertPatch : alertPatches.values()) {
-            expire(alertPatch);
+    public synchronized void expireAll() {
+        for (Entry<String, AlertPatch> entry : alertPatches) {
+            expire(entry.getValue());
         }
-        alertPatches.clear();
+        alertPatches = PersistentHashMap.empty();
+        publish();
     }
 
     @Override
-    public void expireAllExcept(Set<String> retain) {
+    public synchronized void expireAllExcept(Set<String> retain) {
         ArrayList<String> toRemove = new ArrayList<String>();
 
-        for (Entry<String, AlertPatch> entry : alertPatches.entrySet()) {
+        for (Entry<String, AlertPatch> entry : alertPatches) {
             final String key = entry.getKey();
             if (!retain.contains(key)) {
                 toRemove.add(key);
                 expire(entry.getValue());
             }
         }
-        alertPatches.keySet().removeAll(toRemove);
+        for (String key : toRemove) {
+            alertPatches = alertPatches.minus(key);
+        }
+        publish();
     }
 
     private void expire(AlertPatch alertPatch) {
@@ -241,47 +264,158 @@ public class AlertPatchServiceImpl implements AlertPatchService {
         AgencyAndId trip = alertPatch.getTrip();
 
         if (stop != null) {
-            removeAlertPatch(patchesByStop.get(stop), alertPatch);
+            patchesByStop = removePatch(patchesByStop, stop, alertPatch);
         }
 
         if (route != null) {
-            removeAlertPatch(patchesByRoute.get(route), alertPatch);
+            patchesByRoute = removePatch(patchesByRoute, route, alertPatch);
         }
 
         if (trip != null) {
-            removeAlertPatch(patchesByTrip.get(trip), alertPatch);
+            patchesByTrip = removePatch(patchesByTrip, trip, alertPatch);
         }
 
         if (stop != null && route != null) {
-            removeAlertPatch(patchesByStopAndRoute.get(new StopAndRouteOrTripKey(stop, route)), alertPatch);
+            patchesByStopAndRoute = removePatch(patchesByStopAndRoute, new StopAndRouteOrTripKey(stop, route), alertPatch);
         }
 
         if (stop != null && trip != null) {
-            removeAlertPatch(patchesByStopAndTrip.get(new StopAndRouteOrTripKey(stop, trip)), alertPatch);
+            patchesByStopAndTrip = removePatch(patchesByStopAndTrip, new StopAndRouteOrTripKey(stop, trip), alertPatch);
         }
 
         String agency = alertPatch.getAgency();
         if (agency != null) {
-            removeAlertPatch(patchesByAgency.get(agency), alertPatch);
+            patchesByAgency = removePatch(patchesByAgency, agency, alertPatch);
         }
 
         List<TripPattern> tripPatterns = alertPatch.getTripPatterns();
         if (tripPatterns != null) {
             for (TripPattern pattern : tripPatterns) {
-                removeAlertPatch(patchesByTripPattern.get(pattern), alertPatch);
+                patchesByTripPattern = removePatch(patchesByTripPattern, pattern.code, alertPatch);
             }
         }
-        alertPatch.remove(graph);
+        Edge[] edges = edgesByPatchId.get(alertPatch.getId());
+        if (edges != null) {
+            for (Edge edge : edges) {
+                patchesByEdge = removeEdgePatch(patchesByEdge, edge, alertPatch);
+            }
+            edgesByPatchId = edgesByPatchId.minus(alertPatch.getId());
+        }
+    }
+
+    /** Make the current state of the indexes visible to readers. */
+    private void publish() {
+        snapshot = new Snapshot(this);
     }
 
-    private void removeAlertPatch(Set<AlertPatch> alertPatches, AlertPatch alertPatch) {
+    private static <K> Collection<AlertPatch> patchesOrEmpty(PersistentHashMap<K, Set<AlertPatch>> index, K key) {
+        Set<AlertPatch> patches = index.get(key);
+        return patches == null ? Collections.<AlertPatch>emptySet() : patches;
+    }
+
+    /** The sets in the indexes are shared with published snapshots, so they are copied rather than modified. */
+    private static <K> PersistentHashMap<K, Set<AlertPatch>> addPatch(PersistentHashMap<K, Set<AlertPatch>> index,
+            K key, AlertPatch alertPatch) {
+        Set<AlertPatch> patches = index.get(key);
+        if (patches != null && patches.contains(alertPatch)) {
+            return index;
+        }
+        Set<AlertPatch> updated = patches == null ? new HashSet<>() : new HashSet<>(patches);
+        updated.add(alertPatch);
+        return index.plus(key, Collections.unmodifiableSet(updated));
+    }
 
-        if (alertPatches != null) {
-            alertPatches.remove(alertPatch);
+    /** Like addPatch, for the arrays of the edge index, which readers get without copying. */
+    private static PersistentHashMap<Edge, AlertPatch[]> addEdgePatch(PersistentHashMap<Edge, AlertPatch[]> index,
+            Edge edge, AlertPatch alertPatch) {
+        AlertPatch[] patches = index.get(edge);
+        if (patches == null) {
+            return index.plus(edge, new AlertPatch[] { alertPatch });
+        }
+        if (Arrays.asList(patches).contains(alertPatch)) {
+            return index;
+        }
+        AlertPatch[] updated = Arrays.copyOf(patches, patches.length + 1);
+        updated[patches.length] = alertPatch;
+        return index.plus(edge, updated);
+    }
+
+    private static PersistentHashMap<Edge, AlertPatch[]> removeEdgePatch(PersistentHashMap<Edge, AlertPatch[]> index,
+            Edge edge, AlertPatch alertPatch) {
+        AlertPatch[] patches = index.get(edge);
+        if (patches == null || !Arrays.asList(patches).contains(alertPatch)) {
+            return index;
+        }
+        if (patches.length < 2) {
+            return index.minus(edge);
+        }
+        AlertPatch[] updated = new AlertPatch[patches.length - 1];
+        int i = 0;
+        for (AlertPatch other : patches) {
+            if (!other.equals(alertPatch)) updated[i++] = other;
+        }
+        return index.plus(edge, updated);
+    }
+
+    private static <K> PersistentHashMap<K, Set<AlertPatch>> removePatch(PersistentHashMap<K, Set<AlertPatch>> index,
+            K key, AlertPatch alertPatch) {
+        Set<AlertPatch> patches = index.get(key);
+        if (patches == null || !patches.contains(alertPatch)) {
+            return index;
+        }
+        if (patches.size() < 2) {
+            return index.minus(key);
+        }
+        Set<AlertPatch> updated = new HashSet<>(patches);
+        updated.remove(alertPatch);
+        return index.plus(key, Collections.unmodifiableSet(updated));
+    }
+
+    /** An immutable view of all indexes at one point in time. */
+    private static class Snapshot {
+        private final PersistentHashMap<String, AlertPatch> alertPatches;
+        private final Collection<AlertPatch> allAlertPatches;
+        private final PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByRoute;
+        private final PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByStop;
+        private final PersistentHashMap<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndRoute;
+        private final PersistentHashMap<StopAndRouteOrTripKey, Set<AlertPatch>> patchesByStopAndTrip;
+        private final PersistentHashMap<AgencyAndId, Set<AlertPatch>> patchesByTrip;
+        private final PersistentHashMap<String, Set<AlertPatch>> patchesByAgency;
+        private final PersistentHashMap<String, Set<AlertPatch>> patchesByTripPattern;
+        private final PersistentHashMap<Edge, AlertPatch[]> patchesByEdge;
+
+        private Snapshot() {
+            alertPatches = PersistentHashMap.empty();
+            allAlertPatches = Collections.emptyList();
+            patchesByRoute = PersistentHashMap.empty();
+            patchesByStop = PersistentHashMap.empty();
+            patchesByStopAndRoute = PersistentHashMap.empty();
+            patchesByStopAndTrip = PersistentHashMap.empty();
+            patchesByTrip = PersistentHashMap.empty();
+            patchesByAgency = PersistentHashMap.empty();
+            patchesByTripPattern = PersistentHashMap.empty();
+            patchesByEdge = PersistentHashMap.empty();
+        }
+
+        private Snapshot(AlertPatchServiceImpl service) {
+            alertPatches = service.alertPatches;
+            List<AlertPatch> all = new ArrayList<>(alertPatches.size());
+            for (Entry<String, AlertPatch> entry : alertPatches) {
+                all.add(entry.getValue());
+            }
+            allAlertPatches = Collections.unmodifiableList(all);
+            patchesByRoute = service.patchesByRoute;
+            patchesByStop = service.patchesByStop;
+            patchesByStopAndRoute = service.patchesByStopAndRoute;
+            patchesByStopAndTrip = service.patchesByStopAndTrip;
+            patchesByTrip = service.patchesByTrip;
+            patchesByAgency = service.patchesByAgency;
+            patchesByTripPattern = service.patchesByTripPattern;
+            patchesByEdge = service.patchesByEdge;
         }
     }
 
-    private class StopAndRouteOrTripKey {
+    private static class StopAndRouteOrTripKey {
         private final AgencyAndId stop;
         private final AgencyAndId routeOrTrip;
         private transient int hash = 0;
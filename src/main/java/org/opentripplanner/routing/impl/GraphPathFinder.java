@@ -15,11 +15,14 @@ package org.opentripplanner.routing.impl;
 
 import com.google.common.collect.Lists;
 import org.opentripplanner.model.AgencyAndId;
+import org.opentripplanner.model.Trip;
 import org.opentripplanner.api.resource.DebugOutput;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.algorithm.RaptorSearch;
 import org.opentripplanner.routing.algorithm.strategies.EuclideanRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.InterleavedBidirectionalHeuristic;
+import org.opentripplanner.routing.algorithm.strategies.LandmarkRemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.RemainingWeightHeuristic;
 import org.opentripplanner.routing.algorithm.strategies.TrivialRemainingWeightHeuristic;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -37,11 +40,17 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -71,6 +80,15 @@ public class GraphPathFinder {
     private static final double DEFAULT_MAX_WALK = 2000;
     private static final double CLAMP_MAX_WALK = 15000;
 
+    /** Added to the transfer penalty by each search for alternatives that penalizes transfers, in seconds. */
+    private static final int ALTERNATIVE_TRANSFER_PENALTY = 600;
+
+    /** How much later each search for alternatives that shifts the departure time departs, in seconds. */
+    private static final long ALTERNATIVE_DEPARTURE_SHIFT = 60;
+
+    /** How long to wait for a search for alternatives beyond its timeout, as it only checks it between steps. */
+    private static final long ALTERNATIVE_RESULT_GRACE_MILLIS = 100;
+
     Router router;
 
     public GraphPathFinder(Router router) {
@@ -111,21 +129,8 @@ public class GraphPathFinder {
         LOG.debug("rreq={}", options);
 
         // Choose an appropriate heuristic for goal direction.
-        RemainingWeightHeuristic heuristic;
-        RemainingWeightHeuristic reversedSearchHeuristic;
-        if (options.disableRemainingWeightHeuristic) {
-            heuristic = new TrivialRemainingWeightHeuristic();
-            reversedSearchHeuristic = new TrivialRemainingWeightHeuristic();
-        } else if (options.modes.isTransit()) {
-            // Only use the BiDi heuristic for transit. It is not very useful for on-street modes.
-            // heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
-            // Use a simplistic heuristic until BiDi heuristic is improved, see #2153
-            heuristic = new InterleavedBidirectionalHeuristic(options.heuristicStepsPerMainStep);
-            reversedSearchHeuristic = new InterleavedBidirectionalHeuristic(options.heuristicStepsPerMainStep);
-        } else {
-            heuristic = new EuclideanRemainingWeightHeuristic();
-            reversedSearchHeuristic = new EuclideanRemainingWeightHeuristic();
-        }
+        RemainingWeightHeuristic heuristic = createHeuristic(options);
+        RemainingWeightHeuristic reversedSearchHeuristic = createHeuristic(options);
         options.rctx.remainingWeightHeuristic = heuristic;
 
         // Now we always use what used to be called longDistance mode. Non-longDistance mode is no longer supported.
@@ -154,7 +159,26 @@ public class GraphPathFinder {
         LOG.debug("BEGIN SEARCH");
         List<GraphPath> paths = Lists.newArrayList();
         double totalTimeout = searchBeginTime + router.totalTimeout * 1000;
+        if (options.useRaptor && RaptorSearch.supports(options) && router.graphVisualizer == null) {
+            // One round-based search finds the fastest itinerary for each number of transfers
+            paths.addAll(new RaptorSearch(options).getPaths(router.totalTimeout).stream()
+                    .filter(path -> isWithinMaxHours(options, path))
+                    .collect(Collectors.toList()));
+            if (!paths.isEmpty()) {
+                LOG.debug("END RAPTOR SEARCH ({} msec)", System.currentTimeMillis() - searchBeginTime);
+                Collections.sort(paths, new PathComparator(options.arriveBy));
+                return paths;
+            }
+        }
+        boolean parallel = options.parallelItineraries && options.modes.isTransit()
+                && !options.compactLegsByReversedSearch && router.graphVisualizer == null;
+        // The alternatives start from the request as it was before the first search relaxed its walk limits
+        RoutingRequest alternativeTemplate = parallel ? options.clone() : null;
         while (paths.size() < options.numItineraries) {
+            if (parallel && !paths.isEmpty()) {
+                paths.addAll(findAlternativePaths(alternativeTemplate, options, paths, searchBeginTime));
+                break;
+            }
             // TODO pull all this timeout logic into a function near org.opentripplanner.util.DateUtils.absoluteTimeout()
             int timeoutIndex = paths.size();
             if (timeoutIndex >= router.timeouts.length) {
@@ -171,12 +195,16 @@ public class GraphPathFinder {
                 break;
             }
             // Don't dig through the SPT object, just ask the A star algorithm for the states that reached the target.
-            aStar.getShortestPathTree(options, timeout);
+            ShortestPathTree spt = aStar.getShortestPathTree(options, timeout);
 
             if (options.rctx.aborted) {
                 break; // Search timed out or was gracefully aborted for some other reason.
             }
             List<GraphPath> newPaths = aStar.getPathsToTarget();
+            // The paths only reference States, so the tree's storage can be recycled for the next search.
+            if (spt != null) {
+                spt.release();
+            }
             if (newPaths.isEmpty()) {
                 break;
             }
@@ -212,14 +240,7 @@ public class GraphPathFinder {
             }
 
             paths.addAll(newPaths.stream()
-                    .filter(path -> {
-                        double duration = options.useRequestedDateTimeInMaxHours
-                            ? options.arriveBy
-                                ? options.dateTime - path.getStartTime()
-                                : path.getEndTime() - options.dateTime
-                            : path.getDuration();
-                        return duration < options.maxHours * 60 * 60;
-                    })
+                    .filter(path -> isWithinMaxHours(options, path))
                     .collect(Collectors.toList()));
 
             LOG.debug("we have {} paths", paths.size());
@@ -229,6 +250,177 @@ public class GraphPathFinder {
         return paths;
     }
 
+    /** Choose an appropriate heuristic for goal direction. */
+    private static RemainingWeightHeuristic createHeuristic(RoutingRequest options) {
+        if (options.disableRemainingWeightHeuristic) {
+            return new TrivialRemainingWeightHeuristic();
+        } else if (options.modes.isTransit()) {
+            // Only use the BiDi heuristic for transit. It is not very useful for on-street modes.
+            // heuristic = new InterleavedBidirectionalHeuristic(options.rctx.graph);
+            // Use a simplistic heuristic until BiDi heuristic is improved, see #2153
+            return new InterleavedBidirectionalHeuristic(options.heuristicStepsPerMainStep);
+        } else if (options.rctx.graph.streetLandmarks != null && !options.useTraffic) {
+            // Street-only search: the landmark distances bound the remaining distance much better than a straight line.
+            // They are not valid when traffic speeds may exceed the speed limits used as an upper bound.
+            return new LandmarkRemainingWeightHeuristic(options.rctx.graph.streetLandmarks);
+        } else {
+            return new EuclideanRemainingWeightHeuristic();
+        }
+    }
+
+    private static boolean isWithinMaxHours(RoutingRequest options, GraphPath path) {
+        double duration = options.useRequestedDateTimeInMaxHours
+            ? options.arriveBy
+                ? options.dateTime - path.getStartTime()
+                : path.getEndTime() - options.dateTime
+            : path.getDuration();
+        return duration < options.maxHours * 60 * 60;
+    }
+
+    /**
+     * Search for all the remaining itineraries at once on the router's itinerary search threads, rather than one
+     * after another. Each search bans the trips of the itineraries found so far, as the next sequential search would,
+     * and varies the request in its own way (see Diversification) so that the searches do not all find the same
+     * itinerary. The results are merged, leaving out itineraries that use the same trips as one already found.
+     *
+     * Each search gets an equal share of the request's parallelItinerariesCpuBudget as its timeout, and none runs
+     * past the timeout of the second sequential search. Searches still waiting for a thread or running when the
+     * results are collected, or when collecting them is interrupted, are cancelled.
+     *
+     * @param template the request as it was before the first search
+     * @param options the request after the first search, with the trips of the first itineraries banned
+     */
+    private List<GraphPath> findAlternativePaths(RoutingRequest template, RoutingRequest options,
+                                                 List<GraphPath> found, long searchBeginTime) {
+        int count = options.numItineraries - found.size();
+        double maxTimeout = router.timeouts[Math.min(1, router.timeouts.length - 1)];
+        long deadline = searchBeginTime + (long) (Math.min(maxTimeout, router.totalTimeout) * 1000);
+        double timeout = options.parallelItinerariesCpuBudget / count;
+
+        Diversification[] diversifications = Diversification.values();
+        List<RoutingRequest> requests = new ArrayList<>(count);
+        List<Future<List<GraphPath>>> futures = new ArrayList<>(count);
+        ExecutorService pool = router.getItinerarySearchPool();
+        for (int i = 0; i < count; i++) {
+            RoutingRequest request = createAlternativeRequest(template, options, found,
+                    diversifications[i % diversifications.length], i / diversifications.length);
+            requests.add(request);
+            futures.add(pool.submit(() -> findAlternativePath(request, timeout, deadline)));
+        }
+
+        Set<List<AgencyAndId>> tripsFound = new HashSet<>();
+        for (GraphPath path : found) {
+            tripsFound.add(path.getTrips());
+        }
+        List<GraphPath> alternatives = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                try {
+                    long wait = deadline + ALTERNATIVE_RESULT_GRACE_MILLIS - System.currentTimeMillis();
+                    for (GraphPath path : futures.get(i).get(Math.max(wait, 0), TimeUnit.MILLISECONDS)) {
+                        if (isWithinMaxHours(options, path) && tripsFound.add(path.getTrips())) {
+                            alternatives.add(path);
+                        }
+                    }
+                    // A search that ran out of time leaves the plan incomplete
+                    if (requests.get(i).rctx.aborted) {
+                        options.rctx.debugOutput.timedOut = true;
+                    }
+                } catch (TimeoutException e) {
+                    // Past the deadline, the remaining searches are cancelled below.
+                    options.rctx.debugOutput.timedOut = true;
+                } catch (ExecutionException e) {
+                    LOG.warn("Search for an alternative itinerary failed on request: " + options, e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        } finally {
+            // Free the threads for other requests: searches not yet started are dropped, and AStar aborts the running
+            // ones when their thread is interrupted. This has no effect on the searches that already completed.
+            for (Future<List<GraphPath>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        LOG.debug("{} parallel searches found {} alternative paths", count, alternatives.size());
+        return alternatives;
+    }
+
+    /** Run one of the searches of findAlternativePaths, on an itinerary search thread. */
+    private static List<GraphPath> findAlternativePath(RoutingRequest request, double timeout, long deadline) {
+        timeout = Math.min(timeout, (deadline - System.currentTimeMillis()) / 1000.0);
+        if (timeout <= 0) {
+            request.rctx.aborted = true;
+            return Collections.emptyList();
+        }
+        AStar aStar = new AStar();
+        ShortestPathTree spt = aStar.getShortestPathTree(request, timeout);
+        List<GraphPath> paths = request.rctx.aborted ? Collections.emptyList() : aStar.getPathsToTarget();
+        if (spt != null) {
+            spt.release();
+        }
+        return paths;
+    }
+
+    /**
+     * Make the request for one of the parallel searches for alternative itineraries. It has its own routing context
+     * and heuristic, but shares the origin and destination vertices of the main request.
+     *
+     * @param round how many times this diversification was already used by other searches of the same request, to
+     * vary it further
+     */
+    private static RoutingRequest createAlternativeRequest(RoutingRequest template, RoutingRequest options,
+                                                           List<GraphPath> found, Diversification diversification,
+                                                           int round) {
+        RoutingRequest request = template.clone();
+        request.bannedTrips = new HashMap<>(options.bannedTrips);
+        request.onlyTransitTrips = options.onlyTransitTrips;
+        request.maxCallAndRideSeconds = options.maxCallAndRideSeconds;
+        switch (diversification) {
+            case BANNED_ROUTES:
+                Set<AgencyAndId> routeIds = new HashSet<>();
+                for (GraphPath path : found) {
+                    for (State state : path.states) {
+                        Trip trip = state.getBackTrip();
+                        if (trip != null) {
+                            routeIds.add(trip.getRoute().getId());
+                        }
+                    }
+                }
+                request.bannedRoutes = request.bannedRoutes.plusRouteIds(routeIds);
+                break;
+            case TRANSFER_PENALTY:
+                request.transferPenalty += ALTERNATIVE_TRANSFER_PENALTY * (round + 1);
+                break;
+            case DEPARTURE_SHIFT:
+                long shift = ALTERNATIVE_DEPARTURE_SHIFT * (round + 1);
+                if (request.arriveBy) {
+                    request.dateTime = found.stream().mapToLong(GraphPath::getEndTime).max().getAsLong() - shift;
+                } else {
+                    request.dateTime = found.stream().mapToLong(GraphPath::getStartTime).min().getAsLong() + shift;
+                }
+                break;
+            default:
+                break;
+        }
+        request.rctx = options.rctx.copyForSearch(request);
+        request.rctx.remainingWeightHeuristic = createHeuristic(request);
+        return request;
+    }
+
+    /** The ways in which the parallel searches for alternative itineraries vary the request, in order of use. */
+    private enum Diversification {
+        /** Only ban the trips of the itineraries found by the first search. */
+        BANNED_TRIPS,
+        /** Also ban the routes of those itineraries. */
+        BANNED_ROUTES,
+        /** Penalize transfers more, to find itineraries with fewer transfers. */
+        TRANSFER_PENALTY,
+        /** Depart after (or arrive before) those itineraries, to find the next departures. */
+        DEPARTURE_SHIFT
+    }
+
     private void banTrips(RoutingRequest options, List<AgencyAndId> tripIds) {
         List<AgencyAndId> orderedTripIds=new ArrayList<>(tripIds);
         if (options.arriveBy) {
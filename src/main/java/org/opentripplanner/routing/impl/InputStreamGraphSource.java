@@ -25,7 +25,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 
 
 /**
@@ -91,20 +90,17 @@ public class InputStreamGraphSource implements GraphSource {
             return null;
         }
 
-        try (InputStream is = graph.asInputStream()) {
-            LOG.info("Loading graph from: {}", graph.detailedInfo());
-            try {
-                newGraph = Graph.load(is);
-            } catch (Exception ex) {
-                LOG.error("Exception while loading graph '{}'.", routerId, ex);
-                return null;
-            }
-
-            newGraph.routerId = (routerId);
+        LOG.info("Loading graph from: {}", graph.detailedInfo());
+        try {
+            newGraph = Graph.load(graph);
         } catch (IOException e) {
             LOG.warn("Graph file is not readable for routerId '{}': {}", routerId, graph.path(), e);
             return null;
+        } catch (Exception ex) {
+            LOG.error("Exception while loading graph '{}'.", routerId, ex);
+            return null;
         }
+        newGraph.routerId = (routerId);
 
         // Even if a config file is not present on disk one could be bundled inside.
         JsonNode config = store.routerConfigParameters();
@@ -0,0 +1,299 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.GraphUpdater;
+import org.opentripplanner.updater.alerts.GtfsRealtimeAlertsUpdater;
+import org.opentripplanner.updater.alerts.SiriSXUpdater;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the trip plans of recent requests, so that the same journey asked for again and again (by widgets refreshing,
+ * or by many users of a journey planner looking at the same departure board) is only searched for once per time
+ * bucket. There is one cache per router, configured by the planCache section of router-config.json:
+ *
+ * <pre>
+ * "planCache": { "maxSize": 10000, "ttlSeconds": 60, "timeBucketSeconds": 60 }
+ * </pre>
+ *
+ * Requests share an entry when they come from the same API, their origins and destinations are the same place or
+ * within about a meter of each other, their times fall in the same bucket of timeBucketSeconds, and all their other
+ * parameters are equal. The plan returned is the one found for the first of these requests, without the itineraries
+ * that leave before the time asked for (or arrive after it, for arriveBy requests). When this leaves none, the request
+ * is searched for again. Only plans of searches that completed are kept, not those cut short by a timeout.
+ *
+ * An entry is dropped when the realtime timetable snapshot or the alerts it was computed with have been replaced,
+ * and after ttlSeconds in any case, which also bounds how stale the booking deadlines of flexible services that are
+ * checked against the wall clock can get. Requests whose results depend on other realtime data (bike rental
+ * availability, park and ride, traffic) are never cached.
+ *
+ * Hits and misses are counted here and read by the MonitoringStore under routing.planCache.hits and
+ * routing.planCache.misses.
+ */
+public class PlanResponseCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanResponseCache.class);
+
+    private static final MonitoringStore store = MonitoringStoreFactory.getStore();
+
+    private static final String HITS_KEY = "routing.planCache.hits";
+
+    private static final String MISSES_KEY = "routing.planCache.misses";
+
+    /** Coordinates are rounded to this many decimals, about a meter. */
+    private static final double COORDINATE_SCALE = 1e5;
+
+    /**
+     * Request fields left out of the key: the endpoints and time, which are normalized separately, the routing context,
+     * fields derived from other ones, fields that are never set from the APIs, and the wall clock time.
+     */
+    private static final Set<String> EXCLUDED_FIELDS = new HashSet<>(Arrays.asList(
+            "from", "to", "dateTime", "rctx", "bikeWalkingOptions", "parameters", "clockTimeSec"));
+
+    private static final List<Field> KEY_FIELDS = new ArrayList<>();
+
+    static {
+        for (Field field : RoutingRequest.class.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                    && !EXCLUDED_FIELDS.contains(field.getName())) {
+                KEY_FIELDS.add(field);
+            }
+        }
+    }
+
+    private final Cache<List<Object>, Entry> plans;
+
+    private final int timeBucketSeconds;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public PlanResponseCache(int maxSize, int ttlSeconds, int timeBucketSeconds) {
+        this.plans = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+        this.timeBucketSeconds = Math.max(1, timeBucketSeconds);
+        store.monitor(HITS_KEY, hits::sum);
+        store.monitor(MISSES_KEY, misses::sum);
+    }
+
+    /** @return the cache described by the given planCache configuration, or null if it is missing or disabled. */
+    public static PlanResponseCache fromConfig(JsonNode config) {
+        if (config == null || !config.isObject()) {
+            return null;
+        }
+        int maxSize = config.path("maxSize").asInt(10000);
+        int ttlSeconds = config.path("ttlSeconds").asInt(60);
+        int timeBucketSeconds = config.path("timeBucketSeconds").asInt(60);
+        if (maxSize <= 0 || ttlSeconds <= 0) {
+            LOG.info("Plan cache disabled by configuration.");
+            return null;
+        }
+        LOG.info("Caching up to {} plans for {} seconds, in time buckets of {} seconds.", maxSize, ttlSeconds,
+                timeBucketSeconds);
+        return new PlanResponseCache(maxSize, ttlSeconds, timeBucketSeconds);
+    }
+
+    /**
+     * @param api distinguishes the APIs, which do not convert the same paths into the same plans
+     * @return the key under which the plan for the given request is cached, or null if it must not be cached.
+     */
+    public List<Object> keyFor(String api, RoutingRequest request) {
+        if (request.from == null || request.to == null || request.batch
+                || request.allowBikeRental || request.parkAndRide || request.bikeParkAndRide || request.kissAndRide
+                || request.rideAndKiss || request.useTraffic) {
+            return null;
+        }
+        List<Object> key = new ArrayList<>(KEY_FIELDS.size() + 8);
+        key.add(api);
+        addLocation(key, request.from);
+        addLocation(key, request.to);
+        key.add(Math.floorDiv(request.dateTime, timeBucketSeconds));
+        try {
+            for (Field field : KEY_FIELDS) {
+                key.add(keyValue(field.get(request)));
+            }
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        return key;
+    }
+
+    /** The name is part of the key as it is copied into the plan, as the name of its from and to places. */
+    private static void addLocation(List<Object> key, GenericLocation location) {
+        key.add(location.name);
+        key.add(location.place);
+        key.add(location.vertexId);
+        key.add(location.lat == null ? null : Math.round(location.lat * COORDINATE_SCALE));
+        key.add(location.lng == null ? null : Math.round(location.lng * COORDINATE_SCALE));
+        key.add(location.heading);
+    }
+
+    /**
+     * Strategy objects (dominance functions, cost models...) do not implement equals, and a new instance is made for
+     * each request, so they are compared by class. Lists of places are compared by their normalized fields.
+     */
+    private static Object keyValue(Object value) {
+        if (value instanceof List) {
+            List<Object> values = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                if (element instanceof GenericLocation) {
+                    addLocation(values, (GenericLocation) element);
+                } else {
+                    values.add(keyValue(element));
+                }
+            }
+            return values;
+        }
+        if (value == null || overridesEquals(value.getClass())) {
+            return value;
+        }
+        return value.getClass();
+    }
+
+    private static boolean overridesEquals(Class<?> type) {
+        try {
+            return type.getMethod("equals", Object.class).getDeclaringClass() != Object.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the realtime data that plans computed now depend on: the timetable snapshot and the alerts of each alert
+     * updater. A plan is valid as long as all of these are the same objects.
+     */
+    public static List<Object> realtimeState(Graph graph) {
+        List<Object> state = new ArrayList<>();
+        state.add(graph.timetableSnapshotSource == null ? null :
+                graph.timetableSnapshotSource.getTimetableSnapshot());
+        if (graph.updaterManager != null) {
+            for (GraphUpdater updater : graph.updaterManager.getUpdaterList()) {
+                if (updater instanceof SiriSXUpdater) {
+                    state.add(((SiriSXUpdater) updater).getAlertPatchService().getAllAlertPatches());
+                } else if (updater instanceof GtfsRealtimeAlertsUpdater) {
+                    state.add(((GtfsRealtimeAlertsUpdater) updater).getAlertPatchService().getAllAlertPatches());
+                }
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return the cached plan for the given key, if it was computed with the given realtime state, with only the
+     * itineraries that fit the time of the given request. Null if there is no such plan.
+     */
+    public TripPlan get(List<Object> key, List<Object> realtimeState, RoutingRequest request) {
+        Entry entry = plans.getIfPresent(key);
+        if (entry != null && !sameObjects(entry.realtimeState, realtimeState)) {
+            plans.invalidate(key);
+            entry = null;
+        }
+        TripPlan plan = entry == null ? null : planAt(entry.plan, request);
+        if (plan == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return plan;
+    }
+
+    /**
+     * @return the plan itself if all its itineraries fit the time of the request, otherwise a copy without those that
+     * do not, or null if none do.
+     */
+    private static TripPlan planAt(TripPlan plan, RoutingRequest request) {
+        long millis = request.dateTime * 1000;
+        List<Itinerary> itineraries = new ArrayList<>(plan.itinerary.size());
+        for (Itinerary itinerary : plan.itinerary) {
+            boolean fits = request.arriveBy
+                    ? itinerary.endTime == null || itinerary.endTime.getTimeInMillis() <= millis
+                    : itinerary.startTime == null || itinerary.startTime.getTimeInMillis() >= millis;
+            if (fits) {
+                itineraries.add(itinerary);
+            }
+        }
+        if (itineraries.size() == plan.itinerary.size()
+                && (plan.date == null || plan.date.getTime() == millis)) {
+            return plan;
+        }
+        if (itineraries.isEmpty() && !plan.itinerary.isEmpty()) {
+            return null;
+        }
+        TripPlan copy = new TripPlan(plan.from, plan.to, new Date(millis));
+        copy.itinerary = itineraries;
+        return copy;
+    }
+
+    /**
+     * Store the plan found for a request, which must not be modified afterwards, unless its search timed out or was
+     * aborted: a later search may find more.
+     * @param realtimeState the realtime state from before the search that found the plan started
+     */
+    public void put(List<Object> key, TripPlan plan, List<Object> realtimeState, RoutingRequest request) {
+        if (request.rctx != null && (request.rctx.aborted || request.rctx.debugOutput.timedOut)) {
+            return;
+        }
+        plans.put(key, new Entry(plan, realtimeState));
+    }
+
+    private static boolean sameObjects(List<Object> a, List<Object> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+        final TripPlan plan;
+        final List<Object> realtimeState;
+
+        Entry(TripPlan plan, List<Object> realtimeState) {
+            this.plan = plan;
+            this.realtimeState = realtimeState;
+        }
+    }
+
+}
@@ -42,6 +42,7 @@ import org.opentripplanner.routing.util.ElevationUtils;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.SampleVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TemporaryBikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 import org.opentripplanner.util.I18NString;
 import org.slf4j.Logger;
@@ -363,6 +364,11 @@ public class StreetVertexIndexServiceImpl implements StreetVertexIndexService {
         return null;
     }
 
+    @Override
+    public boolean linkFloatingBike(TemporaryBikeRentalStationVertex vertex) {
+        return simpleStreetSplitter.link(vertex);
+    }
+
     @Override
     public String toString() {
         return getClass().getName() + " -- edgeTree: " + edgeTree.toString() + " -- verticesTree: " + verticesTree.toString();
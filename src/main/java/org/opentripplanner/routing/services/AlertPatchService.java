@@ -16,11 +16,13 @@ package org.opentripplanner.routing.services;
 import org.opentripplanner.model.AgencyAndId;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
 import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
 
 import java.util.Collection;
 import java.util.Set;
 
 public interface AlertPatchService {
+    /** A new collection is returned after each update, so its identity tells whether the alerts have changed. */
     Collection<AlertPatch> getAllAlertPatches();
 
     AlertPatch getPatchById(String id);
@@ -39,6 +41,9 @@ public interface AlertPatchService {
 
     Collection<AlertPatch> getTripPatternPatches(TripPattern tripPattern);
 
+    /** @return the patches applying to the edge, in an array that must not be modified, or null if there are none. */
+    AlertPatch[] getEdgePatches(Edge edge);
+
     void apply(AlertPatch alertPatch);
 
     void expire(Set<String> ids);
@@ -48,4 +53,7 @@ public interface AlertPatchService {
     void expireAllExcept(Set<String> ids);
 
     void applyAll(Set<AlertPatch> alertPatches);
+
+    /** Expire and apply patches as a single update, which readers see either entirely or not at all. */
+    void update(Set<String> expiredIds, Collection<AlertPatch> alertPatches);
 }
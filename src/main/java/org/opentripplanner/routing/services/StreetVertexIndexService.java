@@ -20,6 +20,7 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
+import org.opentripplanner.routing.vertextype.TemporaryBikeRentalStationVertex;
 import org.opentripplanner.routing.vertextype.TransitStop;
 
 import java.util.Collection;
@@ -65,6 +66,14 @@ public interface StreetVertexIndexService {
 
     void addToSpatialIndex(Vertex v);
 
+    /**
+     * Links a floating bike to the closest streets for a single search, splitting them with temporary edges only.
+     *
+     * @param vertex
+     * @return false if there is no street near enough to link it to.
+     */
+    boolean linkFloatingBike(TemporaryBikeRentalStationVertex vertex);
+
     /**
      * Finds the appropriate vertex for this location.
      * 
@@ -0,0 +1,250 @@
+/* This program is free software: you can redistribute it and/or
+modify it under the terms of the GNU Lesser General Public License
+as published by the Free Software Foundation, either version 3 of
+the License, or (at your option) any later version.
+
+This program is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.spt;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A ShortestPathTree that keeps the states at each vertex in an array slot indexed on Vertex.getIndex(), rather than
+ * in a hash map of lists. This avoids a hash lookup on every add and visit, and avoids allocating a list for every
+ * vertex reached: a slot holds a single State directly, and only becomes a list when several co-dominant states
+ * exist at the same vertex (which never happens with single-state dominance functions unless turn restrictions,
+ * bike rental or parking split the vertex).
+ *
+ * The backing arrays are as large as the graph, so they are recycled between searches. Call release() once the
+ * paths have been extracted from the tree to hand the array on to the next search.
+ *
+ * Vertices that have no index in the graph, such as the temporary vertices at the origin and destination of a
+ * request, are stored in the hash map of the superclass.
+ */
+public class ArrayShortestPathTree extends ShortestPathTree {
+
+    /** Keep at most one spare array per core, since about that many searches can be running at once. */
+    private static final int MAX_POOLED_ARRAYS = Runtime.getRuntime().availableProcessors();
+
+    /** Arrays released by finished searches. Soft references let them be collected when memory runs short. */
+    private static final Deque<SoftReference<Object[]>> pool = new ArrayDeque<>();
+
+    /** For each vertex index: null, a single State, or a List of co-dominant States. Null once released. */
+    private Object[] slots;
+
+    /** The indexes of all non-empty slots, for iterating over the tree and clearing the array on release. */
+    private final TIntArrayList usedSlots = new TIntArrayList();
+
+    public ArrayShortestPathTree(RoutingRequest options, DominanceFunction dominanceFunction, int vertexCapacity) {
+        super(options, dominanceFunction);
+        this.slots = borrowArray(vertexCapacity);
+    }
+
+    @Override
+    public boolean add(State newState) {
+        Vertex vertex = newState.getVertex();
+        int index = slotIndex(vertex);
+        if (index < 0) {
+            return super.add(newState);
+        }
+        Object slot = slots[index];
+
+        // if the vertex has no states, add one and return
+        if (slot == null) {
+            slots[index] = newState;
+            usedSlots.add(index);
+            return true;
+        }
+
+        // single state: compare directly, only creating a list if the two states are co-dominant
+        if (slot instanceof State) {
+            State oldState = (State) slot;
+            // order is important, because in the case of a tie we want to reject the new state
+            if (dominanceFunction.betterOrEqualAndComparable(oldState, newState))
+                return false;
+            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState)) {
+                slots[index] = newState;
+                return true;
+            }
+            List<State> states = new ArrayList<>(2);
+            states.add(oldState);
+            states.add(newState);
+            slots[index] = states;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<State> states = (List<State>) slot;
+        Iterator<State> it = states.iterator();
+        while (it.hasNext()) {
+            State oldState = it.next();
+            if (dominanceFunction.betterOrEqualAndComparable(oldState, newState))
+                return false;
+            if (dominanceFunction.betterOrEqualAndComparable(newState, oldState))
+                it.remove();
+        }
+        // any states remaining are co-dominant with the new state
+        states.add(newState);
+        return true;
+    }
+
+    @Override
+    public State getState(Vertex dest) {
+        int index = slotIndex(dest);
+        if (index < 0) {
+            return super.getState(dest);
+        }
+        Object slot = slots[index];
+        if (slot instanceof State) {
+            State state = (State) slot;
+            return state.isFinal() ? state : null;
+        }
+        State ret = null;
+        for (State s : statesIn(slot)) {
+            if ((ret == null || s.weight < ret.weight) && s.isFinal()) {
+                ret = s;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public List<State> getStates(Vertex dest) {
+        int index = slotIndex(dest);
+        if (index < 0) {
+            return super.getStates(dest);
+        }
+        Object slot = slots[index];
+        return slot == null ? null : statesIn(slot);
+    }
+
+    @Override
+    public boolean visit(State state) {
+        int index = slotIndex(state.getVertex());
+        if (index < 0) {
+            return super.visit(state);
+        }
+        Object slot = slots[index];
+        if (slot == state) {
+            return true;
+        }
+        if (slot instanceof List) {
+            for (State s : statesIn(slot)) {
+                if (s == state) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Set<Vertex> getVertices() {
+        Set<Vertex> vertices = new HashSet<>(super.getVertices());
+        for (int i = 0; i < usedSlots.size(); i++) {
+            vertices.add(vertexOf(slots[usedSlots.get(i)]));
+        }
+        return vertices;
+    }
+
+    @Override
+    public int getVertexCount() {
+        return usedSlots.size() + super.getVertexCount();
+    }
+
+    @Override
+    public Collection<State> getAllStates() {
+        Collection<State> allStates = super.getAllStates();
+        for (int i = 0; i < usedSlots.size(); i++) {
+            allStates.addAll(statesIn(slots[usedSlots.get(i)]));
+        }
+        return allStates;
+    }
+
+    /** Clear the slots used by this search and return the backing array to the pool. */
+    @Override
+    public void release() {
+        if (slots == null) {
+            return;
+        }
+        for (int i = 0; i < usedSlots.size(); i++) {
+            slots[usedSlots.get(i)] = null;
+        }
+        usedSlots.clear();
+        returnArray(slots);
+        slots = null;
+    }
+
+    /**
+     * @return the slot holding the states of the given vertex, or -1 if they are kept in the superclass map. Besides
+     * temporary vertices, this is the case for vertices added to the graph after this search started, and for
+     * vertices whose index collides with one already in the tree (only possible for vertices that are not actually
+     * part of the graph, e.g. deserialized without any edges).
+     */
+    private int slotIndex(Vertex vertex) {
+        int index = vertex.getIndex();
+        if (index < 0 || index >= slots.length) {
+            return -1;
+        }
+        Object slot = slots[index];
+        return (slot == null || vertexOf(slot) == vertex) ? index : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<State> statesIn(Object slot) {
+        return (slot instanceof State) ? Collections.singletonList((State) slot) : (List<State>) slot;
+    }
+
+    /** Slots never hold empty lists: states are only removed from a list when another one is added to it. */
+    @SuppressWarnings("unchecked")
+    private static Vertex vertexOf(Object slot) {
+        State state = (slot instanceof State) ? (State) slot : ((List<State>) slot).get(0);
+        return state.getVertex();
+    }
+
+    private static Object[] borrowArray(int capacity) {
+        synchronized (pool) {
+            Iterator<SoftReference<Object[]>> it = pool.iterator();
+            while (it.hasNext()) {
+                Object[] array = it.next().get();
+                if (array == null) {
+                    it.remove();
+                } else if (array.length >= capacity) {
+                    it.remove();
+                    return array;
+                }
+            }
+        }
+        return new Object[capacity];
+    }
+
+    private static void returnArray(Object[] array) {
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED_ARRAYS) {
+                pool.push(new SoftReference<>(array));
+            }
+        }
+    }
+
+}
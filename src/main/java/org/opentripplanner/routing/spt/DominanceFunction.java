@@ -91,7 +91,7 @@ public abstract class DominanceFunction implements Serializable {
 
         // Are the two states arriving at a vertex from two different directions where turn restrictions apply?
         if (a.backEdge != b.getBackEdge() && (a.backEdge instanceof StreetEdge)) {
-            if (! a.getOptions().getRoutingContext().graph.getTurnRestrictions(a.backEdge).isEmpty()) {
+            if (((StreetEdge) a.backEdge).hasTurnRestrictions()) {
                 return false;
             }
         }
@@ -104,8 +104,13 @@ public abstract class DominanceFunction implements Serializable {
     /**
      * Create a new shortest path tree using this function, considering whether it allows co-dominant States.
      * MultiShortestPathTree is the general case -- it will work with both single- and multi-state functions.
+     * If the request asks for it, the states are kept in arrays indexed by vertex rather than in a map.
      */
      public ShortestPathTree getNewShortestPathTree(RoutingRequest routingRequest) {
+        if (routingRequest.useArrayShortestPathTree && routingRequest.rctx != null) {
+            int vertexCapacity = routingRequest.rctx.graph.getVertexIndexCapacity();
+            return new ArrayShortestPathTree(routingRequest, this, vertexCapacity);
+        }
         return new ShortestPathTree(routingRequest, this);
      }
 
@@ -31,6 +31,7 @@ import java.util.*;
  * We no longer have different implementations of ShortestPathTree because the label-setting (multi-state) approach
  * used in public transit routing, turn restrictions, bike rental, etc. is a generalization of the basic Dijkstra 
  * (single-state) approach. It is much more straightforward to use the more general SPT implementation in all cases.
+ * The only variation is in how states are stored, see {@link ArrayShortestPathTree}.
  *
  * Note that turn restrictions make all searches multi-state; however turn restrictions do not apply when walking.
  * The turn restriction handling is done in the base dominance function implementation, and applies to all subclasses.
@@ -89,8 +90,8 @@ public class ShortestPathTree {
         Multiset<Integer> histogram = HashMultiset.create();
         int statesCount = 0;
         int maxSize = 0;
-        for (Map.Entry<Vertex, List<State>> kv : stateSets.entrySet()) {
-            List<State> states = kv.getValue();
+        for (Vertex vertex : getVertices()) {
+            List<State> states = getStates(vertex);
             int size = states.size();
             histogram.add(size);
             statesCount += size;
@@ -98,9 +99,10 @@ public class ShortestPathTree {
                 maxSize = size;
             }
         }
-        LOG.info("SPT: vertices: " + stateSets.size() + " states: total: "
+        int vertexCount = getVertexCount();
+        LOG.info("SPT: vertices: " + vertexCount + " states: total: "
                 + statesCount + " per vertex max: " + maxSize + " avg: "
-                + (statesCount * 1.0 / stateSets.size()));
+                + (statesCount * 1.0 / vertexCount));
         List<Integer> nStates = new ArrayList<Integer>(histogram.elementSet());
         Collections.sort(nStates);
         for (Integer nState : nStates) {
@@ -233,8 +235,15 @@ public class ShortestPathTree {
         return allStates;
     }
 
+    /**
+     * Signal that this tree will no longer be used, allowing implementations to recycle their storage. The paths
+     * already extracted from the tree remain valid, but the tree itself must not be queried afterwards.
+     */
+    public void release() {
+    }
+
     public String toString() {
-        return "ShortestPathTree(" + this.stateSets.size() + " vertices)";
+        return "ShortestPathTree(" + getVertexCount() + " vertices)";
     }
 
 }
\ No newline at end of file
@@ -30,9 +30,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.opentripplanner.model.StopPattern.PICKDROP_NONE;
 
@@ -77,16 +80,21 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     private final String[] headsigns;
 
     /**
-     * The time in seconds after midnight at which the vehicle should arrive at each stop according
-     * to the original schedule.
+     * The time in seconds after the timeShift at which the vehicle should arrive at each stop according
+     * to the original schedule, starting at scheduledArrivalOffset. Once the timetable is laid out by
+     * shareScheduledTimes, this array holds the scheduled times of all the trips of the timetable.
      */
-    final int[] scheduledArrivalTimes;
+    int[] scheduledArrivalTimes;
+
+    int scheduledArrivalOffset;
 
     /**
-     * The time in seconds after midnight at which the vehicle should leave each stop according
-     * to the original schedule.
+     * The time in seconds after the timeShift at which the vehicle should leave each stop according
+     * to the original schedule, starting at scheduledDepartureOffset. See scheduledArrivalTimes.
      */
-    final int[] scheduledDepartureTimes;
+    int[] scheduledDepartureTimes;
+
+    int scheduledDepartureOffset;
 
     /**
      * The time in seconds after midnight at which the vehicle arrives at each stop, accounting for
@@ -265,7 +273,9 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
         this.timeShift = object.timeShift;
         this.headsigns = object.headsigns;
         this.scheduledDepartureTimes = object.scheduledDepartureTimes;
+        this.scheduledDepartureOffset = object.scheduledDepartureOffset;
         this.scheduledArrivalTimes = object.scheduledArrivalTimes;
+        this.scheduledArrivalOffset = object.scheduledArrivalOffset;
         this.stopTimeIds = object.stopTimeIds;
         this.stopSequences = object.stopSequences;
         this.timepoints = object.timepoints;
@@ -293,7 +303,9 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
         this.timeShift = source.timeShift + relativeTimeshift;
         this.headsigns = source.headsigns;
         this.scheduledDepartureTimes = source.scheduledDepartureTimes;
+        this.scheduledDepartureOffset = source.scheduledDepartureOffset;
         this.scheduledArrivalTimes = source.scheduledArrivalTimes;
+        this.scheduledArrivalOffset = source.scheduledArrivalOffset;
         this.stopTimeIds = null;
         this.stopSequences = source.stopSequences;
         this.timepoints = source.timepoints;
@@ -368,12 +380,12 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
 
     /** @return the time in seconds after midnight that the vehicle arrives at the stop. */
     public int getScheduledArrivalTime(final int stop) {
-        return scheduledArrivalTimes[stop] + timeShift;
+        return scheduledArrivalTimes[scheduledArrivalOffset + stop] + timeShift;
     }
 
     /** @return the amount of time in seconds that the vehicle waits at the stop. */
     public int getScheduledDepartureTime(final int stop) {
-        return scheduledDepartureTimes[stop] + timeShift;
+        return scheduledDepartureTimes[scheduledDepartureOffset + stop] + timeShift;
     }
 
     /** @return the time in seconds after midnight that the vehicle arrives at the stop. */
@@ -406,12 +418,12 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
 
     /** @return the difference between the scheduled and actual arrival times at this stop. */
     public int getArrivalDelay(final int stop) {
-        return getArrivalTime(stop) - (scheduledArrivalTimes[stop] + timeShift);
+        return getArrivalTime(stop) - getScheduledArrivalTime(stop);
     }
 
     /** @return the difference between the scheduled and actual departure times at this stop. */
     public int getDepartureDelay(final int stop) {
-        return getDepartureTime(stop) - (scheduledDepartureTimes[stop] + timeShift);
+        return getDepartureTime(stop) - getScheduledDepartureTime(stop);
     }
 
     public int getCallAndRideBoardTime(int stop, long currTime, ServiceDay sd, boolean useClockTime, long startClockTime) {
@@ -589,7 +601,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
      * @return whether the times were found to be increasing.
      */
     public boolean timesIncreasing() {
-        final int nStops = scheduledArrivalTimes.length;
+        final int nStops = getNumStops();
         int prevDep = -1;
         for (int s = 0; s < nStops; s++) {
             final int arr = getArrivalTime(s);
@@ -667,7 +679,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
 
     public void updateDepartureDelay(final int stop, final int delay) {
         checkCreateTimesArrays();
-        departureTimes[stop] = scheduledDepartureTimes[stop] + timeShift + delay;
+        departureTimes[stop] = getScheduledDepartureTime(stop) + delay;
     }
 
     public void updateArrivalTime(final int stop, final int time) {
@@ -677,7 +689,7 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
 
     public void updateArrivalDelay(final int stop, final int delay) {
         checkCreateTimesArrays();
-        arrivalTimes[stop] = scheduledArrivalTimes[stop] + timeShift + delay;
+        arrivalTimes[stop] = getScheduledArrivalTime(stop) + delay;
     }
 
     /**
@@ -686,8 +698,11 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
      */
     private void checkCreateTimesArrays() {
         if (arrivalTimes == null) {
-            arrivalTimes = Arrays.copyOf(scheduledArrivalTimes, scheduledArrivalTimes.length);
-            departureTimes = Arrays.copyOf(scheduledDepartureTimes, scheduledDepartureTimes.length);
+            int nStops = getNumStops();
+            arrivalTimes = Arrays.copyOfRange(scheduledArrivalTimes, scheduledArrivalOffset,
+                    scheduledArrivalOffset + nStops);
+            departureTimes = Arrays.copyOfRange(scheduledDepartureTimes, scheduledDepartureOffset,
+                    scheduledDepartureOffset + nStops);
             isRecordedStop = new boolean[arrivalTimes.length];
             isCancelledStop = new boolean[arrivalTimes.length];
             isPredictionInaccurate = new boolean[arrivalTimes.length];
@@ -705,7 +720,80 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     }
 
     public int getNumStops () {
-        return scheduledArrivalTimes.length;
+        // The scheduled times may be part of a larger array, but the stop sequences are never shared that way
+        return stopSequences.length;
+    }
+
+    /** @return the shift in seconds applied to the scheduled times of this trip, see timeShift. */
+    public int getTimeShift() {
+        return timeShift;
+    }
+
+    /**
+     * @return where the scheduled departure times of this trip start in the given array of scheduled times, or -1 if
+     * the trip does not read them from there or its times have been updated in realtime.
+     */
+    public int getScheduledDepartureOffset(int[] sharedTimes) {
+        return isScheduled() && scheduledDepartureTimes == sharedTimes ? scheduledDepartureOffset : -1;
+    }
+
+    /** @return where the scheduled arrival times of this trip start in the given array, see getScheduledDepartureOffset. */
+    public int getScheduledArrivalOffset(int[] sharedTimes) {
+        return isScheduled() && scheduledArrivalTimes == sharedTimes ? scheduledArrivalOffset : -1;
+    }
+
+    /**
+     * Lay out the scheduled times of the given trips, usually all the trips of a timetable, in a single array: each
+     * distinct sequence of scheduled arrival or departure times is copied there once, and from then on the trips read
+     * their scheduled times from that array. As times are stored relative to the timeShift, trips with the same
+     * running and dwell times share one such sequence. The times of a whole timetable thus end up next to each other
+     * in memory, taking less space than the separate arrays did.
+     *
+     * This changes where the given trips read their times, so it must only be called before they are used for routing,
+     * when the graph is built or loaded.
+     *
+     * @return the array now holding the scheduled times of the given trips
+     */
+    public static int[] shareScheduledTimes(Collection<TripTimes> trips) {
+        int[] current = null;
+        boolean shared = true;
+        for (TripTimes tt : trips) {
+            if (current == null) current = tt.scheduledArrivalTimes;
+            shared &= tt.scheduledArrivalTimes == current && tt.scheduledDepartureTimes == current;
+        }
+        if (shared) {
+            return current; // already laid out, for instance in a graph that was saved after being laid out
+        }
+        Map<IntBuffer, Integer> offsets = new HashMap<>();
+        int size = 0;
+        for (TripTimes tt : trips) {
+            for (IntBuffer times : new IntBuffer[] { tt.scheduledArrivals(), tt.scheduledDepartures() }) {
+                if (!offsets.containsKey(times)) {
+                    offsets.put(times, size);
+                    size += times.remaining();
+                }
+            }
+        }
+        int[] sharedTimes = new int[size];
+        for (Map.Entry<IntBuffer, Integer> entry : offsets.entrySet()) {
+            IntBuffer times = entry.getKey().duplicate();
+            times.get(sharedTimes, entry.getValue(), times.remaining());
+        }
+        for (TripTimes tt : trips) {
+            tt.scheduledArrivalOffset = offsets.get(tt.scheduledArrivals());
+            tt.scheduledDepartureOffset = offsets.get(tt.scheduledDepartures());
+            tt.scheduledArrivalTimes = sharedTimes;
+            tt.scheduledDepartureTimes = sharedTimes;
+        }
+        return sharedTimes;
+    }
+
+    private IntBuffer scheduledArrivals() {
+        return IntBuffer.wrap(scheduledArrivalTimes, scheduledArrivalOffset, getNumStops());
+    }
+
+    private IntBuffer scheduledDepartures() {
+        return IntBuffer.wrap(scheduledDepartureTimes, scheduledDepartureOffset, getNumStops());
     }
 
     /** Sort TripTimes based on first departure time. */
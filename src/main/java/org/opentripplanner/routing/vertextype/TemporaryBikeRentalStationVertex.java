@@ -0,0 +1,32 @@
+package org.opentripplanner.routing.vertextype;
+
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.edgetype.RentABikeOnEdge;
+
+/**
+ * A floating bike linked to the streets for a single search. It is not added to the graph: it is reached from and
+ * left for the streets through temporary edges, which other searches running at the same time cannot traverse.
+ */
+public class TemporaryBikeRentalStationVertex extends BikeRentalStationVertex implements TemporaryVertex {
+
+    /** The floating bikes of the routing context this vertex was linked for, used as the owner of the vertex. */
+    private final Object owner;
+
+    public TemporaryBikeRentalStationVertex(BikeRentalStation station, RoutingContext rctx) {
+        super(null, station);
+        this.owner = rctx.floatingBikeVertices;
+        new RentABikeOnEdge(this, this, station.networks);
+    }
+
+    /** @return true if this vertex was linked for the given routing context or a copy of it. */
+    public boolean isLinkedFor(RoutingContext rctx) {
+        return rctx != null && rctx.floatingBikeVertices == owner;
+    }
+
+    /** Temporary edges both reach and leave this vertex, and are only traversable by the search that owns it. */
+    @Override
+    public boolean isEndVertex() {
+        return false;
+    }
+}
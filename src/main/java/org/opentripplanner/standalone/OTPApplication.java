@@ -82,6 +82,7 @@ public class OTPApplication extends Application {
             ServerInfo.class,
             GraphInspectorTileResource.class,
             UpdaterStatusResource.class,
+            MetricsResource.class,
             /* Features and Filters: extend Jersey, manipulate requests and responses. */
             CorsFilter.class,
             MultiPartFeature.class
@@ -7,12 +7,14 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.model.TransmodelTransportSubmode;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.PlanResponseCache;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.util.ElevationUtils;
 import org.opentripplanner.util.WorldEnvelope;
@@ -20,6 +22,8 @@ import org.opentripplanner.visualizer.GraphVisualizer;
 import org.slf4j.LoggerFactory;
 
 import java.util.EnumMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Represents the configuration of a single router (a single graph for a specific geographic area)
@@ -53,6 +57,14 @@ public class Router {
 
     public String kartverketToken;
 
+    /** The number of threads running the parallel searches for alternative itineraries of all requests. */
+    public int itinerarySearchThreads = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService itinerarySearchPool;
+
+    /** Recently computed trip plans, shared by identical requests. Null unless enabled in router-config.json. */
+    public PlanResponseCache planCache = null;
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -161,6 +173,22 @@ public class Router {
             graph.setUseFlexService(useFlexService.asBoolean(false));
         }
 
+        JsonNode itinerarySearchThreads = config.get("itinerarySearchThreads");
+        if (itinerarySearchThreads != null) {
+            if (itinerarySearchThreads.isInt() && itinerarySearchThreads.intValue() > 0) {
+                this.itinerarySearchThreads = itinerarySearchThreads.intValue();
+            } else {
+                LOG.error("The 'itinerarySearchThreads' configuration option should be a positive number.");
+            }
+        }
+
+        this.planCache = PlanResponseCache.fromConfig(config.get("planCache"));
+
+        /* The graph index is built while loading the graph, before the id of its router is known. */
+        if (graph.index != null) {
+            graph.index.queryCache.monitor("index." + id);
+        }
+
         JsonNode tokenUrl = config.get("kartverketTokenUrl");
         if (tokenUrl != null && tokenUrl.has("url")) {
             this.kartverketToken = tokenUrl.get("url").asText();
@@ -184,6 +212,23 @@ public class Router {
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        synchronized (this) {
+            if (itinerarySearchPool != null) {
+                itinerarySearchPool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return the threads on which requests with parallelItineraries run their searches for alternative itineraries.
+     * Their number is fixed, so that under load these searches queue up rather than slow down all other requests.
+     */
+    public synchronized ExecutorService getItinerarySearchPool() {
+        if (itinerarySearchPool == null) {
+            itinerarySearchPool = Executors.newFixedThreadPool(itinerarySearchThreads, new ThreadFactoryBuilder()
+                    .setNameFormat("ItinerarySearch-" + id + "-%d").setDaemon(true).build());
+        }
+        return itinerarySearchPool;
     }
 
     /**
@@ -152,11 +152,34 @@ public class GraphBuilderParameters {
      */
     public final boolean banDiscouragedBiking;
 
+    /**
+     * Look up OSM way properties and create street geometries on several threads. The resulting graph is identical
+     * to the one built on a single thread.
+     */
+    public final boolean osmParallelBuild;
+
+    /**
+     * Sample the elevation model on several threads, each working on a different area of the street network. The
+     * resulting elevation profiles are identical to the ones sampled on a single thread.
+     */
+    public final boolean elevationParallelBuild;
+
     /**
      * Transfers up to this length in meters will be pre-calculated and included in the Graph.
      */
     public final double maxTransferDistance;
 
+    /**
+     * Number of threads searching for nearby stops when generating transfers. Defaults to the number of processors.
+     */
+    public final int transferThreads;
+
+
+    /**
+     * Number of landmarks to which street distances are precomputed for each street mode, to speed up street-only
+     * searches. Each landmark adds 24 bytes per vertex to the graph. Defaults to 0, which disables the landmarks.
+     */
+    public final int streetLandmarks;
 
     /**
      * This will add extra edges when linking a stop to a platform, to prevent detours along the platform edge.
@@ -233,7 +256,11 @@ public class GraphBuilderParameters {
         pruningThresholdIslandWithStops = config.path("islandWithStopsMaxSize").asInt(5);
         banDiscouragedWalking = config.path("banDiscouragedWalking").asBoolean(false);
         banDiscouragedBiking = config.path("banDiscouragedBiking").asBoolean(false);
+        osmParallelBuild = config.path("osmParallelBuild").asBoolean(false);
+        elevationParallelBuild = config.path("elevationParallelBuild").asBoolean(false);
         maxTransferDistance = config.path("maxTransferDistance").asDouble(2000);
+        transferThreads = config.path("transferThreads").asInt(Runtime.getRuntime().availableProcessors());
+        streetLandmarks = config.path("streetLandmarks").asInt(0);
         extraEdgesStopPlatformLink = config.path("extraEdgesStopPlatformLink").asBoolean(false);
         netex = new NetexParameters(config.path("netex"));
         storage = new StorageParameters(config.path("storage"));
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.opentripplanner.routing.graph.GraphFileFormat;
 import org.opentripplanner.standalone.config.StorageParameters;
 import org.opentripplanner.standalone.datastore.base.DataSourceRepository;
 import org.opentripplanner.standalone.datastore.base.LocalDataSourceRepository;
@@ -154,6 +155,12 @@ public class OtpDataStore {
         return graph;
     }
 
+    /** @return the format to save the graph and base graph in. */
+    @NotNull
+    public GraphFileFormat getGraphFormat() {
+        return parameters.graphFormat;
+    }
+
     @NotNull
     public CompositeDataSource getOtpStatusDir() {
         return otpStatusDir;
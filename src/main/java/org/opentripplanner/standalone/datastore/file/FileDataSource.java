@@ -22,6 +22,14 @@ public class FileDataSource extends AbstractFileDataSource {
     super(file, type);
   }
 
+  /**
+   * @return the file, if its content can be used as it is stored on disk, for example by
+   * memory-mapping it. Returns {@code null} for GZIP compressed files.
+   */
+  public File localFile() {
+    return file.getName().endsWith(".gz") ? null : file;
+  }
+
   @Override
   public InputStream asInputStream() {
     try {
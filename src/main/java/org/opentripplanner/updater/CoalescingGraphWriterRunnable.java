@@ -0,0 +1,41 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.updater;
+
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.List;
+
+/**
+ * A graph writer runnable that can be combined with other pending runnables of the same kind. When the writer thread
+ * of the GraphUpdaterManager finds several of them waiting in its queue, it runs them all at once with
+ * {@link #runBatch}, rather than calling {@link #run} on each one in turn. This allows work that each of them would
+ * repeat, such as committing a new timetable snapshot, to be done only once per batch.
+ *
+ * @see GraphUpdaterManager#execute
+ */
+public interface CoalescingGraphWriterRunnable extends GraphWriterRunnable {
+
+    /**
+     * Pending runnables that return equal keys are run in the same batch. They are not necessarily of the same class.
+     * Must not return null.
+     */
+    Object coalescingKey(Graph graph);
+
+    /**
+     * Run all the runnables in the given batch, in the order in which they were submitted. The batch includes this
+     * runnable, and all of its runnables have the same coalescing key.
+     */
+    void runBatch(Graph graph, List<CoalescingGraphWriterRunnable> batch);
+}
@@ -17,8 +17,12 @@ import com.beust.jcommander.internal.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -26,8 +30,11 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,6 +88,26 @@ public class GraphUpdaterManager {
      */
     Graph graph;
 
+    /**
+     * Graph writer runnables that have been submitted but not yet taken up by the writer thread, in order of
+     * submission. Each submission also schedules a task on the writer thread that drains this queue and runs all the
+     * runnables it finds as one batch, so runnables that pile up while the writer is busy are run together.
+     */
+    private final Queue<PendingWriter> pendingWriters = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private volatile int lastBatchSize = 0;
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+
+    private final MonitoringStore store = MonitoringStoreFactory.getStore();
+
+    /** Prefix of the keys under which the queue depth and batch sizes are reported to the MonitoringStore. */
+    private final String monitoringPrefix;
+
     /**
      * Constructor
      * 
@@ -93,6 +120,11 @@ public class GraphUpdaterManager {
         if(routerId == null || routerId.isEmpty())
             routerId = DEFAULT_ROUTER_ID;
         
+        monitoringPrefix = "graphUpdater." + routerId + ".";
+        for (String key : new String[] { "queueDepth", "maxQueueDepth", "batchSize", "maxBatchSize" }) {
+            store.monitor(monitoringPrefix + key);
+        }
+
         threadFactory = new ThreadFactoryBuilder().setNameFormat("GraphUpdater-" + routerId + "-%d").build();
         scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
         updaterPool = Executors.newCachedThreadPool(threadFactory);
@@ -174,6 +206,11 @@ public class GraphUpdaterManager {
      * scheduled after each other, guaranteeing that only one of these runnables will be active at
      * any time.
      * 
+     * Runnables that are waiting when the writer thread becomes free are run as one batch. Within
+     * a batch, {@link CoalescingGraphWriterRunnable}s with the same coalescing key are run together,
+     * at the position of the first of them. They may therefore run before other runnables that were
+     * submitted earlier, but never before one with the same key.
+     *
      * @param runnable is a graph writer runnable
      */
     public void execute(GraphWriterRunnable runnable) {
@@ -200,18 +237,103 @@ public class GraphUpdaterManager {
 
     private Future<?> executeReturningFuture(final GraphWriterRunnable runnable) {
         // TODO: check for high water mark?
-        Future<?> future = scheduler.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    runnable.run(graph);
-                } catch (Exception e) {
-                    LOG.error("Error while running graph writer {}:", runnable.getClass().getName(),
-                            e);
+        PendingWriter pending = new PendingWriter(runnable);
+        pendingWriters.add(pending);
+        int depth = queueDepth.incrementAndGet();
+        store.setLong(monitoringPrefix + "queueDepth", depth);
+        store.setLongMax(monitoringPrefix + "maxQueueDepth", depth);
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+        // If an earlier task has already run this runnable as part of its batch, this one finds the queue empty.
+        scheduler.execute(this::runPendingWriters);
+        return pending.done;
+    }
+
+    /** Run all the pending graph writer runnables as one batch. Only called on the writer thread. */
+    private void runPendingWriters() {
+        List<PendingWriter> batch = new ArrayList<>();
+        for (PendingWriter pending = pendingWriters.poll(); pending != null; pending = pendingWriters.poll()) {
+            batch.add(pending);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        store.setLong(monitoringPrefix + "queueDepth", queueDepth.addAndGet(-batch.size()));
+        store.setLong(monitoringPrefix + "batchSize", batch.size());
+        store.setLongMax(monitoringPrefix + "maxBatchSize", batch.size());
+        lastBatchSize = batch.size();
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+
+        // Group the coalescing runnables on their key, keeping each group at the position of its first runnable.
+        List<List<PendingWriter>> groups = new ArrayList<>();
+        Map<Object, List<PendingWriter>> groupForKey = new HashMap<>();
+        for (PendingWriter pending : batch) {
+            List<PendingWriter> group = null;
+            if (pending.runnable instanceof CoalescingGraphWriterRunnable) {
+                Object key = ((CoalescingGraphWriterRunnable) pending.runnable).coalescingKey(graph);
+                group = groupForKey.computeIfAbsent(key, k -> new ArrayList<>());
+                if (!group.isEmpty()) {
+                    group.add(pending);
+                    continue;
                 }
+            } else {
+                group = new ArrayList<>(1);
             }
-        });
-        return future;
+            group.add(pending);
+            groups.add(group);
+        }
+        if (groups.size() < batch.size()) {
+            LOG.debug("Coalesced {} graph writers into {} runs.", batch.size(), groups.size());
+        }
+        for (List<PendingWriter> group : groups) {
+            GraphWriterRunnable first = group.get(0).runnable;
+            try {
+                if (group.size() == 1) {
+                    first.run(graph);
+                } else {
+                    List<CoalescingGraphWriterRunnable> runnables = new ArrayList<>(group.size());
+                    for (PendingWriter pending : group) {
+                        runnables.add((CoalescingGraphWriterRunnable) pending.runnable);
+                    }
+                    ((CoalescingGraphWriterRunnable) first).runBatch(graph, runnables);
+                }
+            } catch (Exception e) {
+                LOG.error("Error while running graph writer {}:", first.getClass().getName(), e);
+            } finally {
+                for (PendingWriter pending : group) {
+                    pending.done.complete(null);
+                }
+            }
+        }
+        // The street searches cached for the routing heuristic may no longer match the graph
+        graph.targetStreetSearchCache.invalidate();
+    }
+
+    /** @return the number of graph writer runnables submitted but not yet taken up by the writer thread. */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Just an example of fetching status information from the graph updater manager to expose it in a web service.
+     * Reports the number of waiting graph writers and the sizes of the batches in which they are run.
+     */
+    public Map<String, Integer> getWriterQueueStatus() {
+        Map<String, Integer> ret = Maps.newLinkedHashMap();
+        ret.put("queueDepth", queueDepth.get());
+        ret.put("maxQueueDepth", maxQueueDepth.get());
+        ret.put("lastBatchSize", lastBatchSize);
+        ret.put("maxBatchSize", maxBatchSize.get());
+        return ret;
+    }
+
+    /** A graph writer runnable waiting in the queue, with the future that completes once it has been run. */
+    private static class PendingWriter {
+        final GraphWriterRunnable runnable;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PendingWriter(GraphWriterRunnable runnable) {
+            this.runnable = runnable;
+        }
     }
 
     public int size() {
@@ -6,12 +6,9 @@ import org.opentripplanner.model.Route;
 import org.opentripplanner.util.TimeToStringConverter;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
-import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.GraphIndex;
-import org.opentripplanner.routing.trippattern.TripTimes;
 
 import java.text.ParseException;
-import java.util.BitSet;
 
 /**
  * This class is used for matching TripDescriptors without trip_ids to scheduled GTFS data and to
@@ -72,16 +69,6 @@ public class GtfsRealtimeFuzzyTripMatcher {
     }
 
     public Trip getTrip (Route route, int direction, int startTime, ServiceDate date) {
-        BitSet services = index.servicesRunning(date);
-        for (TripPattern pattern : index.patternsForRoute.get(route)) {
-            if (pattern.directionId != direction) continue;
-            for (TripTimes times : pattern.scheduledTimetable.tripTimes) {
-                if (times.getScheduledDepartureTime(0) == startTime &&
-                        services.get(times.serviceCode)) {
-                    return times.trip;
-                }
-            }
-        }
-        return null;
+        return index.tripMatchingIndex.getTripByStart(route, direction, startTime, date);
     }
 }
@@ -16,6 +16,7 @@ import uk.org.siri.siri20.VehicleModesEnumeration;
 
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is used for matching TripDescriptors without trip_ids to scheduled GTFS data and to
@@ -27,29 +28,22 @@ public class SiriFuzzyTripMatcher {
 
     private GraphIndex index;
 
-    private static Map<String, Set<Trip>> mappedTripsCache = new HashMap<>();
-    private static Map<String, Set<Trip>> mappedVehicleRefCache = new HashMap<>();
-    private static Map<String, Set<Route>> mappedRoutesCache = new HashMap<>();
-    private static Map<String, Set<Trip>> start_stop_tripCache = new HashMap<>();
+    /** The trips of the graph by ID, start, last stop arrival and train number, shared by all matchers of a graph. */
+    private final TripMatchingIndex tripMatchingIndex;
 
-    private static Map<String, Trip> vehicleJourneyTripCache = new HashMap<>();
-
-    private static Set<String> nonExistingStops = new HashSet<>();
+    private final Set<String> nonExistingStops = ConcurrentHashMap.newKeySet();
 
     public SiriFuzzyTripMatcher(GraphIndex index) {
         this.index = index;
-        initCache(this.index);
+        this.tripMatchingIndex = index.tripMatchingIndex;
     }
 
     //For testing only
     protected SiriFuzzyTripMatcher(GraphIndex index, boolean forceCacheRebuild) {
         LOG.error("For testing only");
         this.index = index;
-
-        if (forceCacheRebuild) {
-            mappedTripsCache.clear();
-        }
-        initCache(this.index);
+        this.tripMatchingIndex = forceCacheRebuild ? new TripMatchingIndex(index, index.graph.routingMetrics)
+                : index.tripMatchingIndex;
     }
 
     /**
@@ -64,7 +58,7 @@ public class SiriFuzzyTripMatcher {
             if (monitoredVehicleJourney.getFramedVehicleJourneyRef() != null) {
                 datedVehicleRef = monitoredVehicleJourney.getFramedVehicleJourneyRef().getDatedVehicleJourneyRef();
                 if (datedVehicleRef != null) {
-                    trips = mappedTripsCache.get(datedVehicleRef);
+                    trips = tripMatchingIndex.getTripsByUnpaddedId(datedVehicleRef);
                 }
             }
             if (monitoredVehicleJourney.getDestinationRef() != null) {
@@ -138,28 +132,21 @@ public class SiriFuzzyTripMatcher {
 
     private Set<Trip> getMatchingTripsOnStopOrSiblings(String lastStopPoint, ZonedDateTime arrivalTime) {
 
-        Set<Trip> trips = start_stop_tripCache.get(createStartStopKey(lastStopPoint, arrivalTime.toLocalTime().toSecondOfDay()));
-        if (trips == null) {
+        int lastStopArrivalTime = arrivalTime.toLocalTime().toSecondOfDay();
+        Set<Trip> trips = tripMatchingIndex.getTripsByLastStopArrival(lastStopPoint, lastStopArrivalTime);
+        if (trips.isEmpty()) {
             //Attempt to fetch trips that started yesterday - i.e. add 24 hours to arrival-time
-            int lastStopArrivalTime = arrivalTime.toLocalTime().toSecondOfDay() + (24 * 60 * 60);
-            trips = start_stop_tripCache.get(createStartStopKey(lastStopPoint, lastStopArrivalTime));
+            trips = tripMatchingIndex.getTripsByLastStopArrival(lastStopPoint, lastStopArrivalTime + (24 * 60 * 60));
         }
 
-        if (trips == null || trips.isEmpty()) {
+        if (trips.isEmpty()) {
             //SIRI-data may report other platform, but still on the same Parent-stop
             String agencyId = index.agenciesForFeedId.keySet().iterator().next();
             Stop stop = index.stopForId.get(new AgencyAndId(agencyId, lastStopPoint));
             if (stop != null && stop.getParentStation() != null) {
                 Collection<Stop> allQuays = index.stopsForParentStation.get(stop.getParentStationAgencyAndId());
                 for (Stop quay : allQuays) {
-                    Set<Trip> tripSet = start_stop_tripCache.get(createStartStopKey(quay.getId().getId(), arrivalTime.toLocalTime().toSecondOfDay()));
-                    if (tripSet != null) {
-                        if (trips == null) {
-                            trips = tripSet;
-                        } else {
-                            trips.addAll(tripSet);
-                        }
-                    }
+                    trips.addAll(tripMatchingIndex.getTripsByLastStopArrival(quay.getId().getId(), lastStopArrivalTime));
                 }
             }
         }
@@ -168,96 +155,12 @@ public class SiriFuzzyTripMatcher {
 
     private Set<Trip> getCachedTripsByVehicleRef(String vehicleRef) {
         if (vehicleRef == null) {return null;}
-        return mappedVehicleRefCache.getOrDefault(vehicleRef, new HashSet<>());
+        return tripMatchingIndex.getTripsByVehicleRef(vehicleRef);
     }
 
     private Set<Trip> getCachedTripsBySiriId(String tripId) {
         if (tripId == null) {return null;}
-        return mappedTripsCache.getOrDefault(tripId, new HashSet<>());
-    }
-
-    private static void initCache(GraphIndex index) {
-        if (mappedTripsCache.isEmpty()) {
-
-            Set<Trip> trips = index.patternForTrip.keySet();
-            for (Trip trip : trips) {
-
-                TripPattern tripPattern = index.patternForTrip.get(trip);
-
-                    String currentTripId = getUnpaddedTripId(trip.getId().getId());
-
-                    if (mappedTripsCache.containsKey(currentTripId)) {
-                        mappedTripsCache.get(currentTripId).add(trip);
-                    } else {
-                        Set<Trip> initialSet = new HashSet<>();
-                        initialSet.add(trip);
-                        mappedTripsCache.put(currentTripId, initialSet);
-                    }
-
-                if (tripPattern != null && (tripPattern.mode.equals(TraverseMode.RAIL) ||
-                                                    (trip.getTransportSubmode() != null &&
-                                                            trip.getTransportSubmode().equals(TransmodelTransportSubmode.RAIL_REPLACEMENT_BUS))) ){
-                    if (trip.getTripShortName() != null) {
-                        String tripShortName = trip.getTripShortName();
-                        if (mappedVehicleRefCache.containsKey(tripShortName)) {
-                            mappedVehicleRefCache.get(tripShortName).add(trip);
-                        } else {
-                            Set<Trip> initialSet = new HashSet<>();
-                            initialSet.add(trip);
-                            mappedVehicleRefCache.put(tripShortName, initialSet);
-                        }
-                    }
-                }
-                String lastStopId = tripPattern.getStops().get(tripPattern.getStops().size()-1).getId().getId();
-
-                TripTimes tripTimes = tripPattern.scheduledTimetable.getTripTimes(trip);
-                if (tripTimes != null) {
-                    int arrivalTime = tripTimes.getArrivalTime(tripTimes.getNumStops() - 1);
-
-                    String key = createStartStopKey(lastStopId, arrivalTime);
-                    if (start_stop_tripCache.containsKey(key)) {
-                        start_stop_tripCache.get(key).add(trip);
-                    } else {
-                        Set<Trip> initialSet = new HashSet<>();
-                        initialSet.add(trip);
-                        start_stop_tripCache.put(key, initialSet);
-                    }
-                }
-            }
-            Set<Route> routes = index.patternsForRoute.keySet();
-            for (Route route : routes) {
-
-                String currentRouteId = getUnpaddedTripId(route.getId().getId());
-                if (mappedRoutesCache.containsKey(currentRouteId)) {
-                    mappedRoutesCache.get(currentRouteId).add(route);
-                } else {
-                    Set<Route> initialSet = new HashSet<>();
-                    initialSet.add(route);
-                    mappedRoutesCache.put(currentRouteId, initialSet);
-                }
-            }
-
-            LOG.info("Built route-cache [{}].", mappedRoutesCache.size());
-            LOG.info("Built vehicleRef-cache [{}].", mappedVehicleRefCache.size());
-            LOG.info("Built trips-cache [{}].", mappedTripsCache.size());
-            LOG.info("Built start-stop-cache [{}].", start_stop_tripCache.size());
-        }
-
-        if (vehicleJourneyTripCache.isEmpty()) {
-            index.tripForId.values().forEach(trip -> vehicleJourneyTripCache.put(trip.getId().getId(), trip));
-        }
-    }
-
-    private static String createStartStopKey(String lastStopId, int lastStopArrivalTime) {
-        return lastStopId + ":" + lastStopArrivalTime;
-    }
-
-    private static String getUnpaddedTripId(String id) {
-        if (id.indexOf("-") > 0) {
-            return id.substring(0, id.indexOf("-"));
-        } else {
-            return id;
-        }
+        return tripMatchingIndex.getTripsByUnpaddedId(tripId);
     }
 
     public Set<Route> getRoutesForStop(AgencyAndId siriStopId) {
@@ -299,11 +202,11 @@ public class SiriFuzzyTripMatcher {
     }
 
     public Set<Route> getRoutes(String lineRefValue) {
-        return mappedRoutesCache.getOrDefault(lineRefValue, new HashSet<>());
+        return tripMatchingIndex.getRoutesByUnpaddedId(lineRefValue);
     }
 
     public AgencyAndId getTripId(String vehicleJourney) {
-        Trip trip = vehicleJourneyTripCache.get(vehicleJourney);
+        Trip trip = tripMatchingIndex.getTripById(vehicleJourney);
         if (trip != null) {
             return trip.getId();
         }
@@ -311,7 +214,7 @@ public class SiriFuzzyTripMatcher {
         for (String feedId : index.agenciesForFeedId.keySet()) {
             trip = index.tripForId.get(new AgencyAndId(feedId, vehicleJourney));
             if (trip != null) {
-                vehicleJourneyTripCache.put(vehicleJourney, trip);
+                tripMatchingIndex.addTripById(trip);
                 return trip.getId();
             }
         }
@@ -0,0 +1,186 @@
+package org.opentripplanner.updater;
+
+import org.opentripplanner.model.Route;
+import org.opentripplanner.model.TransmodelTransportSubmode;
+import org.opentripplanner.model.Trip;
+import org.opentripplanner.model.calendar.ServiceDate;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.trippattern.TripTimes;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
+import org.opentripplanner.util.monitoring.RoutingMetrics.TripMatchKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hash indexes of the trips of a graph on the keys used to match realtime data without usable trip IDs to trips, for
+ * the GtfsRealtimeFuzzyTripMatcher and the SiriFuzzyTripMatcher. Each graph index has its own, so a reloaded graph
+ * gets a fresh one. It is built in parallel from the scheduled timetables when the graph is indexed, and trips added
+ * by realtime updates are added to it as they appear. Every lookup is recorded in the RoutingMetrics of the graph as
+ * a hit, a miss or an ambiguous match.
+ */
+public class TripMatchingIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TripMatchingIndex.class);
+
+    private final GraphIndex index;
+
+    private final RoutingMetrics metrics;
+
+    /** Trips by route, direction and scheduled departure from their first stop. */
+    private final Map<StartKey, Set<TripTimes>> tripsByStart = new ConcurrentHashMap<>();
+
+    /** Trips by the ID of their last stop and their scheduled arrival there, see lastStopKey(). */
+    private final Map<String, Set<Trip>> tripsByLastStopArrival = new ConcurrentHashMap<>();
+
+    /** Trips by their ID without feed, up to the first dash, as used in SIRI dated vehicle journey refs. */
+    private final Map<String, Set<Trip>> tripsByUnpaddedId = new ConcurrentHashMap<>();
+
+    /** Rail and rail replacement trips by their short name, which is the train number used as SIRI vehicle ref. */
+    private final Map<String, Set<Trip>> tripsByVehicleRef = new ConcurrentHashMap<>();
+
+    /** Routes by their ID without feed, up to the first dash. */
+    private final Map<String, Set<Route>> routesByUnpaddedId = new ConcurrentHashMap<>();
+
+    /** Trips by their ID without feed. */
+    private final Map<String, Trip> tripsById = new ConcurrentHashMap<>();
+
+    /** The services running on each date looked up so far. */
+    private final Map<ServiceDate, BitSet> servicesByDate = new ConcurrentHashMap<>();
+
+    public TripMatchingIndex(GraphIndex index, RoutingMetrics metrics) {
+        this.index = index;
+        this.metrics = metrics;
+        index.patternForId.values().parallelStream().forEach(pattern -> {
+            for (TripTimes tripTimes : pattern.scheduledTimetable.tripTimes) {
+                add(pattern, tripTimes);
+            }
+        });
+        index.patternsForRoute.keySet().parallelStream().forEach(route ->
+                addTo(routesByUnpaddedId, getUnpaddedId(route.getId().getId()), route));
+        LOG.info("Indexed {} trips on {} start times and {} last stop arrivals for realtime matching.",
+                tripsById.size(), tripsByStart.size(), tripsByLastStopArrival.size());
+    }
+
+    /** Add a scheduled trip, or a trip added by a realtime update, whose scheduled times are the aimed ones. */
+    public void add(TripPattern pattern, TripTimes tripTimes) {
+        Trip trip = tripTimes.trip;
+        int lastStop = tripTimes.getNumStops() - 1;
+        tripsById.put(trip.getId().getId(), trip);
+        addTo(tripsByUnpaddedId, getUnpaddedId(trip.getId().getId()), trip);
+        addTo(tripsByStart, new StartKey(pattern.route, pattern.directionId, tripTimes.getScheduledDepartureTime(0)),
+                tripTimes);
+        addTo(tripsByLastStopArrival,
+                lastStopKey(pattern.getStop(lastStop).getId().getId(), tripTimes.getScheduledArrivalTime(lastStop)),
+                trip);
+        boolean rail = pattern.mode == TraverseMode.RAIL
+                || trip.getTransportSubmode() == TransmodelTransportSubmode.RAIL_REPLACEMENT_BUS;
+        if (rail && trip.getTripShortName() != null) {
+            addTo(tripsByVehicleRef, trip.getTripShortName(), trip);
+        }
+    }
+
+    /**
+     * @return the trip on the given route and direction that leaves its first stop at the given time on the given
+     * service date, or null if there is none. If several trips match, the one with the lowest ID is returned.
+     */
+    public Trip getTripByStart(Route route, int direction, int startTime, ServiceDate date) {
+        Set<TripTimes> candidates = tripsByStart.getOrDefault(new StartKey(route, direction, startTime),
+                Collections.emptySet());
+        BitSet services = servicesByDate.computeIfAbsent(date, index::servicesRunning);
+        Trip match = null;
+        int matches = 0;
+        for (TripTimes tripTimes : candidates) {
+            if (tripTimes.serviceCode >= 0 && services.get(tripTimes.serviceCode)) {
+                matches++;
+                if (match == null || tripTimes.trip.getId().compareTo(match.getId()) < 0) {
+                    match = tripTimes.trip;
+                }
+            }
+        }
+        metrics.recordTripMatch(TripMatchKey.START_TIME, matches);
+        return match;
+    }
+
+    /** @return a new set of the trips arriving at their last stop with the given ID at the given time. */
+    public Set<Trip> getTripsByLastStopArrival(String lastStopId, int arrivalTime) {
+        return lookup(TripMatchKey.LAST_STOP_ARRIVAL, tripsByLastStopArrival, lastStopKey(lastStopId, arrivalTime));
+    }
+
+    /** @return a new set of the trips whose ID without feed, up to its first dash, is the given SIRI ID. */
+    public Set<Trip> getTripsByUnpaddedId(String tripId) {
+        return lookup(TripMatchKey.TRIP_ID, tripsByUnpaddedId, tripId);
+    }
+
+    /** @return a new set of the rail trips with the given train number. */
+    public Set<Trip> getTripsByVehicleRef(String vehicleRef) {
+        return lookup(TripMatchKey.VEHICLE_REF, tripsByVehicleRef, vehicleRef);
+    }
+
+    /** @return a new set of the routes whose ID without feed, up to its first dash, is the given SIRI line ref. */
+    public Set<Route> getRoutesByUnpaddedId(String routeId) {
+        return new HashSet<>(routesByUnpaddedId.getOrDefault(routeId, Collections.emptySet()));
+    }
+
+    /** @return the trip with the given ID in any feed, or null if there is none. */
+    public Trip getTripById(String tripId) {
+        return tripsById.get(tripId);
+    }
+
+    /** Remember a trip found by its ID in one of the feeds after getTripById() missed it. */
+    public void addTripById(Trip trip) {
+        tripsById.put(trip.getId().getId(), trip);
+    }
+
+    private <T> Set<T> lookup(TripMatchKey key, Map<String, Set<T>> map, String value) {
+        Set<T> matches = new HashSet<>(map.getOrDefault(value, Collections.emptySet()));
+        metrics.recordTripMatch(key, matches.size());
+        return matches;
+    }
+
+    private static <K, T> void addTo(Map<K, Set<T>> map, K key, T value) {
+        map.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
+
+    private static String lastStopKey(String lastStopId, int arrivalTime) {
+        return lastStopId + ":" + arrivalTime;
+    }
+
+    private static String getUnpaddedId(String id) {
+        int dash = id.indexOf("-");
+        return dash > 0 ? id.substring(0, dash) : id;
+    }
+
+    private static final class StartKey {
+        final Route route;
+        final int direction;
+        final int startTime;
+
+        StartKey(Route route, int direction, int startTime) {
+            this.route = route;
+            this.direction = direction;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StartKey)) return false;
+            StartKey that = (StartKey) o;
+            return route == that.route && direction == that.direction && startTime == that.startTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(route, direction, startTime);
+        }
+    }
+}
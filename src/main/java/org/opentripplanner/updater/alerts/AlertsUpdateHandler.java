@@ -66,17 +66,20 @@ public class AlertsUpdateHandler {
     private SiriFuzzyTripMatcher siriFuzzyTripMatcher;
 
     public void update(FeedMessage message) {
-        alertPatchService.expire(patchIds);
+        Set<String> idsToExpire = new HashSet<>(patchIds);
         patchIds.clear();
 
+        List<AlertPatch> alertPatches = new ArrayList<>();
         for (FeedEntity entity : message.getEntityList()) {
             if (!entity.hasAlert()) {
                 continue;
             }
             GtfsRealtime.Alert alert = entity.getAlert();
             String id = entity.getId();
-            handleAlert(id, alert);
+            handleAlert(id, alert, alertPatches);
         }
+        // Readers see the alerts of the previous message until all those of this one are in place.
+        alertPatchService.update(idsToExpire, alertPatches);
     }
 
     public void update(ServiceDelivery delivery) {
@@ -95,8 +98,7 @@ public class AlertsUpdateHandler {
                     }
                 }
 
-                alertPatchService.expire(idsToExpire);
-                alertPatchService.applyAll(alertPatches);
+                alertPatchService.update(idsToExpire, alertPatches);
                 log.info("Added {} alerts, expired {} alerts based on {} situations, current alert-count: {}, elapsed time {}ms", alertPatches.size(), idsToExpire.size(), situations.getPtSituationElements().size(), alertPatchService.getAllAlertPatches().size(), (System.currentTimeMillis()-t1));
             }
         }
@@ -719,7 +721,7 @@ public class AlertsUpdateHandler {
     }
 
 
-    private void handleAlert(String id, GtfsRealtime.Alert alert) {
+    private void handleAlert(String id, GtfsRealtime.Alert alert, List<AlertPatch> alertPatches) {
         Alert alertText = new Alert();
         alertText.alertDescriptionText = deBuffer(alert.getDescriptionText());
         alertText.alertHeaderText = deBuffer(alert.getHeaderText());
@@ -808,7 +810,7 @@ public class AlertsUpdateHandler {
             patch.setId(patchId);
             patchIds.add(patchId);
 
-            alertPatchService.apply(patch);
+            alertPatches.add(patch);
         }
     }
 
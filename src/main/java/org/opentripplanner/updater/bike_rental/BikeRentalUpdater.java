@@ -15,11 +15,12 @@ package org.opentripplanner.updater.bike_rental;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -40,6 +41,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Dynamic bike-rental station updater which encapsulate one BikeRentalDataSource.
+ *
+ * Each poll swaps the changed stations into the snapshot of the BikeRentalStationService, which searches read without
+ * locking. Only stations that were never seen before are added to the graph, by a graph writer runnable. Stations
+ * that disappear are left out of the snapshot but keep their vertex, which cannot be used while they are out of
+ * service. Floating bikes are never added to the graph: each search links the ones near its origin and destination
+ * with temporary edges.
  * 
  * Usage example ('bike1' name is an example) in the file 'Graph.properties':
  * 
@@ -61,6 +68,9 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
 
+    /** The stations of the previous poll by ID, to find the ones that changed. Only used by the polling thread. */
+    private Map<String, BikeRentalStation> previousStations = new HashMap<>();
+
     private BikeRentalDataSource source;
 
     private Graph graph;
@@ -161,9 +171,46 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         }
         List<BikeRentalStation> stations = source.getStations();
 
-        // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
-        updaterManager.execute(graphWriterRunnable);
+        Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
+        Map<String, BikeRentalStation> stationsById = new HashMap<>();
+        List<BikeRentalStation> changed = new ArrayList<>();
+        List<BikeRentalStation> newStations = new ArrayList<>();
+        for (BikeRentalStation station : stations) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            stationsById.put(station.id, station);
+            BikeRentalStation previous = previousStations.remove(station.id);
+            if (previous == null || hasChanged(previous, station)) {
+                changed.add(station);
+            }
+            if (previous == null && !station.isFloatingBike) {
+                newStations.add(station);
+            }
+        }
+        /* the stations left over were not present in the update */
+        Collection<BikeRentalStation> removed = previousStations.values();
+        service.updateBikeRentalStations(changed, removed);
+        LOG.debug("Updated {} and removed {} bike rental stations", changed.size(), removed.size());
+        previousStations = stationsById;
+
+        if (!newStations.isEmpty()) {
+            // Create graph writer runnable to add the new stations to the graph
+            BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(newStations);
+            updaterManager.execute(graphWriterRunnable);
+        }
+    }
+
+    /** @return true if a search or API client could tell the two versions of a station apart. */
+    private static boolean hasChanged(BikeRentalStation previous, BikeRentalStation station) {
+        return previous.bikesAvailable != station.bikesAvailable
+                || previous.spacesAvailable != station.spacesAvailable
+                || previous.x != station.x || previous.y != station.y
+                || previous.allowDropoff != station.allowDropoff
+                || previous.realTimeData != station.realTimeData
+                || !Objects.equals(previous.name, station.name)
+                || !Objects.equals(previous.networks, station.networks);
     }
 
     @Override
@@ -178,53 +225,22 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
             this.stations = stations;
         }
 
-		@Override
+        @Override
         public void run(Graph graph) {
-            // Apply stations to graph
-            Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
-            Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
+            /* add any stations that do not have a vertex yet, with their rent and drop-off loop edges */
             for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
-                }
-                service.addBikeRentalStation(station);
-                stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
-                if (vertex == null) {
-                    vertex = new BikeRentalStationVertex(graph, station);
-                    if (!linker.link(vertex)) {
-                        graph.addBuilderAnnotation(new BikeRentalStationUnlinked(vertex));
-                    }
-                    verticesByStation.put(station, vertex);
-                    graph.streetIndex.addToSpatialIndex(vertex);
-                    new RentABikeOnEdge(vertex, vertex, station.networks);
-                    if (station.allowDropoff)
-                        new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setStation(station);
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
-                }
-            }
-            /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
+                if (verticesByStation.containsKey(station)) {
                     continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
-                    graph.removeVertexAndEdges(vertex);
                 }
-                toRemove.add(station);
-                service.removeBikeRentalStation(station);
-                // TODO: need to unsplit any streets that were split
-            }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
+                BikeRentalStationVertex vertex = new BikeRentalStationVertex(graph, station);
+                if (!linker.link(vertex)) {
+                    graph.addBuilderAnnotation(new BikeRentalStationUnlinked(vertex));
+                }
+                verticesByStation.put(station, vertex);
+                graph.streetIndex.addToSpatialIndex(vertex);
+                new RentABikeOnEdge(vertex, vertex, station.networks);
+                if (station.allowDropoff)
+                    new RentABikeOffEdge(vertex, vertex, station.networks);
             }
         }
     }
@@ -15,22 +15,18 @@ package org.opentripplanner.updater.siri;
 
 import com.google.common.base.Preconditions;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.updater.GraphWriterRunnable;
+import org.opentripplanner.updater.stoptime.AbstractTimetableGraphWriterRunnable;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import uk.org.siri.siri20.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri20.EstimatedVehicleJourney;
+import uk.org.siri.siri20.EstimatedVersionFrameStructure;
+import uk.org.siri.siri20.FramedVehicleJourneyRefStructure;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
 
-public class EstimatedTimetableGraphWriterRunnable implements GraphWriterRunnable {
-    private static Logger LOG = LoggerFactory.getLogger(EstimatedTimetableGraphWriterRunnable.class);
-
-    /**
-     * True iff the list with updates represent all updates that are active right now, i.e. all
-     * previous updates should be disregarded
-     */
-    private final boolean fullDataset;
+public class EstimatedTimetableGraphWriterRunnable extends AbstractTimetableGraphWriterRunnable {
 
     /**
      * The list with updates to apply to the graph
@@ -39,23 +35,60 @@ public class EstimatedTimetableGraphWriterRunnable implements GraphWriterRunnabl
 
 
     public EstimatedTimetableGraphWriterRunnable(final boolean fullDataset, final List<EstimatedTimetableDeliveryStructure> updates) {
+        super(fullDataset);
+
         // Preconditions
         Preconditions.checkNotNull(updates);
 
         // Set fields
-        this.fullDataset = fullDataset;
         this.updates = updates;
     }
 
     @Override
-    public void run(Graph graph) {
-        // Apply updates to graph using realtime snapshot source
-        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
-        if (snapshotSource != null) {
-            snapshotSource.applyEstimatedTimetable(graph, fullDataset, updates);
-        } else {
-            LOG.error("Could not find realtime data snapshot source in graph."
-                    + " The following updates are not applied: {}", updates);
+    protected void apply(Graph graph, TimetableSnapshotSource snapshotSource) {
+        snapshotSource.applyEstimatedTimetable(graph, fullDataset, updates);
+    }
+
+    @Override
+    protected String feedId(TimetableSnapshotSource snapshotSource) {
+        return snapshotSource.getFeedId();
+    }
+
+    /**
+     * Only journeys with a complete stop sequence replace everything known about the trip. Extra journeys are never
+     * superseded, since each of them adds a trip.
+     */
+    @Override
+    protected void forEachTripUpdate(BiConsumer<Object, Object> consumer) {
+        for (EstimatedTimetableDeliveryStructure etDelivery : updates) {
+            if (etDelivery.getEstimatedJourneyVersionFrames() == null) {
+                continue;
+            }
+            for (EstimatedVersionFrameStructure frame : etDelivery.getEstimatedJourneyVersionFrames()) {
+                for (EstimatedVehicleJourney journey : frame.getEstimatedVehicleJourneies()) {
+                    Object tripKey = tripKey(journey);
+                    if (tripKey != null && !Boolean.TRUE.equals(journey.isExtraJourney())
+                            && Boolean.TRUE.equals(journey.isIsCompleteStopSequence())) {
+                        consumer.accept(tripKey, journey);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object tripKey(EstimatedVehicleJourney journey) {
+        FramedVehicleJourneyRefStructure framedRef = journey.getFramedVehicleJourneyRef();
+        if (framedRef != null && framedRef.getDataFrameRef() != null && framedRef.getDatedVehicleJourneyRef() != null) {
+            return Arrays.asList(framedRef.getDataFrameRef().getValue(), framedRef.getDatedVehicleJourneyRef());
         }
+        if (journey.getDatedVehicleJourneyRef() != null && journey.getDatedVehicleJourneyRef().getValue() != null) {
+            return journey.getDatedVehicleJourneyRef().getValue();
+        }
+        return null;
+    }
+
+    @Override
+    protected Object getUpdates() {
+        return updates;
     }
 }
@@ -15,22 +15,14 @@ package org.opentripplanner.updater.siri;
 
 import com.google.common.base.Preconditions;
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.updater.GraphWriterRunnable;
+import org.opentripplanner.updater.stoptime.AbstractTimetableGraphWriterRunnable;
 import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import uk.org.siri.siri20.VehicleMonitoringDeliveryStructure;
 
 import java.util.List;
+import java.util.function.BiConsumer;
 
-public class VehicleMonitoringGraphWriterRunnable implements GraphWriterRunnable {
-    private static Logger LOG = LoggerFactory.getLogger(VehicleMonitoringGraphWriterRunnable.class);
-
-    /**
-     * True iff the list with updates represent all updates that are active right now, i.e. all
-     * previous updates should be disregarded
-     */
-    private final boolean fullDataset;
+public class VehicleMonitoringGraphWriterRunnable extends AbstractTimetableGraphWriterRunnable {
 
     /**
      * The list with updates to apply to the graph
@@ -39,23 +31,32 @@ public class VehicleMonitoringGraphWriterRunnable implements GraphWriterRunnable
 
 
     public VehicleMonitoringGraphWriterRunnable(final boolean fullDataset, final List<VehicleMonitoringDeliveryStructure> updates) {
+        super(fullDataset);
+
         // Preconditions
         Preconditions.checkNotNull(updates);
 
         // Set fields
-        this.fullDataset = fullDataset;
         this.updates = updates;
     }
 
     @Override
-    public void run(Graph graph) {
-        // Apply updates to graph using realtime snapshot source
-        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
-        if (snapshotSource != null) {
-            snapshotSource.applyVehicleMonitoring(graph, fullDataset, updates);
-        } else {
-            LOG.error("Could not find realtime data snapshot source in graph."
-                    + " The following updates are not applied: {}", updates);
-        }
+    protected void apply(Graph graph, TimetableSnapshotSource snapshotSource) {
+        snapshotSource.applyVehicleMonitoring(graph, fullDataset, updates);
+    }
+
+    @Override
+    protected String feedId(TimetableSnapshotSource snapshotSource) {
+        return snapshotSource.getFeedId();
+    }
+
+    /** Vehicle monitoring updates are applied incrementally, so they are batched but never superseded. */
+    @Override
+    protected void forEachTripUpdate(BiConsumer<Object, Object> consumer) {
+    }
+
+    @Override
+    protected Object getUpdates() {
+        return updates;
     }
 }
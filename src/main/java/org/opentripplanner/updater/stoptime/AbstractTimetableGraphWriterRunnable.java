@@ -0,0 +1,143 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.updater.stoptime;
+
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.CoalescingGraphWriterRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Base class of the graph writer runnables that apply realtime messages to the TimetableSnapshotSource of the graph.
+ * When several of these messages are waiting to be applied, they are applied as one batch: the lock on the snapshot
+ * buffer is taken once and a single new snapshot is committed at the end, rather than one per message. Work that a
+ * later message in the batch would undo is skipped:
+ * <ul>
+ * <li>a message is skipped entirely if a later message in the batch is a full dataset for the same feed, since that
+ *     clears the buffer for the feed anyway;</li>
+ * <li>an update of a trip is skipped if a later message contains an update that replaces the whole trip.</li>
+ * </ul>
+ */
+public abstract class AbstractTimetableGraphWriterRunnable implements CoalescingGraphWriterRunnable {
+    private static Logger LOG = LoggerFactory.getLogger(AbstractTimetableGraphWriterRunnable.class);
+
+    /**
+     * True iff the list with updates represent all updates that are active right now, i.e. all
+     * previous updates should be disregarded
+     */
+    protected final boolean fullDataset;
+
+    protected AbstractTimetableGraphWriterRunnable(final boolean fullDataset) {
+        this.fullDataset = fullDataset;
+    }
+
+    /** Apply the updates of this runnable, without committing a new snapshot when called within a batch. */
+    protected abstract void apply(Graph graph, TimetableSnapshotSource snapshotSource);
+
+    /** @return the feed that the updates of this runnable apply to, and that a full dataset clears. */
+    protected abstract String feedId(TimetableSnapshotSource snapshotSource);
+
+    /**
+     * Call the given consumer with each update of this runnable that replaces everything previously known about a
+     * trip, together with a key identifying that trip. Updates that only partially modify a trip must be left out.
+     */
+    protected abstract void forEachTripUpdate(BiConsumer<Object, Object> consumer);
+
+    /** @return a description of the updates, for logging when they can not be applied. */
+    protected abstract Object getUpdates();
+
+    @Override
+    public void run(Graph graph) {
+        runBatch(graph, Collections.singletonList(this));
+    }
+
+    @Override
+    public Object coalescingKey(Graph graph) {
+        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
+        return snapshotSource != null ? snapshotSource : AbstractTimetableGraphWriterRunnable.class;
+    }
+
+    @Override
+    public void runBatch(Graph graph, List<CoalescingGraphWriterRunnable> batch) {
+        // Apply updates to graph using realtime snapshot source
+        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
+        if (snapshotSource == null) {
+            for (CoalescingGraphWriterRunnable runnable : batch) {
+                LOG.error("Could not find realtime data snapshot source in graph."
+                        + " The following updates are not applied: {}",
+                        ((AbstractTimetableGraphWriterRunnable) runnable).getUpdates());
+            }
+            return;
+        }
+        if (batch.size() == 1) {
+            // Nothing to coalesce, the message commits its own snapshot
+            ((AbstractTimetableGraphWriterRunnable) batch.get(0)).apply(graph, snapshotSource);
+            return;
+        }
+
+        // Walk the batch backwards, so that each message is compared with the ones that follow it
+        Set<Object> superseded = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<AbstractTimetableGraphWriterRunnable> skipped = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> clearedFeeds = new HashSet<>();
+        Set<Object> laterTrips = new HashSet<>();
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            AbstractTimetableGraphWriterRunnable runnable = (AbstractTimetableGraphWriterRunnable) batch.get(i);
+            String feedId = runnable.feedId(snapshotSource);
+            if (clearedFeeds.contains(feedId)) {
+                skipped.add(runnable);
+                continue;
+            }
+            // Several updates of the same trip within one message are all kept, as they were before batching
+            Map<Object, Object> tripsInRunnable = new HashMap<>();
+            runnable.forEachTripUpdate((tripKey, update) -> {
+                if (laterTrips.contains(tripKey)) {
+                    superseded.add(update);
+                } else {
+                    tripsInRunnable.put(tripKey, update);
+                }
+            });
+            laterTrips.addAll(tripsInRunnable.keySet());
+            if (runnable.fullDataset) {
+                clearedFeeds.add(feedId);
+            }
+        }
+        if (!skipped.isEmpty() || !superseded.isEmpty()) {
+            LOG.debug("Skipping {} realtime messages and {} trip updates superseded within a batch of {} messages.",
+                    skipped.size(), superseded.size(), batch.size());
+        }
+
+        snapshotSource.applyBatch(() -> {
+            for (CoalescingGraphWriterRunnable runnable : batch) {
+                if (skipped.contains(runnable)) {
+                    continue;
+                }
+                // A failing message should not prevent the others in the batch from being applied
+                try {
+                    ((AbstractTimetableGraphWriterRunnable) runnable).apply(graph, snapshotSource);
+                } catch (Exception e) {
+                    LOG.error("Error while running graph writer {}:", runnable.getClass().getName(), e);
+                }
+            }
+        }, superseded);
+    }
+}
@@ -57,6 +57,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -115,6 +116,15 @@ public class TimetableSnapshotSource {
      */
     private final ReentrantLock bufferLock = new ReentrantLock(true);
 
+    /** True while a batch of messages is being applied, so that the snapshot is only committed once at the end. */
+    private boolean inBatch = false;
+
+    /**
+     * Updates within the batch being applied that are made obsolete by a later update for the same trip, and are
+     * skipped. Compared on identity. Only used while holding {@link #bufferLock}.
+     */
+    private Set<Object> supersededUpdates = Collections.emptySet();
+
     /**
      * A synchronized cache of trip patterns that are added to the graph due to GTFS-realtime messages.
      */
@@ -232,6 +242,10 @@ public class TimetableSnapshotSource {
             LOG.debug("message contains {} trip updates", updates.size());
             int uIndex = 0;
             for (TripUpdate tripUpdate : updates) {
+                if (supersededUpdates.contains(tripUpdate)) {
+                    LOG.trace("Skipping trip update superseded later in the batch: {}", tripUpdate);
+                    continue;
+                }
                 if (fuzzyTripMatcher != null && tripUpdate.hasTrip()) {
                     final TripDescriptor trip = fuzzyTripMatcher.match(feedId, tripUpdate.getTrip());
                     tripUpdate = tripUpdate.toBuilder().setTrip(trip).build();
@@ -297,14 +311,9 @@ public class TimetableSnapshotSource {
             }
             LOG.debug("end of update message");
 
-            // Make a snapshot after each message in anticipation of incoming requests
-            // Purge data if necessary (and force new snapshot if anything was purged)
-            // Make sure that the public (locking) getTimetableSnapshot function is not called.
-            if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
-                getTimetableSnapshot(modified);
-            } else {
-                getTimetableSnapshot(false);
+            // Make a snapshot after each message in anticipation of incoming requests, or after the whole batch
+            if (!inBatch) {
+                purgeAndCommit();
             }
         } finally {
             // Always release lock
@@ -370,14 +379,9 @@ public class TimetableSnapshotSource {
 
             }
 
-            // Make a snapshot after each message in anticipation of incoming requests
-            // Purge data if necessary (and force new snapshot if anything was purged)
-            // Make sure that the public (locking) getTimetableSnapshot function is not called.
-            if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
-                getTimetableSnapshot(modified);
-            } else {
-                getTimetableSnapshot(false);
+            // Make a snapshot after each message in anticipation of incoming requests, or after the whole batch
+            if (!inBatch) {
+                purgeAndCommit();
             }
         } finally {
             // Always release lock
@@ -425,6 +429,10 @@ public class TimetableSnapshotSource {
                         int addedCounter = 0;
                         int notMonitoredCounter = 0;
                         for (EstimatedVehicleJourney journey : journeys) {
+                            if (supersededUpdates.contains(journey)) {
+                                skippedCounter++;
+                                continue;
+                            }
                             if (journey.isExtraJourney() != null && journey.isExtraJourney()) {
                                 // Added trip
                                 try {
@@ -460,21 +468,58 @@ public class TimetableSnapshotSource {
             int uIndex = 0;
             LOG.debug("end of update message");
 
-            // Make a snapshot after each message in anticipation of incoming requests
-            // Purge data if necessary (and force new snapshot if anything was purged)
-            // Make sure that the public (locking) getTimetableSnapshot function is not called.
-            if (purgeExpiredData) {
-                final boolean modified = purgeExpiredData();
-                getTimetableSnapshot(modified);
-            } else {
-                getTimetableSnapshot(false);
+            // Make a snapshot after each message in anticipation of incoming requests, or after the whole batch
+            if (!inBatch) {
+                purgeAndCommit();
+            }
+        } finally {
+            // Always release lock
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Apply several messages at once, holding the lock on the buffer throughout and committing a single snapshot at
+     * the end instead of one per message. The apply methods called by applyUpdates do not commit while the batch is
+     * being applied.
+     *
+     * @param applyUpdates calls the apply methods of this class for each message in the batch, in order
+     * @param superseded updates that are replaced by a later update in the same batch and should be skipped, compared
+     *        on identity. May be empty.
+     */
+    public void applyBatch(final Runnable applyUpdates, final Set<Object> superseded) {
+        // Acquire lock on buffer
+        bufferLock.lock();
+
+        try {
+            inBatch = true;
+            supersededUpdates = superseded;
+            try {
+                applyUpdates.run();
+            } finally {
+                inBatch = false;
+                supersededUpdates = Collections.emptySet();
             }
+            purgeAndCommit();
         } finally {
             // Always release lock
             bufferLock.unlock();
         }
     }
 
+    /**
+     * Purge data if necessary (and force new snapshot if anything was purged), then make a snapshot in anticipation
+     * of incoming requests. Make sure that the public (locking) getTimetableSnapshot function is not called.
+     */
+    private void purgeAndCommit() {
+        if (purgeExpiredData) {
+            final boolean modified = purgeExpiredData();
+            getTimetableSnapshot(modified);
+        } else {
+            getTimetableSnapshot(false);
+        }
+    }
+
     /**
      * Returns any new TripPatterns added by real time information for a given stop.
      *
@@ -775,6 +820,7 @@ public class TimetableSnapshotSource {
         // TODO: should more data be added to index?
         graph.index.tripForId.put(tripId, trip);
         graph.index.patternForTrip.put(trip, pattern);
+        graph.index.tripMatchingIndex.add(pattern, tripTimes);
 
         if (estimatedVehicleJourney.isCancellation() != null && estimatedVehicleJourney.isCancellation()) {
             tripTimes.cancel();
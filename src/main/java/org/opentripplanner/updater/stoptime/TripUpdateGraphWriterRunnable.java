@@ -13,26 +13,18 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 import org.opentripplanner.routing.graph.Graph;
-import org.opentripplanner.updater.GraphWriterRunnable;
-import org.opentripplanner.updater.stoptime.TimetableSnapshotSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 
-public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
-    private static Logger LOG = LoggerFactory.getLogger(TripUpdateGraphWriterRunnable.class);
+public class TripUpdateGraphWriterRunnable extends AbstractTimetableGraphWriterRunnable {
 
-    /**
-     * True iff the list with updates represent all updates that are active right now, i.e. all
-     * previous updates should be disregarded
-     */
-    private final boolean fullDataset;
-    
     /**
      * The list with updates to apply to the graph
      */
@@ -41,25 +33,49 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
     private final String feedId;
 
     public TripUpdateGraphWriterRunnable(final boolean fullDataset, final List<TripUpdate> updates, final String feedId) {
+        super(fullDataset);
+
         // Preconditions
         Preconditions.checkNotNull(updates);
         Preconditions.checkNotNull(feedId);
         
         // Set fields
-        this.fullDataset = fullDataset;
         this.updates = updates;
         this.feedId = feedId;
     }
 
     @Override
-    public void run(Graph graph) {
-        // Apply updates to graph using realtime snapshot source
-        TimetableSnapshotSource snapshotSource = graph.timetableSnapshotSource;
-        if (snapshotSource != null) {
-            snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId);
-        } else {
-            LOG.error("Could not find realtime data snapshot source in graph."
-                    + " The following updates are not applied: {}", updates);
+    protected void apply(Graph graph, TimetableSnapshotSource snapshotSource) {
+        snapshotSource.applyTripUpdates(graph, fullDataset, updates, feedId);
+    }
+
+    @Override
+    protected String feedId(TimetableSnapshotSource snapshotSource) {
+        return feedId;
+    }
+
+    /**
+     * Scheduled and canceled trips are rebuilt from the scheduled timetable by each update, so a later update of the
+     * same trip on the same day replaces an earlier one. Added and modified trips are never superseded.
+     */
+    @Override
+    protected void forEachTripUpdate(BiConsumer<Object, Object> consumer) {
+        for (TripUpdate tripUpdate : updates) {
+            if (!tripUpdate.hasTrip() || !tripUpdate.getTrip().hasTripId()) {
+                continue;
+            }
+            TripDescriptor trip = tripUpdate.getTrip();
+            TripDescriptor.ScheduleRelationship relationship = trip.hasScheduleRelationship() ?
+                    trip.getScheduleRelationship() : TripDescriptor.ScheduleRelationship.SCHEDULED;
+            if (relationship == TripDescriptor.ScheduleRelationship.SCHEDULED
+                    || relationship == TripDescriptor.ScheduleRelationship.CANCELED) {
+                consumer.accept(Arrays.asList(feedId, trip.getTripId(), trip.getStartDate()), tripUpdate);
+            }
         }
     }
+
+    @Override
+    protected Object getUpdates() {
+        return updates;
+    }
 }
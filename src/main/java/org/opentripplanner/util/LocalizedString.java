@@ -13,13 +13,14 @@
 
 package org.opentripplanner.util;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ListMultimap;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.opentripplanner.openstreetmap.model.OSMWithTags;
@@ -39,13 +40,9 @@ public class LocalizedString implements I18NString, Serializable {
     private static final Pattern patternMatcher = Pattern.compile("\\{(.*?)\\}");
     
     /**
-     * Map which key has which tagNames. Used only when building graph.
+     * Map which key has which tagNames. Used only when building graph, possibly from several threads at once.
      */
-    private transient static ListMultimap<String, String> key_tag_names;
-    
-    static {
-        key_tag_names = ArrayListMultimap.create();
-    }
+    private transient static final ConcurrentMap<String, List<String>> key_tag_names = new ConcurrentHashMap<>();
     //Key which specifies translation
     private String key;
     //Values with which tagNames are replaced in translations.
@@ -107,19 +104,18 @@ public class LocalizedString implements I18NString, Serializable {
         //TODO: after finding all keys for replacements replace strings to normal java strings
         //with https://stackoverflow.com/questions/2286648/named-placeholders-in-string-formatting if it is faster
         //otherwise it's converted only when toString is called
-        if( key_tag_names.containsKey(key)) {
-            return key_tag_names.get(key);
-        }
+        return key_tag_names.computeIfAbsent(key, LocalizedString::findTagNames);
+    }
+
+    private static List<String> findTagNames(String key) {
         List<String> tag_names = new ArrayList<String>(4);
-        String english_trans = ResourceBundleSingleton.INSTANCE.localize(this.key, Locale.forLanguageTag("no-NO"));
+        String english_trans = ResourceBundleSingleton.INSTANCE.localize(key, Locale.forLanguageTag("no-NO"));
 
         Matcher matcher = patternMatcher.matcher(english_trans);
         while (matcher.find()) {
-            String tag_name = matcher.group(1);
-            key_tag_names.put(key, tag_name);
-            tag_names.add(tag_name);
+            tag_names.add(matcher.group(1));
         }
-        return tag_names;
+        return Collections.unmodifiableList(tag_names);
     }
 
     @Override
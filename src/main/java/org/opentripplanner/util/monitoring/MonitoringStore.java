@@ -19,14 +19,20 @@ import com.google.common.collect.ListMultimap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.function.LongSupplier;
 
 /**
  * This supports the monitoring of various system properties, such as free memory.
  * 
  * Think of it like a logger, except that it can be read from inside the system and it supports
  * tracking max values as well as a list of notes.  The use pattern, when monitoring is expensive,
- * is to check isMonitoring before computing anything.
+ * is to check isMonitoring before computing anything. All methods are synchronized, since values
+ * may be reported from several threads at once.
  * 
+ * Values updated on every request, like cache hit counts, are better kept in the code reporting them (e.g. in a
+ * LongAdder) and registered with monitor(key, supplier), so that they are only read when the metrics are, rather than
+ * taking the lock of this store on every request.
+ *
  * TODO: allow registering special case monitoring for complex cases like long queries.
  * 
  * @author novalis
@@ -38,35 +44,50 @@ public class MonitoringStore {
 
     private HashMap<String, Long> longs = new HashMap<String, Long>();
 
+    private HashMap<String, LongSupplier> suppliers = new HashMap<String, LongSupplier>();
+
     private ListMultimap<String, String> notes = LinkedListMultimap.create();
 
-    public void addNote(String k, String v) {
+    public synchronized void addNote(String k, String v) {
         if (!monitoring.contains(k))
             return;
         notes.put(k, v);
     }
 
-    public void clearNotes(String k) {
+    public synchronized void clearNotes(String k) {
         notes.removeAll(k);
     }
 
-    public Long getLong(String k) {
+    public synchronized Long getLong(String k) {
+        LongSupplier supplier = suppliers.get(k);
+        if (supplier != null) {
+            return supplier.getAsLong();
+        }
         return longs.get(k);
     }
 
-    public List<String> getNotes(String k) {
+    public synchronized List<String> getNotes(String k) {
         return notes.get(k);
     }
 
-    public boolean isMonitoring(String k) {
+    public synchronized boolean isMonitoring(String k) {
         return monitoring.contains(k);
     }
 
-    public void monitor(String k) {
+    public synchronized void monitor(String k) {
+        monitoring.add(k);
+    }
+
+    /**
+     * Monitor a value read from the given supplier whenever it is requested, replacing any earlier supplier of the
+     * same key. The supplier must be thread-safe, and should not hold on to large objects.
+     */
+    public synchronized void monitor(String k, LongSupplier supplier) {
         monitoring.add(k);
+        suppliers.put(k, supplier);
     }
 
-    public void setLong(String k, long v) {
+    public synchronized void setLong(String k, long v) {
         if (!monitoring.contains(k))
             return;
         longs.put(k, v);
@@ -81,11 +102,12 @@ public class MonitoringStore {
         }
     }
 
-    public void stopMonitoring(String k) {
+    public synchronized void stopMonitoring(String k) {
         monitoring.remove(k);
+        suppliers.remove(k);
     }
 
-    public void setMonitoring(String key, boolean on) {
+    public synchronized void setMonitoring(String key, boolean on) {
         if (on) {
             monitoring.add(key);
         } else {
@@ -0,0 +1,188 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Latency histograms of the phases of routing requests and counters of the work done by searches and of the matching
+ * of realtime data to trips, for one router.
+ * Unlike the MonitoringStore, which only keeps the latest or largest value of each key, these accumulate over the
+ * lifetime of the router so that they can be scraped by Prometheus, see writePrometheus().
+ */
+public class RoutingMetrics {
+
+    public enum Phase {
+        /** Finding or creating the origin and destination vertices in the RoutingContext. */
+        LINKING("linking"),
+        /** Initializing the remaining weight heuristic before a search. */
+        HEURISTIC("heuristic"),
+        /** The A* search itself. */
+        SEARCH("search"),
+        /** Converting the paths found into itineraries. */
+        PATH_CONVERSION("path_conversion"),
+        /** Executing a GraphQL query on one of the index APIs. */
+        GRAPHQL("graphql");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    /** The keys on which realtime messages without usable trip IDs are matched to trips, see TripMatchingIndex. */
+    public enum TripMatchKey {
+        /** Route, direction and start time of a GTFS-RT trip descriptor. */
+        START_TIME("start_time"),
+        /** The last stop of a SIRI journey and the aimed arrival time there. */
+        LAST_STOP_ARRIVAL("last_stop_arrival"),
+        /** A SIRI dated vehicle journey ref, without any suffix after a dash. */
+        TRIP_ID("trip_id"),
+        /** A SIRI vehicle ref, matched to the short name (train number) of rail trips. */
+        VEHICLE_REF("vehicle_ref");
+
+        final String label;
+
+        TripMatchKey(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final String[] TRIP_MATCH_RESULTS = { "miss", "hit", "ambiguous" };
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+    /** Lookups in the trip matching index, by key and by result (no trip, a single trip or several trips). */
+    private final LongAdder[][] tripMatches = new LongAdder[TripMatchKey.values().length][TRIP_MATCH_RESULTS.length];
+
+    private final LongAdder statesVisited = new LongAdder();
+
+    private final LongAdder queuePops = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    public RoutingMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        for (LongAdder[] results : tripMatches) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new LongAdder();
+            }
+        }
+    }
+
+    /** Record a phase that started at the given System.nanoTime(). */
+    public void recordPhase(Phase phase, long startNanos) {
+        phases[phase.ordinal()].recordSince(startNanos);
+    }
+
+    public LatencyHistogram getPhase(Phase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Record the work done by one search.
+     * @param visited the number of states expanded
+     * @param pops the number of states taken from the priority queue, including those dominated since they were added
+     */
+    public void recordSearch(long visited, long pops) {
+        statesVisited.add(visited);
+        queuePops.add(pops);
+    }
+
+    /** Record a search or heuristic initialization that was cut short by the routing timeout. */
+    public void recordTimeout() {
+        timeouts.increment();
+    }
+
+    /** Record a lookup of realtime data in the trip matching index, which found the given number of trips. */
+    public void recordTripMatch(TripMatchKey key, int trips) {
+        tripMatches[key.ordinal()][Math.min(trips, 2)].increment();
+    }
+
+    /** @return the number of lookups on the given key that found no trip (0), one trip (1) or several trips (2). */
+    public long getTripMatches(TripMatchKey key, int result) {
+        return tripMatches[key.ordinal()][result].sum();
+    }
+
+    /**
+     * Write the metrics of the given routers in the Prometheus text exposition format (version 0.0.4), labelled with
+     * their router IDs.
+     */
+    public static void writePrometheus(Map<String, RoutingMetrics> routers, StringBuilder out) {
+        family(out, "otp_routing_phase_duration_seconds", "histogram",
+                "Duration of the phases of routing requests.");
+        for (Map.Entry<String, RoutingMetrics> router : routers.entrySet()) {
+            for (Phase phase : Phase.values()) {
+                String labels = "router=\"" + escape(router.getKey()) + "\",phase=\"" + phase.label + "\"";
+                LatencyHistogram histogram = router.getValue().getPhase(phase);
+                long[] counts = histogram.getCumulativeCounts();
+                for (int i = 0; i < counts.length; i++) {
+                    String le = i < LatencyHistogram.BUCKET_BOUNDS_SECONDS.length ?
+                            Double.toString(LatencyHistogram.BUCKET_BOUNDS_SECONDS[i]) : "+Inf";
+                    sample(out, "otp_routing_phase_duration_seconds_bucket", labels + ",le=\"" + le + "\"",
+                            Long.toString(counts[i]));
+                }
+                sample(out, "otp_routing_phase_duration_seconds_sum", labels,
+                        Double.toString(histogram.getSumSeconds()));
+                sample(out, "otp_routing_phase_duration_seconds_count", labels,
+                        Long.toString(counts[counts.length - 1]));
+            }
+        }
+        counter(routers, out, "otp_routing_states_visited_total", "States expanded by searches.", m -> m.statesVisited);
+        counter(routers, out, "otp_routing_queue_pops_total", "States taken from the search priority queues.",
+                m -> m.queuePops);
+        counter(routers, out, "otp_routing_timeouts_total", "Searches cut short by the routing timeout.",
+                m -> m.timeouts);
+        family(out, "otp_realtime_trip_matches_total", "counter",
+                "Lookups of realtime data in the trip matching index, by key and by whether they found no, one or several trips.");
+        for (Map.Entry<String, RoutingMetrics> router : routers.entrySet()) {
+            for (TripMatchKey key : TripMatchKey.values()) {
+                for (int result = 0; result < TRIP_MATCH_RESULTS.length; result++) {
+                    sample(out, "otp_realtime_trip_matches_total", "router=\"" + escape(router.getKey())
+                                    + "\",key=\"" + key.label + "\",result=\"" + TRIP_MATCH_RESULTS[result] + "\"",
+                            Long.toString(router.getValue().getTripMatches(key, result)));
+                }
+            }
+        }
+    }
+
+    private static void counter(Map<String, RoutingMetrics> routers, StringBuilder out, String name, String help,
+                                Function<RoutingMetrics, LongAdder> field) {
+        family(out, name, "counter", help);
+        for (Map.Entry<String, RoutingMetrics> router : routers.entrySet()) {
+            sample(out, name, "router=\"" + escape(router.getKey()) + "\"",
+                    Long.toString(field.apply(router.getValue()).sum()));
+        }
+    }
+
+    private static void family(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,124 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentHashMapTest {
+
+    /** A key that shares its hash code with two others, to exercise the nodes for colliding hashes. */
+    private static class Key {
+        final int id;
+
+        Key(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id / 3;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public String toString() {
+            return "key" + id;
+        }
+    }
+
+    @Test
+    public void testPlusAndMinus() {
+        PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Integer> one = empty.plus("a", 1);
+        PersistentHashMap<String, Integer> two = one.plus("b", 2);
+        assertEquals(0, empty.size());
+        assertEquals(1, one.size());
+        assertEquals(2, two.size());
+        assertNull(one.get("b"));
+        assertEquals(Integer.valueOf(2), two.get("b"));
+
+        // older versions are unaffected by changes
+        PersistentHashMap<String, Integer> changed = two.plus("a", 3).minus("b");
+        assertEquals(Integer.valueOf(3), changed.get("a"));
+        assertFalse(changed.containsKey("b"));
+        assertEquals(Integer.valueOf(1), two.get("a"));
+        assertTrue(two.containsKey("b"));
+
+        // changes that change nothing return the same map
+        assertSame(two, two.plus("b", two.get("b")));
+        assertSame(two, two.minus("c"));
+        assertSame(two, two.minusIf(key -> key.startsWith("z")));
+        assertTrue(two.minus("a").minus("b").isEmpty());
+    }
+
+    /** Apply the same random changes to a HashMap and to persistent maps, keeping every version to check later. */
+    @Test
+    public void testRandomChanges() {
+        Random random = new Random(42);
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentHashMap<Key, Integer> map = PersistentHashMap.empty();
+        Map<PersistentHashMap<Key, Integer>, Map<Key, Integer>> versions = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            Key key = new Key(random.nextInt(2000));
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                int value = random.nextInt();
+                expected.put(key, value);
+                map = map.plus(key, value);
+            }
+            if (i % 1000 == 0) {
+                versions.put(map, new HashMap<>(expected));
+            }
+        }
+        versions.put(map, expected);
+        // Also exercise removing many keys at once.
+        PersistentHashMap<Key, Integer> odd = map.minusIf(key -> key.id % 2 == 0);
+        Map<Key, Integer> expectedOdd = new HashMap<>(expected);
+        expectedOdd.keySet().removeIf(key -> key.id % 2 == 0);
+        versions.put(odd, expectedOdd);
+
+        for (Map.Entry<PersistentHashMap<Key, Integer>, Map<Key, Integer>> version : versions.entrySet()) {
+            assertSameContents(version.getValue(), version.getKey());
+        }
+    }
+
+    private static void assertSameContents(Map<Key, Integer> expected, PersistentHashMap<Key, Integer> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<Key, Integer> iterated = new HashMap<>();
+        for (Map.Entry<Key, Integer> entry : map) {
+            assertNull("Each key is iterated over once", iterated.put(entry.getKey(), entry.getValue()));
+        }
+        assertEquals(expected, iterated);
+    }
+
+}
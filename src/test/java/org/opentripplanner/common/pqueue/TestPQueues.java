@@ -25,12 +25,18 @@ import junit.framework.TestCase;
 public class TestPQueues extends TestCase { 
     private static final int N = 50000;
 
-    public void doQueue(BinHeap<Integer> q,
+    public void doQueue(OTPPriorityQueue<Integer> q,
                         List<Integer> input, List<Integer> expected) {
+        doQueue(q, input, expected, 0.5);
+    }
+
+    /** The radix heap only orders keys to whole units, so it needs a key scale of at least one. */
+    public void doQueue(OTPPriorityQueue<Integer> q,
+                        List<Integer> input, List<Integer> expected, double keyScale) {
         List<Integer> result = new ArrayList<Integer>(N);
         int expectedSum = 0;
         for (Integer i : input) {
-            q.insert(i, i * 0.5);
+            q.insert(i, i * keyScale);
             expectedSum += i;
         }
         while (!q.empty()) {
@@ -58,7 +64,7 @@ public class TestPQueues extends TestCase {
         assertTrue(sum == expectedSum);
     }
     
-    public void fillQueue(BinHeap<Integer> q, List<Integer> input) {
+    public void fillQueue(OTPPriorityQueue<Integer> q, List<Integer> input) {
         for (Integer i : input) {
             q.insert(i, i * 0.5);
         }
@@ -90,6 +96,52 @@ public class TestPQueues extends TestCase {
         }
         doQueue(new BinHeap<Integer>(), input, expected);
         fillQueue(new BinHeap<Integer>(), input);
+        doQueue(new FourAryHeap<Integer>(), input, expected);
+        fillQueue(new FourAryHeap<Integer>(), input);
+        doQueue(new RadixHeap<Integer>(), input, expected, 1.0);
+        fillQueue(new RadixHeap<Integer>(), input);
+    }
+
+    public void testFactory() {
+        for (OTPPriorityQueueFactory factory : OTPPriorityQueueFactory.values()) {
+            OTPPriorityQueue<String> q = factory.create(0);
+            q.insert("b", 20.5);
+            q.insert("a", 10.5);
+            q.insert("c", 30.5);
+            assertEquals(3, q.size());
+            assertEquals("a", q.peek_min());
+            assertEquals(10.5, q.peek_min_key(), 0.0);
+            assertEquals("a", q.extract_min());
+            q.reset();
+            assertTrue(q.empty());
+            q.insert("d", 5);
+            assertEquals("d", q.extract_min());
+        }
+    }
+
+    /**
+     * The radix heap is monotone: a key below the last one extracted comes out next rather than out of order, and
+     * the queue keeps working with the smaller keys after a reset.
+     */
+    public void testRadixHeapMonotone() {
+        RadixHeap<String> q = new RadixHeap<String>();
+        q.insert("x", 100);
+        q.insert("y", 300);
+        assertEquals("x", q.extract_min());
+        q.insert("late", 50);
+        q.insert("z", 200);
+        assertEquals("late", q.extract_min());
+        assertEquals("z", q.extract_min());
+        assertEquals("y", q.extract_min());
+        assertTrue(q.empty());
+        q.insert("big", 1e12);
+        q.insert("inf", Double.POSITIVE_INFINITY);
+        assertEquals("big", q.extract_min());
+        q.reset();
+        q.insert("small", 1);
+        q.insert("zero", 0);
+        assertEquals("zero", q.extract_min());
+        assertEquals("small", q.extract_min());
     }
 
     /*
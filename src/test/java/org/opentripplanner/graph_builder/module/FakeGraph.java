@@ -547,6 +547,65 @@ public class FakeGraph {
         gtfs.buildGraph(gg, new HashMap<>());
     }
 
+    /**
+     * Add a line along High Street in Columbus with stops s1, s2 and s3, and two trips that do not run at the same
+     * speed: "slow" leaves s1 at 7:55 and reaches s2 at 8:35 and s3 at 9:00, while "fast" leaves s1 at 7:40 but,
+     * being slower between s1 and s2, only leaves s2 at 8:30 and reaches s3 at 8:40.
+     */
+    public static void addTripsWithDifferentRunningTimes (Graph gg) throws Exception {
+        GTFSFeed feed = new GTFSFeed();
+        Agency a = createDummyAgency("agency", "Agency", "America/New_York");
+        feed.agency.put("agency", a);
+
+        Route r = new Route();
+        r.route_short_name = "1";
+        r.route_long_name = "High Street";
+        r.route_type = 3;
+        r.agency = a;
+        r.route_id = "route";
+        feed.routes.put(r.route_id, r);
+
+        Service s = createDummyService();
+        feed.services.put(s.service_id, s);
+
+        double[] stopLats = { 39.9621, 39.9648, 40.0000 };
+        for (int i = 0; i < stopLats.length; i++) {
+            com.conveyal.gtfs.model.Stop stop = new com.conveyal.gtfs.model.Stop();
+            stop.stop_id = stop.stop_name = "s" + (i + 1);
+            stop.stop_lat = stopLats[i];
+            stop.stop_lon = -83.0007;
+            feed.stops.put(stop.stop_id, stop);
+        }
+
+        addTrip(feed, r, s, "slow", 7 * 3600 + 55 * 60, 8 * 3600 + 35 * 60, 9 * 3600);
+        addTrip(feed, r, s, "fast", 7 * 3600 + 40 * 60, 8 * 3600 + 30 * 60, 8 * 3600 + 40 * 60);
+
+        File tempFile = File.createTempFile("gtfs", ".zip");
+        feed.toFile(tempFile.getAbsolutePath());
+
+        GtfsModule gtfs = new GtfsModule(Arrays.asList(new GtfsBundle(tempFile)));
+        gtfs.buildGraph(gg, new HashMap<>());
+    }
+
+    /** Add a trip calling at stops s1, s2, ... at the given times, in seconds after midnight */
+    private static void addTrip (GTFSFeed feed, Route r, Service s, String tripId, int... times) {
+        Trip t = new Trip();
+        t.trip_id = tripId;
+        t.service = s;
+        t.route = r;
+        feed.trips.put(t.trip_id, t);
+
+        for (int i = 0; i < times.length; i++) {
+            StopTime st = new StopTime();
+            st.trip_id = t.trip_id;
+            st.arrival_time = times[i];
+            st.departure_time = times[i];
+            st.stop_id = "s" + (i + 1);
+            st.stop_sequence = i + 1;
+            feed.stop_times.put(new Fun.Tuple2(st.trip_id, st.stop_sequence), st);
+        }
+    }
+
     /** link the stops in the graph */
     public static void link (Graph g) {
         SimpleStreetSplitter linker = new SimpleStreetSplitter(g);
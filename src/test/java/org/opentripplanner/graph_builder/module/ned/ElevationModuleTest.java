@@ -0,0 +1,121 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.ned;
+
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opengis.coverage.Coverage;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+public class ElevationModuleTest {
+
+    private static final int SIZE = 12;
+
+    /** The spacing of the street grid in degrees, so that the streets span several cells of the parallel build. */
+    private static final double SPACING = 0.02;
+
+    @Test
+    public void testParallelBuildIsDeterministic() {
+        List<String> sequential = describeProfiles(buildGraph(false));
+        List<String> parallel = describeProfiles(buildGraph(true));
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    private static List<StreetWithElevationEdge> buildGraph(boolean parallelBuild) {
+        Graph graph = new Graph();
+        IntersectionVertex[][] grid = new IntersectionVertex[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                grid[x][y] = new IntersectionVertex(graph, "v" + x + "_" + y, -83.1 + SPACING * x,
+                        39.9 + SPACING * y);
+            }
+        }
+        List<StreetWithElevationEdge> edges = new ArrayList<>();
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (x + 1 < SIZE) edges.add(street(grid[x][y], grid[x + 1][y]));
+                if (y + 1 < SIZE) edges.add(street(grid[x][y], grid[x][y + 1]));
+            }
+        }
+
+        ElevationModule module = new ElevationModule(new SyntheticDEM(), 100);
+        module.parallelBuild = parallelBuild;
+        module.buildGraph(graph, new HashMap<>());
+        return edges;
+    }
+
+    private static StreetWithElevationEdge street(IntersectionVertex a, IntersectionVertex b) {
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { a.getCoordinate(), b.getCoordinate() });
+        double length = SphericalDistanceLibrary.distance(a.getCoordinate(), b.getCoordinate());
+        return new StreetWithElevationEdge(a, b, geometry, "street", length, StreetTraversalPermission.ALL, false);
+    }
+
+    /** Describe the elevation profile of each edge, in the order the edges were created. */
+    private static List<String> describeProfiles(List<StreetWithElevationEdge> edges) {
+        List<String> description = new ArrayList<>();
+        for (StreetWithElevationEdge edge : edges) {
+            assertNotNull(edge.getElevationProfile());
+            description.add(edge.getFromVertex().getLabel() + " " + edge.getToVertex().getLabel() + " "
+                    + Arrays.toString(edge.getElevationProfile().toCoordinateArray()) + " " + edge.getMaxSlope());
+        }
+        return description;
+    }
+
+    /** A smooth, hilly DEM covering the street grid, with a cell every 0.005 degrees. */
+    private static class SyntheticDEM implements ElevationGridCoverageFactory {
+
+        @Override
+        public Coverage getGridCoverage() {
+            int n = 80;
+            float[][] matrix = new float[n][n];
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    matrix[row][col] = (float) (200 + 30 * Math.sin(row / 7.0) + 20 * Math.cos(col / 5.0));
+                }
+            }
+            ReferencedEnvelope envelope = new ReferencedEnvelope(-83.15, -82.75, 39.85, 40.25,
+                    GeometryUtils.WGS84_XY);
+            return new GridCoverageFactory().create("dem", matrix, envelope);
+        }
+
+        @Override
+        public void checkInputs() {
+        }
+
+        @Override
+        public void setGraph(Graph graph) {
+        }
+    }
+
+}
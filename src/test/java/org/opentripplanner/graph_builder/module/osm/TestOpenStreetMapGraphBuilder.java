@@ -159,6 +159,60 @@ public class TestOpenStreetMapGraphBuilder extends TestCase {
         }
     }
 
+    /**
+     * Building the street graph in parallel must give exactly the same vertices and edges, in the same order, as a
+     * sequential build.
+     */
+    @Test
+    public void testParallelBuildIsDeterministic() throws Exception {
+        List<String> sequential = describeGraph(buildGraph("NYC_small.osm.gz", false));
+        List<String> parallel = describeGraph(buildGraph("NYC_small.osm.gz", true));
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, parallel);
+    }
+
+    private Graph buildGraph(String osmFile, boolean parallelBuild) throws UnsupportedEncodingException {
+        Graph gg = new Graph();
+
+        OpenStreetMapModule loader = new OpenStreetMapModule();
+        loader.parallelBuild = parallelBuild;
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        FileBasedOpenStreetMapProviderImpl provider = new FileBasedOpenStreetMapProviderImpl();
+
+        File file = new File(URLDecoder.decode(getClass().getResource(osmFile).getFile(), "UTF-8"));
+
+        provider.setPath(file);
+        loader.setProvider(provider);
+
+        loader.buildGraph(gg, new HashMap<Class<?>, Object>());
+        return gg;
+    }
+
+    /** Describe each vertex in index order, followed by its outgoing edges in order. */
+    private static List<String> describeGraph(Graph graph) {
+        Vertex[] vertices = new Vertex[graph.getVertexIndexCapacity()];
+        for (Vertex v : graph.getVertices()) {
+            vertices[v.getIndex()] = v;
+        }
+        List<String> description = new ArrayList<>();
+        for (Vertex v : vertices) {
+            if (v == null) {
+                continue;
+            }
+            description.add(v.getClass().getSimpleName() + " " + v.getLabel() + " " + v.getCoordinate());
+            for (Edge e : v.getOutgoing()) {
+                String edge = e.getClass().getSimpleName() + " " + e.getToVertex().getLabel() + " " + e.getName()
+                        + " " + e.getGeometry();
+                if (e instanceof StreetEdge) {
+                    StreetEdge se = (StreetEdge) e;
+                    edge += " " + se.getPermission() + " " + se.getBicycleSafetyFactor() + " " + graph.getTurnRestrictions(se);
+                }
+                description.add(edge);
+            }
+        }
+        return description;
+    }
+
     /**
      * This reads test file with area
      * and tests if it can be routed if visibility is used and if it isn't
@@ -327,6 +381,21 @@ public class TestOpenStreetMapGraphBuilder extends TestCase {
                 localizedString.toString(new Locale("de")));
     }
 
+    /** The ways are named on several threads in a parallel build, which must all find the same tag names. */
+    @Test
+    public void testLocalizedStringFromWayOnSeveralThreads() {
+        OSMWay way = new OSMWay();
+        way.addTag("ref", "7");
+        LocalizedString expected = new LocalizedString("name.platform_ref", new String[] { "7" });
+        List<LocalizedString> names = java.util.stream.IntStream.range(0, 1000).parallel()
+                .mapToObj(i -> new LocalizedString("name.platform_ref", way))
+                .collect(java.util.stream.Collectors.toList());
+        for (LocalizedString name : names) {
+            assertEquals(expected, name);
+        }
+        assertEquals("Platform 7", names.get(0).toString());
+    }
+
     // disabled pending discussion with author (AMB)
     // @Test
     // public void testMultipolygon() throws Exception {
@@ -0,0 +1,104 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.index;
+
+import com.google.common.hash.Hashing;
+import graphql.ExecutionResult;
+import graphql.Scalars;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import org.junit.Test;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class GraphQLQueryCacheTest {
+
+    private static final String QUERY = "{ hello }";
+
+    private GraphQLQueryCache newCache() {
+        GraphQLObjectType queryType = GraphQLObjectType.newObject()
+                .name("Query")
+                .field(GraphQLFieldDefinition.newFieldDefinition()
+                        .name("hello")
+                        .type(Scalars.GraphQLString)
+                        .staticValue("world"))
+                .build();
+        return new GraphQLQueryCache(GraphQLSchema.newSchema().query(queryType).build());
+    }
+
+    @Test
+    public void testDocumentsAreCachedPerComplexityLimit() {
+        GraphQLQueryCache cache = newCache();
+        assertSame(cache.getGraphQL(1000), cache.getGraphQL(1000));
+
+        ExecutionResult result = cache.getGraphQL(1000).execute(QUERY);
+        assertTrue(result.getErrors().isEmpty());
+        assertEquals("world", ((Map) result.getData()).get("hello"));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.getGraphQL(1000).execute(QUERY);
+        assertEquals(1, cache.getHits());
+
+        // A document validated against one complexity limit is not reused for another
+        cache.getGraphQL(10).execute(QUERY);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testMetricsOfTheLatestCacheWithAName() {
+        MonitoringStore store = MonitoringStoreFactory.getStore();
+        GraphQLQueryCache previous = newCache();
+        previous.monitor("test.router");
+        previous.getGraphQL(1000).execute(QUERY);
+        assertEquals(Long.valueOf(1), store.getLong("graphql.test.router.documentCacheMisses"));
+
+        // e.g. the router was reloaded
+        GraphQLQueryCache cache = newCache();
+        cache.monitor("test.router");
+        cache.getGraphQL(1000).execute(QUERY);
+        cache.getGraphQL(1000).execute(QUERY);
+        assertEquals(Long.valueOf(1), store.getLong("graphql.test.router.documentCacheHits"));
+        assertEquals(Long.valueOf(1), store.getLong("graphql.test.router.documentCacheMisses"));
+    }
+
+    @Test
+    public void testPersistedQueries() {
+        GraphQLQueryCache cache = newCache();
+        String hash = Hashing.sha256().hashString(QUERY, StandardCharsets.UTF_8).toString();
+        Map<String, Object> extensions = Collections.singletonMap("persistedQuery",
+                Collections.singletonMap("sha256Hash", hash));
+
+        assertEquals(QUERY, cache.resolveQuery(QUERY, null));
+        assertTrue(GraphQLQueryCache.isPersistedQuery(extensions));
+        assertNull(cache.resolveQuery(null, extensions));
+        assertEquals(QUERY, cache.resolveQuery(QUERY, extensions));
+        assertEquals(QUERY, cache.resolveQuery(null, extensions));
+
+        try {
+            cache.resolveQuery("{ hello hello }", extensions);
+            fail("A query not matching its hash should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.index.transmodel;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.Router;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Times a departure board over the first 100 quays of the Vermont test graph on the Transmodel GraphQL API, with
+ * the lookups of the data fetchers shared through the TransmodelRequestCache of the request, and without it, as
+ * when each field looked up the patterns, timetables and alerts it needs by itself. Both must give the same data.
+ * This is not a unit test, run it from the IDE or with exec:java on the test classpath.
+ */
+public class DepartureBoardBenchmark {
+
+    private static final int N_QUAYS = 100;
+
+    private static final int N_QUERIES = 50;
+
+    private static final int N_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Graph graph = ConstantsForTests.getInstance().getVermontGraph();
+        Router router = new Router("benchmark", graph);
+        router.defaultRoutingRequest = new RoutingRequest();
+        GraphQL graphQL = GraphQL.newGraphQL(new TransmodelIndexGraphQLSchema(router).indexSchema).build();
+
+        List<String> quayIds = graph.index.stopForId.values().stream()
+                .map(Stop::getId)
+                .sorted(Comparator.comparing(GtfsLibrary::convertIdToString))
+                .limit(N_QUAYS)
+                .map(id -> "\"" + GtfsLibrary.convertIdToString(id) + "\"")
+                .collect(Collectors.toList());
+        String query = "{ quays(ids: [" + String.join(",", quayIds) + "]) {" +
+                "  id name" +
+                "  lines { id publicCode }" +
+                "  situations { id }" +
+                "  estimatedCalls(startTime: \"2018-05-23T06:00:00-0400\", timeRange: 86400, numberOfDepartures: 20) {" +
+                "    aimedDepartureTime expectedDepartureTime realtime" +
+                "    destinationDisplay { frontText }" +
+                "    serviceJourney { id line { id publicCode } }" +
+                "    situations { id }" +
+                "  }" +
+                "} }";
+        System.out.printf("%d quays, %d queries per round%n", quayIds.size(), N_QUERIES);
+
+        Object expected = execute(graphQL, query, null).getData();
+        if (!expected.equals(execute(graphQL, query, new TransmodelApiContext(router, "benchmark")).getData())) {
+            throw new IllegalStateException("The request cache changes the response");
+        }
+
+        // the first round warms up the JIT and is not reported
+        for (int round = 0; round <= N_ROUNDS; round++) {
+            for (boolean shared : new boolean[] { false, true }) {
+                List<Long> nanos = new ArrayList<>(N_QUERIES);
+                for (int i = 0; i < N_QUERIES; i++) {
+                    TransmodelApiContext context = shared ? new TransmodelApiContext(router, "benchmark") : null;
+                    long start = System.nanoTime();
+                    ExecutionResult result = execute(graphQL, query, context);
+                    nanos.add(System.nanoTime() - start);
+                    if (!result.getErrors().isEmpty()) {
+                        throw new IllegalStateException(result.getErrors().toString());
+                    }
+                }
+                nanos.sort(null);
+                if (round > 0) {
+                    System.out.printf("round %d %-22s median %7.2f ms p90 %7.2f ms%n", round,
+                            shared ? "with request cache" : "without request cache",
+                            nanos.get(N_QUERIES / 2) / 1e6, nanos.get(N_QUERIES * 9 / 10) / 1e6);
+                }
+            }
+        }
+    }
+
+    /** Without a TransmodelApiContext each field gets a request cache of its own, so nothing is shared. */
+    private static ExecutionResult execute(GraphQL graphQL, String query, TransmodelApiContext context) {
+        ExecutionInput.Builder input = ExecutionInput.newExecutionInput().query(query);
+        if (context != null) {
+            input.context(context).root(context);
+        }
+        return graphQL.execute(input.build());
+    }
+
+}
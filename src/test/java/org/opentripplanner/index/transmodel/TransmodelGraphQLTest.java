@@ -70,6 +70,31 @@ public class TransmodelGraphQLTest extends GtfsTest {
         assertFalse("Expected at least one estimated call for quay", estimatedCalls.isEmpty());
     }
 
+    public void testGetQuayWithRequestCache() {
+        String quayId = "FEED:V";
+        String query =
+                "query Quay {" +
+                        "    quay(id: \"" + quayId + "\") {" +
+                        "        id" +
+                        "        lines { id }" +
+                        "        journeyPatterns { id }" +
+                        " estimatedCalls(startTime: \"2018-12-17T11:05:00+0100\") { " +
+                        "aimedDepartureTime" +
+                        " situations { id }" +
+                        "} } " +
+                        "}";
+
+        ExecutionResult uncached = graphQL.execute(query);
+        assertTrue(uncached.getErrors().isEmpty());
+
+        TransmodelApiContext context = new TransmodelApiContext(router, "");
+        HashMap<String, Object> result = graphIndex.getGraphQLExecutionResult(query, context, new HashMap<>(), null, 10000, 1000000);
+        assertNull(result.get("errors"));
+        Map<String, Object> data = (Map<String, Object>) result.get("data");
+        assertFalse("Expected at least one line for quay", ((List) JsonPath.read(data, "quay.lines")).isEmpty());
+        assertEquals(uncached.getData(), data);
+    }
+
     public void testGetQuaysByBBox() {
         String query =
                 " { quaysByBbox(minimumLatitude:39, minimumLongitude:-75, maximumLatitude:42, maximumLongitude:-70 ) {id}} ";
@@ -23,6 +23,7 @@ import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
 import org.opentripplanner.routing.algorithm.strategies.MultiTargetTerminationStrategy;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.State;
@@ -33,6 +34,7 @@ import org.opentripplanner.routing.graph.SimpleConcreteVertex;
 import org.opentripplanner.routing.graph.TemporaryConcreteEdge;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.location.TemporaryStreetLocation;
+import org.opentripplanner.routing.spt.ArrayShortestPathTree;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 
@@ -116,6 +118,53 @@ public class AStarTest {
         assertEquals("leary_20th", states.get(6).getVertex().getLabel());
     }
 
+    @Test
+    public void testForwardWithArrayShortestPathTree() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.useArrayShortestPathTree = true;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        ShortestPathTree tree = new AStar().getShortestPathTree(options);
+
+        assertTrue(tree instanceof ArrayShortestPathTree);
+
+        GraphPath path = tree.getPath(_graph.getVertex("leary_20th"), false);
+        tree.release();
+
+        List<State> states = path.states;
+
+        assertEquals(7, states.size());
+
+        assertEquals("56th_24th", states.get(0).getVertex().getLabel());
+        assertEquals("market_ballard", states.get(2).getVertex().getLabel());
+        assertEquals("leary_vernon", states.get(5).getVertex().getLabel());
+        assertEquals("leary_20th", states.get(6).getVertex().getLabel());
+    }
+
+    @Test
+    public void testForwardWithEachPriorityQueue() {
+        Vertex from = _graph.getVertex("56th_24th");
+        Vertex to = _graph.getVertex("leary_20th");
+        double expectedWeight = Double.NaN;
+        for (OTPPriorityQueueFactory factory : OTPPriorityQueueFactory.values()) {
+            RoutingRequest options = new RoutingRequest();
+            options.walkSpeed = 1.0;
+            options.priorityQueueFactory = factory;
+            options.setRoutingContext(_graph, from, to);
+            AStar aStar = new AStar();
+            ShortestPathTree tree = aStar.getShortestPathTree(options);
+            GraphPath path = tree.getPath(to, false);
+            assertNotNull(path);
+            assertTrue(aStar.getVisitedCount() > 0);
+            if (factory == OTPPriorityQueueFactory.BINARY_HEAP) {
+                expectedWeight = path.getWeight();
+            } else {
+                // the radix heap orders weights to the whole second, which may tip a tie between paths
+                assertEquals(expectedWeight, path.getWeight(), 1.0);
+            }
+        }
+    }
+
     @Test
     public void testBack() {
 
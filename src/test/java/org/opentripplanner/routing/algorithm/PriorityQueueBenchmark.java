@@ -0,0 +1,92 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.algorithm;
+
+import org.opentripplanner.common.pqueue.OTPPriorityQueueFactory;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the priority queue implementations on car searches between random pairs of street vertices in the
+ * Columbus, OH test graph. For each queue it reports the number of states taken from the queue, how many of those
+ * were wasted because they had been dominated since they were inserted, and the wall time. This is not a unit test,
+ * run it from the IDE or with exec:java on the test classpath.
+ */
+public class PriorityQueueBenchmark {
+
+    private static final int N_SEARCHES = 200;
+
+    private static final int N_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        List<Vertex> streetVertices = new ArrayList<>();
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof StreetVertex && !v.getOutgoing().isEmpty()) streetVertices.add(v);
+        }
+        // fixed seed so every run and every queue sees the same searches
+        Random random = new Random(42);
+        Vertex[][] pairs = new Vertex[N_SEARCHES][];
+        for (int i = 0; i < N_SEARCHES; i++) {
+            pairs[i] = new Vertex[] {
+                    streetVertices.get(random.nextInt(streetVertices.size())),
+                    streetVertices.get(random.nextInt(streetVertices.size()))
+            };
+        }
+        System.out.printf("%d street vertices, %d searches per round%n", streetVertices.size(), N_SEARCHES);
+
+        // the first round of each queue warms up the JIT and is not reported
+        for (int round = 0; round <= N_ROUNDS; round++) {
+            for (OTPPriorityQueueFactory factory : OTPPriorityQueueFactory.values()) {
+                long pops = 0, wastedPops = 0, paths = 0;
+                double totalWeight = 0;
+                long start = System.nanoTime();
+                for (Vertex[] pair : pairs) {
+                    RoutingRequest options = new RoutingRequest();
+                    options.setMode(TraverseMode.CAR);
+                    options.priorityQueueFactory = factory;
+                    options.setRoutingContext(graph, pair[0], pair[1]);
+                    AStar aStar = new AStar();
+                    aStar.getShortestPathTree(options);
+                    for (GraphPath path : aStar.getPathsToTarget()) {
+                        paths += 1;
+                        totalWeight += path.getWeight();
+                    }
+                    pops += aStar.getVisitedCount() + aStar.getDominatedPopCount();
+                    wastedPops += aStar.getDominatedPopCount();
+                    options.cleanup();
+                }
+                long elapsedMillis = (System.nanoTime() - start) / 1000000;
+                if (round > 0) {
+                    System.out.printf("round %d %-14s pops %9d wasted %9d (%4.1f%%) paths %4d weight %12.0f time %6d ms%n",
+                            round, factory, pops, wastedPops, 100.0 * wastedPops / Math.max(pops, 1), paths,
+                            totalWeight, elapsedMillis);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.opentripplanner.routing.algorithm;
+
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.util.TestUtils;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RaptorSearchTest {
+
+    private Graph graph = ConstantsForTests.getInstance().getVermontGraph();
+
+    // Route 1354 (US 2 Commuter) leaves 769651 at 6:10am and reaches 769653 at 6:28am on weekdays
+    @Test
+    public void testSingleRide() {
+        RoutingRequest options = buildRequest("769651", "769653", false);
+        assertTrue(RaptorSearch.supports(options));
+
+        List<GraphPath> paths = new RaptorSearch(options).getPaths(0);
+        assertFalse(paths.isEmpty());
+        GraphPath path = paths.get(0);
+        assertEquals(options.rctx.target, path.states.getLast().getVertex());
+        assertFalse(path.getTrips().isEmpty());
+        long expectedArrival = TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 6, 28, 0);
+        assertTrue(path.getEndTime() <= expectedArrival);
+    }
+
+    // Each journey of the Pareto set must arrive earlier than those with fewer rides
+    @Test
+    public void testParetoSet() {
+        RoutingRequest options = buildRequest("769651", "769653", false);
+        List<GraphPath> paths = new RaptorSearch(options).getPaths(0);
+        for (int i = 1; i < paths.size(); i++) {
+            assertTrue(paths.get(i).getTrips().size() > paths.get(i - 1).getTrips().size());
+            assertTrue(paths.get(i).getEndTime() < paths.get(i - 1).getEndTime());
+        }
+    }
+
+    // Boarding "slow" at s1 at 7:55, a walk to s2 allows catching "fast", which leaves s2 at 8:30, before "slow" does
+    // (8:35) but after "slow" left s1. Switching to it there reaches s3 at 8:40 rather than 9:00.
+    @Test
+    public void testEarlierTripAtLaterStop() throws Exception {
+        Graph fakeGraph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addTripsWithDifferentRunningTimes(fakeGraph);
+        FakeGraph.link(fakeGraph);
+        fakeGraph.index(new DefaultStreetVertexIndexFactory());
+
+        RoutingRequest options = new RoutingRequest();
+        options.maxWalkDistance = 804;
+        options.dateTime = TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 7, 50, 0);
+        options.setRoutingContext(fakeGraph, findStop(fakeGraph, "s1"), findStop(fakeGraph, "s3"));
+        assertTrue(RaptorSearch.supports(options));
+
+        List<GraphPath> paths = new RaptorSearch(options).getPaths(0);
+        assertFalse(paths.isEmpty());
+        GraphPath path = paths.get(0);
+        assertEquals(1, path.getTrips().size());
+        assertEquals("fast", path.getTrips().get(0).getId());
+        assertTrue(path.getEndTime() >= TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 8, 40, 0));
+        assertTrue(path.getEndTime() < TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 9, 0, 0));
+    }
+
+    // Without a maxWalkDistance the walks to and from transit stop at MAX_ACCESS_EGRESS_METERS rather than covering
+    // the whole street network
+    @Test
+    public void testUnlimitedWalkDistance() {
+        RoutingRequest options = buildRequest("769651", "769653", false);
+        options.maxWalkDistance = Double.MAX_VALUE;
+        List<GraphPath> paths = new RaptorSearch(options).getPaths(0);
+        assertFalse(paths.isEmpty());
+        assertFalse(paths.get(0).getTrips().isEmpty());
+    }
+
+    // A timeout that has passed before the first round gives no paths rather than an unbounded search
+    @Test
+    public void testTimeoutDuringAccessWalk() {
+        RoutingRequest options = buildRequest("769651", "769653", false);
+        assertTrue(new RaptorSearch(options).getPaths(1e-9).isEmpty());
+    }
+
+    @Test
+    public void testArriveByNotSupported() {
+        RoutingRequest options = buildRequest("769651", "769653", true);
+        assertFalse(RaptorSearch.supports(options));
+    }
+
+    private static Vertex findStop(Graph graph, String stopId) {
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof TransitStop && ((TransitStop) v).getStopId().getId().equals(stopId)) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    private RoutingRequest buildRequest(String from, String to, boolean arriveBy) {
+        String feedId = graph.getFeedIds().iterator().next();
+        Vertex fromVertex = graph.getVertex(feedId + ":" + from);
+        Vertex toVertex = graph.getVertex(feedId + ":" + to);
+        RoutingRequest options = new RoutingRequest();
+        options.maxWalkDistance = 804;
+        options.setArriveBy(arriveBy);
+        options.dateTime = TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 6, 0, 0);
+        options.setRoutingContext(graph, fromVertex, toVertex);
+        return options;
+    }
+
+}
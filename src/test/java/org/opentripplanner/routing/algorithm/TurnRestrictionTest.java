@@ -103,6 +103,24 @@ public class TurnRestrictionTest {
         assertFalse(_graph.getTurnRestrictions(maple_main1).isEmpty());
         assertTrue(_graph.getTurnRestrictions(broad1_2).isEmpty());
     }
+
+    @Test
+    public void testEdgeTurnRestrictionsFollowGraph() {
+        assertTrue(maple_main1.hasTurnRestrictions());
+        assertFalse(broad1_2.hasTurnRestrictions());
+
+        TurnRestriction restriction = _graph.getTurnRestrictions(maple_main1).get(0);
+        _graph.removeTurnRestriction(maple_main1, restriction);
+        assertFalse(maple_main1.hasTurnRestrictions());
+
+        _graph.addTurnRestriction(maple_main1, restriction);
+        assertTrue(maple_main1.hasTurnRestrictions());
+
+        // Removing the edge a restriction leads to removes the restriction from the edge it starts on
+        _graph.removeEdge(restriction.to);
+        assertTrue(_graph.getTurnRestrictions(maple_main1).isEmpty());
+        assertFalse(maple_main1.hasTurnRestrictions());
+    }
     
     @Test
     public void testForwardDefault() {
@@ -0,0 +1,161 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.graph_builder.module.StreetLandmarkModule;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.OptimizeType;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LandmarkRemainingWeightHeuristicTest {
+
+    private static final int SIZE = 6;
+
+    private Graph graph;
+
+    private IntersectionVertex[][] grid;
+
+    /**
+     * A grid of two-way streets. The outer ring is a cycleway, much safer than the other streets, and the middle row is
+     * a fast road. This makes the cheapest bicycle and car routes differ from the shortest ones.
+     */
+    @Before
+    public void before() {
+        graph = new Graph();
+        grid = new IntersectionVertex[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                grid[x][y] = new IntersectionVertex(graph, "v" + x + "_" + y, 0.002 * x, 0.002 * y);
+            }
+        }
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                if (x + 1 < SIZE) {
+                    street(grid[x][y], grid[x + 1][y], y == 0 || y == SIZE - 1, y == SIZE / 2);
+                }
+                if (y + 1 < SIZE) {
+                    street(grid[x][y], grid[x][y + 1], x == 0 || x == SIZE - 1, false);
+                }
+            }
+        }
+        graph.hasStreets = true;
+        new StreetLandmarkModule(2).buildGraph(graph, new HashMap<>());
+        assertNotNull(graph.streetLandmarks);
+    }
+
+    private void street(IntersectionVertex a, IntersectionVertex b, boolean cycleway, boolean fast) {
+        LineString geometry = GeometryUtils.getGeometryFactory().createLineString(
+                new Coordinate[] { a.getCoordinate(), b.getCoordinate() });
+        double length = SphericalDistanceLibrary.distance(a.getCoordinate(), b.getCoordinate());
+        for (boolean back : new boolean[] { false, true }) {
+            StreetEdge edge = back
+                    ? new StreetEdge(b, a, (LineString) geometry.reverse(), "street", length,
+                            StreetTraversalPermission.ALL, true)
+                    : new StreetEdge(a, b, geometry, "street", length, StreetTraversalPermission.ALL, false);
+            edge.setBicycleSafetyFactor(cycleway ? 0.6f : 1.5f);
+            edge.setCarSpeed(fast ? 30f : 8f);
+        }
+    }
+
+    @Test
+    public void testWalk() {
+        assertSameWeights(request("WALK"));
+    }
+
+    @Test
+    public void testBicycle() {
+        for (OptimizeType optimize : new OptimizeType[] { OptimizeType.SAFE, OptimizeType.QUICK, OptimizeType.GREENWAYS,
+                OptimizeType.TRIANGLE }) {
+            RoutingRequest options = request("BICYCLE");
+            options.optimize = optimize;
+            if (optimize == OptimizeType.TRIANGLE) {
+                options.setTriangleNormalized(0.5, 0, 0.5);
+            }
+            assertSameWeights(options);
+        }
+    }
+
+    @Test
+    public void testCar() {
+        assertSameWeights(request("CAR"));
+    }
+
+    /** The weight per meter must not exceed that of the cheapest edge, whatever the mode. */
+    @Test
+    public void testWeightPerMeterIsLowerBound() {
+        StreetLandmarks.EdgeBounds bounds = graph.streetLandmarks.getEdgeBounds();
+        assertEquals(30, bounds.maxCarSpeed, 1e-6);
+        assertEquals(0.6, bounds.minBicycleSafetyFactor, 1e-6);
+
+        RoutingRequest bicycle = request("BICYCLE");
+        bicycle.optimize = OptimizeType.SAFE;
+        double perMeter = LandmarkRemainingWeightHeuristic.minWeightPerMeter(bicycle, bounds);
+        assertTrue(perMeter <= 0.6 / bicycle.bikeSpeed);
+        // walkReluctance does not apply to cycling
+        assertTrue(perMeter < bicycle.walkReluctance / bicycle.bikeSpeed);
+
+        RoutingRequest car = request("CAR");
+        assertTrue(LandmarkRemainingWeightHeuristic.minWeightPerMeter(car, bounds) <= 1 / 30.0);
+    }
+
+    private RoutingRequest request(String modes) {
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet(modes));
+        options.setWalkReluctance(2);
+        return options;
+    }
+
+    /** Route between opposite corners and across the grid, with and without the landmark heuristic. */
+    private void assertSameWeights(RoutingRequest proto) {
+        int[][] pairs = { { 0, 0, SIZE - 1, SIZE - 1 }, { 1, 1, SIZE - 2, SIZE - 1 }, { SIZE - 1, 1, 0, SIZE - 2 },
+                { 2, 0, 3, SIZE - 1 } };
+        for (int[] pair : pairs) {
+            IntersectionVertex from = grid[pair[0]][pair[1]];
+            IntersectionVertex to = grid[pair[2]][pair[3]];
+
+            RoutingRequest dijkstra = proto.clone();
+            dijkstra.setRoutingContext(graph, from, to);
+            dijkstra.rctx.remainingWeightHeuristic = new TrivialRemainingWeightHeuristic();
+            GraphPath expected = new AStar().getShortestPathTree(dijkstra).getPath(to, false);
+
+            RoutingRequest landmark = proto.clone();
+            landmark.setRoutingContext(graph, from, to);
+            landmark.rctx.remainingWeightHeuristic = new LandmarkRemainingWeightHeuristic(graph.streetLandmarks);
+            GraphPath actual = new AStar().getShortestPathTree(landmark).getPath(to, false);
+
+            assertNotNull(expected);
+            assertNotNull(actual);
+            assertEquals(expected.getWeight(), actual.getWeight(), 1e-6);
+        }
+    }
+
+}
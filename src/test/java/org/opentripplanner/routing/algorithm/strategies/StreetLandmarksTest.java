@@ -0,0 +1,57 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.junit.Test;
+import org.opentripplanner.routing.algorithm.strategies.StreetLandmarks.StreetMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Vertex;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StreetLandmarksTest {
+
+    @Test
+    public void testCovers() {
+        assertTrue(StreetMode.WALK.covers(new TraverseModeSet("WALK")));
+        assertFalse(StreetMode.WALK.covers(new TraverseModeSet("BICYCLE,WALK")));
+        assertTrue(StreetMode.BICYCLE.covers(new TraverseModeSet("BICYCLE")));
+        assertTrue(StreetMode.BICYCLE.covers(new TraverseModeSet("BICYCLE,WALK")));
+        assertTrue(StreetMode.BICYCLE.covers(new TraverseModeSet("WALK")));
+        assertFalse(StreetMode.CAR.covers(new TraverseModeSet("CAR,WALK")));
+        assertTrue(StreetMode.CAR.covers(new TraverseModeSet("CAR")));
+        assertFalse(StreetMode.CAR.covers(new TraverseModeSet("TRANSIT")));
+    }
+
+    @Test
+    public void testMostRestrictiveDistancesAreUsed() {
+        StreetLandmarks landmarks = new StreetLandmarks(new Vertex[0]);
+        StreetLandmarks.Distances walk = new StreetLandmarks.Distances(new Vertex[0], new float[0][], new float[0][]);
+        StreetLandmarks.Distances bicycle = new StreetLandmarks.Distances(new Vertex[0], new float[0][], new float[0][]);
+        landmarks.setDistances(StreetMode.BICYCLE, bicycle);
+
+        // walking can be bounded by the distances over the edges open to bicycles or pedestrians...
+        assertSame(bicycle, landmarks.getDistances(new TraverseModeSet("WALK")));
+        // ...but tighter bounds are used when available
+        landmarks.setDistances(StreetMode.WALK, walk);
+        assertSame(walk, landmarks.getDistances(new TraverseModeSet("WALK")));
+        assertSame(bicycle, landmarks.getDistances(new TraverseModeSet("BICYCLE,WALK")));
+        assertNull(landmarks.getDistances(new TraverseModeSet("CAR")));
+        assertNull(landmarks.getDistances(new TraverseModeSet("CAR,WALK")));
+    }
+}
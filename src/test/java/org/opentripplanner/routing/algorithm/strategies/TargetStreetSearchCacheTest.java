@@ -0,0 +1,62 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.algorithm.strategies;
+
+import org.junit.Test;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TargetStreetSearchCacheTest {
+
+    @Test
+    public void testInvalidate() {
+        TargetStreetSearchCache cache = new TargetStreetSearchCache();
+        List<Object> key = Arrays.asList("target", 1.0);
+        TargetStreetSearchCache.Result result = new TargetStreetSearchCache.Result();
+
+        assertNull(cache.get(key));
+        long generation = cache.getGeneration();
+        cache.put(key, result, generation);
+        assertSame(result, cache.get(key));
+        assertSame(result, cache.get(Arrays.asList("target", 1.0)));
+
+        cache.invalidate();
+        assertNull(cache.get(key));
+
+        // A search that started before the invalidation must not store its result
+        cache.put(key, result, generation);
+        assertNull(cache.get(key));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testKeyForUncacheableRequests() {
+        RoutingRequest request = new RoutingRequest(new TraverseModeSet("CAR,TRANSIT"));
+        assertNull(TargetStreetSearchCache.keyFor(request));
+
+        request = new RoutingRequest(new TraverseModeSet("WALK,TRANSIT"));
+        request.allowBikeRental = true;
+        assertNull(TargetStreetSearchCache.keyFor(request));
+    }
+}
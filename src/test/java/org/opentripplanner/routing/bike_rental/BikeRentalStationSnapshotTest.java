@@ -0,0 +1,97 @@
+package org.opentripplanner.routing.bike_rental;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BikeRentalStationSnapshotTest {
+
+    @Test
+    public void changesMakeANewSnapshot() {
+        BikeRentalStation dock = station("dock", 10.0, 59.0, false);
+        BikeRentalStation other = station("other", 10.01, 59.0, false);
+        BikeRentalStationSnapshot snapshot = new BikeRentalStationSnapshot(Arrays.asList(dock, other));
+
+        BikeRentalStation updatedDock = station("dock", 10.0, 59.0, false);
+        updatedDock.bikesAvailable = 0;
+        BikeRentalStationSnapshot updated = snapshot.withChanges(Collections.singletonList(updatedDock),
+                Collections.singletonList(other));
+
+        assertSame(dock, snapshot.getStation("dock"));
+        assertSame(other, snapshot.getStation("other"));
+        assertEquals(2, snapshot.getStations().size());
+        assertSame(updatedDock, updated.getStation("dock"));
+        assertNull(updated.getStation("other"));
+        assertEquals(1, updated.getStations().size());
+    }
+
+    @Test
+    public void findsFloatingBikesNearby() {
+        BikeRentalStation near = station("near", 10.001, 59.0, true);
+        BikeRentalStation far = station("far", 10.1, 59.0, true);
+        BikeRentalStation dock = station("dock", 10.0, 59.0, false);
+        BikeRentalStationSnapshot snapshot = new BikeRentalStationSnapshot(Arrays.asList(near, far, dock));
+        Coordinate origin = new Coordinate(10.0, 59.0);
+
+        List<BikeRentalStation> bikes = snapshot.getFloatingBikesNear(origin, 500);
+        assertEquals(Collections.singletonList(near), bikes);
+
+        // move the nearby bike away
+        BikeRentalStation moved = station("near", 10.05, 59.0, true);
+        BikeRentalStationSnapshot updated = snapshot.withChanges(Collections.singletonList(moved),
+                Collections.emptyList());
+        assertEquals(0, updated.getFloatingBikesNear(origin, 500).size());
+        assertEquals(1, snapshot.getFloatingBikesNear(origin, 500).size());
+    }
+
+    @Test
+    public void onlyChangedFloatingBikesAreReindexed() {
+        BikeRentalStation parked = station("parked", 10.001, 59.0, true);
+        BikeRentalStation moving = station("moving", 10.002, 59.0, true);
+        BikeRentalStation removed = station("removed", 10.0, 59.001, true);
+        BikeRentalStationSnapshot snapshot = new BikeRentalStationSnapshot(Arrays.asList(parked, moving, removed));
+        Coordinate origin = new Coordinate(10.0, 59.0);
+        Coordinate elsewhere = new Coordinate(10.5, 59.5);
+
+        // move one bike across many cells of the grid and take another one out of service
+        BikeRentalStation moved = station("moving", 10.5, 59.5, true);
+        BikeRentalStationSnapshot updated = snapshot.withChanges(Collections.singletonList(moved),
+                Collections.singletonList(removed));
+
+        assertEquals(Collections.singletonList(parked), updated.getFloatingBikesNear(origin, 500));
+        assertEquals(Collections.singletonList(moved), updated.getFloatingBikesNear(elsewhere, 500));
+        assertEquals(2, updated.getStations().size());
+        assertEquals(3, snapshot.getFloatingBikesNear(origin, 500).size());
+        assertEquals(0, snapshot.getFloatingBikesNear(elsewhere, 500).size());
+    }
+
+    @Test
+    public void findsFloatingBikesInEnvelope() {
+        BikeRentalStation inside = station("inside", 10.001, 59.001, true);
+        BikeRentalStation outside = station("outside", 10.1, 59.0, true);
+        BikeRentalStation dock = station("dock", 10.002, 59.002, false);
+        BikeRentalStationSnapshot snapshot = new BikeRentalStationSnapshot(Arrays.asList(inside, outside, dock));
+
+        Envelope envelope = new Envelope(new Coordinate(10.0, 59.0), new Coordinate(10.01, 59.01));
+        assertEquals(Collections.singletonList(inside), snapshot.getFloatingBikesInEnvelope(envelope));
+    }
+
+    private static BikeRentalStation station(String id, double x, double y, boolean floating) {
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = id;
+        station.x = x;
+        station.y = y;
+        station.bikesAvailable = 5;
+        station.spacesAvailable = 5;
+        station.isFloatingBike = floating;
+        return station;
+    }
+}
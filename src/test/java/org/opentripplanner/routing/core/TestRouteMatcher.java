@@ -13,6 +13,8 @@
 
 package org.opentripplanner.routing.core;
 
+import java.util.Collections;
+
 import junit.framework.TestCase;
 
 import org.opentripplanner.model.AgencyAndId;
@@ -103,4 +105,27 @@ public class TestRouteMatcher extends TestCase {
         assertFalse(matcherR1c2.matches(r1b));
     }
 
+    public void testPlusRouteIds() {
+        Route r1 = new Route();
+        r1.setId(new AgencyAndId("A1", "42"));
+        r1.setShortName("R1");
+        Route r2 = new Route();
+        r2.setId(new AgencyAndId("A1", "43"));
+        r2.setShortName("R2");
+
+        RouteMatcher emptyMatcher = RouteMatcher.emptyMatcher();
+        RouteMatcher matcherR2 = emptyMatcher.plusRouteIds(Collections.singleton(r2.getId()));
+        assertTrue(matcherR2.matches(r2));
+        assertFalse(matcherR2.matches(r1));
+        // The original matcher is left unchanged
+        assertFalse(emptyMatcher.matches(r2));
+        assertSame(emptyMatcher, emptyMatcher.plusRouteIds(Collections.emptySet()));
+
+        RouteMatcher matcherR1n = RouteMatcher.parse("_R1");
+        RouteMatcher matcherR1nR2 = matcherR1n.plusRouteIds(Collections.singleton(r2.getId()));
+        assertTrue(matcherR1nR2.matches(r1));
+        assertTrue(matcherR1nR2.matches(r2));
+        assertFalse(matcherR1n.matches(r2));
+    }
+
 }
@@ -213,6 +213,34 @@ public class TimetableSnapshotTest {
         snapshot.commit();
     }
 
+    @Test
+    public void testClearAfterCommit() {
+        ServiceDate today = new ServiceDate();
+        TripPattern pattern = patternIndex.get(new AgencyAndId("agency", "1.1"));
+
+        TripDescriptor.Builder tripDescriptorBuilder = TripDescriptor.newBuilder();
+        tripDescriptorBuilder.setTripId("1.1");
+        tripDescriptorBuilder.setScheduleRelationship(ScheduleRelationship.CANCELED);
+        TripUpdate.Builder tripUpdateBuilder = TripUpdate.newBuilder();
+        tripUpdateBuilder.setTrip(tripDescriptorBuilder);
+        TripUpdate tripUpdate = tripUpdateBuilder.build();
+
+        String feedId = pattern.getFeedId();
+        TimetableSnapshot resolver = new TimetableSnapshot();
+        assertTrue(updateResolver(resolver, pattern, tripUpdate, feedId, today));
+        TimetableSnapshot snapshot = resolver.commit();
+        Timetable updated = snapshot.resolve(pattern, today);
+        assertNotSame(pattern.scheduledTimetable, updated);
+
+        // clearing the feed in the buffer must not affect the committed snapshot, which shares its maps
+        resolver.clear(feedId);
+        assertTrue(resolver.isDirty());
+        assertEquals(pattern.scheduledTimetable, resolver.resolve(pattern, today));
+        assertEquals(updated, snapshot.resolve(pattern, today));
+        assertEquals(pattern, snapshot.getLastAddedTripPattern(feedId, "1.1", today));
+        assertNull(resolver.getLastAddedTripPattern(feedId, "1.1", today));
+    }
+
     @Test
     public void testPurge() {
         ServiceDate today = new ServiceDate();
@@ -14,13 +14,16 @@
 package org.opentripplanner.routing.edgetype;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.calendar.impl.CalendarServiceDataFactoryImpl.createCalendarServiceData;
 import static org.opentripplanner.gtfs.GtfsContextBuilder.contextBuilder;
 import static org.opentripplanner.util.TestUtils.AUGUST;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.TimeZone;
 
@@ -88,6 +91,61 @@ public class TimetableTest {
         timetable = pattern.scheduledTimetable;
     }
 
+    @Test
+    public void testGetDeparturesFrom() {
+        int time = timetable.getTripTimes(0).getDepartureTime(0);
+
+        int expected = 0;
+        for (TripTimes tt : timetable.tripTimes) {
+            if (tt.getDepartureTime(0) >= time) expected++;
+        }
+
+        Iterator<TripTimes> departures = timetable.getDeparturesFrom(0, time);
+        assertNotNull(departures);
+        int found = 0;
+        int previous = time;
+        while (departures.hasNext()) {
+            int departure = departures.next().getDepartureTime(0);
+            assertTrue(departure >= previous);
+            previous = departure;
+            found++;
+        }
+        assertEquals(expected, found);
+
+        assertFalse(timetable.getDeparturesFrom(0, previous + 1).hasNext());
+    }
+
+    @Test
+    public void testGetDeparturesFromUpdatedCopy() {
+        Timetable copy = new Timetable(timetable, serviceDate);
+        TripTimes first = timetable.getTripTimes(0);
+        int last = 0;
+        for (TripTimes tt : timetable.tripTimes) {
+            last = Math.max(last, tt.getDepartureTime(0));
+        }
+        // Move the first trip after all the others, which must not change the order in the scheduled timetable
+        TripTimes delayed = first.timeShiftClone(0, last + 60, true);
+        copy.setTripTimes(0, delayed);
+        int expected = 0;
+        for (TripTimes tt : copy.tripTimes) {
+            if (tt.getDepartureTime(0) >= first.getDepartureTime(0)) expected++;
+        }
+
+        Iterator<TripTimes> departures = copy.getDeparturesFrom(0, first.getDepartureTime(0));
+        assertNotNull(departures);
+        TripTimes previous = null;
+        int found = 0;
+        while (departures.hasNext()) {
+            previous = departures.next();
+            assertTrue(previous != first);
+            found++;
+        }
+        assertEquals(delayed, previous);
+        assertEquals(expected, found);
+
+        assertEquals(first, timetable.getDeparturesFrom(0, first.getDepartureTime(0)).next());
+    }
+
     @Test
     public void testUpdate() {
         TripUpdate tripUpdate;
@@ -9,20 +9,27 @@ import org.locationtech.jts.geom.Polygon;
 import org.opentripplanner.ConstantsForTests;
 import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
+import org.opentripplanner.graph_builder.module.FakeGraph;
 import org.opentripplanner.model.AgencyAndId;
+import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.trippattern.Deduplicator;
 import org.opentripplanner.routing.vertextype.TransitStation;
 import org.opentripplanner.standalone.datastore.FileType;
 import org.opentripplanner.standalone.datastore.file.FileDataSource;
+import org.opentripplanner.util.monitoring.MonitoringStore;
+import org.opentripplanner.util.monitoring.MonitoringStoreFactory;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 
 /**
@@ -61,6 +68,38 @@ public class GraphSerializationTest {
         assertNoDifferences(copiedGraph1, copiedGraph2);
     }
 
+    /**
+     * Tests that a graph saved in the columnar format loads with the same vertices and edges, and that it can be saved
+     * again in the Kryo format, which requires copying the street geometries out of the mapped file.
+     */
+    @Test
+    public void testColumnarRoundTrip () throws Exception {
+        Graph originalGraph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addTransit(originalGraph);
+        FakeGraph.link(originalGraph);
+        // Edgeless vertices do not survive Kryo serialization.
+        originalGraph.removeEdgelessVertices();
+        originalGraph.index(new DefaultStreetVertexIndexFactory());
+
+        File columnarFile = TempFile.createTempFile("graph", "columbus");
+        originalGraph.save(new FileDataSource(columnarFile, FileType.GRAPH), GraphFileFormat.COLUMNAR);
+        Graph columnarGraph = Graph.load(columnarFile);
+        assertSameEdges(originalGraph, columnarGraph);
+
+        File kryoFile = TempFile.createTempFile("graph", "columbus");
+        columnarGraph.save(new FileDataSource(kryoFile, FileType.GRAPH));
+        columnarFile.delete();
+        Graph kryoGraph = Graph.load(kryoFile);
+        assertSameEdges(originalGraph, kryoGraph);
+
+        // Each load phase reports its counters.
+        MonitoringStore store = MonitoringStoreFactory.getStore();
+        assertEquals(kryoGraph.countEdges(), store.getLong("graphLoad.edgeLists.count").intValue());
+        assertNotNull(store.getLong("graphLoad.deserialize.millis"));
+        assertNotNull(store.getLong("graphLoad.streetIndex.millis"));
+        assertNotNull(store.getLong("graphLoad.luceneIndex.millis"));
+    }
+
     // Ideally we'd also test comparing two separate but identical complex graphs, built separately from the same inputs.
     // A test that builds the same graph twice will currently fail for the following reasons:
     // There is global state in Vertex.index and the feeds IDs that mean if you build the same graph twice the feed IDs
@@ -111,6 +150,42 @@ public class GraphSerializationTest {
         assertNoDifferences(graph1, graph2);
     }
 
+    /** Compare the edges of two graphs vertex by vertex. The outgoing edges are expected in the same order. */
+    private static void assertSameEdges (Graph g1, Graph g2) {
+        assertEquals(g1.countVertices(), g2.countVertices());
+        assertEquals(g1.countEdges(), g2.countEdges());
+        for (Vertex v1 : g1.getVertices()) {
+            Vertex v2 = g2.getVertex(v1.getLabel());
+            assertNotNull(v2);
+            assertEquals(v1.getClass(), v2.getClass());
+            assertEquals(v1.getCoordinate(), v2.getCoordinate());
+            assertEquals(v1.getDegreeIn(), v2.getDegreeIn());
+            List<Edge> outgoing1 = new ArrayList<>(v1.getOutgoing());
+            List<Edge> outgoing2 = new ArrayList<>(v2.getOutgoing());
+            assertEquals(outgoing1.size(), outgoing2.size());
+            for (int i = 0; i < outgoing1.size(); i++) {
+                Edge e1 = outgoing1.get(i);
+                Edge e2 = outgoing2.get(i);
+                assertEquals(e1.getClass(), e2.getClass());
+                assertEquals(e1.getToVertex().getLabel(), e2.getToVertex().getLabel());
+                assertEquals(e1.getName(), e2.getName());
+                assertEquals(e1.getDistance(), e2.getDistance(), 0.0);
+                assertEquals(e1.getGeometry(), e2.getGeometry());
+                if (e1 instanceof StreetEdge) {
+                    StreetEdge se1 = (StreetEdge) e1;
+                    StreetEdge se2 = (StreetEdge) e2;
+                    assertEquals(se1.getPermission(), se2.getPermission());
+                    assertEquals(se1.getStreetClass(), se2.getStreetClass());
+                    assertEquals(se1.getCarSpeed(), se2.getCarSpeed(), 0.0f);
+                    assertEquals(se1.isBack(), se2.isBack());
+                    assertEquals(se1.getInAngle(), se2.getInAngle());
+                    assertEquals(se1.getOutAngle(), se2.getOutAngle());
+                    assertEquals(se1.wayId, se2.wayId);
+                }
+            }
+        }
+    }
+
     private static void assertNoDifferences (Graph g1, Graph g2) {
         // Make some exclusions because some classes are inherently transient or contain unordered lists we can't yet compare.
         ObjectDiffer objectDiffer = new ObjectDiffer();
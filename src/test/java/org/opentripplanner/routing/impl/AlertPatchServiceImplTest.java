@@ -18,11 +18,20 @@ import org.junit.Test;
 import org.opentripplanner.model.AgencyAndId;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.SimpleConcreteEdge;
+import org.opentripplanner.routing.graph.SimpleConcreteVertex;
+import org.opentripplanner.routing.graph.Vertex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
 
@@ -30,11 +39,19 @@ public class AlertPatchServiceImplTest {
     private class TestAlertPatch extends AlertPatch {
         private static final long serialVersionUID = 1L;
 
+        /** The edges this patch applies to. */
+        private final List<Edge> edges = new ArrayList<>();
+
         @Override
         public void apply(Graph graph) {
             // NO-OP
         }
 
+        @Override
+        public void applyToEdges(Graph graph, Consumer<Edge> edges) {
+            this.edges.forEach(edges);
+        }
+
         @Override
         public void remove(Graph graph) {
             // NO-OP
@@ -137,4 +154,58 @@ public class AlertPatchServiceImplTest {
         assertEquals(1, instance.getAllAlertPatches().size());
         assertTrue(instance.getAllAlertPatches().contains(alerts[0]));
     }
+
+    @Test
+    public void testReadersSeeSnapshot() {
+        AlertPatchServiceImpl instance = getAlertPatchServiceImpl();
+        instance.apply(alerts[0]);
+
+        Collection<AlertPatch> routePatches = instance.getRoutePatches(testRoute);
+        Collection<AlertPatch> allPatches = instance.getAllAlertPatches();
+
+        instance.apply(alerts[2]);
+        instance.expire(Collections.singleton(alerts[0].getId()));
+
+        assertEquals(Collections.singleton(alerts[0]), new HashSet<>(routePatches));
+        assertEquals(Collections.singleton(alerts[0]), new HashSet<>(allPatches));
+        assertTrue(instance.getRoutePatches(testRoute).isEmpty());
+        assertEquals(Collections.singleton(alerts[2]), new HashSet<>(instance.getAllAlertPatches()));
+    }
+
+    @Test
+    public void testUpdateIsPublishedOnce() {
+        AlertPatchServiceImpl instance = getAlertPatchServiceImpl();
+        instance.apply(alerts[0]);
+        Collection<AlertPatch> before = instance.getAllAlertPatches();
+
+        instance.update(Collections.singleton(alerts[0].getId()), Arrays.asList(alerts[1], alerts[2]));
+
+        assertEquals(Collections.singleton(alerts[0]), new HashSet<>(before));
+        assertEquals(new HashSet<>(Arrays.asList(alerts[1], alerts[2])),
+                new HashSet<>(instance.getAllAlertPatches()));
+        assertEquals(Collections.singleton(alerts[2]), new HashSet<>(instance.getRoutePatches(testRoute)));
+    }
+
+    @Test
+    public void testEdgePatchesAreSwappedWithTheOtherIndexes() {
+        Graph graph = new Graph();
+        Vertex vertex0 = new SimpleConcreteVertex(graph, "Vertex 0", 0, 0);
+        Vertex vertex1 = new SimpleConcreteVertex(graph, "Vertex 1", 0, 1);
+        Edge edge = new SimpleConcreteEdge(vertex0, vertex1);
+        alerts[0].edges.add(edge);
+        alerts[3].edges.add(edge);
+
+        AlertPatchServiceImpl instance = new AlertPatchServiceImpl(graph);
+        instance.apply(alerts[0]);
+        AlertPatch[] patches = graph.getAlertPatches(edge);
+        assertArrayEquals(new AlertPatch[] { alerts[0] }, patches);
+
+        instance.update(Collections.singleton(alerts[0].getId()), Collections.singletonList(alerts[3]));
+        assertArrayEquals(new AlertPatch[] { alerts[3] }, graph.getAlertPatches(edge));
+        // the array returned before the update is not modified
+        assertArrayEquals(new AlertPatch[] { alerts[0] }, patches);
+
+        instance.expireAll();
+        assertEquals(0, graph.getAlertPatches(edge).length);
+    }
 }
@@ -0,0 +1,56 @@
+package org.opentripplanner.routing.impl;
+
+import org.junit.Test;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.model.AgencyAndId;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.standalone.Router;
+import org.opentripplanner.util.TestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class GraphPathFinderTest {
+
+    private Graph graph = ConstantsForTests.getInstance().getVermontGraph();
+
+    private GraphPathFinder finder = new GraphPathFinder(new Router("default", graph));
+
+    // The parallel searches start from the same first itinerary and include what the second sequential search, which
+    // only bans the trips of the first itinerary, finds.
+    @Test
+    public void testParallelItinerariesIncludeSequentialOnes() {
+        List<GraphPath> sequential = finder.getPaths(buildRequest(false));
+        List<GraphPath> parallel = finder.getPaths(buildRequest(true));
+        assertTrue(sequential.size() >= 2);
+        assertFalse(parallel.isEmpty());
+
+        Set<List<AgencyAndId>> parallelTrips = new HashSet<>();
+        for (GraphPath path : parallel) {
+            // No two parallel itineraries use the same trips
+            assertTrue(parallelTrips.add(path.getTrips()));
+        }
+        assertTrue(parallelTrips.contains(sequential.get(0).getTrips()));
+        assertTrue(parallelTrips.contains(sequential.get(1).getTrips()));
+    }
+
+    private RoutingRequest buildRequest(boolean parallelItineraries) {
+        String feedId = graph.getFeedIds().iterator().next();
+        Vertex fromVertex = graph.getVertex(feedId + ":769651");
+        Vertex toVertex = graph.getVertex(feedId + ":769653");
+        RoutingRequest options = new RoutingRequest();
+        options.maxWalkDistance = 804;
+        options.numItineraries = 3;
+        options.parallelItineraries = parallelItineraries;
+        options.dateTime = TestUtils.dateInSeconds("America/New_York", 2018, 4, 23, 6, 0, 0);
+        options.setRoutingContext(graph, fromVertex, toVertex);
+        return options;
+    }
+
+}
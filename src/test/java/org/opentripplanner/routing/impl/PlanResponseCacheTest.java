@@ -0,0 +1,136 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.impl;
+
+import org.junit.Test;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingContext;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PlanResponseCacheTest {
+
+    private final PlanResponseCache cache = new PlanResponseCache(100, 60, 60);
+
+    private static RoutingRequest request(double fromLat, long dateTime) {
+        RoutingRequest request = new RoutingRequest();
+        request.from = new GenericLocation(fromLat, 10.75);
+        request.to = new GenericLocation(59.95, 10.80);
+        request.dateTime = dateTime;
+        return request;
+    }
+
+    @Test
+    public void testKeyNormalization() {
+        List<Object> key = cache.keyFor("plan", request(59.91, 1200));
+        // same time bucket, origin less than a meter away
+        assertEquals(key, cache.keyFor("plan", request(59.910001, 1230)));
+        assertFalse(key.equals(cache.keyFor("plan", request(59.91, 1260))));
+        assertFalse(key.equals(cache.keyFor("plan", request(59.9101, 1200))));
+        assertFalse(key.equals(cache.keyFor("transmodel", request(59.91, 1200))));
+
+        RoutingRequest slower = request(59.91, 1200);
+        slower.walkSpeed = 1;
+        assertFalse(key.equals(cache.keyFor("plan", slower)));
+
+        // the names of the places are returned in the plan
+        RoutingRequest home = request(59.91, 1200);
+        home.from = new GenericLocation("Home", null, 59.91, 10.75);
+        RoutingRequest work = request(59.91, 1200);
+        work.from = new GenericLocation("Work", null, 59.91, 10.75);
+        assertFalse(cache.keyFor("plan", home).equals(cache.keyFor("plan", work)));
+
+        // strategy objects are made anew for each request, but only their class matters
+        RoutingRequest clone = request(59.91, 1200).clone();
+        assertEquals(key, cache.keyFor("plan", clone));
+    }
+
+    @Test
+    public void testRealtimeDependentRequestsAreNotCached() {
+        RoutingRequest request = request(59.91, 1200);
+        request.allowBikeRental = true;
+        assertNull(cache.keyFor("plan", request));
+    }
+
+    private static Itinerary itinerary(long startTime, long endTime) {
+        Itinerary itinerary = new Itinerary();
+        itinerary.startTime = Calendar.getInstance();
+        itinerary.startTime.setTimeInMillis(startTime * 1000);
+        itinerary.endTime = Calendar.getInstance();
+        itinerary.endTime.setTimeInMillis(endTime * 1000);
+        return itinerary;
+    }
+
+    @Test
+    public void testInvalidationOnNewRealtimeState() {
+        RoutingRequest request = request(59.91, 1200);
+        List<Object> key = cache.keyFor("plan", request);
+        TripPlan plan = new TripPlan();
+        List<Object> snapshot = Collections.singletonList(new Object());
+        cache.put(key, plan, snapshot, request);
+
+        assertSame(plan, cache.get(key, snapshot, request));
+        RoutingRequest later = request(59.91, 1210);
+        assertNotNull(cache.get(cache.keyFor("plan", later), Arrays.asList(snapshot.get(0)), later));
+        assertNull(cache.get(key, Collections.singletonList(new Object()), request));
+        // the stale entry is gone for good
+        assertNull(cache.get(key, snapshot, request));
+    }
+
+    @Test
+    public void testItinerariesBeforeTheRequestedTimeAreLeftOut() {
+        RoutingRequest request = request(59.91, 1200);
+        List<Object> key = cache.keyFor("plan", request);
+        TripPlan plan = new TripPlan();
+        plan.addItinerary(itinerary(1220, 1800));
+        plan.addItinerary(itinerary(1250, 1700));
+        List<Object> snapshot = Collections.singletonList(new Object());
+        cache.put(key, plan, snapshot, request);
+
+        RoutingRequest later = request(59.91, 1230);
+        TripPlan laterPlan = cache.get(key, snapshot, later);
+        assertEquals(Collections.singletonList(plan.itinerary.get(1)), laterPlan.itinerary);
+        assertEquals(1230 * 1000, laterPlan.date.getTime());
+        // the cached plan is not modified
+        assertEquals(2, plan.itinerary.size());
+
+        // nothing left at this time, so the request must be searched for
+        assertNull(cache.get(key, snapshot, request(59.91, 1255)));
+    }
+
+    @Test
+    public void testIncompleteSearchesAreNotCached() {
+        RoutingRequest request = request(59.91, 1200);
+        request.rctx = new RoutingContext(request, new Graph(), null, null);
+        request.rctx.debugOutput.timedOut = true;
+        List<Object> key = cache.keyFor("plan", request);
+        List<Object> snapshot = Collections.singletonList(new Object());
+        cache.put(key, new TripPlan(), snapshot, request);
+        assertNull(cache.get(key, snapshot, request));
+    }
+}
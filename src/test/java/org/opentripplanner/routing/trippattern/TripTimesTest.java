@@ -15,6 +15,7 @@ package org.opentripplanner.routing.trippattern;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -148,6 +149,52 @@ public class TripTimesTest {
         assertEquals(6 * 60 + 13, updatedTripTimesA.getArrivalTime(6));
     }
 
+    private static TripTimes tripTimes(String id, int start, int dwell) {
+        Trip trip = new Trip();
+        trip.setId(new AgencyAndId("agency", id));
+        List<StopTime> stopTimes = new LinkedList<StopTime>();
+        for (int i = 0; i < stops.length; ++i) {
+            StopTime stopTime = new StopTime();
+            Stop stop = new Stop();
+            stop.setId(stops[i]);
+            stopTime.setStop(stop);
+            stopTime.setArrivalTime(start + i * 60);
+            stopTime.setDepartureTime(start + i * 60 + dwell);
+            stopTime.setStopSequence(i);
+            stopTimes.add(stopTime);
+        }
+        return new TripTimes(trip, stopTimes, new Deduplicator());
+    }
+
+    @Test
+    public void testShareScheduledTimes() {
+        TripTimes early = tripTimes("early", 0, 0);
+        TripTimes late = tripTimes("late", 600, 0);
+        TripTimes dwelling = tripTimes("dwelling", 1200, 30);
+        List<TripTimes> trips = Arrays.asList(early, late, dwelling);
+
+        int[] shared = TripTimes.shareScheduledTimes(trips);
+        // the times relative to the first arrival are the same for all, except the departures of the dwelling trip
+        assertEquals(2 * stops.length, shared.length);
+        assertSame(shared, TripTimes.shareScheduledTimes(trips));
+        for (int i = 0; i < stops.length; i++) {
+            assertEquals(i * 60, early.getDepartureTime(i));
+            assertEquals(600 + i * 60, late.getArrivalTime(i));
+            assertEquals(1200 + i * 60, dwelling.getArrivalTime(i));
+            assertEquals(1200 + i * 60 + 30, dwelling.getDepartureTime(i));
+        }
+        assertEquals(early.getScheduledDepartureOffset(shared), late.getScheduledDepartureOffset(shared));
+        assertTrue(dwelling.getScheduledDepartureOffset(shared) >= 0);
+
+        TripTimes updated = new TripTimes(late);
+        updated.updateArrivalDelay(3, 20);
+        assertEquals(600 + 3 * 60 + 20, updated.getArrivalTime(3));
+        assertEquals(600 + 4 * 60, updated.getArrivalTime(4));
+        assertEquals(stops.length, updated.getNumStops());
+        assertEquals(-1, updated.getScheduledArrivalOffset(shared));
+        assertEquals(600 + 3 * 60, late.getArrivalTime(3));
+    }
+
     @Test
     public void testCancel() {
         TripTimes updatedTripTimesA = new TripTimes(originalTripTimes);
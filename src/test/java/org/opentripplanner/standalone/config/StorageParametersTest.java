@@ -10,6 +10,10 @@ import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.opentripplanner.routing.graph.GraphFileFormat.COLUMNAR;
+import static org.opentripplanner.routing.graph.GraphFileFormat.KRYO;
+import static org.opentripplanner.standalone.config.StorageParameters.graphFormatFromJson;
 import static org.opentripplanner.standalone.config.StorageParameters.uriFromJson;
 import static org.opentripplanner.standalone.config.StorageParameters.uriFromString;
 import static org.opentripplanner.standalone.config.StorageParameters.uris;
@@ -48,6 +52,17 @@ public class StorageParametersTest {
         assertEquals("[gs://a/b, gs://c/d]", uris("foo", node).toString());
     }
 
+    @Test
+    public void testGraphFormat() throws IOException {
+        assertEquals(KRYO, graphFormatFromJson("foo", MAPPER.readTree("{ }")));
+        assertEquals(COLUMNAR, graphFormatFromJson("foo", MAPPER.readTree("{ foo : 'columnar' }")));
+        assertEquals(COLUMNAR, graphFormatFromJson("foo", MAPPER.readTree("{ foo : 'COLUMNAR' }")));
+        try {
+            graphFormatFromJson("foo", MAPPER.readTree("{ foo : 'mapped' }"));
+            fail("Unknown graph format should be rejected");
+        } catch (IllegalArgumentException expected) { }
+    }
+
     @Test
     public void testCreateGoogleCloudStorageParameters() throws IOException {
         JsonNode node = MAPPER.readTree("{"
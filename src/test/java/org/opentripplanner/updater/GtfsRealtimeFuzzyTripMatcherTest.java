@@ -2,6 +2,8 @@ package org.opentripplanner.updater;
 
 import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
 import org.opentripplanner.GtfsTest;
+import org.opentripplanner.util.monitoring.RoutingMetrics;
+import org.opentripplanner.util.monitoring.RoutingMetrics.TripMatchKey;
 
 public class GtfsRealtimeFuzzyTripMatcherTest extends GtfsTest {
 
@@ -26,6 +28,26 @@ public class GtfsRealtimeFuzzyTripMatcherTest extends GtfsTest {
         assertFalse(trip1.hasTripId());
     }
 
+    public void testMatchIsCounted() throws Exception {
+        String feedId = graph.getFeedIds().iterator().next();
+        RoutingMetrics metrics = graph.routingMetrics;
+        long hits = metrics.getTripMatches(TripMatchKey.START_TIME, 1);
+        long misses = metrics.getTripMatches(TripMatchKey.START_TIME, 0);
+
+        GtfsRealtimeFuzzyTripMatcher matcher = new GtfsRealtimeFuzzyTripMatcher(graph.index);
+        TripDescriptor trip1 = TripDescriptor.newBuilder().setRouteId("1").setDirectionId(0).
+                setStartTime("06:47:00").setStartDate("20090915").build();
+        assertEquals("10W1020", matcher.match(feedId, trip1).getTripId());
+        assertEquals(hits + 1, metrics.getTripMatches(TripMatchKey.START_TIME, 1));
+        assertEquals(misses, metrics.getTripMatches(TripMatchKey.START_TIME, 0));
+
+        // Not running on this date, nor carried over from the day before
+        trip1 = TripDescriptor.newBuilder().setRouteId("1").setDirectionId(0).
+                setStartTime("06:47:00").setStartDate("20000101").build();
+        assertFalse(matcher.match(feedId, trip1).hasTripId());
+        assertEquals(misses + 2, metrics.getTripMatches(TripMatchKey.START_TIME, 0));
+    }
+
     @Override
     public String getFeedName() {
         return "google_transit.zip";
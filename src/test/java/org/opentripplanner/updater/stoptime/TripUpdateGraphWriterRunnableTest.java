@@ -13,14 +13,24 @@
 
 package org.opentripplanner.updater.stoptime;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.updater.CoalescingGraphWriterRunnable;
 
+import com.google.transit.realtime.GtfsRealtime.TripDescriptor;
 import com.google.transit.realtime.GtfsRealtime.TripUpdate;
 
 public class TripUpdateGraphWriterRunnableTest {
@@ -42,4 +52,66 @@ public class TripUpdateGraphWriterRunnableTest {
 
         verify(timetableSnapshotSource).applyTripUpdates(graph, fullDataset, updates, agencyId);
     }
+
+    @Test
+    public void testRunBatch() {
+        final String feedId = "Agency ID";
+        final TripUpdate firstUpdate = tripUpdate("1");
+        final TripUpdate secondUpdate = tripUpdate("1");
+        final TripUpdate otherUpdate = tripUpdate("2");
+        final List<TripUpdate> firstUpdates = Arrays.asList(firstUpdate, otherUpdate);
+        final List<TripUpdate> secondUpdates = Collections.singletonList(secondUpdate);
+        final TripUpdateGraphWriterRunnable first = new TripUpdateGraphWriterRunnable(false, firstUpdates, feedId);
+        final TripUpdateGraphWriterRunnable second = new TripUpdateGraphWriterRunnable(false, secondUpdates, feedId);
+
+        Graph graph = mock(Graph.class);
+        TimetableSnapshotSource timetableSnapshotSource = mock(TimetableSnapshotSource.class);
+        graph.timetableSnapshotSource = timetableSnapshotSource;
+        final Set<Object> superseded = new HashSet<>();
+        doAnswer(invocation -> {
+            superseded.addAll((Set<?>) invocation.getArguments()[1]);
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(timetableSnapshotSource).applyBatch(any(Runnable.class), any());
+
+        assertSame(first.coalescingKey(graph), second.coalescingKey(graph));
+        first.runBatch(graph, Arrays.<CoalescingGraphWriterRunnable>asList(first, second));
+
+        // Both messages are applied, but the update of trip 1 in the first one is replaced by the second one
+        verify(timetableSnapshotSource).applyTripUpdates(graph, false, firstUpdates, feedId);
+        verify(timetableSnapshotSource).applyTripUpdates(graph, false, secondUpdates, feedId);
+        assertEquals(1, superseded.size());
+        assertSame(firstUpdate, superseded.iterator().next());
+    }
+
+    @Test
+    public void testRunBatchWithFullDataset() {
+        final String feedId = "Agency ID";
+        final List<TripUpdate> firstUpdates = Collections.singletonList(tripUpdate("1"));
+        final List<TripUpdate> otherFeedUpdates = Collections.singletonList(tripUpdate("1"));
+        final List<TripUpdate> fullUpdates = Collections.singletonList(tripUpdate("2"));
+        final TripUpdateGraphWriterRunnable first = new TripUpdateGraphWriterRunnable(false, firstUpdates, feedId);
+        final TripUpdateGraphWriterRunnable otherFeed =
+                new TripUpdateGraphWriterRunnable(false, otherFeedUpdates, "Other ID");
+        final TripUpdateGraphWriterRunnable full = new TripUpdateGraphWriterRunnable(true, fullUpdates, feedId);
+
+        Graph graph = mock(Graph.class);
+        TimetableSnapshotSource timetableSnapshotSource = mock(TimetableSnapshotSource.class);
+        graph.timetableSnapshotSource = timetableSnapshotSource;
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(timetableSnapshotSource).applyBatch(any(Runnable.class), any());
+
+        first.runBatch(graph, Arrays.<CoalescingGraphWriterRunnable>asList(first, otherFeed, full));
+
+        // The full dataset clears the first message of the same feed, so it is not applied at all
+        verify(timetableSnapshotSource, never()).applyTripUpdates(graph, false, firstUpdates, feedId);
+        verify(timetableSnapshotSource).applyTripUpdates(graph, false, otherFeedUpdates, "Other ID");
+        verify(timetableSnapshotSource).applyTripUpdates(graph, true, fullUpdates, feedId);
+    }
+
+    private static TripUpdate tripUpdate(String tripId) {
+        return TripUpdate.newBuilder().setTrip(TripDescriptor.newBuilder().setTripId(tripId)).buildPartial();
+    }
 }
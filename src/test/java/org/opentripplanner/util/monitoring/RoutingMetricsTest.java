@@ -0,0 +1,64 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.util.monitoring;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RoutingMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(7));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        long[] counts = histogram.getCumulativeCounts();
+        assertEquals(LatencyHistogram.BUCKET_BOUNDS_SECONDS.length + 1, counts.length);
+        // bucket bounds are inclusive, as in Prometheus
+        assertArrayEquals(new long[] { 2, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 4 }, counts);
+        assertEquals(60.0085, histogram.getSumSeconds(), 1e-9);
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        RoutingMetrics metrics = new RoutingMetrics();
+        metrics.recordPhase(RoutingMetrics.Phase.SEARCH, System.nanoTime());
+        metrics.recordSearch(10, 12);
+        metrics.recordSearch(5, 5);
+        metrics.recordTimeout();
+
+        StringBuilder out = new StringBuilder();
+        RoutingMetrics.writePrometheus(Collections.singletonMap("a\"b", metrics), out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE otp_routing_phase_duration_seconds histogram\n"));
+        assertTrue(text.contains(
+                "otp_routing_phase_duration_seconds_count{router=\"a\\\"b\",phase=\"search\"} 1\n"));
+        assertTrue(text.contains(
+                "otp_routing_phase_duration_seconds_bucket{router=\"a\\\"b\",phase=\"linking\",le=\"+Inf\"} 0\n"));
+        assertTrue(text.contains("otp_routing_states_visited_total{router=\"a\\\"b\"} 15\n"));
+        assertTrue(text.contains("otp_routing_queue_pops_total{router=\"a\\\"b\"} 17\n"));
+        assertTrue(text.contains("otp_routing_timeouts_total{router=\"a\\\"b\"} 1\n"));
+    }
+}